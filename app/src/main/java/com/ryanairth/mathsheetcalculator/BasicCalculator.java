@@ -5,6 +5,7 @@ import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.Gravity;
+import android.view.KeyEvent;
 import android.widget.LinearLayout;
 
 import com.ryanairth.mathsheetcalculator.GUI.CalculatorNumpad;
@@ -13,7 +14,10 @@ import com.ryanairth.mathsheetcalculator.GUI.CalculatorScientificPad;
 import com.ryanairth.mathsheetcalculator.GUI.Menu;
 import com.ryanairth.mathsheetcalculator.GUI.PadSlider;
 import com.ryanairth.mathsheetcalculator.Math.BlockManager;
+import com.ryanairth.mathsheetcalculator.Util.CalculationEngine;
+import com.ryanairth.mathsheetcalculator.Util.InputLexer;
 import com.ryanairth.mathsheetcalculator.Util.PreviewInputProcessor;
+import com.ryanairth.mathsheetcalculator.Util.PreviewUpdateListener;
 
 /**
  * Created by Ryan Airth (Sweeney) on 20/01/2016.
@@ -25,11 +29,17 @@ public class BasicCalculator extends AppCompatActivity {
 
     public final static String TAG = "Ryan: ";
 
+    /*
+        Whether the input is processed on an engine thread of its own rather than the main thread
+     */
+    private static final boolean ENGINE_MODE = true;
+
     private LinearLayout multiScrollView;
     private int requestCode = 0;
     private int intentCount = 0;
 
-    private PreviewInputProcessor inputProcessor;
+    private PreviewUpdateListener inputProcessor;
+    private CalculationEngine engine;
     private BlockManager blockManager;
 
     @Override
@@ -40,7 +50,14 @@ public class BasicCalculator extends AppCompatActivity {
 
         blockManager = new BlockManager();
 
-        inputProcessor = new PreviewInputProcessor(blockManager, (CalculatorPreview) findViewById(R.id.calculator_preview));
+        CalculatorPreview preview = (CalculatorPreview) findViewById(R.id.calculator_preview);
+
+        if(ENGINE_MODE) {
+            engine = new CalculationEngine(blockManager, preview);
+            inputProcessor = engine;
+        } else {
+            inputProcessor = new PreviewInputProcessor(blockManager, preview);
+        }
 
         PadSlider padSlider = (PadSlider) findViewById(R.id.calculator_pad_slider);
 
@@ -67,6 +84,54 @@ public class BasicCalculator extends AppCompatActivity {
         }
     }
 
+    /**
+     * Passes keys from a hardware keyboard to the input processor, delete removes the last input
+     * and enter works out the total
+     */
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        if(keyCode == KeyEvent.KEYCODE_DEL) {
+            inputProcessor.deleteLastInput();
+            return true;
+        }
+
+        if(keyCode == KeyEvent.KEYCODE_ENTER || keyCode == KeyEvent.KEYCODE_NUMPAD_ENTER) {
+            inputProcessor.updatePreview('=');
+            return true;
+        }
+
+        char key = InputLexer.fromKeyboard((char) event.getUnicodeChar());
+
+        if(key != InputLexer.NO_KEY) {
+            inputProcessor.updatePreview(key);
+            return true;
+        }
+
+        return super.onKeyDown(keyCode, event);
+    }
+
+    /**
+     * Text committed in one go, such as from an input method, is processed as a single run
+     */
+    @Override
+    public boolean onKeyMultiple(int keyCode, int repeatCount, KeyEvent event) {
+        if(keyCode == KeyEvent.KEYCODE_UNKNOWN && event.getCharacters() != null) {
+            inputProcessor.updatePreview(event.getCharacters());
+            return true;
+        }
+
+        return super.onKeyMultiple(keyCode, repeatCount, event);
+    }
+
+    @Override
+    protected void onDestroy() {
+        if(engine != null) {
+            engine.quit();
+        }
+
+        super.onDestroy();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (resultCode == RESULT_OK) {
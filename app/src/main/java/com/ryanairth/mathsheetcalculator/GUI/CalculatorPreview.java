@@ -1,8 +1,11 @@
 package com.ryanairth.mathsheetcalculator.GUI;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.os.Build;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.HorizontalScrollView;
 import android.widget.PopupWindow;
@@ -39,6 +42,30 @@ public class CalculatorPreview extends RelativeLayout implements MathPreview{
      */
     private HorizontalScrollView scrollViewMain;
     private HorizontalScrollView scrollViewTotal;
+    /*
+        Scrollers for the two scroll views, reused for every scroll rather than made per call
+     */
+    private HorizontalAutoScroller scrollerMain;
+    private HorizontalAutoScroller scrollerTotal;
+
+    /*
+        Texts for the two text views, copied in as they're set and shown on the next frame. Only
+        the last text set before a frame is shown.
+     */
+    private TextBuffer primaryBuffer;
+    private TextBuffer secondaryBuffer;
+    /*
+        Other changes waiting for the next frame
+     */
+    private boolean resetPending;
+    private int pendingScroll;
+    private boolean frameScheduled;
+    /*
+        Shows the pending changes, run by the frame callback on devices that have Choreographer
+        and posted to the view on those that don't
+     */
+    private Runnable frameRunner;
+    private Choreographer.FrameCallback frameCallback;
 
     /**
      * Box used to preview the numbers the user has entered
@@ -76,6 +103,33 @@ public class CalculatorPreview extends RelativeLayout implements MathPreview{
         return previewTextTotal;
     }
 
+    /**
+     * Sets the primary text straight from a char array on the next frame, like
+     * {@link #setSecondaryText(char[], int, int)}
+     */
+    @Override
+    public void setPrimaryText(char[] text, int start, int length) {
+        primaryBuffer.set(text, start, length);
+
+        scheduleFrame();
+    }
+
+    /**
+     * Sets the secondary text from a char array on the next frame. The text is copied straight
+     * away, as the TextView keeps the array it's given rather than copying it, so the array
+     * given can be changed as soon as this returns.
+     *
+     * @param text array holding the text
+     * @param start index of the first character
+     * @param length number of characters
+     */
+    @Override
+    public void setSecondaryText(char[] text, int start, int length) {
+        secondaryBuffer.set(text, start, length);
+
+        scheduleFrame();
+    }
+
     /**
      * Initializes all the main stuff for the class
      *
@@ -118,6 +172,80 @@ public class CalculatorPreview extends RelativeLayout implements MathPreview{
         // Acquire the total text from inside the horizontal scroll view
         previewTextTotal = (TextView) findViewById(R.id.preview_total_text);
         previewTextTotal.setText("0");
+
+        primaryBuffer = new TextBuffer();
+        secondaryBuffer = new TextBuffer();
+
+        scrollerMain = new HorizontalAutoScroller(scrollViewMain);
+        scrollerTotal = new HorizontalAutoScroller(scrollViewTotal);
+
+        frameRunner = new Runnable() {
+            @Override
+            public void run() {
+                showPending();
+            }
+        };
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            frameCallback = createFrameCallback();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private Choreographer.FrameCallback createFrameCallback() {
+        return new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                showPending();
+            }
+        };
+    }
+
+    /**
+     * Asks for the pending changes to be shown on the next frame, however many are made before it
+     */
+    private void scheduleFrame() {
+        if(frameScheduled) {
+            return;
+        }
+
+        frameScheduled = true;
+
+        if(frameCallback != null) {
+            postFrameCallback();
+        } else {
+            post(frameRunner);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    /**
+     * Shows everything changed since the last frame, in the order a reset, the texts and then the
+     * scroll
+     */
+    private void showPending() {
+        frameScheduled = false;
+
+        if(resetPending) {
+            previewTextMain.setText("0");
+            previewTextTotal.setText("0");
+            resetPending = false;
+        }
+
+        primaryBuffer.show(previewTextMain);
+        secondaryBuffer.show(previewTextTotal);
+
+        if(pendingScroll != 0) {
+            // Run once the new texts have been laid out, reposting moves them rather than
+            // adding another
+            scrollerMain.scroll(pendingScroll);
+            scrollerTotal.scroll(pendingScroll);
+            pendingScroll = 0;
+        }
     }
 
     /**
@@ -127,45 +255,91 @@ public class CalculatorPreview extends RelativeLayout implements MathPreview{
      */
     @Override
     public void scrollText(int direction) {
-        switch (direction) {
-            case FOCUS_LEFT:
-                scrollViewMain.post(new HorizontalAutoScroller(scrollViewMain, scrollViewMain.getChildAt(0).getLeft()));
-                scrollViewTotal.post(new HorizontalAutoScroller(scrollViewTotal, scrollViewTotal.getChildAt(0).getLeft()));
-                break;
-            case FOCUS_RIGHT:
-                scrollViewMain.post(new HorizontalAutoScroller(scrollViewMain, scrollViewMain.getChildAt(0).getRight()));
-                scrollViewTotal.post(new HorizontalAutoScroller(scrollViewTotal, scrollViewTotal.getChildAt(0).getRight()));
-                break;
+        if(direction == FOCUS_LEFT || direction == FOCUS_RIGHT) {
+            pendingScroll = direction;
+
+            scheduleFrame();
         }
     }
 
     /**
-     * Resets the preview texts
+     * Resets the preview texts on the next frame, texts set before it are dropped
      */
     @Override
     public void resetPreview() {
-        previewTextMain.setText("0");
-        previewTextTotal.setText("0");
+        resetPending = true;
+        primaryBuffer.drop();
+        secondaryBuffer.drop();
+
+        scheduleFrame();
+    }
+
+    /**
+     * Two arrays for the text of a TextView, one it's showing and one the next text is copied
+     * into, which it's given on the next frame. The array shown is never written to, so the
+     * TextView can keep it without a copy of its own.
+     */
+    private static class TextBuffer {
+        private char[] shown = new char[16];
+        private char[] pending = new char[16];
+        private int length;
+        private boolean hasPending;
+
+        public void set(char[] text, int start, int length) {
+            if(pending.length < length) {
+                pending = new char[Math.max(length, pending.length * 2)];
+            }
+
+            System.arraycopy(text, start, pending, 0, length);
+            this.length = length;
+            hasPending = true;
+        }
+
+        public void show(TextView view) {
+            if(!hasPending) {
+                return;
+            }
+
+            view.setText(pending, 0, length);
+            hasPending = false;
+
+            char[] swap = shown;
+            shown = pending;
+            pending = swap;
+        }
+
+        public void drop() {
+            hasPending = false;
+        }
     }
 
     /**
      * For use with the View.post(Runnable) method.
-     * Scrolls the scroller along the X axis
-     * Names of variables and purpose are self explanatory.
+     * Scrolls the scroller along the X axis to either end of its child, worked out when it runs
+     * so that it's after the text has been laid out. One is kept per scroll view and reposted.
      *
      * @see #post(Runnable)
      */
     private class HorizontalAutoScroller implements Runnable {
-        private View viewToScroll;
-        private int xPos;
+        private HorizontalScrollView viewToScroll;
+        private int direction;
 
-        public HorizontalAutoScroller(View viewToScroll, int xPos) {
+        public HorizontalAutoScroller(HorizontalScrollView viewToScroll) {
             this.viewToScroll = viewToScroll;
-            this.xPos = xPos;
+        }
+
+        public void scroll(int direction) {
+            this.direction = direction;
+
+            viewToScroll.removeCallbacks(this);
+            viewToScroll.post(this);
         }
 
         @Override
         public void run() {
+            View child = viewToScroll.getChildAt(0);
+            int xPos = direction == FOCUS_LEFT ? child.getLeft() : child.getRight();
+
             viewToScroll.scrollTo(xPos, 0);
         }
     }
@@ -9,6 +9,7 @@ import android.widget.Button;
 import android.widget.GridLayout;
 import android.widget.LinearLayout;
 
+import com.ryanairth.mathsheetcalculator.Math.MathOperator;
 import com.ryanairth.mathsheetcalculator.R;
 import com.ryanairth.mathsheetcalculator.Util.PreviewUpdateDispatcher;
 import com.ryanairth.mathsheetcalculator.Util.PreviewUpdateListener;
@@ -33,6 +34,20 @@ public class CalculatorScientificPad extends LinearLayout implements PreviewUpda
      * Buttons that are symbols used with more scientific operations
      */
     private Button leftBracket, rightBracket;
+    /**
+     * Buttons for powers and the functions, their labels aren't the symbol that gets sent so the
+     * symbol comes from the matching {@link MathOperator}
+     */
+    private Button power, squareRoot, sine, cosine, tangent, log, naturalLog, exponential;
+    private Button factorial, gamma, permutation, combination;
+    /**
+     * Buttons that step back and forward through the input history
+     */
+    private Button undo, redo;
+    /**
+     * Buttons that move the caret back and forward through the sum
+     */
+    private Button cursorLeft, cursorRight;
     /**
      * Receiver for all the preview update events
      */
@@ -60,6 +75,22 @@ public class CalculatorScientificPad extends LinearLayout implements PreviewUpda
 
         leftBracket = (Button) gridLayout.findViewById(R.id.scientific_left_bracket);
         rightBracket = (Button) gridLayout.findViewById(R.id.scientific_right_bracket);
+        power = (Button) gridLayout.findViewById(R.id.scientific_power);
+        squareRoot = (Button) gridLayout.findViewById(R.id.scientific_square_root);
+        sine = (Button) gridLayout.findViewById(R.id.scientific_sine);
+        cosine = (Button) gridLayout.findViewById(R.id.scientific_cosine);
+        tangent = (Button) gridLayout.findViewById(R.id.scientific_tangent);
+        log = (Button) gridLayout.findViewById(R.id.scientific_log);
+        naturalLog = (Button) gridLayout.findViewById(R.id.scientific_natural_log);
+        exponential = (Button) gridLayout.findViewById(R.id.scientific_exponential);
+        factorial = (Button) gridLayout.findViewById(R.id.scientific_factorial);
+        gamma = (Button) gridLayout.findViewById(R.id.scientific_gamma);
+        permutation = (Button) gridLayout.findViewById(R.id.scientific_permutation);
+        combination = (Button) gridLayout.findViewById(R.id.scientific_combination);
+        undo = (Button) gridLayout.findViewById(R.id.scientific_undo);
+        redo = (Button) gridLayout.findViewById(R.id.scientific_redo);
+        cursorLeft = (Button) gridLayout.findViewById(R.id.scientific_cursor_left);
+        cursorRight = (Button) gridLayout.findViewById(R.id.scientific_cursor_right);
 
         setUpButtons();
     }
@@ -91,5 +122,61 @@ public class CalculatorScientificPad extends LinearLayout implements PreviewUpda
                 listener.updatePreview(getResources().getString(R.string.scientific_right_bracket).charAt(0));
             }
         });
+
+        setUpOperatorButton(power, MathOperator.POWER);
+        setUpOperatorButton(squareRoot, MathOperator.SQUARE_ROOT);
+        setUpOperatorButton(sine, MathOperator.SINE);
+        setUpOperatorButton(cosine, MathOperator.COSINE);
+        setUpOperatorButton(tangent, MathOperator.TANGENT);
+        setUpOperatorButton(log, MathOperator.LOG);
+        setUpOperatorButton(naturalLog, MathOperator.NATURAL_LOG);
+        setUpOperatorButton(exponential, MathOperator.EXPONENTIAL);
+        setUpOperatorButton(factorial, MathOperator.FACTORIAL);
+        setUpOperatorButton(gamma, MathOperator.GAMMA);
+        setUpOperatorButton(permutation, MathOperator.PERMUTATION);
+        setUpOperatorButton(combination, MathOperator.COMBINATION);
+
+        undo.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                listener.undo();
+            }
+        });
+
+        redo.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                listener.redo();
+            }
+        });
+
+        cursorLeft.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                listener.moveCursorLeft();
+            }
+        });
+
+        cursorRight.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                listener.moveCursorRight();
+            }
+        });
+    }
+
+    /**
+     * Makes a button send the symbol of an operator to the {@link PreviewUpdateListener}
+     *
+     * @param button the button to listen to
+     * @param operator the operator whose symbol gets sent
+     */
+    private void setUpOperatorButton(Button button, final MathOperator operator) {
+        button.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                listener.updatePreview(operator.getSymbol());
+            }
+        });
     }
 }
@@ -5,15 +5,15 @@ import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.View;
 
 import com.ryanairth.mathsheetcalculator.R;
+import com.ryanairth.mathsheetcalculator.Util.Logger;
 
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.ryanairth.mathsheetcalculator.MainActivity.TAG;
+import static com.ryanairth.mathsheetcalculator.Util.Logger.TAG;
 
 /**
  * Created by Ryan Airth (Sweeney) on 06/01/2016.
@@ -81,7 +81,9 @@ public class LineGrid extends View {
             boxWidth = a.getDimensionPixelSize(R.styleable.LineGrid_l_g_width, 50);
             boxHeight = a.getDimensionPixelSize(R.styleable.LineGrid_l_g_height, 50);
 
-            Log.i(TAG, "BoxWidth: " + boxWidth + ", BoxHeight: " + boxHeight);
+            if(Logger.INFO_ENABLED) {
+                Logger.i(TAG, "BoxWidth: " + boxWidth + ", BoxHeight: " + boxHeight);
+            }
 
             linePaint = new Paint();
             linePaint.setColor(a.getColor(R.styleable.LineGrid_l_g_color, 0));
@@ -203,7 +205,7 @@ public class LineGrid extends View {
      */
     protected void init() {
         // TODO see if I have this backwards!?!?
-        Log.i(TAG, "Setting up grid UI!");
+        Logger.i(TAG, "Setting up grid UI!");
         // Set up 2D horizontal/vertical arrays
         // Add 1 to the columns for the horizontal lines to account for the lines at the bottom
         // Add 1 to the rows for the vertical lines to account for the lines at the right
@@ -321,10 +323,13 @@ public class LineGrid extends View {
         width = boxWidth * columns;
         height = boxHeight * rows;
 
-        Log.i(TAG, "MeasuredWidth: " + width + ", MeasuredHeight: " + height);
-        Log.i(TAG, "NumberBlock of Rows: " + rows + ", NumberBlock of Columns: " + columns);
-        Log.i(TAG, "WidthSize: " + widthSize + ", HeightSize: " + heightSize);
-        Log.i(TAG, "ExpectedWidth: " + boxWidth * columns + ", ExpectedHeight: " + boxHeight * rows);
+        if(Logger.INFO_ENABLED) {
+            Logger.i(TAG, "MeasuredWidth: " + width + ", MeasuredHeight: " + height);
+            Logger.i(TAG, "NumberBlock of Rows: " + rows + ", NumberBlock of Columns: " + columns);
+            Logger.i(TAG, "WidthSize: " + widthSize + ", HeightSize: " + heightSize);
+            Logger.i(TAG, "ExpectedWidth: " + boxWidth * columns + ", ExpectedHeight: "
+                    + boxHeight * rows);
+        }
 
         setMeasuredDimension(width, height);
     }
@@ -385,11 +390,13 @@ public class LineGrid extends View {
         // Grid position is (x / box size)(row) * (y / box size)(column)
         int gridX = Math.round(x) / boxWidth;
         int gridY = (Math.round(y) - 1) / boxHeight;
-        Log.i(TAG, "GridX: " + gridX + ", GridY: " + gridY);
-
         int finalPos = gridY * columns + gridX;
 
-        Log.i(TAG, "Grid position: " + finalPos);
+        if(Logger.INFO_ENABLED) {
+            Logger.i(TAG, "GridX: " + gridX + ", GridY: " + gridY);
+            Logger.i(TAG, "Grid position: " + finalPos);
+        }
+
         return finalPos;
     }
 
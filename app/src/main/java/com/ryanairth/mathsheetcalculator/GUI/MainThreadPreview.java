@@ -0,0 +1,182 @@
+package com.ryanairth.mathsheetcalculator.GUI;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.TextView;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class MainThreadPreview implements MathPreview {
+    /*
+        Value of the scroll direction when the frame doesn't scroll
+     */
+    private static final int NO_SCROLL = 0;
+
+    private final MathPreview target;
+    private final Handler mainHandler;
+    /*
+        Changes not yet shown, null when there are none and nothing is posted
+     */
+    private final AtomicReference<Frame> pending;
+    /*
+        Shows the pending changes, posted at most once until it runs
+     */
+    private final Runnable applier;
+
+    /**
+     * Preview that can be written to from any one thread and shows the changes on the main thread.
+     * Texts are copied as they're set, as the arrays given are reused by the writer, and every
+     * change made before the main thread gets round to them is merged into one frame, so a
+     * writer that's ahead of the screen costs one post rather than one per change. The frame is
+     * swapped in and out with a compare and set, so neither thread ever waits on the other.
+     *
+     * @param target the preview shown, only touched on the main thread
+     */
+    public MainThreadPreview(MathPreview target) {
+        this.target = target;
+
+        mainHandler = new Handler(Looper.getMainLooper());
+        pending = new AtomicReference<>();
+        applier = new Runnable() {
+            @Override
+            public void run() {
+                apply(pending.getAndSet(null));
+            }
+        };
+    }
+
+    /**
+     * The target's primary text, only to be used on the main thread
+     */
+    @Override
+    public TextView getPrimary() {
+        return target.getPrimary();
+    }
+
+    /**
+     * The target's secondary text, only to be used on the main thread
+     */
+    @Override
+    public TextView getSecondary() {
+        return target.getSecondary();
+    }
+
+    @Override
+    public void setPrimaryText(char[] text, int start, int length) {
+        char[] copy = Arrays.copyOfRange(text, start, start + length);
+        Frame frame;
+
+        do {
+            frame = new Frame(pending.get());
+            frame.primary = copy;
+        } while(!publish(frame));
+    }
+
+    @Override
+    public void setSecondaryText(char[] text, int start, int length) {
+        char[] copy = Arrays.copyOfRange(text, start, start + length);
+        Frame frame;
+
+        do {
+            frame = new Frame(pending.get());
+            frame.secondary = copy;
+        } while(!publish(frame));
+    }
+
+    /**
+     * Resets both texts, anything set before it in the same frame is dropped
+     */
+    @Override
+    public void resetPreview() {
+        Frame frame;
+
+        do {
+            frame = new Frame(pending.get());
+            frame.reset = true;
+            frame.primary = null;
+            frame.secondary = null;
+        } while(!publish(frame));
+    }
+
+    @Override
+    public void scrollText(int direction) {
+        Frame frame;
+
+        do {
+            frame = new Frame(pending.get());
+            frame.scroll = direction;
+        } while(!publish(frame));
+    }
+
+    /**
+     * Swaps the frame in for the one it was made from, posting it if the main thread had already
+     * taken that one
+     *
+     * @return false if the main thread took the frame it was made from in the meantime
+     */
+    private boolean publish(Frame frame) {
+        if(!pending.compareAndSet(frame.base, frame)) {
+            return false;
+        }
+
+        if(frame.base == null) {
+            mainHandler.post(applier);
+        }
+
+        frame.base = null;
+
+        return true;
+    }
+
+    /**
+     * Shows a frame on the target, in the order the changes were made
+     */
+    private void apply(Frame frame) {
+        if(frame == null) {
+            return;
+        }
+
+        if(frame.reset) {
+            target.resetPreview();
+        }
+
+        if(frame.primary != null) {
+            target.setPrimaryText(frame.primary, 0, frame.primary.length);
+        }
+
+        if(frame.secondary != null) {
+            target.setSecondaryText(frame.secondary, 0, frame.secondary.length);
+        }
+
+        if(frame.scroll != NO_SCROLL) {
+            target.scrollText(frame.scroll);
+        }
+    }
+
+    /**
+     * Changes to show at once, copied and swapped rather than changed once published
+     */
+    private static final class Frame {
+        // The frame this one replaces, only used until it's published
+        private Frame base;
+        private boolean reset;
+        private char[] primary;
+        private char[] secondary;
+        private int scroll;
+
+        Frame(Frame base) {
+            this.base = base;
+
+            if(base != null) {
+                reset = base.reset;
+                primary = base.primary;
+                secondary = base.secondary;
+                scroll = base.scroll;
+            }
+        }
+    }
+}
@@ -14,6 +14,8 @@ import android.widget.TextView;
 public interface MathPreview {
     TextView getPrimary();
     TextView getSecondary();
+    void setPrimaryText(char[] text, int start, int length);
+    void setSecondaryText(char[] text, int start, int length);
     void resetPreview();
     void scrollText(int direction);
 }
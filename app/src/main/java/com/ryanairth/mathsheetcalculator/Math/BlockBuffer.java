@@ -0,0 +1,274 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.util.Arrays;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class BlockBuffer {
+    /*
+        Value stored in the operator array for blocks that hold a number
+     */
+    public static final byte NUMBER = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /*
+        Numbers of the blocks, only meaningful where the operator array holds NUMBER
+     */
+    private double[] values;
+    /*
+        MathOperator ordinals of the blocks, or NUMBER for number blocks
+     */
+    private byte[] operators;
+    /*
+        Number of blocks in the buffer
+     */
+    private int size;
+    /*
+        How much of the arrays from the start snapshots are still reading, anything written there
+        copies the arrays first
+     */
+    private int shared;
+
+    /**
+     * Struct of arrays store for the blocks entered by the user. Numbers are kept in a double array
+     * and operators in a byte array of {@link MathOperator} ordinals, so adding and reading blocks
+     * never boxes or allocates once the arrays have grown to fit.
+     *
+     * @see BlockManager
+     */
+    public BlockBuffer() {
+        values = new double[INITIAL_CAPACITY];
+        operators = new byte[INITIAL_CAPACITY];
+    }
+
+    private BlockBuffer(double[] values, byte[] operators, int size) {
+        this.values = values;
+        this.operators = operators;
+        this.size = size;
+        // Everything written to a snapshot copies, the arrays past its size are still the writer's
+        shared = values.length;
+    }
+
+    /**
+     * Copy of the blocks that doesn't change when this buffer does, used to hand the blocks to
+     * another thread. The snapshot shares the arrays, so taking one is O(1) and the blocks are
+     * never copied on the thread adding them while it only appends. Writing anywhere a snapshot
+     * can read, by popping and adding, inserting, replacing or removing, copies the arrays once
+     * first. A snapshot can be changed too, it copies the arrays before its first change.
+     *
+     * The snapshot is only safe to read on another thread once it has been handed over in a way
+     * that publishes it, such as a final field or submitting it to an executor.
+     *
+     * @return the snapshot
+     */
+    public BlockBuffer snapshot() {
+        shared = Math.max(shared, size);
+
+        return new BlockBuffer(values, operators, size);
+    }
+
+    /**
+     * Number of blocks in the buffer
+     *
+     * @return the number of blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Whether the block at the index holds a number
+     *
+     * @param index position of the block
+     * @return true for number blocks, false for operator blocks
+     */
+    public boolean isNumber(int index) {
+        return operators[index] == NUMBER;
+    }
+
+    /**
+     * Number held by the block at the index, only valid for number blocks
+     *
+     * @param index position of the block
+     * @return the number
+     */
+    public double getNumber(int index) {
+        return values[index];
+    }
+
+    /**
+     * Operator held by the block at the index
+     *
+     * @param index position of the block
+     * @return the operator, or {@link MathOperator#NONE} for number blocks
+     */
+    public MathOperator getOperator(int index) {
+        byte ordinal = operators[index];
+
+        return ordinal == NUMBER ? MathOperator.NONE : MathOperator.fromOrdinal(ordinal);
+    }
+
+    /**
+     * Raw operator ordinal of the block at the index
+     *
+     * @param index position of the block
+     * @return the {@link MathOperator} ordinal or {@link #NUMBER}
+     */
+    public byte getOperatorOrdinal(int index) {
+        return operators[index];
+    }
+
+    /**
+     * Backing array of numbers, valid up to {@link #size()}. Evaluators read this directly rather
+     * than going through the accessors one block at a time.
+     *
+     * @return the number array
+     */
+    double[] getValueArray() {
+        return values;
+    }
+
+    /**
+     * Backing array of operator ordinals, valid up to {@link #size()}
+     *
+     * @return the operator array
+     */
+    byte[] getOperatorArray() {
+        return operators;
+    }
+
+    /**
+     * Adds a number block to the end of the buffer
+     *
+     * @param number the number to add
+     */
+    public void add(double number) {
+        ensureCapacity();
+        prepareWrite(size);
+
+        values[size] = number;
+        operators[size] = NUMBER;
+        size++;
+    }
+
+    /**
+     * Adds an operator block to the end of the buffer
+     *
+     * @param operator the operator to add
+     */
+    public void add(MathOperator operator) {
+        ensureCapacity();
+        prepareWrite(size);
+
+        values[size] = 0.0;
+        operators[size] = (byte) operator.ordinal();
+        size++;
+    }
+
+    /**
+     * Inserts a number block, moving the blocks from the index on along by one
+     *
+     * @param index where the block goes, up to {@link #size()}
+     * @param number the number to insert
+     */
+    public void insert(int index, double number) {
+        makeRoom(index);
+
+        values[index] = number;
+        operators[index] = NUMBER;
+    }
+
+    /**
+     * Inserts an operator block, moving the blocks from the index on along by one
+     *
+     * @param index where the block goes, up to {@link #size()}
+     * @param operator the operator to insert
+     */
+    public void insert(int index, MathOperator operator) {
+        makeRoom(index);
+
+        values[index] = 0.0;
+        operators[index] = (byte) operator.ordinal();
+    }
+
+    /**
+     * Replaces the block at the index with a number block
+     */
+    public void set(int index, double number) {
+        prepareWrite(index);
+
+        values[index] = number;
+        operators[index] = NUMBER;
+    }
+
+    /**
+     * Replaces the block at the index with an operator block
+     */
+    public void set(int index, MathOperator operator) {
+        prepareWrite(index);
+
+        values[index] = 0.0;
+        operators[index] = (byte) operator.ordinal();
+    }
+
+    /**
+     * Removes the block at the index, moving the blocks after it back by one
+     */
+    public void remove(int index) {
+        prepareWrite(index);
+
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        System.arraycopy(operators, index + 1, operators, index, size - index - 1);
+        size--;
+    }
+
+    /**
+     * Removes the last block from the buffer
+     */
+    public void pop() {
+        size--;
+    }
+
+    /**
+     * Removes every block from the buffer, the arrays are kept for reuse
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    private void makeRoom(int index) {
+        ensureCapacity();
+        prepareWrite(index);
+
+        System.arraycopy(values, index, values, index + 1, size - index);
+        System.arraycopy(operators, index, operators, index + 1, size - index);
+        size++;
+    }
+
+    private void ensureCapacity() {
+        if(size == values.length) {
+            int capacity = values.length * 2;
+
+            values = Arrays.copyOf(values, capacity);
+            operators = Arrays.copyOf(operators, capacity);
+            shared = 0;
+        }
+    }
+
+    /**
+     * Copies the arrays before anything is written at or after an index a snapshot is reading
+     */
+    private void prepareWrite(int index) {
+        if(index < shared) {
+            values = values.clone();
+            operators = operators.clone();
+            shared = 0;
+        }
+    }
+}
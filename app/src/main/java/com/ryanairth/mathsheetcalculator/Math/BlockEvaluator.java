@@ -1,175 +1,509 @@
 package com.ryanairth.mathsheetcalculator.Math;
 
-import android.util.Log;
+import com.ryanairth.mathsheetcalculator.Util.Logger;
 
-import com.ryanairth.mathsheetcalculator.Exceptions.InvalidMathOperatorException;
+import java.math.BigDecimal;
+import java.math.MathContext;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import static com.ryanairth.mathsheetcalculator.MainActivity.TAG;
+import static com.ryanairth.mathsheetcalculator.Util.Logger.TAG;
 
 /**
  * Created by Ryan Airth (Sweeney) on 22/05/2016.
  * Copyright information found in accompanying License.txt file.
  */
 public class BlockEvaluator {
-    // TODO - go through all the sequences recursively
-
     /*
-        List of blocks used for the calculations
+        Manager that owns the blocks, null if there isn't one. After an edit in the middle of the
+        sequence the running total and hash are only brought up to date through it when they're
+        next needed.
+     */
+    private BlockManager manager;
+    /*
+        Buffer of blocks used for the calculations
+     */
+    private BlockBuffer blocks;
+    /*
+        Running total that's kept up to date as blocks are added and removed
+     */
+    private IncrementalEvaluator incrementalEvaluator;
+    /*
+        Postfix program compiled from the blocks, used whenever the running total can't be
+     */
+    private BlockProgram program;
+    /*
+        Balanced tree over the blocks, gives the preview after an edit in the middle of the
+        sequence without bringing the running total up to date over everything after the edit
+     */
+    private ExpressionTree tree;
+    /*
+        Hash of the blocks kept up to date by the block manager, the key into the result cache
+     */
+    private RollingBlockHash hash;
+    /*
+        Results of previously evaluated sequences
+     */
+    private ResultCache resultCache;
+    /*
+        Number type used by calculatePreciseTotal()
+     */
+    private PrecisionMode precisionMode;
+    /*
+        Runs the compiled program in decimal for PrecisionMode.DECIMAL
+     */
+    private DecimalExecutor decimalExecutor;
+    /*
+        Runs the compiled program in fractions for PrecisionMode.RATIONAL
+     */
+    private RationalExecutor rationalExecutor;
+    /*
+        Runs the compiled program in scaled longs for PrecisionMode.FIXED_POINT
+     */
+    private FixedPointExecutor fixedPointExecutor;
+    /*
+        How functions are worked out for calculateCurrentTotal(), final totals always use StrictMath
      */
-    private List<Block> blocks;
+    private FunctionMode previewFunctionMode;
 
     /**
      * Block calculator, object designed to specifically calculate the total of all the blocks entered
      * by the user
      *
-     * @param blocks reference of the list that contains all the blocks
+     * @param blocks reference of the buffer that contains all the blocks
+     * @param incrementalEvaluator running total that's fed every block added to the buffer
+     * @param program postfix program compiled from the buffer
+     * @param tree balanced tree over the buffer, used for the preview once it's been edited
+     * @param hash rolling hash of the buffer, used to look up results that have been worked out before
      */
-    public BlockEvaluator(List<Block> blocks) {
+    public BlockEvaluator(BlockBuffer blocks, IncrementalEvaluator incrementalEvaluator,
+                          BlockProgram program, ExpressionTree tree, RollingBlockHash hash) {
+        this(null, blocks, incrementalEvaluator, program, tree, hash);
+    }
+
+    /**
+     * Block calculator for the blocks of a manager, which keeps the running total and hash up to
+     * date for it
+     */
+    BlockEvaluator(BlockManager manager, BlockBuffer blocks,
+                   IncrementalEvaluator incrementalEvaluator, BlockProgram program,
+                   ExpressionTree tree, RollingBlockHash hash) {
+        this.manager = manager;
         this.blocks = blocks;
+        this.incrementalEvaluator = incrementalEvaluator;
+        this.program = program;
+        this.tree = tree;
+        this.hash = hash;
+
+        resultCache = new ResultCache();
+        precisionMode = PrecisionMode.DOUBLE;
+        decimalExecutor = new DecimalExecutor(MathContext.DECIMAL128);
+        rationalExecutor = new RationalExecutor();
+        fixedPointExecutor = new FixedPointExecutor(FixedPointExecutor.DEFAULT_SCALE);
+        previewFunctionMode = FunctionMode.FAST;
     }
 
-    public List<Block> getBlocks() {
+    public BlockBuffer getBlockBuffer() {
         return blocks;
     }
 
+    public BlockProgram getProgram() {
+        return program;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Sets the cache final totals are memoized in, one cache can be shared between evaluators so
+     * that the same calculation on different sheets is only worked out once
+     *
+     * @param resultCache the cache to use
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public PrecisionMode getPrecisionMode() {
+        return precisionMode;
+    }
+
+    /**
+     * Sets the number type {@link #calculatePreciseTotal()} works in, the running total used for
+     * previews is worked out in double in every mode but {@link PrecisionMode#FIXED_POINT}
+     *
+     * @param precisionMode the mode to use
+     */
+    public void setPrecisionMode(PrecisionMode precisionMode) {
+        this.precisionMode = precisionMode;
+    }
+
+    public MathContext getMathContext() {
+        return decimalExecutor.getMathContext();
+    }
+
+    /**
+     * Sets the precision and rounding of {@link PrecisionMode#DECIMAL} for any result that can't be
+     * worked out exactly, also used to show {@link PrecisionMode#RATIONAL} results as decimals
+     *
+     * @param mathContext the MathContext to use
+     */
+    public void setMathContext(MathContext mathContext) {
+        decimalExecutor.setMathContext(mathContext);
+    }
+
+    public FunctionMode getPreviewFunctionMode() {
+        return previewFunctionMode;
+    }
+
+    /**
+     * Sets how functions such as sin and pow are worked out for {@link #calculateCurrentTotal()},
+     * {@link FunctionMode#FAST} by default so that previews of heavy sheets keep up with typing.
+     * Final totals always use {@link FunctionMode#STRICT}.
+     *
+     * @param previewFunctionMode the mode to use
+     */
+    public void setPreviewFunctionMode(FunctionMode previewFunctionMode) {
+        this.previewFunctionMode = previewFunctionMode;
+    }
+
+    public int getFixedPointScale() {
+        return fixedPointExecutor.getScale();
+    }
+
+    /**
+     * Sets the number of decimal places {@link PrecisionMode#FIXED_POINT} keeps, 2 by default for
+     * whole cents
+     *
+     * @param scale number of decimal places, 0 to {@link FixedPointExecutor#MAX_SCALE}
+     */
+    public void setFixedPointScale(int scale) {
+        fixedPointExecutor.setScale(scale);
+
+        // The running total works the blocks out again at the new scale, so it's brought up to
+        // date first
+        catchUp();
+        incrementalEvaluator.setScale(scale);
+    }
+
     /**
      * Calculate and return the total of the maths equation entered by the user, used when all inputs
-     * have been made and looking for the final value
+     * have been made and looking for the final value. Totals are memoized in the result cache.
      *
      * @return number representing the sum of the maths equation
-     * @throws InvalidMathOperatorException exception thrown when an unexpected operator is found, cause would be unimplemented operators
      */
-    public double calculateTotal() throws InvalidMathOperatorException {
+    public double calculateTotal() {
         // If there aren't any elements in the blocks array, return zero
         if(blocks.size() <= 0) {
-            Log.i(TAG, "Not enough blocks, returning zero");
+            Logger.i(TAG, "Not enough blocks, returning zero");
             return 0.0;
         }
 
-        return evaluate(this.blocks);
+        catchUp();
+
+        Number cached = resultCache.get(hash.getHash(), hash.getCheck(), hash.size());
+
+        if(cached != null) {
+            return cached.doubleValue();
+        }
+
+        double total = evaluate(FunctionMode.STRICT);
+
+        resultCache.put(hash.getHash(), hash.getCheck(), hash.size(), total);
+
+        return total;
     }
 
     /**
-     * Calculate and return the final evaluation of the maths equation entered by the user thus far
+     * Calculate and return the final evaluation of the maths equation entered by the user thus far,
+     * the total is kept up to date as blocks are added so this is O(1) unless there are brackets,
+     * powers or functions. Functions are worked out in the preview function mode.
+     * Once a block has been inserted, replaced or removed in the middle of the sequence, the total
+     * is read from the expression tree in O(log n) rather than bringing the running total up to
+     * date over the blocks after the edit. It can be a few ulps from the final total as the tree
+     * groups sums differently.
+     * In {@link PrecisionMode#FIXED_POINT} the total is rounded the same way the final total will
+     * be, read from the running total kept in scaled longs. The whole program is only run when
+     * the running total has overflowed or can't follow the blocks, and only worked out in double
+     * when the longs can't hold it.
      *
      * @return number representing the sum of the maths equation
-     * @throws InvalidMathOperatorException exception thrown when an unexpected operator is found, cause would be unimplemented operators
      */
-    public double calculateCurrentTotal() throws InvalidMathOperatorException {
+    public double calculateCurrentTotal() {
         // If there aren't any elements in the blocks array, return zero
         if(blocks.size() <= 0) {
-            Log.i(TAG, "Not enough blocks, returning zero");
+            Logger.i(TAG, "Not enough blocks, returning zero");
             return 0.0;
         }
 
-        /*
-            If there's only one or two elements return the current value as element 0 will be a number
-            and element 1 will be a symbol/math operator
-         */
-        if(blocks.size() <= 2) {
-            Log.i(TAG, "Not enough blocks, returning current value");
-            return ((NumberBlock)blocks.get(0)).getValue();
+        if(usesTree()) {
+            return tree.getTotal();
         }
 
-        return evaluate(this.blocks);
+        catchUp();
+
+        if(precisionMode == PrecisionMode.FIXED_POINT && !isTotalIntegral()) {
+            double total = incrementalEvaluator.isFixed()
+                    ? FixedPointExecutor.toDouble(incrementalEvaluator.getScaledTotal(),
+                            fixedPointExecutor.getScale())
+                    : fixedPointExecutor.executeToDouble(program);
+
+            // NaN when the scaled longs can't hold it, worked out the usual way below instead
+            if(!Double.isNaN(total)) {
+                return total;
+            }
+        }
+
+        return evaluate(previewFunctionMode);
     }
 
     /**
-     * Evaluates the current block array
+     * Calculate the total of the maths equation the same way as {@link #calculateTotal()}, with a
+     * total that isn't a finite number reported as an error along with the block that caused it.
+     * Finding the block only costs anything when there's an error.
      *
-     * @param blockArray arrayContaining the blocks
-     * @return the evaluation of the sum entered by the user
-     * @throws InvalidMathOperatorException
+     * @param result filled in with the total or the error, can be reused between calls
      */
-    private double evaluate(List<Block> blockArray) throws InvalidMathOperatorException {
-        // TODO - support recursion within the method itself
-        // Get the first number to start off
-        double currentValue = 0.0;
+    public void evaluateTotal(EvaluationResult result) {
+        double total = calculateTotal();
 
-        // We know there's at least a single element, so we know that blocks.get(0) will not fail
-        currentValue = ((NumberBlock)blockArray.get(0)).getValue();
+        if(BlockProgram.isFinite(total)) {
+            result.setValue(total);
+        } else {
+            program.execute(FunctionMode.STRICT, result);
+        }
+    }
 
-        // Otherwise we're fine to carry on with our usual operations
-        for(int i = 1; i < blockArray.size(); i++) {
-            // Test to see if final block is a symbol, if so, break, no need to continue
-            if(i == blockArray.size() - 1 && blockArray.get(i) instanceof SymbolBlock) {
-                break;
+    /**
+     * Calculate the total of the maths equation entered thus far the same way as
+     * {@link #calculateCurrentTotal()}, with a total that isn't a finite number reported as an
+     * error along with the block that caused it
+     *
+     * @param result filled in with the total or the error, can be reused between calls
+     */
+    public void evaluateCurrentTotal(EvaluationResult result) {
+        double total = calculateCurrentTotal();
+
+        if(BlockProgram.isFinite(total)) {
+            result.setValue(total);
+        } else {
+            program.execute(previewFunctionMode, result);
+        }
+    }
+
+    /**
+     * Whether the total of the maths equation is a whole number that was worked out exactly in
+     * longs, in which case {@link #calculateIntegerTotal()} can be used instead of the double total.
+     * This is the case while every number entered is whole and nothing has overflowed or divided
+     * with a remainder. Always false while the preview total is read from the expression tree.
+     *
+     * @return true if the total is an exact whole number
+     */
+    public boolean isTotalIntegral() {
+        if(usesTree()) {
+            return false;
+        }
+
+        catchUp();
+
+        return incrementalEvaluator.isIntegral();
+    }
+
+    /**
+     * Calculate and return the total of the maths equation in longs, only meaningful when
+     * {@link #isTotalIntegral()} is true
+     *
+     * @return whole number total of the maths equation
+     */
+    public long calculateIntegerTotal() {
+        catchUp();
+
+        return incrementalEvaluator.getLongTotal();
+    }
+
+    /**
+     * Calculate and return the total of the maths equation in the current precision mode. In
+     * {@link PrecisionMode#DECIMAL} the total is a BigDecimal, worked out in longs whenever the
+     * result can be proven exact and with the MathContext otherwise. In
+     * {@link PrecisionMode#RATIONAL} the total is an exact {@link Rational}. In
+     * {@link PrecisionMode#FIXED_POINT} the total is a BigDecimal with the fixed point scale. Totals
+     * are memoized in the result cache.
+     *
+     * In {@link PrecisionMode#DOUBLE} a total worked out exactly in whole numbers is a Long.
+     *
+     * @return number representing the sum of the maths equation, a double if the precision mode
+     * can't represent it (such as a division by zero)
+     */
+    public Number calculatePreciseTotal() {
+        catchUp();
+
+        if(precisionMode == PrecisionMode.DOUBLE) {
+            if(isTotalIntegral()) {
+                return calculateIntegerTotal();
             }
 
-            // Every time we loop we want the next thing to get to be the operator used
-            MathOperator operator = ((SymbolBlock)blockArray.get(i++)).getValue();
-            // After we get the operator to use, we get the number that will be used to modify the current value
+            return calculateTotal();
+        }
 
-            // TODO - find if right bracket exists, if so, add everything within bracket to new
-            // TODO - array, do evaluation on new array, set next value to bracket
-            // TODO - If no opposing right bracket exists, end here, don't calculate any further until
-            // TODO - right bracket is added
+        ProgramExecutor executor = getExecutor();
 
+        if(blocks.size() <= 0) {
+            Logger.i(TAG, "Not enough blocks, returning zero");
+            return executor.zero();
+        }
 
-            double nextValue = ((NumberBlock)blockArray.get(i)).getValue();
+        long check = hash.getCheck() ^ precisionKey();
+        Number cached = resultCache.get(hash.getHash(), check, hash.size());
 
-            currentValue = performMathOperation(currentValue, nextValue, operator);
+        if(cached != null) {
+            return cached;
         }
 
-        return currentValue;
+        Number total = executor.execute(program);
+
+        if(total == null) {
+            // Often already in the cache, equals shows the double total first
+            total = calculateTotal();
+        }
+
+        resultCache.put(hash.getHash(), check, hash.size(), total);
+
+        return total;
     }
 
-    private boolean hasBracketPairs(List<Block> blockList) {
-        int leftBracketCount = 0;
-        int rightBracketCount = 0;
+    /**
+     * Gives the precise total without working it out, which is the case in
+     * {@link PrecisionMode#DOUBLE}, for whole number totals, for fixed point totals the running
+     * total could follow and for totals already in the cache
+     *
+     * @return the same number {@link #calculatePreciseTotal()} would give, or null if it has to be
+     * worked out
+     */
+    public Number getAvailablePreciseTotal() {
+        if(precisionMode == PrecisionMode.DOUBLE || blocks.size() <= 0) {
+            return calculatePreciseTotal();
+        }
+
+        catchUp();
 
-        for(int i = 0; i < blockList.size(); i++) {
-            if(blockList.get(i).getValue() instanceof SymbolBlock) {
-                if(blockList.get(i).getValue() == MathOperator.LEFT_BRACKET) {
-                    leftBracketCount++;
-                } else if(blockList.get(i).getValue() == MathOperator.RIGHT_BRACKET) {
-                    rightBracketCount++;
-                }
+        if(isTotalIntegral()) {
+            // Whole numbers are exact in every mode, fixed point still gives them its scale
+            if(precisionMode == PrecisionMode.FIXED_POINT) {
+                return BigDecimal.valueOf(calculateIntegerTotal())
+                        .setScale(fixedPointExecutor.getScale());
             }
 
+            return calculateIntegerTotal();
         }
 
-        if(leftBracketCount % rightBracketCount == 0) {
-            return true;
-        } else {
-            return false;
+        if(precisionMode == PrecisionMode.FIXED_POINT && incrementalEvaluator.isFixed()) {
+            return BigDecimal.valueOf(incrementalEvaluator.getScaledTotal(),
+                    fixedPointExecutor.getScale());
         }
+
+        return resultCache.get(hash.getHash(), hash.getCheck() ^ precisionKey(), hash.size());
     }
 
-    private double performMathOperation(double currentValue, double nextValue, MathOperator operator)
+    /**
+     * Makes a task that works out the precise total of the blocks as they are now, in the current
+     * precision mode. The task has its own snapshot of the blocks and copy of the settings so it
+     * can be run on another thread while blocks are added and removed here.
+     *
+     * @return the task
+     */
+    public PreciseTotalTask createPreciseTotalTask() {
+        catchUp();
 
+        ProgramExecutor executor;
 
-            throws InvalidMathOperatorException {
-        switch (operator) {
-            case PLUS:
-                currentValue += nextValue;
+        switch (precisionMode) {
+            case RATIONAL:
+                executor = new RationalExecutor();
                 break;
-            case MINUS:
-                currentValue -= nextValue;
+            case FIXED_POINT:
+                executor = new FixedPointExecutor(fixedPointExecutor.getScale());
                 break;
-            case MULTIPLY:
-                currentValue *= nextValue;
-                break;
-            case DIVIDE:
-                currentValue /= nextValue;
-                break;
-            case PERCENTAGE:
-                // FIXME - order is broken! Should be 100%90 = 90 (90% of 100)
-                currentValue = (currentValue / 100) * nextValue;
+            default:
+                executor = new DecimalExecutor(decimalExecutor.getMathContext());
                 break;
-            case NONE:
-                // This should never occur, if it does, there's an issue when adding the operator
-                // to the block manager in any class that has this as an object
+        }
+
+        return new PreciseTotalTask(blocks.snapshot(), executor, hash.getHash(),
+                hash.getCheck() ^ precisionKey(), hash.size());
+    }
+
+    /**
+     * Stores the result of a task in the result cache, so that the same blocks don't have to be
+     * worked out again. Must be called on the thread that owns this evaluator.
+     *
+     * @param task the task that was run
+     * @param total the total it gave
+     */
+    public void cachePreciseTotal(PreciseTotalTask task, Number total) {
+        resultCache.put(task.getHash(), task.getCheck(), task.getLength(), total);
+    }
+
+    /**
+     * Executor for the current precision mode
+     */
+    private ProgramExecutor getExecutor() {
+        switch (precisionMode) {
+            case RATIONAL:
+                return rationalExecutor;
+            case FIXED_POINT:
+                return fixedPointExecutor;
             default:
-                // Might not actually need to throw anything here, though, just hoping it would be useful
-                // perhaps it's an incorrect usage, not too used to throwing errors and exceptions
-                throw new InvalidMathOperatorException("Error calculating total, math operator is: "
-                        + MathOperator.NONE);
+                return decimalExecutor;
+        }
+    }
+
+    /**
+     * Salt for the result cache so that the same blocks evaluated in different modes or contexts
+     * don't share a result
+     */
+    private long precisionKey() {
+        long key = (long) (precisionMode.ordinal() + 1) << 48;
+
+        if(precisionMode == PrecisionMode.FIXED_POINT) {
+            return key ^ fixedPointExecutor.getScale();
         }
 
-        return currentValue;
+        MathContext mathContext = decimalExecutor.getMathContext();
+
+        return key ^ ((long) mathContext.getPrecision() << 8) ^ mathContext.getRoundingMode().ordinal();
+    }
+
+    /**
+     * Reads the running total if it can follow the blocks, otherwise runs the compiled program,
+     * which only compiles blocks added since it last ran
+     *
+     * @param functionMode how functions such as sin and pow are worked out
+     * @return the evaluation of the sum entered by the user
+     */
+    private double evaluate(FunctionMode functionMode) {
+        catchUp();
+
+        if(incrementalEvaluator.isValid()) {
+            return incrementalEvaluator.getTotal();
+        }
+
+        return program.execute(functionMode);
+    }
+
+    /**
+     * Whether the preview total is read from the expression tree, which is the case after an edit
+     * in the middle of the sequence until something needs the running total or hash
+     */
+    private boolean usesTree() {
+        return manager != null && manager.isBehind()
+                && precisionMode != PrecisionMode.FIXED_POINT && tree.canEvaluate();
+    }
+
+    /**
+     * Brings the running total and hash up to date after an edit in the middle of the sequence
+     */
+    private void catchUp() {
+        if(manager != null) {
+            manager.catchUp();
+        }
     }
 }
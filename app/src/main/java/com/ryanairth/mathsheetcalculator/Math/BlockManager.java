@@ -1,11 +1,11 @@
 package com.ryanairth.mathsheetcalculator.Math;
 
-import android.util.Log;
+import com.ryanairth.mathsheetcalculator.Util.Logger;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
 
-import static com.ryanairth.mathsheetcalculator.MainActivity.*;
+import static com.ryanairth.mathsheetcalculator.Util.Logger.TAG;
 
 /**
  * Created by Ryan Airth (Sweeney) on 01/04/2016.
@@ -15,11 +15,56 @@ public class BlockManager {
     /*
        The primary sequence that the manager uses
      */
-    private List<Block> blocks;
+    private BlockBuffer buffer;
     /*
         Evaluator object used to calculate the total of all sequences
      */
     private BlockEvaluator evaluator;
+    /*
+        Running total kept in step with the blocks, fed on every add and pop
+     */
+    private IncrementalEvaluator incrementalEvaluator;
+    /*
+        Postfix program compiled from the blocks, popping blocks throws away their compiled code
+     */
+    private BlockProgram program;
+    /*
+        Balanced tree over the blocks, the only part that follows an edit in the middle of the
+        sequence straight away. It gives the preview total for +, -, ×, ÷, % and brackets in
+        O(log n) after any edit.
+     */
+    private ExpressionTree tree;
+    /*
+        Rolling hash of the blocks, extended and cut back along with them
+     */
+    private RollingBlockHash hash;
+    /*
+        Open brackets and which brackets match, kept in step with the blocks
+     */
+    private BracketStack brackets;
+    /*
+        Read only Block view over the buffer, kept for code that still works with Block objects
+     */
+    private List<Block> blockView;
+    /*
+        Persistent copy of the blocks kept in step with the buffer, so a snapshot of the sequence
+        can be taken at any time without copying it
+     */
+    private BlockSnapshot snapshot;
+    /*
+        Number of blocks the running total, hash and bracket stack are right for. An edit in the
+        middle of the sequence only changes the buffer, the tree and the program, which compiles
+        itself again when it's next run. The others only know how to add and remove blocks at
+        the end, so they're left behind and catch up over the blocks after the edit the next time
+        one of them is read, see catchUp. However many edits are made in between, they catch up
+        once.
+     */
+    private int trackedSize;
+    /*
+        Whether the snapshot is behind the blocks after an edit in the middle of the sequence, a
+        snapshot of the buffer is taken in its place the next time it's asked for
+     */
+    private boolean snapshotBehind;
 
     /**
      * BlockManager manages the numbers and symbols entered by the user in modular blocks, {@link BlockManager}
@@ -29,20 +74,60 @@ public class BlockManager {
      * @see SymbolBlock
      */
     public BlockManager() {
-        blocks = new ArrayList<>();
-        evaluator = new BlockEvaluator(blocks);
+        buffer = new BlockBuffer();
+        incrementalEvaluator = new IncrementalEvaluator(buffer);
+        program = new BlockProgram(buffer);
+        tree = new ExpressionTree(buffer);
+        hash = new RollingBlockHash(buffer);
+        brackets = new BracketStack(buffer);
+        evaluator = new BlockEvaluator(this, buffer, incrementalEvaluator, program, tree, hash);
+        blockView = new BlockView();
+        snapshot = BlockSnapshot.EMPTY;
     }
 
     public BlockEvaluator getBlockEvaluator() {
         return evaluator;
     }
+
     /**
-     * Get the list of blocks from current sequence
+     * Get the rolling hash of the current sequence
+     *
+     * @return the rolling hash
+     */
+    public RollingBlockHash getHash() {
+        catchUp();
+
+        return hash;
+    }
+
+    /**
+     * Get the buffer that holds the blocks of the current sequence, reading blocks through the
+     * buffer doesn't allocate. The buffer belongs to the thread adding the blocks, other threads
+     * read a {@link BlockBuffer#snapshot()} of it instead.
+     *
+     * @return the block buffer
+     */
+    public BlockBuffer getBlockBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Get the list of blocks from current sequence. The list is a read only view, every block read
+     * from it is created on demand so prefer {@link #getBlockBuffer()} on any hot path.
      *
      * @return list containing all the blocks or an empty deque
      */
     public List<Block> getBlocks() {
-        return blocks;
+        return blockView;
+    }
+
+    /**
+     * Number of blocks in the current sequence
+     *
+     * @return the number of blocks
+     */
+    public int size() {
+        return buffer.size();
     }
 
     /**
@@ -51,7 +136,7 @@ public class BlockManager {
      * @return last block on the deque
      */
     public Block getFinalBlock() {
-        return getBlocks().get(getBlocks().size() - 1);
+        return getBlocks().get(buffer.size() - 1);
     }
 
     /**
@@ -63,53 +148,287 @@ public class BlockManager {
         return getBlocks().get(0);
     }
 
+    /**
+     * Number of left brackets in the current sequence that haven't been closed
+     *
+     * @return the bracket depth
+     */
+    public int getBracketDepth() {
+        catchUp();
+
+        return brackets.getDepth();
+    }
+
+    /**
+     * Whether every bracket in the current sequence has a match, O(1)
+     *
+     * @return true if the brackets balance
+     */
+    public boolean isBalanced() {
+        catchUp();
+
+        return brackets.isBalanced();
+    }
+
+    /**
+     * Finds the bracket matched with the bracket at an index, O(1)
+     *
+     * @param index index of a block
+     * @return index of the matching bracket, or {@link BracketStack#NO_MATCH} if the block isn't a
+     * bracket or hasn't been matched
+     */
+    public int getMatchingBracket(int index) {
+        catchUp();
+
+        return brackets.getMatch(index);
+    }
+
+    /**
+     * Index of the innermost bracket that's still open
+     *
+     * @return the index, or {@link BracketStack#NO_MATCH} if every bracket is closed
+     */
+    public int getOpenBracket() {
+        catchUp();
+
+        return brackets.getInnermostOpen();
+    }
+
     /**
      * Composition method that calls the current sequences blocks' array.isEmpty() method
      *
      * @return whether or not the blocks array is empty
      */
     public boolean isEmpty() {
-        return getBlocks().isEmpty();
+        return buffer.isEmpty();
     }
 
     /**
      * Removes the top element from the array in the current sequence
      */
     public void pop() {
-        getBlocks().remove(getBlocks().size() - 1);
+        if(isBehind()) {
+            trackedSize = Math.min(trackedSize, buffer.size() - 1);
+        } else {
+            brackets.blockRemoved();
+            incrementalEvaluator.blockRemoved();
+            hash.blockRemoved();
+            trackedSize--;
+        }
+
+        buffer.pop();
+        program.blocksRemoved(buffer.size());
+        tree.blockRemoved();
+
+        if(!snapshotBehind) {
+            snapshot = snapshot.pop();
+        }
     }
 
     /**
      * Resets the array so that it is empty
      */
     public void reset() {
-        getBlocks().clear();
+        buffer.clear();
+        incrementalEvaluator.reset();
+        program.reset();
+        tree.reset();
+        hash.reset();
+        brackets.reset();
+        snapshot = BlockSnapshot.EMPTY;
+        trackedSize = 0;
+        snapshotBehind = false;
+    }
+
+    /**
+     * Snapshot of the current sequence that doesn't change as blocks are added and removed,
+     * taking one is O(1). After an edit in the middle of the sequence it shares the buffer's
+     * arrays, so the next edit copies them once rather than linking the blocks after it again.
+     *
+     * @return the snapshot
+     */
+    public BlockSnapshot getSnapshot() {
+        if(snapshotBehind) {
+            snapshot = BlockSnapshot.of(buffer.snapshot());
+            snapshotBehind = false;
+        }
+
+        return snapshot;
     }
 
     /**
-     * Creates a new NumberBlock and adds it to the current sequence
+     * Brings the sequence back to a snapshot taken earlier. Only the blocks after the part the
+     * snapshot shares with the current sequence are popped and added, so going back or forward a
+     * keystroke costs as much as that keystroke did.
+     *
+     * @param target the snapshot to restore
+     */
+    public void restore(BlockSnapshot target) {
+        BlockSnapshot base = BlockSnapshot.commonBase(getSnapshot(), target);
+
+        while(buffer.size() > base.size()) {
+            pop();
+        }
+
+        // The snapshot links run backwards, collect the missing blocks to add them in order
+        BlockSnapshot[] missing = new BlockSnapshot[target.size() - base.size()];
+        BlockSnapshot node = target;
+
+        for(int i = missing.length - 1; i >= 0; i--) {
+            missing[i] = node;
+            node = node.pop();
+        }
+
+        for(BlockSnapshot block : missing) {
+            if(block.isNumber()) {
+                createAndAddBlock(block.getNumber());
+            } else {
+                createAndAddBlock(block.getOperator());
+            }
+        }
+
+        // The same blocks, kept as the target so it's still recognised as the current sequence
+        snapshot = target;
+    }
+
+    /**
+     * Creates a new number block and adds it to the current sequence
      *
      * @param number the value to be used in the new block
      *
      * @see NumberBlock
      */
     public void createAndAddBlock(double number) {
-        Log.i(TAG, "Number being added: " + number);
+        if(Logger.INFO_ENABLED) {
+            Logger.i(TAG, "Number being added: " + number);
+        }
 
-        getBlocks().add(new NumberBlock(number));
+        buffer.add(number);
+        blockAdded();
+
+        if(!snapshotBehind) {
+            snapshot = snapshot.add(number);
+        }
     }
 
     /**
-     * Creates a new SymbolBlock and adds it to the current sequence
+     * Creates a new symbol block and adds it to the current sequence
      *
      * @param operator the symbol to be used in the new block
      *
      * @see SymbolBlock
      */
     public void createAndAddBlock(MathOperator operator) {
-        Log.i(TAG, "Symbol being added: " + operator.name() + ":" + operator.getSymbol());
+        if(operator == MathOperator.NONE) {
+            // NONE isn't something that can be calculated, adding it would only break the sequence
+            Logger.w(TAG, "Ignoring symbol with no math operator");
+            return;
+        }
+
+        if(Logger.INFO_ENABLED) {
+            Logger.i(TAG, "Symbol being added: " + OperatorRegistry.getName(operator) + ":"
+                    + operator.getSymbol());
+        }
+
+        buffer.add(operator);
+        blockAdded();
+
+        if(!snapshotBehind) {
+            snapshot = snapshot.add(operator);
+        }
+    }
+
+    /**
+     * Inserts a number block anywhere in the current sequence, the blocks from the index on move
+     * along by one
+     *
+     * @param index where the block goes, up to {@link #size()}
+     * @param number the value to be used in the new block
+     */
+    public void insertBlock(int index, double number) {
+        if(index == buffer.size()) {
+            createAndAddBlock(number);
+            return;
+        }
 
-        getBlocks().add(new SymbolBlock(operator));
+        checkIndex(index);
+        buffer.insert(index, number);
+        tree.blockInserted(index);
+        blocksChanged(index);
+    }
+
+    /**
+     * Inserts a symbol block anywhere in the current sequence, the blocks from the index on move
+     * along by one
+     *
+     * @param index where the block goes, up to {@link #size()}
+     * @param operator the symbol to be used in the new block
+     */
+    public void insertBlock(int index, MathOperator operator) {
+        if(index == buffer.size()) {
+            createAndAddBlock(operator);
+            return;
+        }
+
+        if(operator == MathOperator.NONE) {
+            Logger.w(TAG, "Ignoring symbol with no math operator");
+            return;
+        }
+
+        checkIndex(index);
+        buffer.insert(index, operator);
+        tree.blockInserted(index);
+        blocksChanged(index);
+    }
+
+    /**
+     * Replaces the block at an index with a number block, such as when a number in the middle of
+     * the sequence is corrected
+     *
+     * @param index position of the block
+     * @param number the value to be used in the new block
+     */
+    public void replaceBlock(int index, double number) {
+        checkIndex(index);
+        buffer.set(index, number);
+        tree.blockReplaced(index);
+        blocksChanged(index);
+    }
+
+    /**
+     * Replaces the block at an index with a symbol block
+     *
+     * @param index position of the block
+     * @param operator the symbol to be used in the new block
+     */
+    public void replaceBlock(int index, MathOperator operator) {
+        if(operator == MathOperator.NONE) {
+            Logger.w(TAG, "Ignoring symbol with no math operator");
+            return;
+        }
+
+        checkIndex(index);
+        buffer.set(index, operator);
+        tree.blockReplaced(index);
+        blocksChanged(index);
+    }
+
+    /**
+     * Removes the block at an index, the blocks after it move back by one
+     *
+     * @param index position of the block
+     */
+    public void removeBlock(int index) {
+        checkIndex(index);
+
+        if(index == buffer.size() - 1) {
+            pop();
+            return;
+        }
+
+        buffer.remove(index);
+        tree.blockDeleted(index);
+        blocksChanged(index);
     }
 
     @Override
@@ -117,16 +436,16 @@ public class BlockManager {
         StringBuilder builder = new StringBuilder();
         String lineSeparator = System.getProperty("line.separator");
 
-        builder.append("Number of blocks: " + getBlocks().size());
+        builder.append("Number of blocks: " + buffer.size());
         builder.append(lineSeparator);
 
         int numberCount = 0;
         int symbolCount = 0;
 
-        for(Block elem : getBlocks()) {
-            if(elem instanceof NumberBlock) {
+        for(int i = 0; i < buffer.size(); i++) {
+            if(buffer.isNumber(i)) {
                 numberCount++;
-            } else if(elem instanceof SymbolBlock) {
+            } else {
                 symbolCount++;
             }
         }
@@ -146,4 +465,92 @@ public class BlockManager {
 
         return builder.toString();
     }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= buffer.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + buffer.size());
+        }
+    }
+
+    /**
+     * Feeds the block just added to the buffer to the tree, and to the trackers if they're not
+     * behind. If they are, it's fed in when they catch up along with the blocks before it.
+     */
+    private void blockAdded() {
+        tree.blockAdded();
+
+        if(trackedSize == buffer.size() - 1 && hash.size() == trackedSize) {
+            incrementalEvaluator.blockAdded();
+            hash.blockAdded();
+            brackets.blockAdded();
+            trackedSize++;
+        }
+    }
+
+    /**
+     * Leaves the trackers behind from an index on, once the buffer and tree have been edited
+     * there. The program's code from the index on is thrown away, it only compiles the blocks
+     * again when it's next run.
+     */
+    private void blocksChanged(int index) {
+        program.blocksRemoved(index);
+        trackedSize = Math.min(trackedSize, index);
+        snapshotBehind = true;
+    }
+
+    /**
+     * Whether the running total, hash or bracket stack are behind the blocks after an edit in the
+     * middle of the sequence
+     */
+    boolean isBehind() {
+        return trackedSize != buffer.size() || hash.size() != trackedSize;
+    }
+
+    /**
+     * Brings the running total, hash and bracket stack up to date with the blocks. Their state
+     * from the first edited block on is dropped, which reads nothing from the buffer, and the
+     * blocks from there to the end are fed in again. Costs O(n - index) for the earliest block
+     * edited since they last caught up, and nothing when they haven't been left behind.
+     */
+    void catchUp() {
+        if(!isBehind()) {
+            return;
+        }
+
+        incrementalEvaluator.blocksRemoved(trackedSize);
+        hash.blocksRemoved(trackedSize);
+        brackets.blocksRemoved(trackedSize);
+
+        for(int i = trackedSize; i < buffer.size(); i++) {
+            incrementalEvaluator.blockAdded();
+            hash.blockAdded();
+            brackets.blockAdded();
+        }
+
+        trackedSize = buffer.size();
+    }
+
+    /**
+     * Read only list of {@link Block} objects backed by the buffer, each block is created when it's
+     * asked for
+     */
+    private class BlockView extends AbstractList<Block> {
+        @Override
+        public Block get(int index) {
+            if(index < 0 || index >= buffer.size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + buffer.size());
+            }
+
+            if(buffer.isNumber(index)) {
+                return new NumberBlock(buffer.getNumber(index));
+            }
+
+            return new SymbolBlock(buffer.getOperator(index));
+        }
+
+        @Override
+        public int size() {
+            return buffer.size();
+        }
+    }
 }
@@ -0,0 +1,846 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.util.Arrays;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class BlockProgram {
+    /*
+        Opcodes, stored in the low byte of each instruction. The rest of the instruction is the
+        index of the block it came from: the number block for PUSH and the operator block for
+        operators, so an error can be traced back to what was typed. PUSH_ZERO has no block.
+     */
+    static final int OP_PUSH = 0;
+    static final int OP_PUSH_ZERO = 1;
+    static final int OP_ADD = 2;
+    static final int OP_SUBTRACT = 3;
+    static final int OP_MULTIPLY = 4;
+    static final int OP_DIVIDE = 5;
+    static final int OP_PERCENTAGE = 6;
+    static final int OP_POWER = 7;
+    static final int OP_PERMUTATION = 8;
+    static final int OP_COMBINATION = 9;
+    /*
+        Opcodes of the user defined operators, one for each of their slots in MathOperator
+     */
+    static final int FIRST_USER_OPCODE = 10;
+    /*
+        Opcodes from here on are functions of the single number on top of the stack
+     */
+    static final int FIRST_UNARY_OPCODE = 16;
+    static final int OP_SQUARE_ROOT = 16;
+    static final int OP_SINE = 17;
+    static final int OP_COSINE = 18;
+    static final int OP_TANGENT = 19;
+    static final int OP_LOG = 20;
+    static final int OP_NATURAL_LOG = 21;
+    static final int OP_EXPONENTIAL = 22;
+    static final int OP_GAMMA = 23;
+    static final int OP_FACTORIAL = 24;
+
+    static final int OPCODE_MASK = 0xFF;
+    static final int OPERAND_SHIFT = 8;
+
+    private static final int NO_NODE = -1;
+    private static final byte NO_OPERATOR = -1;
+    private static final byte LEFT_BRACKET = (byte) MathOperator.LEFT_BRACKET.ordinal();
+    private static final int FIRST_USER_ORDINAL = MathOperator.USER_1.ordinal();
+
+    /*
+        Bits of the per block flags
+     */
+    private static final byte COMPLETE = 1;
+    private static final byte ZERO_NEEDED = 2;
+
+    /*
+        Bits of the group cache flags, a group's value is cached separately for each function mode
+     */
+    private static final byte STRICT_CACHED = 1;
+    private static final byte FAST_CACHED = 2;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private BlockBuffer buffer;
+
+    /*
+        Postfix instructions emitted by the compiled blocks
+     */
+    private int[] code;
+    /*
+        Compiler state after each block: how much code had been emitted, the top node of the
+        operator stack, how many stack nodes existed, the operator waiting on its right operand
+        and the block it came from, and the COMPLETE/ZERO_NEEDED flags
+     */
+    private int[] codeLengths;
+    private int[] stackTops;
+    private int[] nodeCounts;
+    private byte[] pendingOperators;
+    private int[] pendingBlocks;
+    private byte[] flags;
+    /*
+        Operator stack kept as linked nodes that are never changed once written, so the state
+        after any block stays valid however the stack changes afterwards. Each node keeps the
+        index of the block its operator came from.
+     */
+    private byte[] nodeOperators;
+    private int[] nodeBlocks;
+    private int[] nodeNext;
+    /*
+        Number of blocks that have been compiled, anything past this is compiled on demand
+     */
+    private int compiledBlocks;
+
+    /*
+        Instructions that close off the expression: the operators still on the stack after the
+        last finished operand, with any open brackets closed
+     */
+    private int[] tail;
+    private int tailLength;
+    /*
+        Block whose compiled code the tail follows on from, -1 when no operand has been finished
+     */
+    private int lastOperandBlock;
+    private boolean linked;
+
+    /*
+        Working state of the compiler while it goes through a block
+     */
+    private int codeLength;
+    private int stackTop;
+    private int nodeCount;
+    private byte pendingOperator;
+    private int pendingBlock;
+    private boolean complete;
+    private boolean zeroNeeded;
+    /*
+        Index of the block being compiled
+     */
+    private int currentBlock;
+
+    /*
+        Closed bracket groups. The code from a left bracket to its right bracket works out a single
+        number from nothing outside it, so once the group is closed that number is cached and the
+        code is skipped on later runs. Indexed by the code position a group starts at: where it
+        ends (0 for no group), its value in each function mode and which of those are cached. Only
+        the outermost group starting at a position is kept.
+     */
+    private int[] groupEnds;
+    private double[] strictGroupValues;
+    private double[] fastGroupValues;
+    private byte[] groupCached;
+    /*
+        Groups in the order they were closed, so popping blocks can undo them: where each starts,
+        the end it replaced at that position and the block that closed it
+     */
+    private int[] groupStarts;
+    private int[] groupPreviousEnds;
+    private int[] groupCloseBlocks;
+    private int groupCount;
+    /*
+        Starts of the groups whose values are being worked out during a run, innermost on top
+     */
+    private int[] runningGroups;
+
+    /*
+        Evaluation stack reused between executions
+     */
+    private double[] stack;
+
+    /**
+     * Postfix (RPN) program compiled from the blocks in a buffer with a shunting yard pass. The
+     * compiler state is saved after every block, so blocks added to the end are compiled on their
+     * own and popping blocks only throws away what they emitted. Executing an unchanged program
+     * does no parsing at all, it's a single pass of a stack machine over the instructions, and a
+     * bracket group that's been closed is worked out once and read back as a single number after
+     * that.
+     *
+     * @param buffer the blocks to compile
+     */
+    public BlockProgram(BlockBuffer buffer) {
+        this.buffer = buffer;
+
+        code = new int[INITIAL_CAPACITY];
+        codeLengths = new int[INITIAL_CAPACITY];
+        stackTops = new int[INITIAL_CAPACITY];
+        nodeCounts = new int[INITIAL_CAPACITY];
+        pendingOperators = new byte[INITIAL_CAPACITY];
+        pendingBlocks = new int[INITIAL_CAPACITY];
+        flags = new byte[INITIAL_CAPACITY];
+        nodeOperators = new byte[INITIAL_CAPACITY];
+        nodeBlocks = new int[INITIAL_CAPACITY];
+        nodeNext = new int[INITIAL_CAPACITY];
+        tail = new int[INITIAL_CAPACITY];
+        groupEnds = new int[INITIAL_CAPACITY];
+        strictGroupValues = new double[INITIAL_CAPACITY];
+        fastGroupValues = new double[INITIAL_CAPACITY];
+        groupCached = new byte[INITIAL_CAPACITY];
+        groupStarts = new int[INITIAL_CAPACITY];
+        groupPreviousEnds = new int[INITIAL_CAPACITY];
+        groupCloseBlocks = new int[INITIAL_CAPACITY];
+        runningGroups = new int[INITIAL_CAPACITY];
+        stack = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Throws away the compiled code of any block at or past the given size, must be called
+     * whenever blocks are removed from the buffer
+     *
+     * @param size the number of blocks left in the buffer
+     */
+    public void blocksRemoved(int size) {
+        if(size < compiledBlocks) {
+            compiledBlocks = size;
+            linked = false;
+        }
+
+        removeGroups(size);
+    }
+
+    /**
+     * Throws away all of the compiled code
+     */
+    public void reset() {
+        compiledBlocks = 0;
+        linked = false;
+
+        removeGroups(0);
+    }
+
+    /**
+     * Compiles any blocks that were added since the last compile and links the closing tail of the
+     * program, does nothing if the program is already up to date
+     */
+    public void compile() {
+        int size = buffer.size();
+
+        if(compiledBlocks == size && linked) {
+            return;
+        }
+
+        ensureBlockCapacity(size);
+
+        for(int i = compiledBlocks; i < size; i++) {
+            compileBlock(i);
+        }
+
+        compiledBlocks = size;
+
+        link(size);
+    }
+
+    /**
+     * Compiles if needed and runs the program, functions are worked out with StrictMath
+     *
+     * @return the total of the blocks, zero if there's no finished operand
+     */
+    public double execute() {
+        return execute(FunctionMode.STRICT);
+    }
+
+    /**
+     * Compiles if needed and runs the program
+     *
+     * @param functionMode how functions such as sin and pow are worked out
+     * @return the total of the blocks, zero if there's no finished operand
+     */
+    public double execute(FunctionMode functionMode) {
+        compile();
+
+        if(lastOperandBlock < 0) {
+            return 0.0;
+        }
+
+        boolean fast = functionMode == FunctionMode.FAST;
+        int stackPointer = run(code, codeLengths[lastOperandBlock], 0, fast, null);
+        stackPointer = run(tail, tailLength, stackPointer, fast, null);
+
+        return stackPointer > 0 ? stack[stackPointer - 1] : 0.0;
+    }
+
+    /**
+     * Compiles if needed and runs the program, reporting a total that isn't a finite number as an
+     * error rather than as NaN or infinity. Valid programs run the same as {@link #execute()}, the
+     * instructions are only checked one at a time when the total turns out not to be finite.
+     *
+     * @param functionMode how functions such as sin and pow are worked out
+     * @param result filled in with the total, or with the first error and the block it came from
+     */
+    public void execute(FunctionMode functionMode, EvaluationResult result) {
+        double total = execute(functionMode);
+
+        if(isFinite(total)) {
+            result.setValue(total);
+            return;
+        }
+
+        // Run again to find the instruction that went wrong, this is rare so it isn't worth
+        // slowing down every run for
+        boolean fast = functionMode == FunctionMode.FAST;
+
+        result.setValue(total);
+
+        int stackPointer = run(code, codeLengths[lastOperandBlock], 0, fast, result);
+
+        if(result.isValid()) {
+            run(tail, tailLength, stackPointer, fast, result);
+        }
+
+        if(result.isValid()) {
+            // Not finite without any one step going wrong, which can't happen, but the total is
+            // still reported as an error
+            result.setError(total, total != total ? EvaluationResult.DOMAIN_ERROR
+                    : EvaluationResult.OVERFLOW, lastOperandBlock);
+        } else {
+            // The value is the total, not whatever the step that went wrong gave
+            result.setError(total, result.getError(), result.getErrorIndex());
+        }
+    }
+
+    /**
+     * Whether the compiled program has a finished operand to evaluate, only valid after
+     * {@link #compile()}
+     *
+     * @return false if the program would evaluate to zero without running
+     */
+    boolean hasOperand() {
+        return lastOperandBlock >= 0;
+    }
+
+    /*
+        The program is the compiled code up to the last finished operand followed by the tail,
+        these are only valid after compile() and while the buffer doesn't change
+     */
+
+    BlockBuffer getBuffer() {
+        return buffer;
+    }
+
+    int[] getCode() {
+        return code;
+    }
+
+    int getCodeLength() {
+        return lastOperandBlock >= 0 ? codeLengths[lastOperandBlock] : 0;
+    }
+
+    int[] getTail() {
+        return tail;
+    }
+
+    int getTailLength() {
+        return tailLength;
+    }
+
+    /**
+     * Runs a list of instructions on the evaluation stack
+     *
+     * @param instructions the instructions to run
+     * @param length number of instructions to run
+     * @param stackPointer current height of the stack
+     * @param fast whether functions use FastMath rather than StrictMath
+     * @param errors if not null, the run stops at the first instruction that gives a number that
+     *               isn't finite from ones that are and the error is set here, along with what
+     *               the instruction gave. Closed groups are run in full so the error can be found
+     *               inside them.
+     * @return the height of the stack afterwards
+     */
+    private int run(int[] instructions, int length, int stackPointer, boolean fast,
+                    EvaluationResult errors) {
+        double[] values = buffer.getValueArray();
+        // Groups only start in the compiled code, the tail just closes it off
+        boolean collapse = instructions == code && errors == null;
+        byte cachedBit = fast ? FAST_CACHED : STRICT_CACHED;
+        double[] groupValues = fast ? fastGroupValues : strictGroupValues;
+        int runningCount = 0;
+
+        for(int pc = 0; pc < length; pc++) {
+            if(collapse && groupEnds[pc] != 0 && groupEnds[pc] <= length) {
+                if((groupCached[pc] & cachedBit) != 0) {
+                    if(stackPointer == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+
+                    stack[stackPointer++] = groupValues[pc];
+                    pc = groupEnds[pc] - 1;
+                    continue;
+                }
+
+                if(runningCount == runningGroups.length) {
+                    runningGroups = Arrays.copyOf(runningGroups, runningCount * 2);
+                }
+
+                runningGroups[runningCount++] = pc;
+            }
+
+            int instruction = instructions[pc];
+            int opcode = instruction & OPCODE_MASK;
+            double left = 0.0;
+            double right = 0.0;
+            double result;
+
+            if(opcode == OP_PUSH || opcode == OP_PUSH_ZERO) {
+                if(stackPointer == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+
+                // A number that isn't finite, such as an infinite total carried on, is the error
+                result = opcode == OP_PUSH ? values[instruction >>> OPERAND_SHIFT] : 0.0;
+                stack[stackPointer++] = result;
+            } else if(opcode >= FIRST_UNARY_OPCODE) {
+                left = stack[stackPointer - 1];
+                result = performFunction(left, opcode, fast);
+                stack[stackPointer - 1] = result;
+            } else {
+                right = stack[--stackPointer];
+                left = stack[stackPointer - 1];
+                result = performMathOperation(left, right, opcode, fast);
+                stack[stackPointer - 1] = result;
+            }
+
+            if(errors != null && !isFinite(result) && isFinite(left) && isFinite(right)) {
+                errors.setError(result, classifyError(opcode, left, right, result),
+                        instruction >>> OPERAND_SHIFT);
+                return stackPointer;
+            }
+
+            // Groups are nested, so the innermost one running is the only one that can end here
+            while(runningCount > 0 && groupEnds[runningGroups[runningCount - 1]] == pc + 1) {
+                int start = runningGroups[--runningCount];
+
+                groupValues[start] = stack[stackPointer - 1];
+                groupCached[start] |= cachedBit;
+            }
+        }
+
+        return stackPointer;
+    }
+
+    /**
+     * Works out why an instruction gave a number that isn't finite from ones that are
+     *
+     * @param opcode the instruction's opcode
+     * @param left the left operand, or the operand of a function
+     * @param right the right operand, zero for a function
+     * @param result what the instruction gave
+     * @return one of the {@link EvaluationResult} error codes
+     */
+    private static int classifyError(int opcode, double left, double right, double result) {
+        if((opcode == OP_DIVIDE && right == 0.0) || (opcode == OP_POWER && left == 0.0 && right < 0)) {
+            return EvaluationResult.DIVISION_BY_ZERO;
+        }
+
+        // The logs of zero are infinite but they're no more defined than those of a negative
+        if(result != result || opcode == OP_LOG || opcode == OP_NATURAL_LOG) {
+            return EvaluationResult.DOMAIN_ERROR;
+        }
+
+        return EvaluationResult.OVERFLOW;
+    }
+
+    /**
+     * Whether a number is neither NaN nor infinite, Double.isFinite isn't available on the API
+     * levels the app supports
+     */
+    static boolean isFinite(double value) {
+        return Math.abs(value) <= Double.MAX_VALUE;
+    }
+
+    /**
+     * Applies a binary opcode to two numbers. The built in operators are a switch the JIT turns
+     * into a jump table and inlines, only user defined operators call out to their kernel.
+     *
+     * @param left number on the left of the operator
+     * @param right number on the right of the operator
+     * @param opcode the operation to perform
+     * @param fast whether pow uses FastMath rather than StrictMath, nPr and nCr are the same either way
+     * @return the result
+     */
+    static double performMathOperation(double left, double right, int opcode, boolean fast) {
+        switch (opcode) {
+            case OP_ADD:
+                return left + right;
+            case OP_SUBTRACT:
+                return left - right;
+            case OP_MULTIPLY:
+                return left * right;
+            case OP_DIVIDE:
+                return left / right;
+            case OP_PERCENTAGE:
+                return (left / 100) * right;
+            case OP_POWER:
+                return fast ? FastMath.pow(left, right) : StrictMath.pow(left, right);
+            case OP_PERMUTATION:
+                return Combinatorics.permutations(left, right);
+            case OP_COMBINATION:
+                return Combinatorics.combinations(left, right);
+            default:
+                if(opcode >= FIRST_USER_OPCODE && opcode < FIRST_UNARY_OPCODE) {
+                    return OperatorRegistry.apply(FIRST_USER_ORDINAL + opcode - FIRST_USER_OPCODE,
+                            left, right);
+                }
+
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Applies a unary opcode to a number, angles are in radians
+     *
+     * @param value the number the function is of
+     * @param opcode the function to apply
+     * @param fast whether to use FastMath rather than StrictMath, factorial and gamma are the same
+     *             either way
+     * @return the result
+     */
+    static double performFunction(double value, int opcode, boolean fast) {
+        switch (opcode) {
+            case OP_SQUARE_ROOT:
+                return Math.sqrt(value);
+            case OP_SINE:
+                return fast ? FastMath.sin(value) : StrictMath.sin(value);
+            case OP_COSINE:
+                return fast ? FastMath.cos(value) : StrictMath.cos(value);
+            case OP_TANGENT:
+                return fast ? FastMath.tan(value) : StrictMath.tan(value);
+            case OP_LOG:
+                return fast ? FastMath.log10(value) : StrictMath.log10(value);
+            case OP_NATURAL_LOG:
+                return fast ? FastMath.log(value) : StrictMath.log(value);
+            case OP_EXPONENTIAL:
+                return fast ? FastMath.exp(value) : StrictMath.exp(value);
+            case OP_GAMMA:
+                return Combinatorics.gamma(value);
+            case OP_FACTORIAL:
+                return Combinatorics.factorial(value);
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+    private void compileBlock(int index) {
+        loadState(index - 1);
+        currentBlock = index;
+
+        if(buffer.isNumber(index)) {
+            beginOperand();
+            emit(OP_PUSH | (index << OPERAND_SHIFT));
+            complete = true;
+        } else {
+            MathOperator operator = buffer.getOperator(index);
+
+            switch (operator) {
+                case LEFT_BRACKET:
+                    beginOperand();
+                    pushNode(LEFT_BRACKET, index);
+                    complete = false;
+                    break;
+                case RIGHT_BRACKET:
+                    closeBracket();
+                    break;
+                case NONE:
+                    // Not a real operator, the block changes nothing
+                    break;
+                default:
+                    if(operator.isPostfix()) {
+                        // Nothing binds tighter, so it's emitted straight after the operand it
+                        // follows. Without a finished operand there's nothing to apply it to.
+                        if(complete) {
+                            emit(opcodeFor((byte) operator.ordinal()) | (index << OPERAND_SHIFT));
+                        }
+                        break;
+                    }
+
+                    if(operator.isUnary()) {
+                        // A function starts an operand the same way a bracket does, it's emitted
+                        // once the operand after it is finished
+                        beginOperand();
+                        pushNode((byte) operator.ordinal(), index);
+                        complete = false;
+                        break;
+                    }
+
+                    if(pendingOperator == NO_OPERATOR) {
+                        // Without an operand on the left the operator works on zero, as with a
+                        // minus at the start of the expression
+                        zeroNeeded = !complete;
+                    }
+
+                    // If an operator is already waiting the latest one replaces it
+                    pendingOperator = (byte) operator.ordinal();
+                    pendingBlock = index;
+                    complete = false;
+                    break;
+            }
+        }
+
+        saveState(index);
+    }
+
+    /**
+     * Gets ready for a number, a left bracket or a function. The waiting operator is pushed now
+     * that its right operand is known to exist, first emitting any operators on the stack that bind
+     * at least as tightly (more tightly for right associative operators such as ^). An operand
+     * straight after another operand multiplies it.
+     */
+    private void beginOperand() {
+        if(complete) {
+            pendingOperator = (byte) MathOperator.MULTIPLY.ordinal();
+            pendingBlock = currentBlock;
+            zeroNeeded = false;
+        }
+
+        if(pendingOperator == NO_OPERATOR) {
+            return;
+        }
+
+        if(zeroNeeded) {
+            emit(OP_PUSH_ZERO);
+        }
+
+        MathOperator pending = MathOperator.fromOrdinal(pendingOperator);
+        // Operators of the same precedence are only emitted first if they group from the left
+        int precedence = pending.isRightAssociative() ? pending.getPrecedence() + 1
+                : pending.getPrecedence();
+
+        while(stackTop != NO_NODE && nodeOperators[stackTop] != LEFT_BRACKET
+                && MathOperator.fromOrdinal(nodeOperators[stackTop]).getPrecedence() >= precedence) {
+            emitNode(stackTop);
+            stackTop = nodeNext[stackTop];
+        }
+
+        pushNode(pendingOperator, pendingBlock);
+
+        pendingOperator = NO_OPERATOR;
+        zeroNeeded = false;
+    }
+
+    /**
+     * Emits everything back to the matching left bracket, an unmatched right bracket closes
+     * everything before it. A dangling operator before the bracket is dropped and empty brackets
+     * count as zero.
+     */
+    private void closeBracket() {
+        if(pendingOperator != NO_OPERATOR) {
+            complete = !zeroNeeded;
+            pendingOperator = NO_OPERATOR;
+            zeroNeeded = false;
+        }
+
+        if(!complete) {
+            emit(OP_PUSH_ZERO);
+        }
+
+        while(stackTop != NO_NODE && nodeOperators[stackTop] != LEFT_BRACKET) {
+            emitNode(stackTop);
+            stackTop = nodeNext[stackTop];
+        }
+
+        if(stackTop != NO_NODE) {
+            // The code since the left bracket is now a closed group
+            addGroup(codeLengths[nodeBlocks[stackTop]], codeLength, currentBlock);
+            stackTop = nodeNext[stackTop];
+        }
+
+        complete = true;
+    }
+
+    /**
+     * Records a closed group, replacing any group inside it that starts at the same position
+     *
+     * @param start code position the group starts at
+     * @param end code position just after the group
+     * @param closeBlock index of the right bracket that closed it
+     */
+    private void addGroup(int start, int end, int closeBlock) {
+        if(groupCount == groupStarts.length) {
+            groupStarts = Arrays.copyOf(groupStarts, groupCount * 2);
+            groupPreviousEnds = Arrays.copyOf(groupPreviousEnds, groupCount * 2);
+            groupCloseBlocks = Arrays.copyOf(groupCloseBlocks, groupCount * 2);
+        }
+
+        groupStarts[groupCount] = start;
+        groupPreviousEnds[groupCount] = groupEnds[start];
+        groupCloseBlocks[groupCount] = closeBlock;
+        groupCount++;
+
+        groupEnds[start] = end;
+        groupCached[start] = 0;
+    }
+
+    /**
+     * Undoes the groups closed by any block at or past the given size, newest first so each
+     * position gets back the group it had before
+     */
+    private void removeGroups(int size) {
+        while(groupCount > 0 && groupCloseBlocks[groupCount - 1] >= size) {
+            groupCount--;
+
+            int start = groupStarts[groupCount];
+
+            groupEnds[start] = groupPreviousEnds[groupCount];
+            groupCached[start] = 0;
+        }
+    }
+
+    /**
+     * Builds the tail that closes the program: the operators left on the stack after the last
+     * finished operand, with any open brackets closed off. A trailing operator is ignored.
+     */
+    private void link(int size) {
+        lastOperandBlock = size - 1;
+
+        while(lastOperandBlock >= 0 && !hasOperand(lastOperandBlock)) {
+            lastOperandBlock--;
+        }
+
+        tailLength = 0;
+
+        if(lastOperandBlock >= 0) {
+            for(int node = stackTops[lastOperandBlock]; node != NO_NODE; node = nodeNext[node]) {
+                if(nodeOperators[node] != LEFT_BRACKET) {
+                    if(tailLength == tail.length) {
+                        tail = Arrays.copyOf(tail, tail.length * 2);
+                    }
+
+                    tail[tailLength++] = opcodeFor(nodeOperators[node])
+                            | (nodeBlocks[node] << OPERAND_SHIFT);
+                }
+            }
+        }
+
+        linked = true;
+    }
+
+    /**
+     * Whether the state after a block has a finished operand on top of the evaluation stack,
+     * either just finished or with an operator waiting after it
+     */
+    private boolean hasOperand(int index) {
+        return (flags[index] & COMPLETE) != 0
+                || (pendingOperators[index] != NO_OPERATOR && (flags[index] & ZERO_NEEDED) == 0);
+    }
+
+    private static int opcodeFor(byte operatorOrdinal) {
+        MathOperator operator = MathOperator.fromOrdinal(operatorOrdinal);
+
+        switch (operator) {
+            case PLUS:
+                return OP_ADD;
+            case MINUS:
+                return OP_SUBTRACT;
+            case MULTIPLY:
+                return OP_MULTIPLY;
+            case DIVIDE:
+                return OP_DIVIDE;
+            case PERCENTAGE:
+                return OP_PERCENTAGE;
+            case POWER:
+                return OP_POWER;
+            case PERMUTATION:
+                return OP_PERMUTATION;
+            case COMBINATION:
+                return OP_COMBINATION;
+            case SQUARE_ROOT:
+                return OP_SQUARE_ROOT;
+            case SINE:
+                return OP_SINE;
+            case COSINE:
+                return OP_COSINE;
+            case TANGENT:
+                return OP_TANGENT;
+            case LOG:
+                return OP_LOG;
+            case NATURAL_LOG:
+                return OP_NATURAL_LOG;
+            case EXPONENTIAL:
+                return OP_EXPONENTIAL;
+            case GAMMA:
+                return OP_GAMMA;
+            case FACTORIAL:
+                return OP_FACTORIAL;
+            default:
+                if(operator.isUserDefined()) {
+                    return FIRST_USER_OPCODE + operatorOrdinal - FIRST_USER_ORDINAL;
+                }
+
+                throw new IllegalStateException("Operator has no opcode: " + operator);
+        }
+    }
+
+    private void loadState(int index) {
+        if(index < 0) {
+            codeLength = 0;
+            stackTop = NO_NODE;
+            nodeCount = 0;
+            pendingOperator = NO_OPERATOR;
+            pendingBlock = 0;
+            complete = false;
+            zeroNeeded = false;
+        } else {
+            codeLength = codeLengths[index];
+            stackTop = stackTops[index];
+            nodeCount = nodeCounts[index];
+            pendingOperator = pendingOperators[index];
+            pendingBlock = pendingBlocks[index];
+            complete = (flags[index] & COMPLETE) != 0;
+            zeroNeeded = (flags[index] & ZERO_NEEDED) != 0;
+        }
+    }
+
+    private void saveState(int index) {
+        codeLengths[index] = codeLength;
+        stackTops[index] = stackTop;
+        nodeCounts[index] = nodeCount;
+        pendingOperators[index] = pendingOperator;
+        pendingBlocks[index] = pendingBlock;
+        flags[index] = (byte) ((complete ? COMPLETE : 0) | (zeroNeeded ? ZERO_NEEDED : 0));
+    }
+
+    private void emit(int instruction) {
+        if(codeLength == code.length) {
+            int capacity = code.length * 2;
+
+            code = Arrays.copyOf(code, capacity);
+            groupEnds = Arrays.copyOf(groupEnds, capacity);
+            strictGroupValues = Arrays.copyOf(strictGroupValues, capacity);
+            fastGroupValues = Arrays.copyOf(fastGroupValues, capacity);
+            groupCached = Arrays.copyOf(groupCached, capacity);
+        }
+
+        code[codeLength++] = instruction;
+    }
+
+    /**
+     * Emits the operator of a stack node, tagged with the block it came from
+     */
+    private void emitNode(int node) {
+        emit(opcodeFor(nodeOperators[node]) | (nodeBlocks[node] << OPERAND_SHIFT));
+    }
+
+    private void pushNode(byte operatorOrdinal, int block) {
+        if(nodeCount == nodeOperators.length) {
+            nodeOperators = Arrays.copyOf(nodeOperators, nodeOperators.length * 2);
+            nodeBlocks = Arrays.copyOf(nodeBlocks, nodeBlocks.length * 2);
+            nodeNext = Arrays.copyOf(nodeNext, nodeNext.length * 2);
+        }
+
+        nodeOperators[nodeCount] = operatorOrdinal;
+        nodeBlocks[nodeCount] = block;
+        nodeNext[nodeCount] = stackTop;
+        stackTop = nodeCount++;
+    }
+
+    private void ensureBlockCapacity(int size) {
+        if(size > codeLengths.length) {
+            int capacity = Math.max(size, codeLengths.length * 2);
+
+            codeLengths = Arrays.copyOf(codeLengths, capacity);
+            stackTops = Arrays.copyOf(stackTops, capacity);
+            nodeCounts = Arrays.copyOf(nodeCounts, capacity);
+            pendingOperators = Arrays.copyOf(pendingOperators, capacity);
+            pendingBlocks = Arrays.copyOf(pendingBlocks, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class BlockSnapshot {
+    /*
+        Snapshot with no blocks, the start of every sequence
+     */
+    public static final BlockSnapshot EMPTY = new BlockSnapshot(null, 0.0, BlockBuffer.NUMBER, 0);
+
+    /*
+        Snapshot of every block before the last one, shared with any other snapshot that was built
+        on top of it
+     */
+    private final BlockSnapshot previous;
+    /*
+        The last block, the number is only meaningful if the operator is NUMBER
+     */
+    private final double number;
+    private final byte operator;
+    /*
+        Number of blocks in the snapshot
+     */
+    private final int size;
+    /*
+        Frozen copy of the blocks for a snapshot taken after an edit in the middle of the sequence,
+        which has no links. The snapshot is the first size blocks of it. Null for linked snapshots.
+     */
+    private final BlockBuffer blocks;
+
+    /**
+     * Persistent (never changed once made) sequence of blocks, stored as the last block plus a
+     * link to the snapshot of the blocks before it. Adding a block makes one new node and
+     * popping one just follows the link, so snapshots after every keystroke share all but their
+     * last few blocks and taking one is O(1).
+     */
+    private BlockSnapshot(BlockSnapshot previous, double number, byte operator, int size) {
+        this.previous = previous;
+        this.number = number;
+        this.operator = operator;
+        this.size = size;
+        blocks = null;
+    }
+
+    /**
+     * Snapshot of the first blocks of a frozen buffer. An edit in the middle of the sequence
+     * changes every snapshot after it, so rather than linking the blocks after the edit again the
+     * snapshot shares the buffer's arrays, which is O(1) until the buffer is next written.
+     */
+    private BlockSnapshot(BlockBuffer blocks, int size) {
+        previous = null;
+        number = 0.0;
+        operator = BlockBuffer.NUMBER;
+        this.size = size;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Snapshot of every block in a buffer snapshot, which must never be changed
+     *
+     * @param blocks a {@link BlockBuffer#snapshot()}
+     * @return the snapshot
+     */
+    static BlockSnapshot of(BlockBuffer blocks) {
+        return blocks.size() == 0 ? EMPTY : new BlockSnapshot(blocks, blocks.size());
+    }
+
+    /**
+     * Number of blocks in the snapshot
+     *
+     * @return the number of blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The snapshot with the last block removed, the empty snapshot stays empty
+     */
+    BlockSnapshot pop() {
+        if(blocks != null) {
+            return size == 1 ? EMPTY : new BlockSnapshot(blocks, size - 1);
+        }
+
+        return size == 0 ? this : previous;
+    }
+
+    /**
+     * The snapshot with a number block added to the end
+     */
+    BlockSnapshot add(double number) {
+        return new BlockSnapshot(this, number, BlockBuffer.NUMBER, size + 1);
+    }
+
+    /**
+     * The snapshot with an operator block added to the end
+     */
+    BlockSnapshot add(MathOperator operator) {
+        return new BlockSnapshot(this, 0.0, (byte) operator.ordinal(), size + 1);
+    }
+
+    boolean isNumber() {
+        return blocks != null ? blocks.isNumber(size - 1) : operator == BlockBuffer.NUMBER;
+    }
+
+    double getNumber() {
+        return blocks != null ? blocks.getNumber(size - 1) : number;
+    }
+
+    MathOperator getOperator() {
+        return blocks != null ? blocks.getOperator(size - 1) : MathOperator.fromOrdinal(operator);
+    }
+
+    /**
+     * Finds the longest run of blocks two snapshots share, the most recent snapshot both were
+     * built on. Takes as many steps as there are blocks that differ between them. Blocks shared
+     * only through a frozen buffer with no links aren't found, apart from the same buffer on both
+     * sides, so those are at worst added again.
+     *
+     * @return the shared snapshot, at worst {@link #EMPTY}
+     */
+    static BlockSnapshot commonBase(BlockSnapshot first, BlockSnapshot second) {
+        while(first.size > second.size) {
+            first = first.pop();
+        }
+
+        while(second.size > first.size) {
+            second = second.pop();
+        }
+
+        // Every snapshot is built on EMPTY so this always stops there at the latest
+        while(first != second) {
+            if(first.blocks != null && first.blocks == second.blocks) {
+                return first;
+            }
+
+            first = first.pop();
+            second = second.pop();
+        }
+
+        return first;
+    }
+}
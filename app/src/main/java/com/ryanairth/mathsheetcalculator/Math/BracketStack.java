@@ -0,0 +1,178 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.util.Arrays;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class BracketStack {
+    /*
+        Value of the match array for blocks that have no matching bracket
+     */
+    public static final int NO_MATCH = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final byte LEFT_BRACKET = (byte) MathOperator.LEFT_BRACKET.ordinal();
+    private static final byte RIGHT_BRACKET = (byte) MathOperator.RIGHT_BRACKET.ordinal();
+
+    /*
+        Blocks the brackets are tracked for
+     */
+    private BlockBuffer buffer;
+    /*
+        Index of the bracket each block is matched with, NO_MATCH for open brackets, unmatched
+        right brackets and anything that isn't a bracket
+     */
+    private int[] matches;
+    /*
+        Operator ordinal of every block, or NUMBER, kept so a block can be undone once the buffer
+        no longer holds it
+     */
+    private byte[] kinds;
+    /*
+        Indexes of the left brackets that are still open, the innermost on top
+     */
+    private int[] open;
+    private int depth;
+    /*
+        Right brackets with no left bracket before them to close
+     */
+    private int unmatchedRight;
+    private int size;
+
+    /**
+     * Keeps track of the brackets in the blocks as they're added and popped. The left brackets
+     * still open are kept on a stack and every bracket remembers the one it's matched with, so the
+     * depth, whether the brackets balance and the match of any bracket are all O(1) to read.
+     * Popping a right bracket puts its left bracket back on the stack, which is all it takes to
+     * undo it.
+     *
+     * @param buffer the blocks to track
+     */
+    public BracketStack(BlockBuffer buffer) {
+        this.buffer = buffer;
+
+        matches = new int[INITIAL_CAPACITY];
+        kinds = new byte[INITIAL_CAPACITY];
+        open = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Matches up the last block of the buffer if it's a bracket, must be called after every block
+     * added to the buffer
+     */
+    public void blockAdded() {
+        if(size == matches.length) {
+            matches = Arrays.copyOf(matches, size * 2);
+            kinds = Arrays.copyOf(kinds, size * 2);
+        }
+
+        byte operator = buffer.getOperatorOrdinal(size);
+
+        matches[size] = NO_MATCH;
+        kinds[size] = operator;
+
+        if(operator == LEFT_BRACKET) {
+            if(depth == open.length) {
+                open = Arrays.copyOf(open, depth * 2);
+            }
+
+            open[depth++] = size;
+        } else if(operator == RIGHT_BRACKET) {
+            if(depth > 0) {
+                int left = open[--depth];
+
+                matches[size] = left;
+                matches[left] = size;
+            } else {
+                unmatchedRight++;
+            }
+        }
+
+        size++;
+    }
+
+    /**
+     * Undoes the last block, must be called for every block popped from the buffer. The block is
+     * remembered rather than read from the buffer, so it can be called before or after the pop.
+     */
+    public void blockRemoved() {
+        if(size == 0) {
+            return;
+        }
+
+        size--;
+
+        byte operator = kinds[size];
+
+        if(operator == LEFT_BRACKET) {
+            // Anything after it has already gone, so it's still open and on top of the stack
+            depth--;
+        } else if(operator == RIGHT_BRACKET) {
+            int left = matches[size];
+
+            if(left == NO_MATCH) {
+                unmatchedRight--;
+            } else {
+                matches[left] = NO_MATCH;
+                open[depth++] = left;
+            }
+        }
+    }
+
+    /**
+     * Undoes every block from an index on, one at a time from the last, for blocks that have
+     * changed in the middle of the buffer
+     *
+     * @param size number of blocks to keep
+     */
+    public void blocksRemoved(int size) {
+        while(this.size > size) {
+            blockRemoved();
+        }
+    }
+
+    public void reset() {
+        size = 0;
+        depth = 0;
+        unmatchedRight = 0;
+    }
+
+    /**
+     * Number of left brackets that are still open
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Whether every left bracket has been closed and every right bracket closes one
+     */
+    public boolean isBalanced() {
+        return depth == 0 && unmatchedRight == 0;
+    }
+
+    /**
+     * Index of the bracket matched with another
+     *
+     * @param index index of a block
+     * @return the index of its matching bracket, or {@link #NO_MATCH} if it's not a bracket or
+     * isn't matched yet
+     */
+    public int getMatch(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+
+        return matches[index];
+    }
+
+    /**
+     * Index of the innermost left bracket that's still open
+     *
+     * @return the index, or {@link #NO_MATCH} if every bracket is closed
+     */
+    public int getInnermostOpen() {
+        return depth > 0 ? open[depth - 1] : NO_MATCH;
+    }
+}
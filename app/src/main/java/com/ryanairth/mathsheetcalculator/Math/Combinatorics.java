@@ -0,0 +1,341 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.math.BigInteger;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class Combinatorics {
+    /*
+        Largest n whose factorial fits in a long, and in a double
+     */
+    static final int MAX_LONG_FACTORIAL = 20;
+    static final int MAX_DOUBLE_FACTORIAL = 170;
+    /*
+        Most factors an exact product is allowed to multiply together, 5000! has a little over
+        16000 digits and takes a few milliseconds. Anything bigger is worked out in double.
+     */
+    static final int MAX_EXACT_FACTORS = 5000;
+    /*
+        Above this Γ(x) is too big for a double
+     */
+    private static final double MAX_GAMMA_ARGUMENT = 171.625;
+    /*
+        Largest k for which C(n, k) with n >= 2k can still fit in a double, C(2k, k) grows like 4^k
+     */
+    private static final int MAX_DOUBLE_CHOOSE = 520;
+    /*
+        Ranges with fewer numbers than this are multiplied in longs rather than split again
+     */
+    private static final int SPLIT_THRESHOLD = 16;
+
+    /*
+        0! to 20!, exact
+     */
+    private static final long[] LONG_FACTORIALS = new long[MAX_LONG_FACTORIAL + 1];
+    /*
+        0! to 170!, each correctly rounded
+     */
+    private static final double[] DOUBLE_FACTORIALS = new double[MAX_DOUBLE_FACTORIAL + 1];
+
+    /*
+        Lanczos approximation with g = 7 and nine terms, good to about 15 significant digits
+     */
+    private static final double LANCZOS_G = 7.0;
+    private static final double[] LANCZOS_COEFFICIENTS = {
+            0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+            -176.61502916214059, 12.507343278686905, -0.13857109526572012,
+            9.9843695780195716e-6, 1.5056327351493116e-7
+    };
+    private static final double SQRT_TWO_PI = 2.5066282746310005;
+
+    static {
+        BigInteger factorial = BigInteger.ONE;
+
+        LONG_FACTORIALS[0] = 1;
+        DOUBLE_FACTORIALS[0] = 1.0;
+
+        for(int n = 1; n <= MAX_DOUBLE_FACTORIAL; n++) {
+            factorial = factorial.multiply(BigInteger.valueOf(n));
+
+            if(n <= MAX_LONG_FACTORIAL) {
+                LONG_FACTORIALS[n] = factorial.longValue();
+            }
+
+            DOUBLE_FACTORIALS[n] = factorial.doubleValue();
+        }
+    }
+
+    /**
+     * Factorials, permutations (nPr), combinations (nCr) and the gamma function. Every path has a
+     * bounded cost so none of them can hold up the UI: whole numbers up to 170 come straight from
+     * tables, anything else in double goes through a fixed size Lanczos sum, and exact results
+     * multiply together at most {@link #MAX_EXACT_FACTORS} numbers, split in halves so the
+     * BigIntegers being multiplied stay close in size.
+     */
+    private Combinatorics() {
+    }
+
+    /**
+     * n! for a whole number up to 20
+     */
+    static long longFactorial(int n) {
+        return LONG_FACTORIALS[n];
+    }
+
+    /**
+     * n! in double, Γ(n + 1) for numbers that aren't whole
+     *
+     * @return the factorial, infinity if it's too big and NaN for negative whole numbers
+     */
+    public static double factorial(double n) {
+        if(n == Math.rint(n)) {
+            if(n < 0) {
+                return Double.NaN;
+            }
+
+            return n <= MAX_DOUBLE_FACTORIAL ? DOUBLE_FACTORIALS[(int) n] : Double.POSITIVE_INFINITY;
+        }
+
+        return gamma(n + 1);
+    }
+
+    /**
+     * The gamma function, Γ(n) = (n - 1)! for whole numbers
+     *
+     * @return Γ(x), infinity if it's too big and NaN at the poles (zero and negative whole numbers)
+     */
+    public static double gamma(double x) {
+        if(Double.isNaN(x)) {
+            return x;
+        }
+
+        if(x == Math.rint(x)) {
+            if(x <= 0) {
+                return Double.NaN;
+            }
+
+            return x <= MAX_DOUBLE_FACTORIAL + 1 ? DOUBLE_FACTORIALS[(int) x - 1]
+                    : Double.POSITIVE_INFINITY;
+        }
+
+        if(x < 0.5) {
+            // Reflection formula, Γ(x)Γ(1 - x) = π / sin(πx)
+            return Math.PI / (StrictMath.sin(Math.PI * x) * gamma(1 - x));
+        }
+
+        if(x > MAX_GAMMA_ARGUMENT) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double z = x - 1;
+        double sum = LANCZOS_COEFFICIENTS[0];
+
+        for(int i = 1; i < LANCZOS_COEFFICIENTS.length; i++) {
+            sum += LANCZOS_COEFFICIENTS[i] / (z + i);
+        }
+
+        double t = z + LANCZOS_G + 0.5;
+        // t^(z + 0.5) overflows well before Γ does, so it's taken in two halves
+        double halfPower = StrictMath.pow(t, (z + 0.5) / 2);
+
+        return SQRT_TWO_PI * halfPower * (halfPower * StrictMath.exp(-t)) * sum;
+    }
+
+    /**
+     * nPr in double, the number of ordered arrangements of r things out of n
+     *
+     * @return n! / (n - r)!, zero if r is bigger than n and NaN for negative numbers
+     */
+    public static double permutations(double n, double r) {
+        if(n < 0 || r < 0) {
+            return Double.NaN;
+        }
+
+        if(n != Math.rint(n) || r != Math.rint(r)) {
+            return factorial(n) / factorial(n - r);
+        }
+
+        if(r > n) {
+            return 0.0;
+        }
+
+        if(n < 0x1p63) {
+            long exact = longPermutations((long) n, (long) r);
+
+            if(exact >= 0) {
+                return exact;
+            }
+        }
+
+        if(r > MAX_DOUBLE_FACTORIAL) {
+            // At least r!, which is already too big
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double result = 1.0;
+
+        for(int i = 0; i < r; i++) {
+            result *= n - i;
+        }
+
+        return result;
+    }
+
+    /**
+     * nCr in double, the number of ways to choose r things out of n
+     *
+     * @return n! / (r!(n - r)!), zero if r is bigger than n and NaN for negative numbers
+     */
+    public static double combinations(double n, double r) {
+        if(n < 0 || r < 0) {
+            return Double.NaN;
+        }
+
+        if(n != Math.rint(n) || r != Math.rint(r)) {
+            return factorial(n) / (factorial(r) * factorial(n - r));
+        }
+
+        if(r > n) {
+            return 0.0;
+        }
+
+        if(n < 0x1p63) {
+            long exact = longCombinations((long) n, (long) r);
+
+            if(exact >= 0) {
+                return exact;
+            }
+        }
+
+        double k = Math.min(r, n - r);
+
+        if(k > MAX_DOUBLE_CHOOSE) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double result = 1.0;
+
+        for(int i = 1; i <= k; i++) {
+            result = result * (n - k + i) / i;
+        }
+
+        return result;
+    }
+
+    /**
+     * nPr in longs for whole numbers
+     *
+     * @return the number of permutations, or -1 if it overflows a long
+     */
+    static long longPermutations(long n, long r) {
+        if(r > n) {
+            return 0;
+        }
+
+        long result = 1;
+
+        for(long i = 0; i < r; i++) {
+            if(ExactMath.multiplyOverflows(result, n - i)) {
+                return -1;
+            }
+
+            result *= n - i;
+        }
+
+        return result;
+    }
+
+    /**
+     * nCr in longs for whole numbers
+     *
+     * @return the number of combinations, or -1 if it overflows a long
+     */
+    static long longCombinations(long n, long r) {
+        if(r > n) {
+            return 0;
+        }
+
+        long k = Math.min(r, n - r);
+        long result = 1;
+
+        for(long i = 1; i <= k; i++) {
+            // result * (n - k + i) is always divisible by i, dividing it out of both first keeps
+            // the product as small as it can be
+            long common = Rational.gcd(result, i);
+            long reducedResult = result / common;
+            long reducedFactor = (n - k + i) / (i / common);
+
+            if(ExactMath.multiplyOverflows(reducedResult, reducedFactor)) {
+                return -1;
+            }
+
+            result = reducedResult * reducedFactor;
+        }
+
+        return result;
+    }
+
+    /**
+     * n! exactly, n must be no bigger than {@link #MAX_EXACT_FACTORS}
+     */
+    static BigInteger exactFactorial(int n) {
+        if(n <= MAX_LONG_FACTORIAL) {
+            return BigInteger.valueOf(LONG_FACTORIALS[n]);
+        }
+
+        return product(1, n);
+    }
+
+    /**
+     * nPr exactly, r must be no bigger than {@link #MAX_EXACT_FACTORS}
+     */
+    static BigInteger exactPermutations(long n, long r) {
+        if(r > n) {
+            return BigInteger.ZERO;
+        }
+
+        return r == 0 ? BigInteger.ONE : product(n - r + 1, n);
+    }
+
+    /**
+     * nCr exactly, the smaller of r and n - r must be no bigger than {@link #MAX_EXACT_FACTORS}
+     */
+    static BigInteger exactCombinations(long n, long r) {
+        if(r > n) {
+            return BigInteger.ZERO;
+        }
+
+        int k = (int) Math.min(r, n - r);
+
+        return exactPermutations(n, k).divide(exactFactorial(k));
+    }
+
+    /**
+     * Product of every whole number from low to high inclusive, splitting the range in half each
+     * time so the two halves are similar sizes when they're multiplied
+     */
+    private static BigInteger product(long low, long high) {
+        if(high - low < SPLIT_THRESHOLD) {
+            BigInteger result = BigInteger.ONE;
+            long partial = 1;
+
+            for(long i = 0; i <= high - low; i++) {
+                long factor = low + i;
+
+                if(ExactMath.multiplyOverflows(partial, factor)) {
+                    result = result.multiply(BigInteger.valueOf(partial));
+                    partial = factor;
+                } else {
+                    partial *= factor;
+                }
+            }
+
+            return result.multiply(BigInteger.valueOf(partial));
+        }
+
+        long middle = low + (high - low) / 2;
+
+        return product(low, middle).multiply(product(middle + 1, high));
+    }
+}
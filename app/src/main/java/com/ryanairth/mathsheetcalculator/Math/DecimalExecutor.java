@@ -0,0 +1,382 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_ADD;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_COMBINATION;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_DIVIDE;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_MULTIPLY;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_PERCENTAGE;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_PERMUTATION;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_POWER;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_SUBTRACT;
+import static com.ryanairth.mathsheetcalculator.Math.ExactMath.DOUBLE_POWERS_OF_TEN;
+import static com.ryanairth.mathsheetcalculator.Math.ExactMath.MAX_EXACT_DOUBLE_INTEGER;
+import static com.ryanairth.mathsheetcalculator.Math.ExactMath.POWERS_OF_TEN;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class DecimalExecutor extends ProgramExecutor {
+    private static final int INITIAL_CAPACITY = 16;
+    /*
+        Most decimal places a number typed by the user is looked for with
+     */
+    private static final int MAX_INPUT_SCALE = 15;
+    /*
+        Most decimal places a fast path result can have before it has to be promoted
+     */
+    private static final int MAX_SCALE = POWERS_OF_TEN.length - 1;
+
+    private MathContext mathContext;
+
+    /*
+        Fast path stack, each number is unscaled * 10^-scale
+     */
+    private long[] unscaledStack;
+    private int[] scaleStack;
+    private int fastPointer;
+
+    /*
+        Slow path stack
+     */
+    private BigDecimal[] decimalStack;
+    private int slowPointer;
+
+    /**
+     * Decimal arithmetic over a compiled program. Numbers are kept as a long and a scale while the
+     * result is provably exact, so 0.1 + 0.2 is 0.3 without a BigDecimal being made until the
+     * end. Anything the longs can't hold exactly (an overflow or a division that doesn't
+     * terminate) is worked out again with BigDecimal under the MathContext.
+     *
+     * @param mathContext precision and rounding used on the BigDecimal path
+     */
+    public DecimalExecutor(MathContext mathContext) {
+        this.mathContext = mathContext;
+
+        unscaledStack = new long[INITIAL_CAPACITY];
+        scaleStack = new int[INITIAL_CAPACITY];
+        decimalStack = new BigDecimal[INITIAL_CAPACITY];
+    }
+
+    public MathContext getMathContext() {
+        return mathContext;
+    }
+
+    public void setMathContext(MathContext mathContext) {
+        this.mathContext = mathContext;
+    }
+
+    @Override
+    protected Number zero() {
+        return BigDecimal.ZERO;
+    }
+
+    @Override
+    protected void resetFast() {
+        fastPointer = 0;
+    }
+
+    @Override
+    protected boolean pushFast(double value) {
+        int scale = findScale(value);
+
+        if(scale < 0) {
+            return false;
+        }
+
+        if(fastPointer == unscaledStack.length) {
+            unscaledStack = Arrays.copyOf(unscaledStack, fastPointer * 2);
+            scaleStack = Arrays.copyOf(scaleStack, fastPointer * 2);
+        }
+
+        unscaledStack[fastPointer] = (long) Math.rint(value * DOUBLE_POWERS_OF_TEN[scale]);
+        scaleStack[fastPointer] = scale;
+        fastPointer++;
+
+        return true;
+    }
+
+    /**
+     * Finds the fewest decimal places that give back exactly the given double, which is the
+     * number the user typed
+     *
+     * @return the number of decimal places, or -1 if there are too many digits for the fast path
+     */
+    static int findScale(double value) {
+        for(int scale = 0; scale <= MAX_INPUT_SCALE; scale++) {
+            double unscaled = Math.rint(value * DOUBLE_POWERS_OF_TEN[scale]);
+
+            if(Math.abs(unscaled) >= MAX_EXACT_DOUBLE_INTEGER) {
+                return -1;
+            }
+
+            // Both parts are exact doubles so the division is correctly rounded
+            if(unscaled / DOUBLE_POWERS_OF_TEN[scale] == value) {
+                return scale;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    protected boolean applyFast(int opcode) {
+        int top = fastPointer - 1;
+
+        if(isUnary(opcode)) {
+            // Only factorials of whole numbers stay exact, other functions are worked out on the
+            // slow path
+            long result = scaleStack[top] == 0 ? longFunction(unscaledStack[top], opcode) : -1;
+
+            if(result < 0) {
+                return false;
+            }
+
+            unscaledStack[top] = result;
+
+            return true;
+        }
+
+        long left = unscaledStack[top - 1];
+        long right = unscaledStack[top];
+        int leftScale = scaleStack[top - 1];
+        int rightScale = scaleStack[top];
+
+        long unscaled;
+        int scale;
+
+        switch (opcode) {
+            case OP_PERMUTATION:
+            case OP_COMBINATION:
+                if(leftScale != 0 || rightScale != 0) {
+                    return false;
+                }
+
+                unscaled = longOperation(left, right, opcode);
+                scale = 0;
+
+                if(unscaled < 0) {
+                    return false;
+                }
+                break;
+            case OP_ADD:
+            case OP_SUBTRACT:
+                // Bring both numbers to the larger scale first
+                scale = Math.max(leftScale, rightScale);
+
+                if(ExactMath.scaleOverflows(left, scale - leftScale)
+                        || ExactMath.scaleOverflows(right, scale - rightScale)) {
+                    return false;
+                }
+
+                left *= POWERS_OF_TEN[scale - leftScale];
+                right *= POWERS_OF_TEN[scale - rightScale];
+
+                if(opcode == OP_ADD) {
+                    if(ExactMath.addOverflows(left, right)) {
+                        return false;
+                    }
+
+                    unscaled = left + right;
+                } else {
+                    if(ExactMath.subtractOverflows(left, right)) {
+                        return false;
+                    }
+
+                    unscaled = left - right;
+                }
+                break;
+            case OP_MULTIPLY:
+            case OP_PERCENTAGE:
+                if(ExactMath.multiplyOverflows(left, right)) {
+                    return false;
+                }
+
+                unscaled = left * right;
+                // Percentage is (left / 100) * right, two more decimal places
+                scale = leftScale + rightScale + (opcode == OP_PERCENTAGE ? 2 : 0);
+                break;
+            case OP_DIVIDE:
+                if(right == 0 || (left == Long.MIN_VALUE && right == -1)) {
+                    return false;
+                }
+
+                // left / right terminates within the long range if left * 10^k divides exactly
+                // by right for some k
+                int places = 0;
+
+                while(left % right != 0) {
+                    if(places == MAX_SCALE || ExactMath.multiplyOverflows(left, 10)) {
+                        return false;
+                    }
+
+                    left *= 10;
+                    places++;
+                }
+
+                unscaled = left / right;
+                scale = leftScale - rightScale + places;
+
+                if(scale < 0) {
+                    if(ExactMath.scaleOverflows(unscaled, -scale)) {
+                        return false;
+                    }
+
+                    unscaled *= POWERS_OF_TEN[-scale];
+                    scale = 0;
+                }
+                break;
+            default:
+                return false;
+        }
+
+        // Drop trailing zeros so the numbers stay as small as they can
+        while(scale > 0 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            scale--;
+        }
+
+        if(scale > MAX_SCALE) {
+            return false;
+        }
+
+        fastPointer--;
+        unscaledStack[top - 1] = unscaled;
+        scaleStack[top - 1] = scale;
+
+        return true;
+    }
+
+    @Override
+    protected Number fastResult() {
+        return BigDecimal.valueOf(unscaledStack[fastPointer - 1], scaleStack[fastPointer - 1]);
+    }
+
+    @Override
+    protected void resetSlow() {
+        Arrays.fill(decimalStack, 0, slowPointer, null);
+        slowPointer = 0;
+    }
+
+    @Override
+    protected void pushSlow(double value) {
+        if(slowPointer == decimalStack.length) {
+            decimalStack = Arrays.copyOf(decimalStack, slowPointer * 2);
+        }
+
+        // valueOf goes through the shortest string for the double, which is what the user typed
+        decimalStack[slowPointer++] = BigDecimal.valueOf(value);
+    }
+
+    @Override
+    protected boolean applySlow(int opcode) {
+        if(isUnary(opcode)) {
+            BigDecimal value = decimalStack[slowPointer - 1];
+            BigInteger whole = wholeOperand(value);
+            BigInteger exact = whole != null ? exactFunction(whole, opcode) : null;
+
+            if(exact != null) {
+                decimalStack[slowPointer - 1] = new BigDecimal(exact, mathContext);
+                return true;
+            }
+
+            // Functions such as sin have no exact decimal result, they're worked out in double
+            decimalStack[slowPointer - 1] = performStrictFunction(value.doubleValue(), opcode);
+            return decimalStack[slowPointer - 1] != null;
+        }
+
+        BigDecimal right = decimalStack[--slowPointer];
+        BigDecimal left = decimalStack[slowPointer - 1];
+        BigDecimal result;
+
+        decimalStack[slowPointer] = null;
+
+        switch (opcode) {
+            case OP_ADD:
+                result = left.add(right, mathContext);
+                break;
+            case OP_SUBTRACT:
+                result = left.subtract(right, mathContext);
+                break;
+            case OP_MULTIPLY:
+                result = left.multiply(right, mathContext);
+                break;
+            case OP_DIVIDE:
+                if(right.signum() == 0) {
+                    return false;
+                }
+
+                result = divide(left, right);
+
+                if(result == null) {
+                    return false;
+                }
+                break;
+            case OP_PERCENTAGE:
+                result = left.multiply(right, mathContext).movePointLeft(2);
+                break;
+            case OP_POWER:
+                int exponent = wholeExponent(right);
+
+                if(exponent != Integer.MIN_VALUE && exponent < 0 && left.signum() == 0) {
+                    // Zero to a negative power divides by zero
+                    return false;
+                }
+
+                if(exponent != Integer.MIN_VALUE) {
+                    result = left.pow(exponent, mathContext);
+                } else {
+                    result = performStrict(left.doubleValue(), right.doubleValue(), opcode);
+                }
+                break;
+            case OP_PERMUTATION:
+            case OP_COMBINATION:
+                BigInteger n = wholeOperand(left);
+                BigInteger r = wholeOperand(right);
+                BigInteger exact = n != null && r != null ? exactOperation(n, r, opcode) : null;
+
+                if(exact != null) {
+                    result = new BigDecimal(exact, mathContext);
+                } else {
+                    result = performStrict(left.doubleValue(), right.doubleValue(), opcode);
+                }
+                break;
+            default:
+                // A user defined operator, which only has a double kernel
+                result = performStrict(left.doubleValue(), right.doubleValue(), opcode);
+                break;
+        }
+
+        decimalStack[slowPointer - 1] = result;
+
+        return result != null;
+    }
+
+    /**
+     * Divides to the MathContext. With unlimited precision a quotient such as 1/3 has no exact
+     * decimal, BigDecimal only says so by throwing, which is fine here as it's down to how the
+     * executor was set up rather than anything typed.
+     *
+     * @return the quotient, or null if it can't be represented
+     */
+    private BigDecimal divide(BigDecimal left, BigDecimal right) {
+        if(mathContext.getPrecision() != 0) {
+            return left.divide(right, mathContext);
+        }
+
+        try {
+            return left.divide(right);
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected Number slowResult() {
+        return decimalStack[slowPointer - 1];
+    }
+}
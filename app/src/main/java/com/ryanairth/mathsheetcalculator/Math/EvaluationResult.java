@@ -0,0 +1,94 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class EvaluationResult {
+    /*
+        Error codes, OK when the value is a finite number
+     */
+    public static final int OK = 0;
+    // A number divided by zero
+    public static final int DIVISION_BY_ZERO = 1;
+    // A function or operator given a number it isn't defined for, such as the square root of -1
+    public static final int DOMAIN_ERROR = 2;
+    // A result too big for a double
+    public static final int OVERFLOW = 3;
+
+    /*
+        Index of the block that caused the error, NO_INDEX when there's no error
+     */
+    public static final int NO_INDEX = -1;
+
+    private double value;
+    private int error;
+    private int errorIndex;
+
+    /**
+     * Outcome of evaluating the blocks, either a finite value or an error code with the index of
+     * the block that caused it. Bad input is reported here rather than thrown, so a sum that can't
+     * be worked out costs no more than one that can. A single result is meant to be reused for
+     * every evaluation, so getting one allocates nothing.
+     */
+    public EvaluationResult() {
+        setValue(0.0);
+    }
+
+    /**
+     * Sets a successful result, clearing any error
+     */
+    public void setValue(double value) {
+        this.value = value;
+        error = OK;
+        errorIndex = NO_INDEX;
+    }
+
+    /**
+     * Sets a failed result
+     *
+     * @param value the value the evaluation gave anyway, NaN or an infinity
+     * @param error one of the error codes
+     * @param errorIndex index of the block that caused it
+     */
+    public void setError(double value, int error, int errorIndex) {
+        this.value = value;
+        this.error = error;
+        this.errorIndex = errorIndex;
+    }
+
+    /**
+     * Whether the evaluation gave a finite value
+     */
+    public boolean isValid() {
+        return error == OK;
+    }
+
+    /**
+     * The value, when the result isn't valid this is the NaN or infinity double arithmetic gave
+     */
+    public double getValue() {
+        return value;
+    }
+
+    public int getError() {
+        return error;
+    }
+
+    public int getErrorIndex() {
+        return errorIndex;
+    }
+
+    @Override
+    public String toString() {
+        switch (error) {
+            case OK:
+                return Double.toString(value);
+            case DIVISION_BY_ZERO:
+                return "Division by zero at block " + errorIndex;
+            case DOMAIN_ERROR:
+                return "Domain error at block " + errorIndex;
+            default:
+                return "Overflow at block " + errorIndex;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class ExactMath {
+    /*
+        Every power of ten that fits in a long, 10^0 to 10^18
+     */
+    static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+            10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+            1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L
+    };
+
+    /*
+        Every power of ten a double holds exactly, 10^0 to 10^22
+     */
+    static final double[] DOUBLE_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+            1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /*
+        Largest magnitude below which every integer is exactly representable as a double, 2^53
+     */
+    static final long MAX_EXACT_DOUBLE_INTEGER = 1L << 53;
+
+    /**
+     * Overflow checks for long arithmetic in the style of Math.addExact and Math.multiplyExact,
+     * which aren't available on the API levels the app supports. The checks return a flag rather
+     * than throwing so they cost nothing extra on the paths that fall back on overflow.
+     */
+    private ExactMath() {
+    }
+
+    /**
+     * Whether a + b overflows a long
+     */
+    public static boolean addOverflows(long a, long b) {
+        long result = a + b;
+
+        // Overflow only if both arguments have the opposite sign of the result
+        return ((a ^ result) & (b ^ result)) < 0;
+    }
+
+    /**
+     * Whether a - b overflows a long
+     */
+    public static boolean subtractOverflows(long a, long b) {
+        long result = a - b;
+
+        // Overflow only if the arguments have different signs and the sign of the result is
+        // different from the sign of a
+        return ((a ^ b) & (a ^ result)) < 0;
+    }
+
+    /**
+     * Whether a * b overflows a long
+     */
+    public static boolean multiplyOverflows(long a, long b) {
+        long absA = Math.abs(a);
+        long absB = Math.abs(b);
+
+        if(((absA | absB) >>> 31) == 0) {
+            // Both fit in 31 bits so the product can't overflow
+            return false;
+        }
+
+        long result = a * b;
+
+        return (b != 0 && result / b != a) || (a == Long.MIN_VALUE && b == -1);
+    }
+
+    /**
+     * Whether a * 10^exponent overflows a long, also true for exponents that are out of range
+     */
+    public static boolean scaleOverflows(long a, int exponent) {
+        return exponent < 0 || exponent >= POWERS_OF_TEN.length
+                || multiplyOverflows(a, POWERS_OF_TEN[exponent]);
+    }
+}
@@ -0,0 +1,856 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.util.Arrays;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class ExpressionTree {
+    private static final int NO_NODE = -1;
+    private static final byte NO_OPERATOR = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final byte PLUS = (byte) MathOperator.PLUS.ordinal();
+    private static final byte MINUS = (byte) MathOperator.MINUS.ordinal();
+    private static final byte MULTIPLY = (byte) MathOperator.MULTIPLY.ordinal();
+    private static final byte DIVIDE = (byte) MathOperator.DIVIDE.ordinal();
+    private static final byte LEFT_BRACKET = (byte) MathOperator.LEFT_BRACKET.ordinal();
+    private static final byte RIGHT_BRACKET = (byte) MathOperator.RIGHT_BRACKET.ordinal();
+
+    /*
+        Kinds of fragment: nothing, only operators, operands with no + or - between them (a single
+        term) and operands with at least one + or - between them (a sum)
+     */
+    private static final byte EMPTY = 0;
+    private static final byte OPERATOR = 1;
+    private static final byte TERM = 2;
+    private static final byte SUM = 3;
+
+    /*
+        Once the denominator of a term gets this far from 1 it's divided into the numerator, so
+        a long run of divisions can't overflow it when the divisions one at a time wouldn't
+     */
+    private static final double RESCALE_LIMIT = 0x1p512;
+
+    /*
+        Blocks the tree is kept for, each block is read once when it's added to the tree
+     */
+    private BlockBuffer buffer;
+    /*
+        Nodes of the tree, one for each block. The tree is ordered by position in the sequence
+        and balanced by the random priorities, every node keeps the number of nodes under it
+        and the summary of their blocks.
+     */
+    private int[] lefts;
+    private int[] rights;
+    private int[] priorities;
+    private int[] sizes;
+    private Summary[] summaries;
+    /*
+        The block each node holds
+     */
+    private double[] values;
+    private byte[] operators;
+    private int root;
+    private int nodeCount;
+    /*
+        Nodes that were removed, reused before new nodes are made
+     */
+    private int[] freeNodes;
+    private int freeCount;
+    /*
+        State of the random priorities, seeded the same every time so the tree takes the same
+        shape for the same edits
+     */
+    private int seed;
+    /*
+        Results of split(), the nodes before the split point and the nodes from it on
+     */
+    private int splitLeft;
+    private int splitRight;
+    /*
+        Number of blocks the summaries can't follow, such as powers and functions
+     */
+    private int unsupported;
+    /*
+        Whether a block has been inserted, replaced or removed anywhere but the end since the
+        tree was last reset
+     */
+    private boolean edited;
+    /*
+        Whether the nodes have been made. They're only needed once the sequence is edited in the
+        middle, so until then blocks added and popped are left in the buffer and the tree is made
+        from it in one go the first time it's needed.
+     */
+    private boolean built;
+
+    /*
+        Scratch summaries for blocks being summarised and for working out the total
+     */
+    private Summary leaf;
+    private Summary scratch;
+    private Summary work;
+
+    /**
+     * Balanced tree over the blocks, for editing anywhere in the sequence rather than only at the
+     * end. Every node keeps a summary of the blocks under it, which can be joined to the summary
+     * of the blocks either side of it, so inserting, replacing or removing a block only works out
+     * the summaries on the path to the root again and the total is O(log n) away after any edit.
+     * The rest of the block manager only catches up with the blocks after an edit when it's next
+     * read, until then the preview total is taken from here.
+     *
+     * A summary keeps ×, ÷ and % ahead of + and -, with the first term open to whatever comes
+     * before it and the last term open to whatever comes after. Brackets split a summary into
+     * fragments, with a bracket group turned into a single number as soon as both ends of it
+     * meet. Only +, -, ×, ÷, % and brackets are followed, anything else leaves
+     * {@link #canEvaluate()} false until it's removed.
+     *
+     * Joining summaries groups sums and products by the shape of the tree rather than from the
+     * left, so the total can be a few ulps from the total the other evaluators give. It's meant
+     * for the preview while the sequence is being edited, final totals still come from them.
+     *
+     * @param buffer the blocks to keep the tree for
+     */
+    public ExpressionTree(BlockBuffer buffer) {
+        this.buffer = buffer;
+
+        lefts = new int[INITIAL_CAPACITY];
+        rights = new int[INITIAL_CAPACITY];
+        priorities = new int[INITIAL_CAPACITY];
+        sizes = new int[INITIAL_CAPACITY];
+        summaries = new Summary[INITIAL_CAPACITY];
+        values = new double[INITIAL_CAPACITY];
+        operators = new byte[INITIAL_CAPACITY];
+        freeNodes = new int[INITIAL_CAPACITY];
+
+        leaf = new Summary();
+        scratch = new Summary();
+        work = new Summary();
+
+        reset();
+    }
+
+    /**
+     * Adds the last block of the buffer to the end of the tree, must be called after every block
+     * added to the buffer
+     */
+    public void blockAdded() {
+        if(built) {
+            insert(size(), buffer.size() - 1);
+        }
+    }
+
+    /**
+     * Removes the last block from the tree, must be called after every block popped from the
+     * buffer
+     */
+    public void blockRemoved() {
+        if(built && size() > 0) {
+            delete(size() - 1);
+        }
+    }
+
+    /**
+     * Adds a block that's been inserted into the buffer
+     *
+     * @param index where the block was inserted
+     */
+    public void blockInserted(int index) {
+        if(!built) {
+            // The buffer already has the block, so making the tree from it covers the insert
+            edited |= index < buffer.size() - 1;
+            build();
+            return;
+        }
+
+        edited |= index < size();
+
+        insert(index, index);
+    }
+
+    /**
+     * Follows a block of the buffer that's been replaced with another
+     *
+     * @param index position of the block
+     */
+    public void blockReplaced(int index) {
+        edited |= index < buffer.size() - 1;
+
+        if(!built) {
+            if(edited) {
+                build();
+            }
+
+            return;
+        }
+
+        delete(index);
+        insert(index, index);
+    }
+
+    /**
+     * Removes a block that's been removed from the buffer
+     *
+     * @param index where the block was
+     */
+    public void blockDeleted(int index) {
+        if(!built) {
+            edited |= index < buffer.size();
+            build();
+            return;
+        }
+
+        edited |= index < size() - 1;
+
+        delete(index);
+    }
+
+    public void reset() {
+        root = NO_NODE;
+        nodeCount = 0;
+        freeCount = 0;
+        seed = 0x2545F491;
+        unsupported = 0;
+        edited = false;
+        built = false;
+    }
+
+    /**
+     * Number of blocks in the tree
+     */
+    public int size() {
+        return built ? sizeOf(root) : buffer.size();
+    }
+
+    /**
+     * Whether any block has been inserted, replaced or removed somewhere other than the end
+     * since the tree was reset
+     */
+    public boolean isEdited() {
+        return edited;
+    }
+
+    /**
+     * Whether every block is one the summaries can follow, so {@link #getTotal()} is valid
+     */
+    public boolean canEvaluate() {
+        build();
+
+        return unsupported == 0;
+    }
+
+    /**
+     * Works out the total from the summary at the root, in time that only depends on how many
+     * brackets are unmatched. A right bracket without a left bracket closes everything before it,
+     * left brackets that haven't been closed are closed at the end and a trailing operator or
+     * an open bracket with nothing in it is ignored, the same as the compiled program.
+     *
+     * @return the total, zero for an empty tree or when there's no operand
+     */
+    public double getTotal() {
+        build();
+
+        if(root == NO_NODE) {
+            return 0.0;
+        }
+
+        Summary summary = summaries[root];
+
+        // Each unmatched right bracket closes everything before it
+        work.ensureCapacity(1);
+        work.copy(0, summary, 0);
+
+        for(int i = 1; i <= summary.closes; i++) {
+            double group = groupValue(work, 0);
+
+            work.clear(0);
+            appendOperand(work, 0, NO_OPERATOR, TERM, group, 1.0, 1.0, 0.0, 0.0);
+            appendFragment(work, 0, summary, i);
+        }
+
+        if(summary.opens == 0) {
+            return groupValue(work, 0);
+        }
+
+        // Close the open brackets from the innermost out, an open bracket with no operand in
+        // it is dropped along with everything after the last operand
+        int last = summary.length - 1;
+
+        scratch.ensureCapacity(1);
+        scratch.copy(0, summary, last);
+
+        for(int i = last; i > summary.closes; i--) {
+            Summary parent = i - 1 == summary.closes ? work : summary;
+            int parentIndex = i - 1 == summary.closes ? 0 : i - 1;
+
+            if(hasOperand(scratch, 0)) {
+                double group = groupValue(scratch, 0);
+
+                scratch.copy(0, parent, parentIndex);
+                appendOperand(scratch, 0, NO_OPERATOR, TERM, group, 1.0, 1.0, 0.0, 0.0);
+            } else {
+                scratch.copy(0, parent, parentIndex);
+            }
+        }
+
+        return groupValue(scratch, 0);
+    }
+
+    /**
+     * Makes the tree from every block of the buffer, if it hasn't been made already
+     */
+    private void build() {
+        if(built) {
+            return;
+        }
+
+        built = true;
+
+        for(int i = 0; i < buffer.size(); i++) {
+            insert(i, i);
+        }
+    }
+
+    /**
+     * Adds a node for a block of the buffer
+     *
+     * @param position where the block goes in the tree
+     * @param index index of the block in the buffer
+     */
+    private void insert(int position, int index) {
+        int node = newNode();
+
+        values[node] = buffer.getNumber(index);
+        operators[node] = buffer.getOperatorOrdinal(index);
+
+        if(!isSupported(operators[node])) {
+            unsupported++;
+        }
+
+        update(node);
+
+        split(root, position);
+
+        int left = splitLeft;
+        int right = splitRight;
+
+        root = merge(merge(left, node), right);
+    }
+
+    /**
+     * Removes the node at a position in the tree
+     */
+    private void delete(int position) {
+        split(root, position);
+
+        int left = splitLeft;
+
+        split(splitRight, 1);
+
+        int node = splitLeft;
+        int right = splitRight;
+
+        if(!isSupported(operators[node])) {
+            unsupported--;
+        }
+
+        if(freeCount == freeNodes.length) {
+            freeNodes = Arrays.copyOf(freeNodes, freeCount * 2);
+        }
+
+        freeNodes[freeCount++] = node;
+        root = merge(left, right);
+    }
+
+    private int newNode() {
+        int node;
+
+        if(freeCount > 0) {
+            node = freeNodes[--freeCount];
+        } else {
+            if(nodeCount == lefts.length) {
+                int capacity = nodeCount * 2;
+
+                lefts = Arrays.copyOf(lefts, capacity);
+                rights = Arrays.copyOf(rights, capacity);
+                priorities = Arrays.copyOf(priorities, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                summaries = Arrays.copyOf(summaries, capacity);
+                values = Arrays.copyOf(values, capacity);
+                operators = Arrays.copyOf(operators, capacity);
+            }
+
+            node = nodeCount++;
+
+            if(summaries[node] == null) {
+                summaries[node] = new Summary();
+            }
+        }
+
+        // xorshift, plenty random enough to keep the tree balanced
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+
+        lefts[node] = NO_NODE;
+        rights[node] = NO_NODE;
+        priorities[node] = seed;
+
+        return node;
+    }
+
+    /**
+     * Joins two trees, every node of the first coming before every node of the second
+     *
+     * @return the root of the joined tree
+     */
+    private int merge(int first, int second) {
+        if(first == NO_NODE) {
+            return second;
+        }
+
+        if(second == NO_NODE) {
+            return first;
+        }
+
+        if(priorities[first] > priorities[second]) {
+            rights[first] = merge(rights[first], second);
+            update(first);
+            return first;
+        }
+
+        lefts[second] = merge(first, lefts[second]);
+        update(second);
+        return second;
+    }
+
+    /**
+     * Splits a tree into its first count nodes and the rest, which are left in splitLeft and
+     * splitRight
+     */
+    private void split(int node, int count) {
+        if(node == NO_NODE) {
+            splitLeft = NO_NODE;
+            splitRight = NO_NODE;
+            return;
+        }
+
+        int leftSize = sizeOf(lefts[node]);
+
+        if(count <= leftSize) {
+            split(lefts[node], count);
+            lefts[node] = splitRight;
+            update(node);
+            splitRight = node;
+        } else {
+            split(rights[node], count - leftSize - 1);
+            rights[node] = splitLeft;
+            update(node);
+            splitLeft = node;
+        }
+    }
+
+    private int sizeOf(int node) {
+        return node == NO_NODE ? 0 : sizes[node];
+    }
+
+    /**
+     * Works out the size and summary of a node from its children
+     */
+    private void update(int node) {
+        int left = lefts[node];
+        int right = rights[node];
+        Summary summary = summaries[node];
+
+        sizes[node] = 1 + sizeOf(left) + sizeOf(right);
+        summarise(node, leaf);
+
+        if(left == NO_NODE && right == NO_NODE) {
+            summary.copy(leaf);
+        } else if(left == NO_NODE) {
+            combine(leaf, summaries[right], summary);
+        } else if(right == NO_NODE) {
+            combine(summaries[left], leaf, summary);
+        } else {
+            combine(summaries[left], leaf, scratch);
+            combine(scratch, summaries[right], summary);
+        }
+    }
+
+    /**
+     * Summary of the block held by a single node
+     */
+    private void summarise(int node, Summary summary) {
+        byte operator = operators[node];
+
+        summary.closes = 0;
+        summary.opens = 0;
+        summary.length = 1;
+
+        if(operator == LEFT_BRACKET) {
+            summary.opens = 1;
+            summary.length = 2;
+        } else if(operator == RIGHT_BRACKET) {
+            summary.closes = 1;
+            summary.length = 2;
+        }
+
+        summary.ensureCapacity(summary.length);
+
+        for(int i = 0; i < summary.length; i++) {
+            summary.clear(i);
+        }
+
+        if(operator == BlockBuffer.NUMBER) {
+            summary.kinds[0] = TERM;
+            summary.firsts[0] = values[node];
+            summary.numerators[0] = 1.0;
+            summary.denominators[0] = 1.0;
+        } else if(isSupported(operator) && operator != LEFT_BRACKET && operator != RIGHT_BRACKET
+                && MathOperator.fromOrdinal(operator).isBinary()) {
+            summary.kinds[0] = OPERATOR;
+            summary.leads[0] = operator;
+            summary.trails[0] = operator;
+        }
+    }
+
+    /**
+     * Joins the summaries of two runs of blocks, the second straight after the first. Every left
+     * bracket still open at the end of the first run that's closed in the second run turns the
+     * fragment between them into a number.
+     *
+     * @param first summary of the first run
+     * @param second summary of the second run
+     * @param out where the joined summary goes, must not be either of the others
+     */
+    private static void combine(Summary first, Summary second, Summary out) {
+        out.ensureCapacity(first.length + second.length - 1);
+
+        for(int i = 0; i < first.length; i++) {
+            out.copy(i, first, i);
+        }
+
+        int current = first.length - 1;
+        int next = 1;
+        int opens = first.opens;
+        int closes = second.closes;
+
+        appendFragment(out, current, second, 0);
+
+        while(opens > 0 && closes > 0) {
+            double group = groupValue(out, current);
+
+            current--;
+            appendOperand(out, current, NO_OPERATOR, TERM, group, 1.0, 1.0, 0.0, 0.0);
+            appendFragment(out, current, second, next);
+
+            next++;
+            opens--;
+            closes--;
+        }
+
+        for(int i = next; i < second.length; i++) {
+            out.copy(current + 1 + i - next, second, i);
+        }
+
+        out.closes = first.closes + closes;
+        out.opens = opens + second.opens;
+        out.length = out.closes + out.opens + 1;
+    }
+
+    /**
+     * Adds a fragment onto the end of another, an operator straight after an operator replaces
+     * it and an operand straight after an operand multiplies it
+     */
+    private static void appendFragment(Summary summary, int index, Summary source, int from) {
+        byte kind = source.kinds[from];
+
+        if(kind == EMPTY) {
+            return;
+        }
+
+        if(summary.kinds[index] == EMPTY) {
+            summary.copy(index, source, from);
+        } else if(kind == OPERATOR) {
+            if(summary.kinds[index] == OPERATOR) {
+                summary.leads[index] = source.leads[from];
+            }
+
+            summary.trails[index] = source.trails[from];
+        } else if(summary.kinds[index] == OPERATOR) {
+            byte operator = source.leads[from] != NO_OPERATOR ? source.leads[from]
+                    : summary.leads[index];
+
+            summary.copy(index, source, from);
+            summary.leads[index] = operator;
+        } else {
+            appendOperand(summary, index, source.leads[from], kind, source.firsts[from],
+                    source.numerators[from], source.denominators[from], source.middles[from],
+                    source.lasts[from]);
+            summary.trails[index] = source.trails[from];
+        }
+    }
+
+    /**
+     * Adds operands onto the end of a fragment
+     *
+     * @param operator the operator in front of the operands, NO_OPERATOR if they start with an
+     *                 operand
+     * @param kind TERM or SUM
+     * @param first first factor of the first term of the operands
+     * @param numerator the rest of the first term
+     * @param denominator the rest of the first term
+     * @param middle sum of the terms between the first and the last, for a SUM
+     * @param last the last term, for a SUM
+     */
+    private static void appendOperand(Summary summary, int index, byte operator, byte kind,
+                                      double first, double numerator, double denominator,
+                                      double middle, double last) {
+        byte existing = summary.kinds[index];
+
+        if(existing == EMPTY || existing == OPERATOR) {
+            byte lead = operator != NO_OPERATOR ? operator : summary.leads[index];
+
+            summary.kinds[index] = kind;
+            summary.leads[index] = lead;
+            summary.trails[index] = NO_OPERATOR;
+            summary.firsts[index] = first;
+            summary.numerators[index] = numerator;
+            summary.denominators[index] = denominator;
+            summary.middles[index] = middle;
+            summary.lasts[index] = last;
+            return;
+        }
+
+        if(operator == NO_OPERATOR) {
+            operator = summary.trails[index] != NO_OPERATOR ? summary.trails[index] : MULTIPLY;
+        }
+
+        summary.trails[index] = NO_OPERATOR;
+
+        if(operator == PLUS || operator == MINUS) {
+            double term = (first * numerator) / denominator;
+
+            if(operator == MINUS) {
+                term = -term;
+            }
+
+            if(existing == TERM) {
+                // -0 rather than 0 adds nothing to any number, so -0 - 0 still comes out as -0
+                summary.kinds[index] = SUM;
+                summary.middles[index] = -0.0;
+            } else {
+                summary.middles[index] += summary.lasts[index];
+            }
+
+            if(kind == TERM) {
+                summary.lasts[index] = term;
+            } else {
+                summary.middles[index] = (summary.middles[index] + term) + middle;
+                summary.lasts[index] = last;
+            }
+        } else if(existing == TERM) {
+            // The first term is still open on the left, so the operands join its numerator and
+            // denominator rather than a value
+            double termNumerator = summary.numerators[index];
+            double termDenominator = summary.denominators[index];
+
+            if(operator == DIVIDE) {
+                termDenominator *= first;
+            } else {
+                termNumerator *= first;
+
+                if(operator != MULTIPLY) {
+                    // Percentage, x % y is x / 100 × y
+                    termDenominator *= 100;
+                }
+            }
+
+            termNumerator *= numerator;
+            termDenominator *= denominator;
+
+            if(Math.abs(termDenominator) > RESCALE_LIMIT
+                    || Math.abs(termDenominator) < 1 / RESCALE_LIMIT) {
+                termNumerator /= termDenominator;
+                termDenominator = 1.0;
+            }
+
+            summary.numerators[index] = termNumerator;
+            summary.denominators[index] = termDenominator;
+
+            if(kind == SUM) {
+                summary.kinds[index] = SUM;
+                summary.middles[index] = middle;
+                summary.lasts[index] = last;
+            }
+        } else {
+            double term = (apply(summary.lasts[index], operator, first) * numerator) / denominator;
+
+            if(kind == TERM) {
+                summary.lasts[index] = term;
+            } else {
+                summary.middles[index] = (summary.middles[index] + term) + middle;
+                summary.lasts[index] = last;
+            }
+        }
+    }
+
+    /**
+     * Value of a fragment with nothing before it, as the inside of a pair of brackets. A leading
+     * operator works on zero and a trailing operator is ignored.
+     *
+     * @return the value, zero if there's no operand
+     */
+    private static double groupValue(Summary summary, int index) {
+        if(!hasOperand(summary, index)) {
+            return 0.0;
+        }
+
+        byte lead = summary.leads[index];
+        double first;
+
+        if(lead == NO_OPERATOR) {
+            first = (summary.firsts[index] * summary.numerators[index])
+                    / summary.denominators[index];
+        } else if(lead == PLUS || lead == MINUS) {
+            double term = (summary.firsts[index] * summary.numerators[index])
+                    / summary.denominators[index];
+
+            first = 0.0 + (lead == MINUS ? -term : term);
+        } else {
+            first = (apply(0.0, lead, summary.firsts[index]) * summary.numerators[index])
+                    / summary.denominators[index];
+        }
+
+        if(summary.kinds[index] == SUM) {
+            return (first + summary.middles[index]) + summary.lasts[index];
+        }
+
+        return first;
+    }
+
+    private static boolean hasOperand(Summary summary, int index) {
+        return summary.kinds[index] == TERM || summary.kinds[index] == SUM;
+    }
+
+    /**
+     * Applies ×, ÷ or %, the same way the compiled program does
+     */
+    private static double apply(double left, byte operator, double right) {
+        if(operator == MULTIPLY) {
+            return left * right;
+        }
+
+        if(operator == DIVIDE) {
+            return left / right;
+        }
+
+        return (left / 100) * right;
+    }
+
+    /**
+     * Whether the summaries can follow a block, numbers, brackets and the operators of the
+     * running total
+     */
+    private static boolean isSupported(byte operator) {
+        if(operator == BlockBuffer.NUMBER) {
+            return true;
+        }
+
+        switch (MathOperator.fromOrdinal(operator)) {
+            case PLUS:
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+            case PERCENTAGE:
+            case LEFT_BRACKET:
+            case RIGHT_BRACKET:
+            case NONE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Summary of a run of blocks, the fragments between its unmatched brackets. Every unmatched
+     * right bracket comes before every unmatched left bracket, as anything between a left bracket
+     * and a right bracket after it is matched, so a summary is the fragments before each of its
+     * closes unmatched right brackets, the fragment in the middle and the fragments after each of
+     * its opens unmatched left brackets.
+     */
+    private static final class Summary {
+        int closes;
+        int opens;
+        int length;
+        /*
+            Fragments as struct of arrays: the kind, the operator in front of the first operand
+            (the only operator for an OPERATOR fragment), the operator after the last operand,
+            the first factor and the rest of the first term, the sum of the finished terms
+            between the first and last terms and the last term
+         */
+        byte[] kinds;
+        byte[] leads;
+        byte[] trails;
+        double[] firsts;
+        double[] numerators;
+        double[] denominators;
+        double[] middles;
+        double[] lasts;
+
+        Summary() {
+            kinds = new byte[2];
+            leads = new byte[2];
+            trails = new byte[2];
+            firsts = new double[2];
+            numerators = new double[2];
+            denominators = new double[2];
+            middles = new double[2];
+            lasts = new double[2];
+        }
+
+        void ensureCapacity(int capacity) {
+            if(capacity > kinds.length) {
+                capacity = Math.max(capacity, kinds.length * 2);
+
+                kinds = Arrays.copyOf(kinds, capacity);
+                leads = Arrays.copyOf(leads, capacity);
+                trails = Arrays.copyOf(trails, capacity);
+                firsts = Arrays.copyOf(firsts, capacity);
+                numerators = Arrays.copyOf(numerators, capacity);
+                denominators = Arrays.copyOf(denominators, capacity);
+                middles = Arrays.copyOf(middles, capacity);
+                lasts = Arrays.copyOf(lasts, capacity);
+            }
+        }
+
+        void clear(int index) {
+            kinds[index] = EMPTY;
+            leads[index] = NO_OPERATOR;
+            trails[index] = NO_OPERATOR;
+        }
+
+        void copy(int index, Summary source, int from) {
+            kinds[index] = source.kinds[from];
+            leads[index] = source.leads[from];
+            trails[index] = source.trails[from];
+            firsts[index] = source.firsts[from];
+            numerators[index] = source.numerators[from];
+            denominators[index] = source.denominators[from];
+            middles[index] = source.middles[from];
+            lasts[index] = source.lasts[from];
+        }
+
+        void copy(Summary source) {
+            ensureCapacity(source.length);
+
+            closes = source.closes;
+            opens = source.opens;
+            length = source.length;
+
+            for(int i = 0; i < length; i++) {
+                copy(i, source, i);
+            }
+        }
+    }
+}
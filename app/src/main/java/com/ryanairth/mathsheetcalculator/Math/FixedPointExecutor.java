@@ -0,0 +1,446 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_ADD;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_COMBINATION;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_DIVIDE;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_MULTIPLY;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_PERCENTAGE;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_PERMUTATION;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_POWER;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_SUBTRACT;
+import static com.ryanairth.mathsheetcalculator.Math.ExactMath.DOUBLE_POWERS_OF_TEN;
+import static com.ryanairth.mathsheetcalculator.Math.ExactMath.POWERS_OF_TEN;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class FixedPointExecutor extends ProgramExecutor {
+    public static final int DEFAULT_SCALE = 2;
+    /*
+        Most decimal places that can be kept, any more and a typed number may not fit in a long
+     */
+    public static final int MAX_SCALE = 15;
+    /*
+        Given back in place of a fixed point number that can't be worked out in a long, a result
+        that lands on it exactly is worked out on the slow path like any other overflow
+     */
+    static final long NOT_FIXED = Long.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 16;
+    /*
+        Largest unscaled number that still prints as itself once it's been made a double, 10^15
+     */
+    private static final long MAX_PRINTABLE_UNSCALED = POWERS_OF_TEN[15];
+
+    /*
+        Number of decimal places every number is kept to
+     */
+    private int scale;
+    /*
+        10^scale, the long that represents one
+     */
+    private long one;
+
+    /*
+        Fast path stack, each number is unscaled * 10^-scale
+     */
+    private long[] unscaledStack;
+    private int fastPointer;
+
+    /*
+        Slow path stack, every number has the scale
+     */
+    private BigDecimal[] decimalStack;
+    private int slowPointer;
+
+    /**
+     * Fixed point arithmetic over a compiled program, every number is a long counting units of
+     * 10^-scale, so with a scale of 2 every number is a whole number of cents. + and - are exact,
+     * ×, ÷ and % round the result back to the scale with banker's rounding (half even), as do
+     * numbers typed with more places than the scale. Only results that overflow a long are worked
+     * out again with BigDecimal.
+     *
+     * @param scale number of decimal places to keep, 0 to {@link #MAX_SCALE}
+     */
+    public FixedPointExecutor(int scale) {
+        setScale(scale);
+
+        unscaledStack = new long[INITIAL_CAPACITY];
+        decimalStack = new BigDecimal[INITIAL_CAPACITY];
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public void setScale(int scale) {
+        if(scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Fixed point scale must be between 0 and "
+                    + MAX_SCALE + ", found: " + scale);
+        }
+
+        this.scale = scale;
+        one = POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * Runs the program on the fast path and gives the result as the double nearest to it, without
+     * making any objects. The nearest double prints as the fixed point number it came from.
+     *
+     * @param program the program to run
+     * @return the result, or NaN if it can't be worked out on the fast path, so the caller only
+     *         works out a fallback when it's needed
+     */
+    public double executeToDouble(BlockProgram program) {
+        if(!executeFast(program)) {
+            return Double.NaN;
+        }
+
+        return toDouble(unscaledStack[fastPointer - 1], scale);
+    }
+
+    /**
+     * The double nearest to a fixed point number, which prints as the number it came from
+     *
+     * @param unscaled the number in units of 10^-scale
+     * @param scale number of decimal places
+     * @return the double, or NaN if the number has too many digits to print as itself
+     */
+    static double toDouble(long unscaled, int scale) {
+        // Any decimal of 15 significant digits or fewer is the shortest one that prints for the
+        // double nearest to it
+        if(Math.abs(unscaled) >= MAX_PRINTABLE_UNSCALED) {
+            return Double.NaN;
+        }
+
+        // Both parts are exact doubles so the division is correctly rounded
+        return unscaled / DOUBLE_POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * A typed number in units of 10^-scale, rounded half even if it has more places than that
+     *
+     * @param value the number typed
+     * @param scale number of decimal places to keep
+     * @return the unscaled number, or {@link #NOT_FIXED} if it has too many digits or doesn't fit
+     */
+    static long toUnscaled(double value, int scale) {
+        int places = DecimalExecutor.findScale(value);
+
+        if(places < 0) {
+            return NOT_FIXED;
+        }
+
+        long unscaled = (long) Math.rint(value * DOUBLE_POWERS_OF_TEN[places]);
+
+        if(places > scale) {
+            return divideHalfEven(unscaled, POWERS_OF_TEN[places - scale]);
+        }
+
+        if(ExactMath.scaleOverflows(unscaled, scale - places)) {
+            return NOT_FIXED;
+        }
+
+        return unscaled * POWERS_OF_TEN[scale - places];
+    }
+
+    /**
+     * Multiplies two fixed point numbers and rounds the product back to the scale
+     *
+     * @param one 10^scale
+     * @return the product, or {@link #NOT_FIXED} if it overflows
+     */
+    static long multiply(long left, long right, long one) {
+        // The product has twice the places, bring it back to the scale
+        if(ExactMath.multiplyOverflows(left, right)) {
+            return NOT_FIXED;
+        }
+
+        return divideHalfEven(left * right, one);
+    }
+
+    /**
+     * Divides two fixed point numbers, rounding the quotient to the scale
+     *
+     * @param one 10^scale
+     * @return the quotient, or {@link #NOT_FIXED} if it overflows or the divisor is zero
+     */
+    static long divide(long left, long right, long one) {
+        // Scale the left up first so the quotient keeps its places
+        if(right == 0 || ExactMath.multiplyOverflows(left, one)) {
+            return NOT_FIXED;
+        }
+
+        return divideHalfEven(left * one, right);
+    }
+
+    /**
+     * Works out (left / 100) * right for two fixed point numbers, rounded to the scale
+     *
+     * @param one 10^scale
+     * @return the result, or {@link #NOT_FIXED} if it overflows
+     */
+    static long percentage(long left, long right, long one) {
+        // The product has twice the places and the hundred on top
+        if(ExactMath.multiplyOverflows(left, right)) {
+            return NOT_FIXED;
+        }
+
+        return divideHalfEven(left * right, one * 100);
+    }
+
+    @Override
+    protected Number zero() {
+        return BigDecimal.valueOf(0, scale);
+    }
+
+    @Override
+    protected void resetFast() {
+        fastPointer = 0;
+    }
+
+    @Override
+    protected boolean pushFast(double value) {
+        long unscaled = toUnscaled(value, scale);
+
+        if(unscaled == NOT_FIXED) {
+            return false;
+        }
+
+        if(fastPointer == unscaledStack.length) {
+            unscaledStack = Arrays.copyOf(unscaledStack, fastPointer * 2);
+        }
+
+        unscaledStack[fastPointer++] = unscaled;
+
+        return true;
+    }
+
+    @Override
+    protected boolean applyFast(int opcode) {
+        int top = fastPointer - 1;
+
+        if(isUnary(opcode)) {
+            // Only factorials of whole numbers stay exact, other functions are worked out on the
+            // slow path
+            long value = unscaledStack[top];
+            long result = value % one == 0 ? longFunction(value / one, opcode) : -1;
+
+            if(result < 0 || ExactMath.multiplyOverflows(result, one)) {
+                return false;
+            }
+
+            unscaledStack[top] = result * one;
+
+            return true;
+        }
+
+        long left = unscaledStack[top - 1];
+        long right = unscaledStack[top];
+        long unscaled;
+
+        switch (opcode) {
+            case OP_PERMUTATION:
+            case OP_COMBINATION:
+                if(left % one != 0 || right % one != 0) {
+                    return false;
+                }
+
+                unscaled = longOperation(left / one, right / one, opcode);
+
+                if(unscaled < 0 || ExactMath.multiplyOverflows(unscaled, one)) {
+                    return false;
+                }
+
+                unscaled *= one;
+                break;
+            case OP_ADD:
+                if(ExactMath.addOverflows(left, right)) {
+                    return false;
+                }
+
+                unscaled = left + right;
+                break;
+            case OP_SUBTRACT:
+                if(ExactMath.subtractOverflows(left, right)) {
+                    return false;
+                }
+
+                unscaled = left - right;
+                break;
+            case OP_MULTIPLY:
+                unscaled = multiply(left, right, one);
+                break;
+            case OP_DIVIDE:
+                unscaled = divide(left, right, one);
+                break;
+            case OP_PERCENTAGE:
+                unscaled = percentage(left, right, one);
+                break;
+            default:
+                return false;
+        }
+
+        if(unscaled == NOT_FIXED) {
+            return false;
+        }
+
+        fastPointer--;
+        unscaledStack[top - 1] = unscaled;
+
+        return true;
+    }
+
+    /**
+     * Divides with banker's rounding, a remainder of exactly half goes to the even quotient
+     *
+     * @param dividend the number being divided
+     * @param divisor the number to divide by, not zero
+     * @return the rounded quotient
+     */
+    static long divideHalfEven(long dividend, long divisor) {
+        // MIN_VALUE / -1 is the only quotient that overflows, it has no remainder to round
+        if(divisor == -1) {
+            return -dividend;
+        }
+
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+
+        if(remainder == 0) {
+            return quotient;
+        }
+
+        long absRemainder = Math.abs(remainder);
+        // Neither can overflow, the remainder is always smaller than the divisor
+        long rest = Math.abs(divisor) - absRemainder;
+
+        if(absRemainder > rest || (absRemainder == rest && (quotient & 1) != 0)) {
+            // Round away from zero, the direction of the exact quotient
+            quotient += (dividend ^ divisor) < 0 ? -1 : 1;
+        }
+
+        return quotient;
+    }
+
+    @Override
+    protected Number fastResult() {
+        return BigDecimal.valueOf(unscaledStack[fastPointer - 1], scale);
+    }
+
+    @Override
+    protected void resetSlow() {
+        Arrays.fill(decimalStack, 0, slowPointer, null);
+        slowPointer = 0;
+    }
+
+    @Override
+    protected void pushSlow(double value) {
+        if(slowPointer == decimalStack.length) {
+            decimalStack = Arrays.copyOf(decimalStack, slowPointer * 2);
+        }
+
+        decimalStack[slowPointer++] = BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_EVEN);
+    }
+
+    @Override
+    protected boolean applySlow(int opcode) {
+        if(isUnary(opcode)) {
+            BigDecimal value = decimalStack[slowPointer - 1];
+            BigInteger whole = wholeOperand(value);
+            BigInteger exact = whole != null ? exactFunction(whole, opcode) : null;
+
+            if(exact != null) {
+                decimalStack[slowPointer - 1] = new BigDecimal(exact).setScale(scale);
+                return true;
+            }
+
+            decimalStack[slowPointer - 1] = rescale(performStrictFunction(value.doubleValue(),
+                    opcode));
+            return decimalStack[slowPointer - 1] != null;
+        }
+
+        BigDecimal right = decimalStack[--slowPointer];
+        BigDecimal left = decimalStack[slowPointer - 1];
+        BigDecimal result;
+
+        decimalStack[slowPointer] = null;
+
+        switch (opcode) {
+            case OP_ADD:
+                result = left.add(right);
+                break;
+            case OP_SUBTRACT:
+                result = left.subtract(right);
+                break;
+            case OP_MULTIPLY:
+                result = left.multiply(right).setScale(scale, RoundingMode.HALF_EVEN);
+                break;
+            case OP_DIVIDE:
+                if(right.signum() == 0) {
+                    return false;
+                }
+
+                result = left.divide(right, scale, RoundingMode.HALF_EVEN);
+                break;
+            case OP_PERCENTAGE:
+                result = left.multiply(right).movePointLeft(2).setScale(scale, RoundingMode.HALF_EVEN);
+                break;
+            case OP_POWER:
+                int exponent = wholeExponent(right);
+
+                if(exponent >= 0) {
+                    result = left.pow(exponent).setScale(scale, RoundingMode.HALF_EVEN);
+                } else if(exponent != Integer.MIN_VALUE) {
+                    if(left.signum() == 0) {
+                        // Zero to a negative power divides by zero
+                        return false;
+                    }
+
+                    result = BigDecimal.ONE.divide(left.pow(-exponent), scale, RoundingMode.HALF_EVEN);
+                } else {
+                    result = rescale(performStrict(left.doubleValue(), right.doubleValue(), opcode));
+                }
+                break;
+            case OP_PERMUTATION:
+            case OP_COMBINATION:
+                BigInteger n = wholeOperand(left);
+                BigInteger r = wholeOperand(right);
+                BigInteger exact = n != null && r != null ? exactOperation(n, r, opcode) : null;
+
+                if(exact != null) {
+                    result = new BigDecimal(exact).setScale(scale);
+                } else {
+                    result = rescale(performStrict(left.doubleValue(), right.doubleValue(), opcode));
+                }
+                break;
+            default:
+                // A user defined operator, which only has a double kernel
+                result = rescale(performStrict(left.doubleValue(), right.doubleValue(), opcode));
+                break;
+        }
+
+        decimalStack[slowPointer - 1] = result;
+
+        return result != null;
+    }
+
+    /**
+     * Rounds a result worked out in double to the scale
+     *
+     * @return the result with the scale, or null if there was no result
+     */
+    private BigDecimal rescale(BigDecimal value) {
+        return value != null ? value.setScale(scale, RoundingMode.HALF_EVEN) : null;
+    }
+
+    @Override
+    protected Number slowResult() {
+        return decimalStack[slowPointer - 1];
+    }
+}
@@ -0,0 +1,15 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public enum FunctionMode {
+    /*
+        Table based approximations from FastMath, within a couple of ulps and much quicker
+     */
+    FAST,
+    /*
+        StrictMath, the same bit for bit result on every device
+     */
+    STRICT
+}
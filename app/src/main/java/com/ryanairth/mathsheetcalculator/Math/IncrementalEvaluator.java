@@ -0,0 +1,489 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.util.Arrays;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class IncrementalEvaluator {
+    private static final int INITIAL_CAPACITY = 16;
+
+    /*
+        Sum of every additive term that has been finished, one entry per block
+     */
+    private double[] sums;
+    /*
+        Multiplicative term that is still being built, one entry per block
+     */
+    private double[] terms;
+    /*
+        The same sums and terms in longs, only meaningful while the matching integral flag is set
+     */
+    private long[] longSums;
+    private long[] longTerms;
+    /*
+        Whether every operand up to each block is a whole number and every step so far has been
+        exact in a long
+     */
+    private boolean[] integral;
+    /*
+        The same sums and terms in units of 10^-scale, rounded the way FixedPointExecutor rounds,
+        only meaningful while the matching fixed flag is set
+     */
+    private long[] scaledSums;
+    private long[] scaledTerms;
+    private boolean[] fixed;
+    /*
+        Decimal places of the fixed point total and 10^scale, the long that represents one
+     */
+    private int scale;
+    private long one;
+    /*
+        Blocks the running total is kept for, operators are read straight from here
+     */
+    private BlockBuffer buffer;
+    /*
+        Number of blocks the evaluator currently holds state for
+     */
+    private int size;
+    /*
+        Position of the first block the running total can't follow (a bracket, ^ or a function),
+        from there on it's not valid. -1 when there isn't one.
+     */
+    private int firstUnsupported;
+
+    /**
+     * Keeps a running total of the blocks as they're added so that the total never has to be
+     * worked out from the beginning again.
+     *
+     * The state after each block is stored as a committed sum plus the pending multiplicative term,
+     * which gives ×, ÷ and % precedence over + and -. Adding a block, popping a block and reading
+     * the total are all O(1).
+     *
+     * While every operand is a whole number the total is also kept in longs, which stay exact
+     * past the 2^53 where doubles start to round. The first overflow or division that leaves a
+     * remainder drops back to the doubles for the rest of the blocks.
+     *
+     * The total is kept in fixed point as well, for {@link PrecisionMode#FIXED_POINT}, in the
+     * same steps and with the same rounding as {@link FixedPointExecutor}. The first overflow
+     * leaves the fixed point total to the executor.
+     *
+     * @param buffer the blocks the total is kept for
+     */
+    public IncrementalEvaluator(BlockBuffer buffer) {
+        this.buffer = buffer;
+
+        sums = new double[INITIAL_CAPACITY];
+        terms = new double[INITIAL_CAPACITY];
+        longSums = new long[INITIAL_CAPACITY];
+        longTerms = new long[INITIAL_CAPACITY];
+        integral = new boolean[INITIAL_CAPACITY];
+        scaledSums = new long[INITIAL_CAPACITY];
+        scaledTerms = new long[INITIAL_CAPACITY];
+        fixed = new boolean[INITIAL_CAPACITY];
+        firstUnsupported = -1;
+
+        scale = FixedPointExecutor.DEFAULT_SCALE;
+        one = ExactMath.POWERS_OF_TEN[scale];
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Sets the number of decimal places the fixed point total keeps, the blocks already fed in
+     * are worked out again at the new scale
+     *
+     * @param scale number of decimal places, 0 to {@link FixedPointExecutor#MAX_SCALE}
+     */
+    public void setScale(int scale) {
+        if(scale == this.scale) {
+            return;
+        }
+
+        this.scale = scale;
+        one = ExactMath.POWERS_OF_TEN[scale];
+
+        for(int i = 0; i < size; i++) {
+            appendFixed(i);
+        }
+    }
+
+    /**
+     * Number of blocks the evaluator holds state for
+     *
+     * @return the number of blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Feeds the last block of the buffer into the running total, must be called after every block
+     * added to the buffer
+     */
+    public void blockAdded() {
+        ensureCapacity();
+
+        if(buffer.isNumber(size)) {
+            appendNumber(buffer.getNumber(size));
+        } else {
+            MathOperator operator = buffer.getOperator(size);
+
+            if(firstUnsupported < 0 && !isSupported(operator)) {
+                firstUnsupported = size;
+            }
+
+            appendOperator();
+        }
+
+        appendFixed(size);
+        size++;
+    }
+
+    private void appendNumber(double number) {
+        if(size == 0) {
+            sums[0] = 0.0;
+            terms[0] = number;
+            longSums[0] = 0;
+            longTerms[0] = (long) number;
+            integral[0] = isWholeNumber(number);
+
+            return;
+        }
+
+        int previous = size - 1;
+        double sum = sums[previous];
+        double term = terms[previous];
+
+        switch (buffer.getOperator(previous)) {
+            case PLUS:
+                sum += term;
+                term = number;
+                break;
+            case MINUS:
+                sum += term;
+                term = -number;
+                break;
+            case MULTIPLY:
+                term *= number;
+                break;
+            case DIVIDE:
+                term /= number;
+                break;
+            case PERCENTAGE:
+                term = (term / 100) * number;
+                break;
+            default:
+                // Two numbers in a row, the second multiplies the first
+                term *= number;
+                break;
+        }
+
+        sums[size] = sum;
+        terms[size] = term;
+        integral[size] = integral[previous] && isWholeNumber(number)
+                && appendLong(previous, (long) number);
+    }
+
+    /**
+     * Works out the state after a whole number in longs, the same steps as the doubles
+     *
+     * @return false if a step overflows or doesn't give a whole number
+     */
+    private boolean appendLong(int previous, long number) {
+        long sum = longSums[previous];
+        long term = longTerms[previous];
+
+        switch (buffer.getOperator(previous)) {
+            case PLUS:
+                if(ExactMath.addOverflows(sum, term)) {
+                    return false;
+                }
+
+                sum += term;
+                term = number;
+                break;
+            case MINUS:
+                if(ExactMath.addOverflows(sum, term)) {
+                    return false;
+                }
+
+                sum += term;
+                term = -number;
+                break;
+            case DIVIDE:
+                if(number == 0 || term % number != 0 || (term == Long.MIN_VALUE && number == -1)) {
+                    return false;
+                }
+
+                term /= number;
+                break;
+            case PERCENTAGE:
+                if(ExactMath.multiplyOverflows(term, number) || (term * number) % 100 != 0) {
+                    return false;
+                }
+
+                term = term * number / 100;
+                break;
+            default:
+                // Multiply, and two numbers in a row
+                if(ExactMath.multiplyOverflows(term, number)) {
+                    return false;
+                }
+
+                term *= number;
+                break;
+        }
+
+        longSums[size] = sum;
+        longTerms[size] = term;
+
+        return true;
+    }
+
+    /**
+     * Works out the fixed point state after a block, the same steps as the longs with the
+     * rounding of {@link FixedPointExecutor}
+     *
+     * @param index position of the block, the state of the blocks before it is already worked out
+     */
+    private void appendFixed(int index) {
+        if(!buffer.isNumber(index)) {
+            // The total doesn't change until the number after the operator arrives
+            scaledSums[index] = index == 0 ? 0 : scaledSums[index - 1];
+            scaledTerms[index] = index == 0 ? 0 : scaledTerms[index - 1];
+            fixed[index] = index == 0 || fixed[index - 1];
+
+            return;
+        }
+
+        long number = FixedPointExecutor.toUnscaled(buffer.getNumber(index), scale);
+
+        if(index == 0) {
+            scaledSums[0] = 0;
+            scaledTerms[0] = number;
+            fixed[0] = number != FixedPointExecutor.NOT_FIXED;
+
+            return;
+        }
+
+        int previous = index - 1;
+        long sum = scaledSums[previous];
+        long term = scaledTerms[previous];
+
+        fixed[index] = false;
+
+        if(!fixed[previous] || number == FixedPointExecutor.NOT_FIXED) {
+            return;
+        }
+
+        switch (buffer.getOperator(previous)) {
+            case PLUS:
+                if(ExactMath.addOverflows(sum, term)) {
+                    return;
+                }
+
+                sum += term;
+                term = number;
+                break;
+            case MINUS:
+                if(ExactMath.addOverflows(sum, term)) {
+                    return;
+                }
+
+                sum += term;
+                term = -number;
+                break;
+            case DIVIDE:
+                term = FixedPointExecutor.divide(term, number, one);
+                break;
+            case PERCENTAGE:
+                term = FixedPointExecutor.percentage(term, number, one);
+                break;
+            default:
+                // Multiply, and two numbers in a row
+                term = FixedPointExecutor.multiply(term, number, one);
+                break;
+        }
+
+        scaledSums[index] = sum;
+        scaledTerms[index] = term;
+        fixed[index] = term != FixedPointExecutor.NOT_FIXED;
+    }
+
+    /**
+     * Whether a double is a whole number that a long can hold and negate
+     */
+    private static boolean isWholeNumber(double number) {
+        // 2^63 as a double, every whole double below it in magnitude casts exactly
+        return Math.abs(number) < 0x1p63 && number == Math.rint(number);
+    }
+
+    private static boolean isSupported(MathOperator operator) {
+        switch (operator) {
+            case PLUS:
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+            case PERCENTAGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void appendOperator() {
+        // The total doesn't change until the number after the operator arrives
+        if(size == 0) {
+            sums[0] = 0.0;
+            terms[0] = 0.0;
+            longSums[0] = 0;
+            longTerms[0] = 0;
+            integral[0] = true;
+        } else {
+            sums[size] = sums[size - 1];
+            terms[size] = terms[size - 1];
+            longSums[size] = longSums[size - 1];
+            longTerms[size] = longTerms[size - 1];
+            integral[size] = integral[size - 1];
+        }
+    }
+
+    /**
+     * Removes the state of the last block, the state before it becomes current again
+     */
+    public void blockRemoved() {
+        if(size > 0) {
+            blocksRemoved(size - 1);
+        }
+    }
+
+    /**
+     * Removes the state of every block from an index on, the state of the blocks before it is
+     * kept. Nothing is read from the buffer, so it can be called once the blocks have changed.
+     *
+     * @param size number of blocks to keep state for
+     */
+    public void blocksRemoved(int size) {
+        if(size < this.size) {
+            this.size = size;
+        }
+
+        if(firstUnsupported >= this.size) {
+            firstUnsupported = -1;
+        }
+    }
+
+    /**
+     * Removes the state of every block
+     */
+    public void reset() {
+        size = 0;
+        firstUnsupported = -1;
+    }
+
+    /**
+     * Whether the running total can be used, it only follows +, -, ×, ÷ and % so once a bracket,
+     * power or function has been added the total has to come from elsewhere
+     *
+     * @return true if {@link #getTotal()} is valid
+     */
+    public boolean isValid() {
+        return firstUnsupported < 0;
+    }
+
+    /**
+     * Total of all blocks fed in so far, a trailing operator is ignored
+     *
+     * @return the running total or zero when there are no blocks
+     */
+    public double getTotal() {
+        if(size == 0) {
+            return 0.0;
+        }
+
+        if(isIntegral()) {
+            // The long total is exact, the doubles may have rounded past 2^53
+            return getLongTotal();
+        }
+
+        return sums[size - 1] + terms[size - 1];
+    }
+
+    /**
+     * Whether the total is a whole number that was worked out exactly in longs, only true while
+     * the running total is valid
+     *
+     * @return true if {@link #getLongTotal()} is the exact total
+     */
+    public boolean isIntegral() {
+        if(size == 0) {
+            return true;
+        }
+
+        int last = size - 1;
+
+        return isValid() && integral[last] && !ExactMath.addOverflows(longSums[last], longTerms[last]);
+    }
+
+    /**
+     * Total of all blocks fed in so far in longs, only meaningful when {@link #isIntegral()}
+     *
+     * @return the running total or zero when there are no blocks
+     */
+    public long getLongTotal() {
+        if(size == 0) {
+            return 0;
+        }
+
+        return longSums[size - 1] + longTerms[size - 1];
+    }
+
+    /**
+     * Whether the total is known in fixed point at the current scale, only true while the running
+     * total is valid
+     *
+     * @return true if {@link #getScaledTotal()} is the fixed point total
+     */
+    public boolean isFixed() {
+        if(size == 0) {
+            return true;
+        }
+
+        int last = size - 1;
+
+        return isValid() && fixed[last]
+                && !ExactMath.addOverflows(scaledSums[last], scaledTerms[last]);
+    }
+
+    /**
+     * Fixed point total of all blocks fed in so far in units of 10^-scale, only meaningful when
+     * {@link #isFixed()}
+     *
+     * @return the running total or zero when there are no blocks
+     */
+    public long getScaledTotal() {
+        if(size == 0) {
+            return 0;
+        }
+
+        return scaledSums[size - 1] + scaledTerms[size - 1];
+    }
+
+    private void ensureCapacity() {
+        if(size == sums.length) {
+            int capacity = sums.length * 2;
+
+            sums = Arrays.copyOf(sums, capacity);
+            terms = Arrays.copyOf(terms, capacity);
+            longSums = Arrays.copyOf(longSums, capacity);
+            longTerms = Arrays.copyOf(longTerms, capacity);
+            integral = Arrays.copyOf(integral, capacity);
+            scaledSums = Arrays.copyOf(scaledSums, capacity);
+            scaledTerms = Arrays.copyOf(scaledTerms, capacity);
+            fixed = Arrays.copyOf(fixed, capacity);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class InputGeneration {
+    /*
+        Generation of the newest input, written by the one thread that queues input
+     */
+    private volatile long latest;
+
+    /**
+     * Counts the input events queued for a calculator, each event is a generation newer than the
+     * one before it. Work done for an event, such as a precise total, checks between steps
+     * whether a newer generation has been queued and stops if it has, as nothing would show its
+     * result. Reading is safe from any thread, only the thread that queues input moves it on.
+     */
+    public InputGeneration() {
+    }
+
+    /**
+     * Generation of the newest input queued
+     */
+    public long latest() {
+        return latest;
+    }
+
+    /**
+     * Moves on to the generation of an event that's just been queued, must only be called by the
+     * thread that queues input
+     *
+     * @param generation the event's generation, one more than {@link #latest()}
+     */
+    public void advanceTo(long generation) {
+        latest = generation;
+    }
+
+    /**
+     * Whether input newer than a generation has been queued
+     *
+     * @param generation generation of the event work is being done for
+     * @return true if the work is stale
+     */
+    public boolean isNewerThan(long generation) {
+        return latest > generation;
+    }
+}
@@ -5,35 +5,181 @@ package com.ryanairth.mathsheetcalculator.Math;
  * Copyright information found in accompanying License.txt file.
  */
 public enum MathOperator {
-    PLUS('+'),
-    MINUS('-'),
-    MULTIPLY('×'),
-    DIVIDE('÷'),
-    PERCENTAGE('%'),
-    LEFT_BRACKET('('),
-    RIGHT_BRACKET(')'),
-    NONE('\u0000');
-
-    private char symbol;
-
-    MathOperator(char symbol) {
+    PLUS('+', 1),
+    MINUS('-', 1),
+    MULTIPLY('×', 2),
+    DIVIDE('÷', 2),
+    PERCENTAGE('%', 2),
+    /*
+        nPr and nCr, the number of ways to arrange or choose the right operand out of the left
+     */
+    PERMUTATION('P', 3),
+    COMBINATION('C', 3),
+    POWER('^', 4, false, true),
+    LEFT_BRACKET('(', 0),
+    RIGHT_BRACKET(')', 0),
+    /*
+        Functions come before the number or bracket they work on, typed as a single character
+     */
+    SQUARE_ROOT('√', 5, true, false),
+    SINE('s', 5, true, false),
+    COSINE('c', 5, true, false),
+    TANGENT('t', 5, true, false),
+    LOG('l', 5, true, false),
+    NATURAL_LOG('n', 5, true, false),
+    EXPONENTIAL('e', 5, true, false),
+    GAMMA('Γ', 5, true, false),
+    /*
+        Factorial comes after the number or bracket it works on and binds tighter than anything
+     */
+    FACTORIAL('!', 6, true, false, true),
+    NONE('\u0000', 0),
+    /*
+        Slots for binary operators defined at startup through OperatorRegistry, they have no symbol
+        and aren't operators at all until they're defined. What they're defined as is kept by
+        OperatorRegistry, the constants themselves never change.
+     */
+    USER_1,
+    USER_2,
+    USER_3,
+    USER_4,
+    USER_5,
+    USER_6;
+
+    /*
+        Cached copy of values(), values() clones the array on every call
+     */
+    private static final MathOperator[] VALUES = values();
+
+    private final char symbol;
+    /*
+        How tightly the operator binds, higher is evaluated first, zero for anything that isn't a
+        binary operator
+     */
+    private final int precedence;
+    /*
+        Whether the operator is a function of the single operand after it
+     */
+    private final boolean unary;
+    /*
+        Whether a run of the operator groups from the right, so 2^3^2 is 2^(3^2)
+     */
+    private final boolean rightAssociative;
+    /*
+        Whether a unary operator comes after its operand rather than before it
+     */
+    private final boolean postfix;
+    /*
+        Whether the operator is a user slot, which reads what it is from OperatorRegistry
+     */
+    private final boolean userSlot;
+
+    /**
+     * A user slot, a binary operator once it's defined
+     */
+    MathOperator() {
+        this.symbol = '\u0000';
+        this.precedence = 0;
+        this.unary = false;
+        this.rightAssociative = false;
+        this.postfix = false;
+        this.userSlot = true;
+    }
+
+    MathOperator(char symbol, int precedence) {
+        this(symbol, precedence, false, false);
+    }
+
+    MathOperator(char symbol, int precedence, boolean unary, boolean rightAssociative) {
+        this(symbol, precedence, unary, rightAssociative, false);
+    }
+
+    MathOperator(char symbol, int precedence, boolean unary, boolean rightAssociative,
+                 boolean postfix) {
         this.symbol = symbol;
+        this.precedence = precedence;
+        this.unary = unary;
+        this.rightAssociative = rightAssociative;
+        this.postfix = postfix;
+        this.userSlot = false;
     }
 
     public char getSymbol() {
-        return symbol;
+        return userSlot ? OperatorRegistry.getSymbol(this) : symbol;
+    }
+
+    public int getPrecedence() {
+        return userSlot ? OperatorRegistry.getPrecedence(this) : precedence;
+    }
+
+    /**
+     * Whether the operator sits between two numbers, brackets, functions and NONE don't
+     *
+     * @return true for binary operators
+     */
+    public boolean isBinary() {
+        return getPrecedence() > 0 && !unary;
+    }
+
+    /**
+     * Whether the operator is a function of a single operand, such as sin or !
+     *
+     * @return true for functions
+     */
+    public boolean isUnary() {
+        return unary;
+    }
+
+    /**
+     * Whether the operator is a function typed before its operand, such as sin
+     *
+     * @return true for functions other than the postfix ones
+     */
+    public boolean isPrefix() {
+        return unary && !postfix;
+    }
+
+    /**
+     * Whether the operator is a function typed after its operand, such as !
+     *
+     * @return true for postfix functions
+     */
+    public boolean isPostfix() {
+        return postfix;
+    }
+
+    public boolean isRightAssociative() {
+        return userSlot ? OperatorRegistry.isRightAssociative(this) : rightAssociative;
+    }
+
+    /**
+     * Whether the operator is one of the slots for operators defined through
+     * {@link OperatorRegistry}, whether or not it's been defined
+     *
+     * @return true for the user slots
+     */
+    public boolean isUserDefined() {
+        return userSlot;
+    }
+
+    /**
+     * Gets the operator from its ordinal without the array copy values() makes
+     *
+     * @param ordinal ordinal of the operator
+     * @return the operator
+     */
+    static MathOperator fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
     }
 
+    /**
+     * Gets the operator typed as a character, a single table lookup through
+     * {@link OperatorRegistry#fromSymbol(char)} that includes any user defined operators
+     *
+     * @param symbol the character
+     * @return the operator, or NONE if the character isn't one
+     */
     public static MathOperator getEnumFromCharacter(char symbol) {
-        switch (symbol) {
-            case '+': return PLUS;
-            case '-': return MINUS;
-            case '×': return MULTIPLY;
-            case '÷': return DIVIDE;
-            case '%': return PERCENTAGE;
-            case '(': return LEFT_BRACKET;
-            case ')': return RIGHT_BRACKET;
-            default: return NONE;
-        }
+        return OperatorRegistry.fromSymbol(symbol);
     }
 }
@@ -0,0 +1,284 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.util.Arrays;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class OperandBuilder {
+    /*
+        Characters the text has room for before it needs to grow, enough for any typed number
+     */
+    private static final int INITIAL_CAPACITY = 32;
+    /*
+        Text of the numbers that aren't made of digits, as Double.toString writes them
+     */
+    private static final String INFINITY = "Infinity";
+    private static final String NAN = "NaN";
+
+    /*
+        Text of the operand as it was typed
+     */
+    private char[] text;
+    private int length;
+    /*
+        Value of the digits typed so far with the decimal point ignored, and how many of them come
+        after the point. Only kept up to date while the text is plain.
+     */
+    private long mantissa;
+    private int scale;
+    private int digitCount;
+    private boolean negative;
+    private boolean point;
+    /*
+        Whether the digits no longer fit in the mantissa
+     */
+    private boolean overflow;
+    /*
+        Whether the text is a plain number, an optional minus, digits and at most one decimal
+        point. Anything else, such as a total in scientific notation, is parsed when it's needed.
+     */
+    private boolean plain;
+
+    /**
+     * Builds up a number one typed character at a time. The mantissa, decimal scale and sign are
+     * kept as each character arrives so adding a digit is O(1) and nothing is parsed, and the
+     * value is only worked out as a double when it's asked for. Numbers with up to 15 or so
+     * digits are converted with a single exact division, anything longer falls back to
+     * Double.parseDouble so the double is always correctly rounded.
+     */
+    public OperandBuilder() {
+        text = new char[INITIAL_CAPACITY];
+
+        reset();
+    }
+
+    /**
+     * Empties the operand, ready for the next number
+     */
+    public void reset() {
+        length = 0;
+        mantissa = 0;
+        scale = 0;
+        digitCount = 0;
+        negative = false;
+        point = false;
+        overflow = false;
+        plain = true;
+    }
+
+    /**
+     * Adds a character to the end of the operand. A decimal point with no digits before it gets a
+     * zero in front, so the text reads "0." the way it's shown in the preview.
+     *
+     * @param character a digit, decimal point or a leading minus
+     */
+    public void append(char character) {
+        if(character == '.' && plain && !point && digitCount == 0) {
+            append('0');
+        }
+
+        if(length == text.length) {
+            text = Arrays.copyOf(text, length * 2);
+        }
+
+        text[length++] = character;
+
+        scan(character, length - 1);
+    }
+
+    /**
+     * Adds every character of some text to the end of the operand, for numbers that weren't typed
+     * such as a total
+     */
+    public void append(CharSequence characters) {
+        for(int i = 0; i < characters.length(); i++) {
+            append(characters.charAt(i));
+        }
+    }
+
+    /**
+     * Removes the last character, the operand is scanned again from the start as deleting is rare
+     * and operands are short
+     */
+    public void deleteLast() {
+        if(length == 0) {
+            return;
+        }
+
+        int remaining = length - 1;
+
+        reset();
+
+        for(int i = 0; i < remaining; i++) {
+            scan(text[i], i);
+        }
+
+        length = remaining;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Whether the operand is a number rather than nothing or just a minus sign, which could still
+     * turn out to be a subtraction. Text that isn't plain, such as a total that's been edited, is
+     * checked against the number formats Double.parseDouble reads, so nothing has to be parsed
+     * and caught to find out.
+     *
+     * @return true if there's a value to convert
+     */
+    public boolean isNumber() {
+        return plain ? digitCount > 0 : isNumberText();
+    }
+
+    public boolean hasPoint() {
+        return point;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        return text[index];
+    }
+
+    /**
+     * Converts the operand to the closest double. Most typed numbers take the fast path: a
+     * mantissa up to 2^53 and a power of ten up to 10^22 are both exact doubles, so dividing one
+     * by the other is correctly rounded.
+     *
+     * @return the value of the operand, NaN if it isn't a number
+     */
+    public double doubleValue() {
+        if(!isNumber()) {
+            return Double.NaN;
+        }
+
+        if(plain && !overflow && mantissa <= ExactMath.MAX_EXACT_DOUBLE_INTEGER
+                && scale < ExactMath.DOUBLE_POWERS_OF_TEN.length) {
+            double value = mantissa / ExactMath.DOUBLE_POWERS_OF_TEN[scale];
+
+            // Keeps the sign of -0
+            return negative ? -value : value;
+        }
+
+        return Double.parseDouble(toString());
+    }
+
+    @Override
+    public String toString() {
+        return new String(text, 0, length);
+    }
+
+    /**
+     * Whether the whole text is a number: an optional minus then either digits with an optional
+     * decimal point and exponent, Infinity or NaN
+     */
+    private boolean isNumberText() {
+        int index = length > 0 && text[0] == '-' ? 1 : 0;
+
+        if(matches(index, INFINITY) || matches(index, NAN)) {
+            return true;
+        }
+
+        int digitsEnd = skipDigits(index);
+        int digits = digitsEnd - index;
+
+        index = digitsEnd;
+
+        if(index < length && text[index] == '.') {
+            digitsEnd = skipDigits(index + 1);
+            digits += digitsEnd - index - 1;
+            index = digitsEnd;
+        }
+
+        if(digits == 0) {
+            return false;
+        }
+
+        if(index < length && (text[index] == 'E' || text[index] == 'e')) {
+            index++;
+
+            if(index < length && (text[index] == '-' || text[index] == '+')) {
+                index++;
+            }
+
+            digitsEnd = skipDigits(index);
+
+            if(digitsEnd == index) {
+                return false;
+            }
+
+            index = digitsEnd;
+        }
+
+        return index == length;
+    }
+
+    /**
+     * Whether the text from an index to the end is exactly a word
+     */
+    private boolean matches(int index, String word) {
+        if(length - index != word.length()) {
+            return false;
+        }
+
+        for(int i = 0; i < word.length(); i++) {
+            if(text[index + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Index of the first character from an index on that isn't a digit
+     */
+    private int skipDigits(int index) {
+        while(index < length && text[index] >= '0' && text[index] <= '9') {
+            index++;
+        }
+
+        return index;
+    }
+
+    /**
+     * Updates the mantissa, scale and sign for a character that's just been added
+     *
+     * @param character the character
+     * @param index where it is in the text
+     */
+    private void scan(char character, int index) {
+        if(!plain) {
+            // A decimal point anywhere in the text still counts, so a second one isn't typed
+            point |= character == '.';
+            return;
+        }
+
+        if(character >= '0' && character <= '9') {
+            int digit = character - '0';
+
+            if(overflow || mantissa > (Long.MAX_VALUE - digit) / 10) {
+                overflow = true;
+            } else {
+                mantissa = mantissa * 10 + digit;
+            }
+
+            if(point) {
+                scale++;
+            }
+
+            digitCount++;
+        } else if(character == '.' && !point) {
+            point = true;
+        } else if(character == '-' && index == 0) {
+            negative = true;
+        } else {
+            plain = false;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public interface OperatorKernel {
+    /**
+     * Works out a user defined binary operator. A result that isn't a finite number is reported as
+     * an error at the operator, the same as it is for the built in ones.
+     *
+     * @param left number on the left of the operator
+     * @param right number on the right of the operator
+     * @return the result
+     */
+    double apply(double left, double right);
+}
@@ -0,0 +1,213 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import com.ryanairth.mathsheetcalculator.Util.Logger;
+
+import static com.ryanairth.mathsheetcalculator.Util.Logger.TAG;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class OperatorRegistry {
+    /*
+        Symbols are looked up in pages of 256 characters picked by the high byte, only the pages
+        that hold a symbol are made so the whole char range costs a few pages
+     */
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final MathOperator[][] PAGES = new MathOperator[(Character.MAX_VALUE + 1)
+            >> PAGE_SHIFT][];
+
+    /*
+        Precedences a user defined operator can have, from binding like + to binding like ^
+     */
+    public static final int MIN_PRECEDENCE = MathOperator.PLUS.getPrecedence();
+    public static final int MAX_PRECEDENCE = MathOperator.POWER.getPrecedence();
+
+    private static final MathOperator[] VALUES = MathOperator.values();
+    /*
+        Kernels and names of the operators indexed by ordinal. Built in operators have no kernel,
+        BlockProgram works them out itself.
+     */
+    private static final OperatorKernel[] KERNELS = new OperatorKernel[VALUES.length];
+    private static final String[] NAMES = new String[VALUES.length];
+    /*
+        What each user slot has been defined as, indexed by ordinal, read by MathOperator's
+        getters for the slots
+     */
+    private static final char[] SYMBOLS = new char[VALUES.length];
+    private static final int[] PRECEDENCES = new int[VALUES.length];
+    private static final boolean[] RIGHT_ASSOCIATIVE = new boolean[VALUES.length];
+    private static final int FIRST_SLOT = MathOperator.USER_1.ordinal();
+    /*
+        Next user slot to define
+     */
+    private static int nextSlot = FIRST_SLOT;
+    /*
+        Set once startup is over, nothing can be defined after it
+     */
+    private static volatile boolean frozen;
+
+    static {
+        for(MathOperator operator : VALUES) {
+            NAMES[operator.ordinal()] = operator.name();
+
+            if(operator != MathOperator.NONE && !operator.isUserDefined()) {
+                put(operator.getSymbol(), operator);
+            }
+        }
+    }
+
+    /**
+     * Every operator the calculator knows, the built in ones and any defined at startup. Symbols
+     * are found with a lookup in a dense table rather than a switch, and user defined operators
+     * take one of the spare {@link MathOperator} slots, so the blocks, the compiled program and
+     * everything tracking them treat them like any other binary operator. Only their arithmetic
+     * goes through here, as a kernel in an array indexed by ordinal, the built in operators are
+     * worked out inline by {@link BlockProgram} so their path never goes through an interface.
+     *
+     * Operators must be defined on the main thread while the app starts, in
+     * Application.onCreate, and the registry then frozen with {@link #freeze()}. The tables are
+     * read without locking from then on. The main thread sees what it wrote, and the engine
+     * thread is started after onCreate, so Thread.start() is the happens-before edge that
+     * publishes the tables to it. Freezing makes a late definition, which nothing would publish,
+     * fail rather than race with the readers.
+     */
+    private OperatorRegistry() {
+    }
+
+    /**
+     * Defines a binary operator
+     *
+     * @param name name of the operator, for logging
+     * @param symbol the character typed for it, not a digit, a decimal point, equals, whitespace or
+     *               the symbol of another operator
+     * @param precedence how tightly it binds, from {@link #MIN_PRECEDENCE} to
+     *                   {@link #MAX_PRECEDENCE}
+     * @param rightAssociative whether a run of it groups from the right, as ^ does
+     * @param kernel works out the operator
+     * @return the operator slot it was given
+     * @throws IllegalStateException if the registry is frozen or there are no slots left
+     */
+    public static MathOperator register(String name, char symbol, int precedence,
+                                        boolean rightAssociative, OperatorKernel kernel) {
+        if(frozen) {
+            throw new IllegalStateException("Operators can only be defined while the app starts, "
+                    + "found: " + name);
+        }
+
+        if(name == null || kernel == null) {
+            throw new IllegalArgumentException("Operator needs a name and a kernel");
+        }
+
+        if(symbol == '\u0000' || symbol == '.' || symbol == '=' || Character.isDigit(symbol)
+                || Character.isWhitespace(symbol) || fromSymbol(symbol) != MathOperator.NONE) {
+            throw new IllegalArgumentException("Symbol can't be used for an operator: " + symbol);
+        }
+
+        if(precedence < MIN_PRECEDENCE || precedence > MAX_PRECEDENCE) {
+            throw new IllegalArgumentException("Precedence must be between " + MIN_PRECEDENCE
+                    + " and " + MAX_PRECEDENCE + ", precedence: " + precedence);
+        }
+
+        if(nextSlot == VALUES.length) {
+            throw new IllegalStateException("No operator slots left for " + name);
+        }
+
+        MathOperator operator = VALUES[nextSlot++];
+        int ordinal = operator.ordinal();
+
+        SYMBOLS[ordinal] = symbol;
+        PRECEDENCES[ordinal] = precedence;
+        RIGHT_ASSOCIATIVE[ordinal] = rightAssociative;
+        KERNELS[ordinal] = kernel;
+        NAMES[ordinal] = name;
+        put(symbol, operator);
+
+        Logger.i(TAG, "Operator defined: ", name);
+
+        return operator;
+    }
+
+    /**
+     * Ends startup, any operator defined after this throws. Called on the main thread once the
+     * app's operators are defined, before any calculator is made.
+     */
+    public static void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Takes every user defined operator away and unfreezes the registry, for tests. Must not be
+     * called while anything could be reading the tables.
+     */
+    static void reset() {
+        for(int ordinal = FIRST_SLOT; ordinal < nextSlot; ordinal++) {
+            char symbol = SYMBOLS[ordinal];
+
+            PAGES[symbol >>> PAGE_SHIFT][symbol & PAGE_MASK] = null;
+            SYMBOLS[ordinal] = '\u0000';
+            PRECEDENCES[ordinal] = 0;
+            RIGHT_ASSOCIATIVE[ordinal] = false;
+            KERNELS[ordinal] = null;
+            NAMES[ordinal] = VALUES[ordinal].name();
+        }
+
+        nextSlot = FIRST_SLOT;
+        frozen = false;
+    }
+
+    /**
+     * Gets the operator typed as a character
+     *
+     * @param symbol the character
+     * @return the operator, or NONE if the character isn't one
+     */
+    public static MathOperator fromSymbol(char symbol) {
+        MathOperator[] page = PAGES[symbol >>> PAGE_SHIFT];
+        MathOperator operator = page != null ? page[symbol & PAGE_MASK] : null;
+
+        return operator != null ? operator : MathOperator.NONE;
+    }
+
+    /**
+     * The name of an operator, the one it was registered with for user defined operators
+     */
+    public static String getName(MathOperator operator) {
+        return NAMES[operator.ordinal()];
+    }
+
+    static char getSymbol(MathOperator slot) {
+        return SYMBOLS[slot.ordinal()];
+    }
+
+    static int getPrecedence(MathOperator slot) {
+        return PRECEDENCES[slot.ordinal()];
+    }
+
+    static boolean isRightAssociative(MathOperator slot) {
+        return RIGHT_ASSOCIATIVE[slot.ordinal()];
+    }
+
+    /**
+     * Works out a user defined operator
+     *
+     * @param ordinal ordinal of the operator
+     * @param left number on the left of the operator
+     * @param right number on the right of the operator
+     * @return the result
+     */
+    static double apply(int ordinal, double left, double right) {
+        return KERNELS[ordinal].apply(left, right);
+    }
+
+    private static void put(char symbol, MathOperator operator) {
+        int page = symbol >>> PAGE_SHIFT;
+
+        if(PAGES[page] == null) {
+            PAGES[page] = new MathOperator[PAGE_SIZE];
+        }
+
+        PAGES[page][symbol & PAGE_MASK] = operator;
+    }
+}
@@ -0,0 +1,94 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class PreciseTotalTask implements Callable<Number> {
+    /*
+        Snapshot of the blocks when the task was made, final so handing the task over publishes it
+     */
+    private final BlockBuffer blocks;
+    /*
+        Executor for the precision mode, only ever used by this task
+     */
+    private final ProgramExecutor executor;
+
+    /*
+        Result cache key of the blocks
+     */
+    private final long hash;
+    private final long check;
+    private final int length;
+
+    /**
+     * Works out a precise total away from the blocks it came from, so it can run on a background
+     * thread while the user carries on typing. Made by {@link BlockEvaluator#createPreciseTotalTask()}.
+     *
+     * @param blocks snapshot of the blocks, nothing else writes to it
+     * @param executor executor for the precision mode, not shared with anything else
+     * @param hash primary hash of the blocks
+     * @param check secondary hash of the blocks, salted for the precision mode
+     * @param length number of blocks
+     */
+    PreciseTotalTask(BlockBuffer blocks, ProgramExecutor executor, long hash, long check,
+                     int length) {
+        this.blocks = blocks;
+        this.executor = executor;
+        this.hash = hash;
+        this.check = check;
+        this.length = length;
+    }
+
+    /**
+     * Compiles and runs the blocks in the precision mode
+     *
+     * @return the precise total, the double total if the mode can't represent it or null if the
+     * task was cancelled. The double total is only worked out when it's needed, here rather than
+     * when the task was made.
+     */
+    @Override
+    public Number call() {
+        BlockProgram program = new BlockProgram(blocks);
+        Number total = executor.execute(program);
+
+        if(executor.isCancelled()) {
+            return null;
+        }
+
+        return total == null ? program.execute(FunctionMode.STRICT) : total;
+    }
+
+    /**
+     * Stops the task between steps of the program, safe to call from any thread. A task that's
+     * been cancelled gives null.
+     */
+    public void cancel() {
+        executor.cancel();
+    }
+
+    /**
+     * Stops the task between steps of the program once input newer than a generation has been
+     * queued, it then gives null the same as a cancelled task. Must be set before the task is
+     * handed to the thread that runs it.
+     *
+     * @param generations generation of the newest input
+     * @param generation generation of the input the total is for
+     */
+    public void setGeneration(InputGeneration generations, long generation) {
+        executor.setGeneration(generations, generation);
+    }
+
+    long getHash() {
+        return hash;
+    }
+
+    long getCheck() {
+        return check;
+    }
+
+    int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,26 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public enum PrecisionMode {
+    /*
+        Plain double arithmetic, the fastest and the default
+     */
+    DOUBLE,
+    /*
+        Decimal arithmetic, exact in longs where possible and BigDecimal under the evaluator's
+        MathContext otherwise
+     */
+    DECIMAL,
+    /*
+        Exact fractions, in longs where possible and BigInteger otherwise, so division never
+        rounds until the result is shown
+     */
+    RATIONAL,
+    /*
+        Longs counting a fixed number of decimal places, such as whole cents, with banker's
+        rounding whenever a result has more places
+     */
+    FIXED_POINT
+}
@@ -0,0 +1,384 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.FIRST_UNARY_OPCODE;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OPCODE_MASK;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OPERAND_SHIFT;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_COMBINATION;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_FACTORIAL;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_GAMMA;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_PERMUTATION;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_PUSH;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_PUSH_ZERO;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public abstract class ProgramExecutor {
+    /*
+        Largest whole exponent worked out exactly by repeated multiplication, anything bigger goes
+        through double
+     */
+    static final int MAX_EXACT_EXPONENT = 999;
+    /*
+        Largest operand of nPr and nCr worked out exactly, so the products can be done on longs
+     */
+    private static final BigInteger MAX_EXACT_OPERAND = BigInteger.valueOf(Long.MAX_VALUE >> 1);
+
+    /*
+        Set from another thread to stop a run between instructions
+     */
+    private volatile boolean cancelled;
+    /*
+        Generation of the input the run is for and the generation of the newest input, a run
+        stops once newer input has been queued. Null if the run is never superseded.
+     */
+    private InputGeneration generations;
+    private long generation;
+
+    /**
+     * Runs a compiled {@link BlockProgram} in a number type other than double. Each executor has a
+     * fast path on primitives that says when it can't keep a result exact, at which point the
+     * whole program is run again on the slow path with objects.
+     */
+    protected ProgramExecutor() {
+    }
+
+    /**
+     * Compiles the program if needed and runs it, on the fast path if every step of it can be
+     * done there
+     *
+     * @param program the program to run
+     * @return the result, or null if the result can't be represented by this executor (such as a
+     * division by zero)
+     */
+    public Number execute(BlockProgram program) {
+        program.compile();
+
+        if(!program.hasOperand()) {
+            return zero();
+        }
+
+        if(executeFast(program)) {
+            return fastResult();
+        }
+
+        double[] values = program.getBuffer().getValueArray();
+
+        resetSlow();
+
+        if(!runSlow(program.getCode(), program.getCodeLength(), values)
+                || !runSlow(program.getTail(), program.getTailLength(), values)) {
+            return null;
+        }
+
+        return slowResult();
+    }
+
+    /**
+     * Compiles the program if needed and runs it on the fast path only, which doesn't make any
+     * objects
+     *
+     * @param program the program to run
+     * @return true if the program has an operand and every step of it could be done on the fast
+     * path, the result is then on top of the fast path stack
+     */
+    protected boolean executeFast(BlockProgram program) {
+        program.compile();
+
+        if(!program.hasOperand()) {
+            return false;
+        }
+
+        double[] values = program.getBuffer().getValueArray();
+
+        resetFast();
+
+        return runFast(program.getCode(), program.getCodeLength(), values)
+                && runFast(program.getTail(), program.getTailLength(), values);
+    }
+
+    /**
+     * Stops any run of this executor at the next instruction, the run gives no result. Safe to
+     * call from any thread, the executor stays cancelled.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Has runs stop at the next instruction once input newer than a generation has been queued,
+     * the same as if they'd been cancelled. Must be set before the executor is handed to the
+     * thread that runs it.
+     *
+     * @param generations generation of the newest input
+     * @param generation generation of the input the runs are for
+     */
+    public void setGeneration(InputGeneration generations, long generation) {
+        this.generations = generations;
+        this.generation = generation;
+    }
+
+    /**
+     * Whether runs have been stopped, by {@link #cancel()} or by newer input
+     */
+    public boolean isCancelled() {
+        return cancelled || (generations != null && generations.isNewerThan(generation));
+    }
+
+    private boolean runFast(int[] instructions, int length, double[] values) {
+        for(int pc = 0; pc < length; pc++) {
+            int instruction = instructions[pc];
+            int opcode = instruction & OPCODE_MASK;
+            boolean done;
+
+            if(isCancelled()) {
+                return false;
+            }
+
+            if(opcode == OP_PUSH) {
+                done = pushFast(values[instruction >>> OPERAND_SHIFT]);
+            } else if(opcode == OP_PUSH_ZERO) {
+                done = pushFast(0.0);
+            } else {
+                done = applyFast(opcode);
+            }
+
+            if(!done) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Runs a list of instructions on the slow path
+     *
+     * @return false if a number or a result can't be represented, the run stops there
+     */
+    private boolean runSlow(int[] instructions, int length, double[] values) {
+        for(int pc = 0; pc < length; pc++) {
+            int instruction = instructions[pc];
+            int opcode = instruction & OPCODE_MASK;
+
+            if(isCancelled()) {
+                return false;
+            }
+
+            if(opcode == OP_PUSH) {
+                double value = values[instruction >>> OPERAND_SHIFT];
+
+                if(!BlockProgram.isFinite(value)) {
+                    return false;
+                }
+
+                pushSlow(value);
+            } else if(opcode == OP_PUSH_ZERO) {
+                pushSlow(0.0);
+            } else if(!applySlow(opcode)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether an opcode is a function of the single number on top of the stack rather than an
+     * operation on the top two
+     */
+    protected static boolean isUnary(int opcode) {
+        return opcode >= FIRST_UNARY_OPCODE;
+    }
+
+    /**
+     * Works out a binary opcode in double with StrictMath, for operations an executor can't do
+     * exactly such as a fractional power
+     *
+     * @return the result, or null if it isn't a finite number
+     */
+    protected static BigDecimal performStrict(double left, double right, int opcode) {
+        return toDecimal(BlockProgram.performMathOperation(left, right, opcode, false));
+    }
+
+    /**
+     * Works out a unary opcode in double with StrictMath, for functions such as sin that have no
+     * exact result
+     *
+     * @return the result, or null if it isn't a finite number
+     */
+    protected static BigDecimal performStrictFunction(double value, int opcode) {
+        return toDecimal(BlockProgram.performFunction(value, opcode, false));
+    }
+
+    /**
+     * valueOf goes through the shortest string for the double, it can't take NaN or infinity so
+     * those are checked first rather than caught
+     */
+    private static BigDecimal toDecimal(double value) {
+        return BlockProgram.isFinite(value) ? BigDecimal.valueOf(value) : null;
+    }
+
+    /**
+     * The exponent as an int if it's a whole number small enough to raise to exactly
+     *
+     * @return the exponent, or Integer.MIN_VALUE if it isn't whole or is too big
+     */
+    protected static int wholeExponent(BigDecimal exponent) {
+        if(exponent.signum() != 0 && exponent.stripTrailingZeros().scale() > 0) {
+            return Integer.MIN_VALUE;
+        }
+
+        if(exponent.abs().compareTo(BigDecimal.valueOf(MAX_EXACT_EXPONENT)) > 0) {
+            return Integer.MIN_VALUE;
+        }
+
+        return exponent.intValue();
+    }
+
+    /**
+     * Works out factorial or gamma of a whole number in a long, for the fast paths
+     *
+     * @return the result, or -1 if it's not one of those opcodes, the number is negative or the
+     * result doesn't fit in a long
+     */
+    protected static long longFunction(long value, int opcode) {
+        if(opcode == OP_GAMMA) {
+            // Γ(n) = (n - 1)!
+            value--;
+        } else if(opcode != OP_FACTORIAL) {
+            return -1;
+        }
+
+        if(value < 0 || value > Combinatorics.MAX_LONG_FACTORIAL) {
+            return -1;
+        }
+
+        return Combinatorics.longFactorial((int) value);
+    }
+
+    /**
+     * Works out nPr or nCr of two whole numbers in a long, for the fast paths
+     *
+     * @return the result, or -1 if it's not one of those opcodes, either number is negative or the
+     * result doesn't fit in a long
+     */
+    protected static long longOperation(long left, long right, int opcode) {
+        if((opcode != OP_PERMUTATION && opcode != OP_COMBINATION) || left < 0 || right < 0) {
+            return -1;
+        }
+
+        return opcode == OP_PERMUTATION ? Combinatorics.longPermutations(left, right)
+                : Combinatorics.longCombinations(left, right);
+    }
+
+    /**
+     * Works out factorial or gamma of a whole number exactly, as long as it takes no more than
+     * {@link Combinatorics#MAX_EXACT_FACTORS} multiplications
+     *
+     * @return the result, or null if it has to be worked out in double instead
+     */
+    protected static BigInteger exactFunction(BigInteger value, int opcode) {
+        if(opcode == OP_GAMMA) {
+            value = value.subtract(BigInteger.ONE);
+        } else if(opcode != OP_FACTORIAL) {
+            return null;
+        }
+
+        if(value.signum() < 0
+                || value.compareTo(BigInteger.valueOf(Combinatorics.MAX_EXACT_FACTORS)) > 0) {
+            return null;
+        }
+
+        return Combinatorics.exactFactorial(value.intValue());
+    }
+
+    /**
+     * Works out nPr or nCr of two whole numbers exactly, as long as it takes no more than
+     * {@link Combinatorics#MAX_EXACT_FACTORS} multiplications
+     *
+     * @return the result, or null if it has to be worked out in double instead
+     */
+    protected static BigInteger exactOperation(BigInteger left, BigInteger right, int opcode) {
+        if((opcode != OP_PERMUTATION && opcode != OP_COMBINATION) || left.signum() < 0
+                || right.signum() < 0 || left.compareTo(MAX_EXACT_OPERAND) > 0) {
+            return null;
+        }
+
+        if(right.compareTo(left) > 0) {
+            return BigInteger.ZERO;
+        }
+
+        long n = left.longValue();
+        long r = right.longValue();
+        // nCr only needs the smaller of r and n - r factors
+        long factors = opcode == OP_PERMUTATION ? r : Math.min(r, n - r);
+
+        if(factors > Combinatorics.MAX_EXACT_FACTORS) {
+            return null;
+        }
+
+        return opcode == OP_PERMUTATION ? Combinatorics.exactPermutations(n, r)
+                : Combinatorics.exactCombinations(n, r);
+    }
+
+    /**
+     * A decimal as a BigInteger if it's a whole number that factorial, nPr or nCr could work on
+     * exactly
+     *
+     * @return the whole number, or null if it isn't whole or is too big
+     */
+    protected static BigInteger wholeOperand(BigDecimal value) {
+        if(value.signum() != 0 && value.stripTrailingZeros().scale() > 0) {
+            return null;
+        }
+
+        // Checked before converting, a number such as 1E+100000 would make a huge BigInteger
+        if(value.abs().compareTo(new BigDecimal(MAX_EXACT_OPERAND)) > 0) {
+            return null;
+        }
+
+        return value.toBigInteger();
+    }
+
+    /**
+     * Result of an empty program
+     */
+    protected abstract Number zero();
+
+    protected abstract void resetFast();
+
+    /**
+     * Pushes a number onto the fast path stack
+     *
+     * @return false if the number can't be held exactly on the fast path
+     */
+    protected abstract boolean pushFast(double value);
+
+    /**
+     * Applies an opcode to the fast path stack, a binary opcode to the top two numbers and a unary
+     * one to the top number
+     *
+     * @return false if the result can't be held exactly on the fast path
+     */
+    protected abstract boolean applyFast(int opcode);
+
+    protected abstract Number fastResult();
+
+    protected abstract void resetSlow();
+
+    protected abstract void pushSlow(double value);
+
+    /**
+     * Applies an opcode to the slow path stack, a binary opcode to the top two numbers and a unary
+     * one to the top number
+     *
+     * @return false if the result can't be represented, such as a division by zero
+     */
+    protected abstract boolean applySlow(int opcode);
+
+    protected abstract Number slowResult();
+}
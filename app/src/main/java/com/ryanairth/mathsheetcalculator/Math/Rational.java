@@ -0,0 +1,275 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class Rational extends Number implements Comparable<Rational> {
+    private static final long serialVersionUID = 1L;
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    public static final Rational ZERO = new Rational(0, 1);
+    public static final Rational ONE = new Rational(1, 1);
+
+    /*
+        Numerator and denominator while they fit in a long, the denominator is always positive
+     */
+    private final long numerator;
+    private final long denominator;
+    /*
+        Numerator and denominator once either doesn't fit in a long, null otherwise
+     */
+    private final BigInteger bigNumerator;
+    private final BigInteger bigDenominator;
+
+    /**
+     * Exact fraction in lowest terms, held in two longs and only in BigIntegers once it outgrows
+     * them. Use {@link #valueOf(long, long)} or {@link #valueOf(BigInteger, BigInteger)} to make one.
+     */
+    private Rational(long numerator, long denominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+        bigNumerator = null;
+        bigDenominator = null;
+    }
+
+    private Rational(BigInteger numerator, BigInteger denominator) {
+        this.numerator = 0;
+        this.denominator = 0;
+        bigNumerator = numerator;
+        bigDenominator = denominator;
+    }
+
+    /**
+     * Makes the fraction numerator / denominator in lowest terms
+     *
+     * @throws ArithmeticException if the denominator is zero
+     */
+    public static Rational valueOf(long numerator, long denominator) {
+        if(denominator == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+
+        // Negating MIN_VALUE overflows, leave those to BigInteger
+        if(numerator == Long.MIN_VALUE || denominator == Long.MIN_VALUE) {
+            return valueOf(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));
+        }
+
+        if(denominator < 0) {
+            numerator = -numerator;
+            denominator = -denominator;
+        }
+
+        long gcd = gcd(Math.abs(numerator), denominator);
+
+        return new Rational(numerator / gcd, denominator / gcd);
+    }
+
+    /**
+     * Makes the fraction numerator / denominator in lowest terms, held in longs if it fits
+     *
+     * @throws ArithmeticException if the denominator is zero
+     */
+    public static Rational valueOf(BigInteger numerator, BigInteger denominator) {
+        if(denominator.signum() == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+
+        if(denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+
+        BigInteger gcd = numerator.gcd(denominator);
+
+        if(!gcd.equals(BigInteger.ONE)) {
+            numerator = numerator.divide(gcd);
+            denominator = denominator.divide(gcd);
+        }
+
+        if(fitsInLong(numerator) && fitsInLong(denominator)) {
+            return new Rational(numerator.longValue(), denominator.longValue());
+        }
+
+        return new Rational(numerator, denominator);
+    }
+
+    /**
+     * Makes the exact fraction of a decimal
+     */
+    public static Rational valueOf(BigDecimal decimal) {
+        BigInteger unscaled = decimal.unscaledValue();
+        int scale = decimal.scale();
+
+        if(scale <= 0) {
+            return valueOf(unscaled.multiply(BigInteger.TEN.pow(-scale)), BigInteger.ONE);
+        }
+
+        return valueOf(unscaled, BigInteger.TEN.pow(scale));
+    }
+
+    /**
+     * Greatest common divisor of two non-negative longs by the binary (Stein's) algorithm, which
+     * only shifts and subtracts. gcd(0, 0) is 1 so that it's always safe to divide by.
+     */
+    static long gcd(long a, long b) {
+        if(a == 0) {
+            return b == 0 ? 1 : b;
+        }
+
+        if(b == 0) {
+            return a;
+        }
+
+        int aZeros = Long.numberOfTrailingZeros(a);
+        int bZeros = Long.numberOfTrailingZeros(b);
+        // Powers of two both share
+        int shift = Math.min(aZeros, bZeros);
+
+        a >>>= aZeros;
+        b >>>= bZeros;
+
+        // Both odd from here, their difference is even so its factors of two can be dropped
+        while(a != b) {
+            if(a > b) {
+                a -= b;
+                a >>>= Long.numberOfTrailingZeros(a);
+            } else {
+                b -= a;
+                b >>>= Long.numberOfTrailingZeros(b);
+            }
+        }
+
+        return a << shift;
+    }
+
+    private static boolean fitsInLong(BigInteger value) {
+        // MIN_VALUE fits but is kept out of the longs so they can always be negated
+        return value.bitLength() < 64 && !value.equals(LONG_MIN);
+    }
+
+    /**
+     * Whether the fraction is held in longs rather than BigIntegers
+     */
+    public boolean isCompact() {
+        return bigNumerator == null;
+    }
+
+    public BigInteger getNumerator() {
+        return isCompact() ? BigInteger.valueOf(numerator) : bigNumerator;
+    }
+
+    public BigInteger getDenominator() {
+        return isCompact() ? BigInteger.valueOf(denominator) : bigDenominator;
+    }
+
+    public int signum() {
+        return isCompact() ? Long.signum(numerator) : bigNumerator.signum();
+    }
+
+    public boolean isInteger() {
+        return isCompact() ? denominator == 1 : bigDenominator.equals(BigInteger.ONE);
+    }
+
+    /**
+     * The fraction as a decimal, rounded to the given context if it doesn't terminate
+     *
+     * @param mathContext precision and rounding for fractions that don't terminate
+     * @return the decimal value
+     */
+    public BigDecimal toBigDecimal(MathContext mathContext) {
+        BigDecimal numerator = new BigDecimal(getNumerator());
+
+        if(isInteger()) {
+            return numerator;
+        }
+
+        return numerator.divide(new BigDecimal(getDenominator()), mathContext);
+    }
+
+    @Override
+    public double doubleValue() {
+        if(isCompact() && Math.abs(numerator) < ExactMath.MAX_EXACT_DOUBLE_INTEGER
+                && denominator < ExactMath.MAX_EXACT_DOUBLE_INTEGER) {
+            // Both parts are exact doubles so the division is correctly rounded
+            return (double) numerator / denominator;
+        }
+
+        return toBigDecimal(MathContext.DECIMAL64).doubleValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public long longValue() {
+        return isCompact() ? numerator / denominator : bigNumerator.divide(bigDenominator).longValue();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) longValue();
+    }
+
+    @Override
+    public int compareTo(Rational other) {
+        if(isCompact() && other.isCompact()
+                && !ExactMath.multiplyOverflows(numerator, other.denominator)
+                && !ExactMath.multiplyOverflows(other.numerator, denominator)) {
+            long left = numerator * other.denominator;
+            long right = other.numerator * denominator;
+
+            return left < right ? -1 : (left == right ? 0 : 1);
+        }
+
+        return getNumerator().multiply(other.getDenominator())
+                .compareTo(other.getNumerator().multiply(getDenominator()));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(!(other instanceof Rational)) {
+            return false;
+        }
+
+        Rational rational = (Rational) other;
+
+        // Both are in lowest terms and only held in BigIntegers when they don't fit in longs
+        if(isCompact() != rational.isCompact()) {
+            return false;
+        }
+
+        if(isCompact()) {
+            return numerator == rational.numerator && denominator == rational.denominator;
+        }
+
+        return bigNumerator.equals(rational.bigNumerator)
+                && bigDenominator.equals(rational.bigDenominator);
+    }
+
+    @Override
+    public int hashCode() {
+        if(isCompact()) {
+            long hash = numerator * 31 + denominator;
+
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        return bigNumerator.hashCode() * 31 + bigDenominator.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        if(isInteger()) {
+            return getNumerator().toString();
+        }
+
+        return getNumerator() + "/" + getDenominator();
+    }
+}
@@ -0,0 +1,380 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_ADD;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_COMBINATION;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_DIVIDE;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_MULTIPLY;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_PERCENTAGE;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_PERMUTATION;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_POWER;
+import static com.ryanairth.mathsheetcalculator.Math.BlockProgram.OP_SUBTRACT;
+import static com.ryanairth.mathsheetcalculator.Math.ExactMath.DOUBLE_POWERS_OF_TEN;
+import static com.ryanairth.mathsheetcalculator.Math.ExactMath.POWERS_OF_TEN;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class RationalExecutor extends ProgramExecutor {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final BigInteger ONE_HUNDRED = BigInteger.valueOf(100);
+    /*
+        Most bits an exact power can have before it's worked out in double instead
+     */
+    private static final long MAX_POWER_BITS = 1 << 20;
+
+    /*
+        Fast path stack, each number is numerator / denominator in lowest terms with a positive
+        denominator. Neither is ever Long.MIN_VALUE so both can always be negated.
+     */
+    private long[] numeratorStack;
+    private long[] denominatorStack;
+    private int fastPointer;
+
+    /*
+        Slow path stack, kept in lowest terms the same way
+     */
+    private BigInteger[] bigNumeratorStack;
+    private BigInteger[] bigDenominatorStack;
+    private int slowPointer;
+
+    /**
+     * Exact fraction arithmetic over a compiled program, so 1 ÷ 3 × 3 is exactly 1. Fractions are
+     * kept as two longs normalised with a binary GCD, which doesn't allocate. The first step that
+     * would overflow a long sends the whole program to the slow path, where the fractions are
+     * BigIntegers and can't overflow.
+     */
+    public RationalExecutor() {
+        numeratorStack = new long[INITIAL_CAPACITY];
+        denominatorStack = new long[INITIAL_CAPACITY];
+        bigNumeratorStack = new BigInteger[INITIAL_CAPACITY];
+        bigDenominatorStack = new BigInteger[INITIAL_CAPACITY];
+    }
+
+    @Override
+    protected Number zero() {
+        return Rational.ZERO;
+    }
+
+    @Override
+    protected void resetFast() {
+        fastPointer = 0;
+    }
+
+    @Override
+    protected boolean pushFast(double value) {
+        // The number the user typed is a decimal, unscaled / 10^scale
+        int scale = DecimalExecutor.findScale(value);
+
+        if(scale < 0) {
+            return false;
+        }
+
+        if(fastPointer == numeratorStack.length) {
+            numeratorStack = Arrays.copyOf(numeratorStack, fastPointer * 2);
+            denominatorStack = Arrays.copyOf(denominatorStack, fastPointer * 2);
+        }
+
+        fastPointer++;
+
+        return store((long) Math.rint(value * DOUBLE_POWERS_OF_TEN[scale]), POWERS_OF_TEN[scale]);
+    }
+
+    @Override
+    protected boolean applyFast(int opcode) {
+        int top = fastPointer - 1;
+
+        if(isUnary(opcode)) {
+            // Only factorials of whole numbers stay exact, other functions are worked out on the
+            // slow path
+            if(denominatorStack[top] != 1) {
+                return false;
+            }
+
+            long result = longFunction(numeratorStack[top], opcode);
+
+            return result >= 0 && store(result, 1);
+        }
+
+        long a = numeratorStack[top - 1];
+        long b = denominatorStack[top - 1];
+        long c = numeratorStack[top];
+        long d = denominatorStack[top];
+
+        fastPointer--;
+
+        switch (opcode) {
+            case OP_ADD:
+            case OP_SUBTRACT: {
+                if(opcode == OP_SUBTRACT) {
+                    c = -c;
+                }
+
+                // a/b + c/d over the least common denominator
+                long gcd = Rational.gcd(b, d);
+                long leftFactor = d / gcd;
+                long rightFactor = b / gcd;
+
+                if(ExactMath.multiplyOverflows(a, leftFactor)
+                        || ExactMath.multiplyOverflows(c, rightFactor)
+                        || ExactMath.multiplyOverflows(b, leftFactor)) {
+                    return false;
+                }
+
+                long left = a * leftFactor;
+                long right = c * rightFactor;
+
+                if(ExactMath.addOverflows(left, right)) {
+                    return false;
+                }
+
+                return store(left + right, b * leftFactor);
+            }
+            case OP_PERCENTAGE:
+                // (a/b / 100) * c/d, the hundred goes on the right so it's reduced with the left
+                if(ExactMath.multiplyOverflows(d, 100)) {
+                    return false;
+                }
+
+                d *= 100;
+                long gcd = Rational.gcd(Math.abs(c), d);
+                c /= gcd;
+                d /= gcd;
+
+                return multiply(a, b, c, d);
+            case OP_MULTIPLY:
+                return multiply(a, b, c, d);
+            case OP_DIVIDE:
+                if(c == 0) {
+                    // Left to the slow path, which reports it
+                    return false;
+                }
+
+                // a/b ÷ c/d is a/b × d/c, with the sign moved onto the numerator
+                return c < 0 ? multiply(a, b, -d, -c) : multiply(a, b, d, c);
+            case OP_PERMUTATION:
+            case OP_COMBINATION:
+                if(b != 1 || d != 1) {
+                    return false;
+                }
+
+                long result = longOperation(a, c, opcode);
+
+                return result >= 0 && store(result, 1);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Multiplies two fractions in lowest terms, cross reducing first so the result is in lowest
+     * terms and the products are as small as they can be
+     */
+    private boolean multiply(long a, long b, long c, long d) {
+        long leftGcd = Rational.gcd(Math.abs(a), d);
+        long rightGcd = Rational.gcd(Math.abs(c), b);
+
+        a /= leftGcd;
+        d /= leftGcd;
+        c /= rightGcd;
+        b /= rightGcd;
+
+        if(ExactMath.multiplyOverflows(a, c) || ExactMath.multiplyOverflows(b, d)) {
+            return false;
+        }
+
+        long numerator = a * c;
+        long denominator = b * d;
+
+        if(numerator == Long.MIN_VALUE || denominator == Long.MIN_VALUE) {
+            return false;
+        }
+
+        numeratorStack[fastPointer - 1] = numerator;
+        denominatorStack[fastPointer - 1] = denominator;
+
+        return true;
+    }
+
+    /**
+     * Reduces a fraction with a positive denominator and stores it on the top of the fast path
+     * stack
+     *
+     * @return false if it can't be held on the fast path
+     */
+    private boolean store(long numerator, long denominator) {
+        if(numerator == Long.MIN_VALUE) {
+            return false;
+        }
+
+        long gcd = Rational.gcd(Math.abs(numerator), denominator);
+
+        numeratorStack[fastPointer - 1] = numerator / gcd;
+        denominatorStack[fastPointer - 1] = denominator / gcd;
+
+        return true;
+    }
+
+    @Override
+    protected Number fastResult() {
+        return Rational.valueOf(numeratorStack[fastPointer - 1], denominatorStack[fastPointer - 1]);
+    }
+
+    @Override
+    protected void resetSlow() {
+        Arrays.fill(bigNumeratorStack, 0, slowPointer, null);
+        Arrays.fill(bigDenominatorStack, 0, slowPointer, null);
+        slowPointer = 0;
+    }
+
+    @Override
+    protected void pushSlow(double value) {
+        if(slowPointer == bigNumeratorStack.length) {
+            bigNumeratorStack = Arrays.copyOf(bigNumeratorStack, slowPointer * 2);
+            bigDenominatorStack = Arrays.copyOf(bigDenominatorStack, slowPointer * 2);
+        }
+
+        // valueOf goes through the shortest string for the double, which is what the user typed
+        Rational rational = Rational.valueOf(BigDecimal.valueOf(value));
+
+        bigNumeratorStack[slowPointer] = rational.getNumerator();
+        bigDenominatorStack[slowPointer] = rational.getDenominator();
+        slowPointer++;
+    }
+
+    @Override
+    protected boolean applySlow(int opcode) {
+        if(isUnary(opcode)) {
+            int top = slowPointer - 1;
+            BigInteger exact = bigDenominatorStack[top].equals(BigInteger.ONE)
+                    ? exactFunction(bigNumeratorStack[top], opcode) : null;
+
+            if(exact != null) {
+                bigNumeratorStack[top] = exact;
+                return true;
+            }
+
+            double value = Rational.valueOf(bigNumeratorStack[top], bigDenominatorStack[top]).doubleValue();
+
+            // Functions such as sin have no exact fraction, they're worked out in double
+            return storeSlow(top, performStrictFunction(value, opcode));
+        }
+
+        int top = --slowPointer;
+        BigInteger a = bigNumeratorStack[top - 1];
+        BigInteger b = bigDenominatorStack[top - 1];
+        BigInteger c = bigNumeratorStack[top];
+        BigInteger d = bigDenominatorStack[top];
+
+        bigNumeratorStack[top] = null;
+        bigDenominatorStack[top] = null;
+
+        BigInteger numerator;
+        BigInteger denominator;
+
+        switch (opcode) {
+            case OP_ADD:
+                numerator = a.multiply(d).add(c.multiply(b));
+                denominator = b.multiply(d);
+                break;
+            case OP_SUBTRACT:
+                numerator = a.multiply(d).subtract(c.multiply(b));
+                denominator = b.multiply(d);
+                break;
+            case OP_MULTIPLY:
+                numerator = a.multiply(c);
+                denominator = b.multiply(d);
+                break;
+            case OP_DIVIDE:
+                if(c.signum() == 0) {
+                    return false;
+                }
+
+                numerator = a.multiply(d);
+                denominator = b.multiply(c);
+                break;
+            case OP_PERCENTAGE:
+                numerator = a.multiply(c);
+                denominator = b.multiply(d).multiply(ONE_HUNDRED);
+                break;
+            case OP_POWER:
+                int exponent = d.equals(BigInteger.ONE) && c.bitLength() < 32
+                        && Math.abs(c.intValue()) <= MAX_EXACT_EXPONENT ? c.intValue() : Integer.MIN_VALUE;
+
+                if(exponent == Integer.MIN_VALUE
+                        || (long) (a.bitLength() + b.bitLength()) * Math.abs(exponent) > MAX_POWER_BITS) {
+                    // A fractional power isn't a fraction, and a huge one isn't worth the time
+                    return storeSlow(top - 1, performStrict(Rational.valueOf(a, b).doubleValue(),
+                            Rational.valueOf(c, d).doubleValue(), opcode));
+                }
+
+                if(exponent >= 0) {
+                    numerator = a.pow(exponent);
+                    denominator = b.pow(exponent);
+                } else {
+                    if(a.signum() == 0) {
+                        return false;
+                    }
+
+                    numerator = b.pow(-exponent);
+                    denominator = a.pow(-exponent);
+                }
+                break;
+            case OP_PERMUTATION:
+            case OP_COMBINATION:
+                BigInteger exact = b.equals(BigInteger.ONE) && d.equals(BigInteger.ONE)
+                        ? exactOperation(a, c, opcode) : null;
+
+                if(exact == null) {
+                    return storeSlow(top - 1, performStrict(Rational.valueOf(a, b).doubleValue(),
+                            Rational.valueOf(c, d).doubleValue(), opcode));
+                }
+
+                numerator = exact;
+                denominator = BigInteger.ONE;
+                break;
+            default:
+                // A user defined operator, which only has a double kernel
+                return storeSlow(top - 1, performStrict(Rational.valueOf(a, b).doubleValue(),
+                        Rational.valueOf(c, d).doubleValue(), opcode));
+        }
+
+        if(denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+
+        BigInteger gcd = numerator.gcd(denominator);
+
+        bigNumeratorStack[top - 1] = numerator.divide(gcd);
+        bigDenominatorStack[top - 1] = denominator.divide(gcd);
+
+        return true;
+    }
+
+    /**
+     * Stores a result worked out in double as a fraction
+     *
+     * @return false if there was no result to store
+     */
+    private boolean storeSlow(int index, BigDecimal value) {
+        if(value == null) {
+            return false;
+        }
+
+        Rational rational = Rational.valueOf(value);
+
+        bigNumeratorStack[index] = rational.getNumerator();
+        bigDenominatorStack[index] = rational.getDenominator();
+
+        return true;
+    }
+
+    @Override
+    protected Number slowResult() {
+        return Rational.valueOf(bigNumeratorStack[slowPointer - 1], bigDenominatorStack[slowPointer - 1]);
+    }
+}
@@ -0,0 +1,201 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class ResultCache {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024;
+
+    /*
+        Rough size of a cached entry on the heap: the key, the map entry and a boxed double
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    /*
+        Entries in least recently used first order
+     */
+    private final LinkedHashMap<Key, Entry> entries;
+    /*
+        Key reused for lookups so that a lookup doesn't allocate
+     */
+    private final Key probe;
+
+    private long byteCount;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Result cache with the default entry and byte budget
+     */
+    public ResultCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Bounded cache of evaluated results keyed by the rolling hash of the block sequence. Once
+     * either budget is exceeded the least recently used results are evicted.
+     *
+     * @param maxEntries most results that can be held at once
+     * @param maxBytes most estimated heap the held results can use
+     *
+     * @see RollingBlockHash
+     */
+    public ResultCache(int maxEntries, long maxBytes) {
+        if(maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache budget must be positive, entries: "
+                    + maxEntries + ", bytes: " + maxBytes);
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        probe = new Key();
+    }
+
+    /**
+     * Looks up the result of a block sequence, counting a hit or a miss
+     *
+     * @param hash primary hash of the sequence
+     * @param check secondary hash of the sequence
+     * @param length number of blocks in the sequence
+     * @return the cached result or null if there isn't one
+     */
+    public Number get(long hash, long check, int length) {
+        probe.set(hash, check, length);
+
+        Entry entry = entries.get(probe);
+
+        if(entry == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Stores the result of a block sequence and evicts the least recently used results if the
+     * cache is over budget
+     *
+     * @param hash primary hash of the sequence
+     * @param check secondary hash of the sequence
+     * @param length number of blocks in the sequence
+     * @param value the result
+     */
+    public void put(long hash, long check, int length, Number value) {
+        Key key = new Key();
+        key.set(hash, check, length);
+
+        Entry entry = new Entry(value, ENTRY_OVERHEAD_BYTES);
+        Entry previous = entries.put(key, entry);
+
+        if(previous != null) {
+            byteCount -= previous.bytes;
+        }
+
+        byteCount += entry.bytes;
+
+        trim();
+    }
+
+    /**
+     * Removes every result, the counters are kept
+     */
+    public void clear() {
+        entries.clear();
+        byteCount = 0;
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHitCount() {
+        return hits;
+    }
+
+    public long getMissCount() {
+        return misses;
+    }
+
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+
+        while((entries.size() > maxEntries || byteCount > maxBytes) && iterator.hasNext()) {
+            byteCount -= iterator.next().getValue().bytes;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Entries: " + entries.size() + "/" + maxEntries + ", bytes: " + byteCount + "/"
+                + maxBytes + ", hits: " + hits + ", misses: " + misses + ", evictions: " + evictions;
+    }
+
+    private static class Key {
+        private long hash;
+        private long check;
+        private int length;
+
+        void set(long hash, long check, int length) {
+            this.hash = hash;
+            this.check = check;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) other;
+
+            return hash == key.hash && check == key.check && length == key.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+
+    private static class Entry {
+        private final Number value;
+        private final int bytes;
+
+        Entry(Number value, int bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
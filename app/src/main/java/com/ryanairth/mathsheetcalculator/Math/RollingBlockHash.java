@@ -0,0 +1,126 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.util.Arrays;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class RollingBlockHash {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final long OPERATOR_SALT = 0x632BE59BD9B4E019L;
+
+    /*
+        Blocks the hash is kept for
+     */
+    private BlockBuffer buffer;
+    /*
+        Two independent hashes of the blocks up to and including each position, used together they
+        make an accidental match between two different sequences practically impossible
+     */
+    private long[] hashes;
+    private long[] checks;
+    private int size;
+
+    /**
+     * Hash of the canonical block sequence that's kept up to date as blocks are added and popped,
+     * so reading the hash of the whole sequence is O(1) rather than a re-hash. Numbers are hashed by
+     * their bits (with -0.0 folded into 0.0) and operators by their ordinal.
+     *
+     * @param buffer the blocks to hash
+     */
+    public RollingBlockHash(BlockBuffer buffer) {
+        this.buffer = buffer;
+
+        hashes = new long[INITIAL_CAPACITY];
+        checks = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Extends the hash with the last block of the buffer, must be called after every block added
+     * to the buffer
+     */
+    public void blockAdded() {
+        if(size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            checks = Arrays.copyOf(checks, size * 2);
+        }
+
+        long token;
+
+        if(buffer.isNumber(size)) {
+            double number = buffer.getNumber(size);
+
+            token = Double.doubleToLongBits(number == 0.0 ? 0.0 : number);
+        } else {
+            token = buffer.getOperatorOrdinal(size) ^ OPERATOR_SALT;
+        }
+
+        long previousHash = size == 0 ? 0L : hashes[size - 1];
+        long previousCheck = size == 0 ? 0L : checks[size - 1];
+
+        hashes[size] = previousHash * MULTIPLIER + mix(token);
+        checks[size] = Long.rotateLeft(previousCheck, 27) ^ mix(token ^ MULTIPLIER);
+        size++;
+    }
+
+    /**
+     * Drops the last block from the hash, the hash before it becomes current again
+     */
+    public void blockRemoved() {
+        if(size > 0) {
+            size--;
+        }
+    }
+
+    /**
+     * Drops every block from an index on, the hash of the blocks before it becomes current again
+     *
+     * @param size number of blocks to keep
+     */
+    public void blocksRemoved(int size) {
+        this.size = Math.min(this.size, size);
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * Number of blocks that are part of the hash
+     *
+     * @return the number of blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Primary hash of the whole sequence
+     *
+     * @return the hash, zero for an empty sequence
+     */
+    public long getHash() {
+        return size == 0 ? 0L : hashes[size - 1];
+    }
+
+    /**
+     * Secondary hash of the whole sequence, independent of {@link #getHash()}
+     *
+     * @return the check hash, zero for an empty sequence
+     */
+    public long getCheck() {
+        return size == 0 ? 0L : checks[size - 1];
+    }
+
+    /**
+     * Scrambles the bits of a token so that close numbers end up with very different hashes
+     */
+    private static long mix(long token) {
+        token = (token ^ (token >>> 30)) * 0xBF58476D1CE4E5B9L;
+        token = (token ^ (token >>> 27)) * 0x94D049BB133111EBL;
+
+        return token ^ (token >>> 31);
+    }
+}
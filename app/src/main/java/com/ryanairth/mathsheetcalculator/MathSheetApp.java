@@ -3,6 +3,10 @@ package com.ryanairth.mathsheetcalculator;
 import android.app.Application;
 import android.content.Context;
 
+import com.ryanairth.mathsheetcalculator.Math.OperatorRegistry;
+import com.ryanairth.mathsheetcalculator.Util.AndroidLogSink;
+import com.ryanairth.mathsheetcalculator.Util.Logger;
+
 /**
  * Created by Ryan Airth (Sweeney) on 21/10/2015.
  * Copyright information found in License.txt file.
@@ -14,6 +18,12 @@ public class MathSheetApp extends Application {
         super.onCreate();
 
         context = getApplicationContext();
+
+        // The Math and Util packages log through Logger so they don't depend on Android
+        Logger.setSink(new AndroidLogSink());
+
+        // Any operators of the app's own are registered above this, none can be once it's frozen
+        OperatorRegistry.freeze();
     }
 
     public static Context getAppContext() {
@@ -0,0 +1,24 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import android.util.Log;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class AndroidLogSink implements LogSink {
+    /**
+     * Sends {@link Logger} messages to logcat, installed when the app starts. It's kept apart
+     * from the Logger so nothing that logs needs Android to run.
+     */
+    public AndroidLogSink() {
+    }
+
+    @Override
+    public void println(int priority, String tag, String message, Throwable throwable) {
+        if(throwable != null) {
+            message = message + '\n' + Log.getStackTraceString(throwable);
+        }
+
+        Log.println(priority, tag, message);
+    }
+}
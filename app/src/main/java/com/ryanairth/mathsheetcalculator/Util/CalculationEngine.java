@@ -0,0 +1,384 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import com.ryanairth.mathsheetcalculator.GUI.MainThreadPreview;
+import com.ryanairth.mathsheetcalculator.GUI.MathPreview;
+import com.ryanairth.mathsheetcalculator.Math.BlockManager;
+import com.ryanairth.mathsheetcalculator.Math.InputGeneration;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.ryanairth.mathsheetcalculator.Util.Logger.TAG;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class CalculationEngine implements PreviewUpdateListener, Executor, Runnable {
+    /*
+        Most events waiting in the queue at once, far more than can be typed while one is being
+        processed. Any more wait in the overflow.
+     */
+    private static final int QUEUE_CAPACITY = 256;
+    /*
+        Most events waiting in the overflow and most keys merged into one of them, past either
+        the engine is too far behind for more input to be worth keeping and it's dropped
+     */
+    private static final int OVERFLOW_CAPACITY = 64;
+    private static final int MAX_MERGED_KEYS = 1024;
+
+    private final InputQueue queue;
+    /*
+        Events that didn't fit in the queue, guarded by itself. While it holds anything every new
+        event goes on the end of it, so nothing overtakes what's waiting, and keys typed one
+        after another in it share a single event.
+     */
+    private final ArrayDeque<Event> overflow;
+    private volatile boolean overflowing;
+    /*
+        Generation of the newest input queued, moved on by the main thread for every input event
+     */
+    private final InputGeneration generations;
+    /*
+        Generation of the event being processed, only touched on the engine thread
+     */
+    private long generation;
+    /*
+        Processes the events, only touched on the engine thread once it's started
+     */
+    private final PreviewInputProcessor processor;
+    /*
+        Whether the processor is holding back the preview because newer input is waiting, only
+        touched on the engine thread
+     */
+    private boolean deferring;
+    private final Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Runs the calculator input on a thread of its own, so that nothing slow ever happens on the
+     * main thread. Keystrokes from the pads go into a lock-free queue and the engine thread, which
+     * owns the block manager from then on, takes them in order and writes the results to the
+     * preview through a {@link MainThreadPreview}. A key with newer input already waiting behind
+     * it changes the blocks but isn't shown or totalled, as the next event would replace it.
+     * Every input event is a generation newer than the one before, and a refinement that's still
+     * running when newer input is queued sees it between steps and stops, rather than after the
+     * engine gets to the input.
+     * If the queue fills up, input waits behind it in a small locked overflow until the engine
+     * catches up, with keys typed one after another merged into one event. Once that's full too
+     * new input is dropped rather than held without bound.
+     * Input must only be queued from the main thread, refined totals can come from any thread.
+     *
+     * @param manager the blocks of the sum, only touched by the engine from now on
+     * @param preview the preview shown
+     */
+    public CalculationEngine(BlockManager manager, MathPreview preview) {
+        queue = new InputQueue(QUEUE_CAPACITY);
+        overflow = new ArrayDeque<>();
+        generations = new InputGeneration();
+        processor = new PreviewInputProcessor(manager, new MainThreadPreview(preview), this);
+        processor.setInputGeneration(generations);
+
+        thread = new Thread(this, "CalculationEngine");
+        thread.setDaemon(true);
+
+        running = true;
+        thread.start();
+    }
+
+    @Override
+    public void updatePreview(char value) {
+        queueInput(InputQueue.INPUT, value);
+    }
+
+    /**
+     * Queues a run of text as one event, it's copied first as the text given may change
+     */
+    @Override
+    public void updatePreview(CharSequence text) {
+        queueInput(InputQueue.TEXT, '\u0000', text.toString());
+    }
+
+    @Override
+    public void resetPreview() {
+        queueInput(InputQueue.RESET, '\u0000');
+    }
+
+    @Override
+    public void deleteLastInput() {
+        queueInput(InputQueue.DELETE, '\u0000');
+    }
+
+    @Override
+    public void undo() {
+        queueInput(InputQueue.UNDO, '\u0000');
+    }
+
+    @Override
+    public void redo() {
+        queueInput(InputQueue.REDO, '\u0000');
+    }
+
+    @Override
+    public void moveCursorLeft() {
+        queueInput(InputQueue.CURSOR_LEFT, '\u0000');
+    }
+
+    @Override
+    public void moveCursorRight() {
+        queueInput(InputQueue.CURSOR_RIGHT, '\u0000');
+    }
+
+    /**
+     * Runs something on the engine thread after everything queued so far, refined totals come
+     * back this way. It isn't input so it's no newer than the input before it, and it's dropped
+     * if there's no room, by then newer input has made a refined total stale.
+     */
+    @Override
+    public void execute(Runnable runnable) {
+        offer(InputQueue.RUN, '\u0000', runnable, generations.latest());
+
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops the engine thread once it's finished the event it's on, anything still queued is
+     * dropped
+     */
+    public void quit() {
+        running = false;
+
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Takes events off the queue until the engine is stopped, then off the overflow once the
+     * queue is empty, as everything in the overflow was queued after it. Parks while there are
+     * none.
+     */
+    @Override
+    public void run() {
+        while(running) {
+            Event event = null;
+
+            if(!queue.take()) {
+                event = takeOverflow();
+
+                if(event == null) {
+                    LockSupport.park(this);
+                    continue;
+                }
+            }
+
+            int kind = event == null ? queue.getKind() : event.kind;
+
+            generation = event == null ? queue.getGeneration() : event.generation;
+            processor.setGeneration(generation);
+
+            try {
+                if(event == null) {
+                    dispatch(kind, queue.getValue(), queue.getPayload());
+                } else {
+                    dispatch(kind, event.value, event.payload);
+                }
+            } catch (RuntimeException e) {
+                // One bad event shouldn't stop the calculator taking any more
+                Logger.e(TAG, "Processing input failed, kind " + kind, e);
+            }
+        }
+    }
+
+    private void queueInput(int kind, char value) {
+        queueInput(kind, value, null);
+    }
+
+    /**
+     * Queues an input event a generation newer than the last, the generation only moves on once
+     * the event is in so that dropped input never makes the engine wait for it
+     */
+    private void queueInput(int kind, char value, Object payload) {
+        // Only the main thread queues input, so nothing else moves the generation on in between
+        long next = generations.latest() + 1;
+
+        if(offer(kind, value, payload, next)) {
+            // Whatever is being refined is stale now, it stops at its next step
+            generations.advanceTo(next);
+        }
+
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Puts an event in the queue, or on the end of the overflow if the queue is full or the
+     * overflow already holds events
+     *
+     * @return false if the event was dropped as the overflow is full too
+     */
+    private boolean offer(int kind, char value, Object payload, long generation) {
+        if(!overflowing && queue.offer(kind, value, payload, generation)) {
+            return true;
+        }
+
+        synchronized(overflow) {
+            if(!overflowing) {
+                // The engine may have made room since
+                if(queue.offer(kind, value, payload, generation)) {
+                    return true;
+                }
+
+                Logger.w(TAG, "Engine queue full, holding input back");
+                overflowing = true;
+            }
+
+            Event last = overflow.peekLast();
+
+            if(kind == InputQueue.INPUT && last != null && last.kind == InputQueue.INPUT
+                    && (last.payload == null || last.keys().length() < MAX_MERGED_KEYS)) {
+                // Still taken as separate keys, each is its own step of the history
+                last.keys().append(value);
+                last.generation = generation;
+
+                return true;
+            }
+
+            if(overflow.size() == OVERFLOW_CAPACITY) {
+                Logger.w(TAG, "Engine overflow full, dropping event of kind ", kind);
+                return false;
+            }
+
+            overflow.addLast(new Event(kind, value, payload, generation));
+
+            return true;
+        }
+    }
+
+    /**
+     * Takes the event at the front of the overflow, once it's empty new events go back to the
+     * queue
+     *
+     * @return the event, or null if there are none
+     */
+    private Event takeOverflow() {
+        if(!overflowing) {
+            return null;
+        }
+
+        synchronized(overflow) {
+            Event event = overflow.pollFirst();
+
+            if(overflow.isEmpty()) {
+                overflowing = false;
+            }
+
+            return event;
+        }
+    }
+
+    /**
+     * Whether input has been queued after the event being processed
+     */
+    private boolean hasWaiting() {
+        return generations.isNewerThan(generation);
+    }
+
+    /**
+     * Processes a key, only showing it if nothing newer is waiting
+     *
+     * @param key the key typed
+     * @param superseded whether more input follows it
+     */
+    private void processKey(char key, boolean superseded) {
+        if(superseded) {
+            if(!deferring) {
+                processor.startBatch();
+                deferring = true;
+            }
+        } else {
+            // The last key is shown on its own, the same as it would be if typed slowly
+            stopDeferring();
+        }
+
+        processor.updatePreview(key);
+    }
+
+    private void stopDeferring() {
+        if(deferring) {
+            deferring = false;
+            processor.finishBatch();
+        }
+    }
+
+    private void dispatch(int kind, char value, Object payload) {
+        if(kind != InputQueue.INPUT) {
+            stopDeferring();
+        }
+
+        switch(kind) {
+            case InputQueue.INPUT:
+                if(payload == null) {
+                    processKey(value, hasWaiting());
+                } else {
+                    // Keys merged in the overflow
+                    CharSequence keys = (CharSequence) payload;
+                    int last = keys.length() - 1;
+
+                    for(int i = 0; i <= last; i++) {
+                        processKey(keys.charAt(i), i < last || hasWaiting());
+                    }
+                }
+                break;
+            case InputQueue.RESET:
+                processor.resetPreview();
+                break;
+            case InputQueue.DELETE:
+                processor.deleteLastInput();
+                break;
+            case InputQueue.UNDO:
+                processor.undo();
+                break;
+            case InputQueue.REDO:
+                processor.redo();
+                break;
+            case InputQueue.CURSOR_LEFT:
+                processor.moveCursorLeft();
+                break;
+            case InputQueue.CURSOR_RIGHT:
+                processor.moveCursorRight();
+                break;
+            case InputQueue.TEXT:
+                processor.updatePreview((CharSequence) payload);
+                break;
+            default:
+                ((Runnable) payload).run();
+                break;
+        }
+    }
+
+    /**
+     * An event waiting in the overflow
+     */
+    private static final class Event {
+        final int kind;
+        final char value;
+        Object payload;
+        long generation;
+
+        Event(int kind, char value, Object payload, long generation) {
+            this.kind = kind;
+            this.value = value;
+            this.payload = payload;
+            this.generation = generation;
+        }
+
+        /**
+         * Keys merged into an input event, starting with the one it was made for
+         */
+        StringBuilder keys() {
+            if(payload == null) {
+                payload = new StringBuilder().append(value);
+            }
+
+            return (StringBuilder) payload;
+        }
+    }
+}
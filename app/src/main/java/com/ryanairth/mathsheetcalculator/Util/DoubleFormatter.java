@@ -0,0 +1,376 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import java.math.BigInteger;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class DoubleFormatter {
+    /*
+        Longest text format() can write, "-2.2250738585072014E-308" is 24 characters
+     */
+    public static final int MAX_LENGTH = 32;
+
+    /*
+        Constants of the double format: bits of precision, smallest and largest exponents of the
+        significand as an integer, and the significand of the smallest normal double
+     */
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << (P - 1);
+    /*
+        Subnormal significands below this are multiplied by ten first, they'd have too few digits
+        to be told apart otherwise
+     */
+    private static final long C_TINY = 3;
+    /*
+        Range of the decimal exponent k the table covers
+     */
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    /*
+        Most significant digits a double ever needs
+     */
+    private static final int H = 17;
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    /*
+        For each k, 10^-k as a 126 bit number g split into its high and low 63 bits. g is
+        floor(10^-k * 2^r) + 1 for the r that puts it in [2^125, 2^126).
+     */
+    private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+    private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+
+    static {
+        BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+
+        for(int k = K_MIN; k <= K_MAX; k++) {
+            BigInteger g;
+
+            if(k <= 0) {
+                BigInteger power = BigInteger.TEN.pow(-k);
+                int shift = 126 - power.bitLength();
+
+                g = shift >= 0 ? power.shiftLeft(shift) : power.shiftRight(-shift);
+                g = g.add(BigInteger.ONE);
+            } else {
+                BigInteger power = BigInteger.TEN.pow(k);
+
+                g = BigInteger.ONE.shiftLeft(power.bitLength() + 125).divide(power).add(BigInteger.ONE);
+            }
+
+            G1[k - K_MIN] = g.shiftRight(63).longValue();
+            G0[k - K_MIN] = g.and(mask).longValue();
+        }
+    }
+
+    /*
+        Text of the last number formatted
+     */
+    private final char[] buffer;
+    private int length;
+    /*
+        Digits of the significand, written backwards while they're worked out
+     */
+    private final char[] digits;
+
+    /**
+     * Writes doubles as the shortest decimal that reads back as the same double, into a char
+     * array that's reused for every number so formatting allocates nothing. The digits are found
+     * with Schubfach (Raffaello Giulietti, "The Schubfach way to render doubles"), which needs a
+     * few multiplications against a table of powers of ten rather than any big number
+     * arithmetic. The table is worked out once when the class loads.
+     *
+     * The layout is the same as String.format's: whole numbers that fit in a long are written
+     * out in full without a decimal point, anything else is laid out like Double.toString.
+     */
+    public DoubleFormatter() {
+        buffer = new char[MAX_LENGTH];
+        digits = new char[H + 2];
+    }
+
+    /**
+     * Text of the last number formatted, only valid until the next call to format
+     *
+     * @return the buffer, the text starts at zero and is {@link #length()} characters long
+     */
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Formats a whole number
+     *
+     * @param number the number to write
+     * @return the length of the text
+     */
+    public int format(long number) {
+        length = 0;
+
+        if(number < 0) {
+            buffer[length++] = '-';
+        } else {
+            // Worked out as a negative so Long.MIN_VALUE doesn't need a special case
+            number = -number;
+        }
+
+        int count = 0;
+
+        do {
+            digits[count++] = (char) ('0' - number % 10);
+            number /= 10;
+        } while(number != 0);
+
+        while(count > 0) {
+            buffer[length++] = digits[--count];
+        }
+
+        return length;
+    }
+
+    /**
+     * Formats a double, whole numbers in full and anything else as the shortest decimal that
+     * reads back as the same double
+     *
+     * @param number the number to write
+     * @return the length of the text
+     */
+    public int format(double number) {
+        if(number == (long) number) {
+            // Also -0.0, which is written as 0
+            return format((long) number);
+        }
+
+        length = 0;
+
+        if(number != number) {
+            return append("NaN");
+        }
+
+        long bits = Double.doubleToRawLongBits(number);
+
+        if(bits < 0) {
+            buffer[length++] = '-';
+        }
+
+        if(Double.isInfinite(number)) {
+            return append("Infinity");
+        }
+
+        long significand = bits & (C_MIN - 1);
+        int biasedExponent = (int) (bits >>> (P - 1)) & 0x7FF;
+
+        if(biasedExponent != 0) {
+            toDecimal(Q_MIN - 1 + biasedExponent, C_MIN | significand, 0);
+        } else if(significand < C_TINY) {
+            toDecimal(Q_MIN, 10 * significand, -1);
+        } else {
+            toDecimal(Q_MIN, significand, 0);
+        }
+
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * Finds the shortest decimal in the rounding interval of c * 2^q and writes it. dk is added
+     * to the decimal exponent, for significands that were scaled up.
+     */
+    private void toDecimal(int q, long c, int dk) {
+        int out = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+
+        if(c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = floorLog10Pow2(q);
+        } else {
+            // Powers of two have a narrower interval below them
+            cbl = cb - 1;
+            k = floorLog10ThreeQuartersPow2(q);
+        }
+
+        int h = q + floorLog2Pow10(-k) + 2;
+        long g1 = G1[k - K_MIN];
+        long g0 = G0[k - K_MIN];
+
+        long vb = roundToOdd(g1, g0, cb << h);
+        long vbl = roundToOdd(g1, g0, cbl << h);
+        long vbr = roundToOdd(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+
+        if(s >= 100) {
+            // Try one digit fewer first, s / 10 * 10 and the next multiple of ten
+            long sp10 = 10 * (s / 10);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+
+            if(upin != wpin) {
+                writeDecimal(upin ? sp10 : tp10, k);
+                return;
+            }
+        }
+
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+
+        if(uin != win) {
+            writeDecimal(uin ? s : t, k + dk);
+            return;
+        }
+
+        // Both are in the interval, take the closer one and the even one on a tie
+        long cmp = vb - ((s + t) << 1);
+
+        writeDecimal(cmp < 0 || (cmp == 0 && (s & 1) == 0) ? s : t, k + dk);
+    }
+
+    /**
+     * The 126 bit g times cp, shifted down and rounded to odd so it keeps track of whether
+     * anything was dropped
+     */
+    private static long roundToOdd(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+
+        return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+    }
+
+    /**
+     * High 64 bits of the 128 bit product of two longs, Math.multiplyHigh isn't available on the
+     * API levels the app supports
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & 0xFFFFFFFFL) + x2 * y1;
+        long z0 = t >> 32;
+
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /*
+        floor(log10(2^e)), floor(log10(3/4 * 2^e)) and floor(log2(10^e)) by fixed point
+        multiplication, exact over the exponents doubles have
+     */
+
+    private static int floorLog10Pow2(int e) {
+        return (int) (e * 661971961083L >> 41);
+    }
+
+    private static int floorLog10ThreeQuartersPow2(int e) {
+        return (int) (e * 661971961083L - 274743187321L >> 41);
+    }
+
+    private static int floorLog2Pow10(int e) {
+        return (int) (e * 913124641741L >> 38);
+    }
+
+    /**
+     * Writes f * 10^e laid out like Double.toString, plain between 10^-3 and 10^7 and in
+     * scientific notation outside of that
+     */
+    private void writeDecimal(long f, int e) {
+        // Trailing zeros aren't part of the shortest decimal
+        while(f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+
+        int count = 0;
+
+        while(f != 0) {
+            digits[count++] = (char) ('0' + f % 10);
+            f /= 10;
+        }
+
+        // Exponent of the first digit, the number is d.ddd * 10^exponent
+        int exponent = count - 1 + e;
+
+        if(exponent >= -3 && exponent < 7) {
+            if(exponent >= 0) {
+                for(int i = 0; i <= exponent; i++) {
+                    buffer[length++] = i < count ? digits[count - 1 - i] : '0';
+                }
+
+                buffer[length++] = '.';
+
+                if(count <= exponent + 1) {
+                    buffer[length++] = '0';
+                }
+
+                for(int i = exponent + 1; i < count; i++) {
+                    buffer[length++] = digits[count - 1 - i];
+                }
+            } else {
+                buffer[length++] = '0';
+                buffer[length++] = '.';
+
+                for(int i = exponent; i < -1; i++) {
+                    buffer[length++] = '0';
+                }
+
+                for(int i = count - 1; i >= 0; i--) {
+                    buffer[length++] = digits[i];
+                }
+            }
+        } else {
+            buffer[length++] = digits[count - 1];
+            buffer[length++] = '.';
+
+            if(count == 1) {
+                buffer[length++] = '0';
+            }
+
+            for(int i = count - 2; i >= 0; i--) {
+                buffer[length++] = digits[i];
+            }
+
+            buffer[length++] = 'E';
+
+            if(exponent < 0) {
+                buffer[length++] = '-';
+                exponent = -exponent;
+            }
+
+            if(exponent >= 100) {
+                buffer[length++] = (char) ('0' + exponent / 100);
+            }
+
+            if(exponent >= 10) {
+                buffer[length++] = (char) ('0' + exponent / 10 % 10);
+            }
+
+            buffer[length++] = (char) ('0' + exponent % 10);
+        }
+    }
+
+    private int append(String text) {
+        for(int i = 0; i < text.length(); i++) {
+            buffer[length++] = text.charAt(i);
+        }
+
+        return length;
+    }
+}
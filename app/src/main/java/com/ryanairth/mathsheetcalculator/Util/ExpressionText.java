@@ -0,0 +1,353 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import java.util.Arrays;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class ExpressionText implements CharSequence {
+    private static final int INITIAL_CAPACITY = 32;
+
+    /*
+        The characters with a gap in the middle, the text is everything before gapStart followed by
+        everything from gapEnd on
+     */
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+    /*
+        How much of the array from the start snapshots are still reading, anything written there
+        copies the array first
+     */
+    private int shared;
+
+    /**
+     * Mutable text of the expression, kept in a gap buffer. The gap sits wherever the text was
+     * last changed, so typing, deleting or replacing characters next to the last change is O(1)
+     * and moving somewhere else only moves the characters in between. Typing at the end, which
+     * is almost all of it, never moves anything.
+     *
+     * With the gap at the end the text is the start of the array, which can be read or copied
+     * into a view in one go, and a snapshot of the text for the undo history is O(1) as it shares
+     * the array. The array is only copied if something is written over the part a snapshot reads.
+     */
+    public ExpressionText() {
+        chars = new char[INITIAL_CAPACITY];
+        gapEnd = INITIAL_CAPACITY;
+    }
+
+    @Override
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        checkIndex(index, length() - 1);
+
+        return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if(start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end
+                    + ", length: " + length());
+        }
+
+        char[] copy = new char[end - start];
+
+        for(int i = start; i < end; i++) {
+            copy[i - start] = charAt(i);
+        }
+
+        return new String(copy);
+    }
+
+    @Override
+    public String toString() {
+        char[] copy = new char[length()];
+
+        System.arraycopy(chars, 0, copy, 0, gapStart);
+        System.arraycopy(chars, gapEnd, copy, gapStart, chars.length - gapEnd);
+
+        return new String(copy);
+    }
+
+    public void append(char character) {
+        insert(length(), character);
+    }
+
+    public void append(CharSequence text) {
+        insert(length(), text);
+    }
+
+    /**
+     * Inserts a character, the characters from the index on move along by one
+     *
+     * @param index where the character goes, up to {@link #length()}
+     * @param character the character
+     */
+    public void insert(int index, char character) {
+        checkIndex(index, length());
+        moveGap(index);
+        ensureGap(1);
+        prepareWrite(gapStart);
+
+        chars[gapStart++] = character;
+    }
+
+    /**
+     * Inserts some text, the characters from the index on move along by its length
+     *
+     * @param index where the text goes, up to {@link #length()}
+     * @param text the text
+     */
+    public void insert(int index, CharSequence text) {
+        int length = text.length();
+
+        checkIndex(index, this.length());
+        moveGap(index);
+        ensureGap(length);
+        prepareWrite(gapStart);
+
+        for(int i = 0; i < length; i++) {
+            chars[gapStart++] = text.charAt(i);
+        }
+    }
+
+    /**
+     * Replaces the character at an index
+     */
+    public void setCharAt(int index, char character) {
+        checkIndex(index, length() - 1);
+
+        int position = index < gapStart ? index : index + gapEnd - gapStart;
+
+        prepareWrite(position);
+
+        chars[position] = character;
+    }
+
+    /**
+     * Removes the characters from start up to but not including end, the gap takes their place
+     * so nothing is written
+     */
+    public void delete(int start, int end) {
+        if(start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end
+                    + ", length: " + length());
+        }
+
+        moveGap(start);
+
+        gapEnd += end - start;
+    }
+
+    public void deleteLast() {
+        int length = length();
+
+        delete(length - 1, length);
+    }
+
+    public void clear() {
+        gapStart = 0;
+        gapEnd = chars.length;
+    }
+
+    /**
+     * Replaces the whole text. A snapshot is taken on as it is rather than copied, the first
+     * change after that copies it.
+     */
+    public void setText(CharSequence text) {
+        if(text instanceof Snapshot) {
+            Snapshot snapshot = (Snapshot) text;
+
+            chars = snapshot.chars;
+            gapStart = snapshot.length;
+            gapEnd = chars.length;
+            // Other snapshots of the array could read past the end of this one
+            shared = chars.length;
+            return;
+        }
+
+        clear();
+        append(text);
+    }
+
+    /**
+     * Array holding the text from index 0 to {@link #length()}, the gap is moved to the end
+     * first. The array is only valid until the text next changes.
+     *
+     * @return the array
+     */
+    public char[] getChars() {
+        moveGap(length());
+
+        return chars;
+    }
+
+    /**
+     * Copy of the text that doesn't change when this text does, it shares the array so taking
+     * one is O(1) while the gap is at the end
+     *
+     * @return the snapshot
+     */
+    public CharSequence snapshot() {
+        int length = length();
+
+        moveGap(length);
+        shared = Math.max(shared, length);
+
+        return new Snapshot(chars, length);
+    }
+
+    /**
+     * Whether two pieces of text have the same characters. Snapshots of the same array with the
+     * same length are equal without reading them, and anything else is compared from the end,
+     * where text that's being typed is most likely to differ.
+     */
+    public static boolean contentEquals(CharSequence first, CharSequence second) {
+        if(first == second) {
+            return true;
+        }
+
+        int length = first.length();
+
+        if(length != second.length()) {
+            return false;
+        }
+
+        if(first instanceof Snapshot && second instanceof Snapshot
+                && ((Snapshot) first).chars == ((Snapshot) second).chars) {
+            return true;
+        }
+
+        for(int i = length - 1; i >= 0; i--) {
+            if(first.charAt(i) != second.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Hash of the characters of some text, the same as String.hashCode() gives
+     */
+    public static int contentHash(CharSequence text) {
+        int hash = 0;
+
+        for(int i = 0; i < text.length(); i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+
+        return hash;
+    }
+
+    /**
+     * Moves the gap so that it starts at an index of the text
+     */
+    private void moveGap(int index) {
+        if(index == gapStart) {
+            return;
+        }
+
+        if(index < gapStart) {
+            int count = gapStart - index;
+
+            prepareWrite(gapEnd - count);
+            System.arraycopy(chars, index, chars, gapEnd - count, count);
+
+            gapStart = index;
+            gapEnd -= count;
+        } else {
+            int count = index - gapStart;
+
+            prepareWrite(gapStart);
+            System.arraycopy(chars, gapEnd, chars, gapStart, count);
+
+            gapStart = index;
+            gapEnd += count;
+        }
+    }
+
+    /**
+     * Makes the gap at least the given size, doubling the array so that growing is amortized
+     * O(1)
+     */
+    private void ensureGap(int size) {
+        if(gapEnd - gapStart >= size) {
+            return;
+        }
+
+        int length = length();
+        int capacity = Math.max(chars.length * 2, length + size);
+        char[] grown = new char[capacity];
+        int tail = chars.length - gapEnd;
+
+        System.arraycopy(chars, 0, grown, 0, gapStart);
+        System.arraycopy(chars, gapEnd, grown, capacity - tail, tail);
+
+        chars = grown;
+        gapEnd = capacity - tail;
+        shared = 0;
+    }
+
+    /**
+     * Copies the array before anything is written at or after a position a snapshot is reading
+     */
+    private void prepareWrite(int position) {
+        if(position < shared) {
+            chars = Arrays.copyOf(chars, chars.length);
+            shared = 0;
+        }
+    }
+
+    private static void checkIndex(int index, int last) {
+        if(index < 0 || index > last) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", last: " + last);
+        }
+    }
+
+    /**
+     * Text that shares the array of an ExpressionText, which is copied before anything it reads
+     * is written over
+     */
+    private static final class Snapshot implements CharSequence {
+        private final char[] chars;
+        private final int length;
+
+        Snapshot(char[] chars, int length) {
+            this.chars = chars;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            checkIndex(index, length - 1);
+
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if(start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end
+                        + ", length: " + length);
+            }
+
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
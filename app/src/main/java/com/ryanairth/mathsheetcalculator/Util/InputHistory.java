@@ -0,0 +1,205 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import com.ryanairth.mathsheetcalculator.Math.BlockSnapshot;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class InputHistory {
+    /*
+        Number of states kept when no capacity is given, the oldest is dropped past this
+     */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    /*
+        Ring of recorded states, the oldest at start
+     */
+    private final State[] states;
+    private int start;
+    /*
+        Number of states in the ring
+     */
+    private int count;
+    /*
+        Index of the current state counted from start, states after it can be redone
+     */
+    private int position;
+
+    /**
+     * Undo and redo history of the calculator input, one state per keystroke. Each state holds a
+     * {@link BlockSnapshot}, which shares its blocks with the states around it, a snapshot of the
+     * expression text, which shares the lexer's array, and the strings already on screen, so
+     * recording a state is O(1) and copies nothing. The states are kept in
+     * a fixed size ring, which bounds the memory the history can use.
+     *
+     * @param capacity most states kept, including the current one
+     */
+    public InputHistory(int capacity) {
+        states = new State[capacity];
+        position = -1;
+    }
+
+    public InputHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Records the state after a keystroke, anything that could have been redone is dropped. A
+     * state the same as the current one isn't recorded, so keystrokes that were ignored don't
+     * need undoing.
+     *
+     * @param blocks snapshot of the blocks
+     * @param text snapshot of the preview text
+     * @param total the total shown under the preview text, or null if it's the total of the blocks,
+     *              which is only formatted again if the state is gone back to
+     * @param blockString the block still being typed
+     * @param evaluated whether the text is the total from equals
+     */
+    public void record(BlockSnapshot blocks, CharSequence text, String total, String blockString,
+                       boolean evaluated) {
+        State state = new State(blocks, text, total, blockString, evaluated);
+
+        if(position >= 0 && state.equals(get(position))) {
+            return;
+        }
+
+        if(position == states.length - 1) {
+            // Full, the oldest state makes room
+            states[start] = null;
+            start = (start + 1) % states.length;
+            position--;
+        }
+
+        position++;
+        count = position + 1;
+        set(position, state);
+    }
+
+    /**
+     * Swaps the current state for a new one without adding a step, for changes that aren't a
+     * keystroke of their own such as a refined total
+     */
+    public void replace(BlockSnapshot blocks, CharSequence text, String total, String blockString,
+                        boolean evaluated) {
+        if(position < 0) {
+            record(blocks, text, total, blockString, evaluated);
+        } else {
+            set(position, new State(blocks, text, total, blockString, evaluated));
+        }
+    }
+
+    public boolean canUndo() {
+        return position > 0;
+    }
+
+    public boolean canRedo() {
+        return position < count - 1;
+    }
+
+    /**
+     * Steps back to the state before the current one
+     *
+     * @return the state to restore, or null if there's nothing to undo
+     */
+    public State undo() {
+        if(!canUndo()) {
+            return null;
+        }
+
+        return get(--position);
+    }
+
+    /**
+     * Steps forward to the state that was last undone
+     *
+     * @return the state to restore, or null if there's nothing to redo
+     */
+    public State redo() {
+        if(!canRedo()) {
+            return null;
+        }
+
+        return get(++position);
+    }
+
+    private State get(int index) {
+        return states[(start + index) % states.length];
+    }
+
+    private void set(int index, State state) {
+        states[(start + index) % states.length] = state;
+    }
+
+    /**
+     * Everything needed to put the calculator back the way it was after a keystroke
+     */
+    public static final class State {
+        private final BlockSnapshot blocks;
+        private final CharSequence text;
+        private final String total;
+        private final String blockString;
+        private final boolean evaluated;
+
+        State(BlockSnapshot blocks, CharSequence text, String total, String blockString,
+              boolean evaluated) {
+            this.blocks = blocks;
+            this.text = text;
+            this.total = total;
+            this.blockString = blockString;
+            this.evaluated = evaluated;
+        }
+
+        public BlockSnapshot getBlocks() {
+            return blocks;
+        }
+
+        public CharSequence getText() {
+            return text;
+        }
+
+        /**
+         * The total shown under the preview text, null if it's the total of the blocks
+         */
+        public String getTotal() {
+            return total;
+        }
+
+        public String getBlockString() {
+            return blockString;
+        }
+
+        public boolean isEvaluated() {
+            return evaluated;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(this == other) {
+                return true;
+            }
+
+            if(!(other instanceof State)) {
+                return false;
+            }
+
+            State state = (State) other;
+
+            // Snapshots are compared by identity, an unchanged sequence keeps the same snapshot
+            return blocks == state.blocks && evaluated == state.evaluated
+                    && ExpressionText.contentEquals(text, state.text)
+                    && (total == null ? state.total == null : total.equals(state.total))
+                    && blockString.equals(state.blockString);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(blocks);
+
+            result = 31 * result + ExpressionText.contentHash(text);
+            result = 31 * result + (total != null ? total.hashCode() : 0);
+            result = 31 * result + blockString.hashCode();
+
+            return 31 * result + (evaluated ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import com.ryanairth.mathsheetcalculator.Math.MathOperator;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class InputLexer {
+    /*
+        Classes of characters, both for what's typed and for what's already in the text
+     */
+    static final int ZERO = 0;
+    static final int DIGIT = 1;
+    static final int DECIMAL = 2;
+    static final int MINUS = 3;
+    static final int PREFIX = 4;
+    static final int POSTFIX = 5;
+    static final int EQUALS = 6;
+    static final int SYMBOL = 7;
+    static final int OPEN = 8;
+    static final int CLOSE = 9;
+    // Anything that isn't a key of the calculator, only ever found in text that wasn't typed
+    static final int UNKNOWN = 10;
+
+    /*
+        States, which class the last character of the text is in and for some of them whether the
+        character before it ends an operand, a digit, a postfix function or a right bracket. START
+        is the text being just "0", where whatever is typed replaces it.
+     */
+    static final int START = 0;
+    static final int AFTER_DIGIT = 1;
+    static final int AFTER_DECIMAL = 2;
+    static final int AFTER_DIGIT_DECIMAL = 3;
+    static final int AFTER_MINUS = 4;
+    static final int AFTER_DIGIT_MINUS = 5;
+    static final int AFTER_POSTFIX = 6;
+    static final int AFTER_DIGIT_POSTFIX = 7;
+    static final int AFTER_SYMBOL = 8;
+    static final int AFTER_DIGIT_SYMBOL = 9;
+    static final int AFTER_OPEN = 10;
+    static final int AFTER_CLOSE = 11;
+
+    /*
+        What to do with a typed character
+     */
+    // Nothing, the character can't be typed here
+    public static final int IGNORE = 0;
+    // Add the character to the text and to the block being typed
+    public static final int APPEND = 1;
+    // Add the character to the text and start a new block with it
+    public static final int START_BLOCK = 2;
+    // Add a decimal point to the number being typed
+    public static final int APPEND_DECIMAL = 3;
+    // Add "0." to the text and to the block being typed, such as after a minus sign
+    public static final int APPEND_ZERO_DECIMAL = 4;
+    // Add "0." to the text and start a new number with it
+    public static final int START_ZERO_DECIMAL = 5;
+    // Add a function, which starts a new block unless there's nothing typed yet
+    public static final int FUNCTION = 6;
+    // Add an operator after a number
+    public static final int OPERATOR = 7;
+    // Swap the operator at the end of the text for the one typed
+    public static final int REPLACE_OPERATOR = 8;
+    public static final int EVALUATE = 9;
+
+    /*
+        Given back by fromKeyboard for characters that aren't a key of the calculator
+     */
+    public static final char NO_KEY = '\u0000';
+
+    /*
+        Class of every ASCII character, anything else is looked up through MathOperator
+     */
+    private static final byte[] ASCII_CLASSES = new byte[128];
+
+    /*
+        The action for each state and class of character typed, the columns are in the order of
+        the class constants: zero, digit, decimal, minus, prefix, postfix, equals, symbol, left
+        bracket, right bracket and unknown. A left bracket starts an operand the same way a prefix
+        function does. A right bracket is only taken while there's a left bracket for it to close,
+        see getAction. A character that isn't a key is never taken.
+     */
+    private static final byte[][] ACTIONS = {
+            // START, a decimal carries on from the zero rather than following it
+            { APPEND, APPEND, APPEND_ZERO_DECIMAL, APPEND, FUNCTION, IGNORE, IGNORE, IGNORE,
+                    FUNCTION, IGNORE, IGNORE },
+            // AFTER_DIGIT
+            { APPEND, APPEND, APPEND_DECIMAL, START_BLOCK, FUNCTION, OPERATOR, EVALUATE, OPERATOR,
+                    FUNCTION, START_BLOCK, IGNORE },
+            // AFTER_DECIMAL
+            { APPEND, APPEND, START_ZERO_DECIMAL, IGNORE, FUNCTION, IGNORE, EVALUATE, IGNORE,
+                    FUNCTION, IGNORE, IGNORE },
+            // AFTER_DIGIT_DECIMAL, "5." is a whole operand so an operator or bracket ends it
+            { APPEND, APPEND, START_ZERO_DECIMAL, START_BLOCK, FUNCTION, OPERATOR, EVALUATE,
+                    OPERATOR, FUNCTION, START_BLOCK, IGNORE },
+            // AFTER_MINUS
+            { APPEND, APPEND, APPEND_ZERO_DECIMAL, IGNORE, FUNCTION, IGNORE, EVALUATE, IGNORE,
+                    FUNCTION, IGNORE, IGNORE },
+            // AFTER_DIGIT_MINUS, the minus is a subtraction so a decimal starts the next number
+            { START_BLOCK, START_BLOCK, START_ZERO_DECIMAL, START_BLOCK, FUNCTION,
+                    REPLACE_OPERATOR, EVALUATE, REPLACE_OPERATOR, FUNCTION, IGNORE, IGNORE },
+            // AFTER_POSTFIX
+            { START_BLOCK, START_BLOCK, START_ZERO_DECIMAL, IGNORE, FUNCTION, OPERATOR, EVALUATE,
+                    OPERATOR, FUNCTION, START_BLOCK, IGNORE },
+            // AFTER_DIGIT_POSTFIX
+            { START_BLOCK, START_BLOCK, START_ZERO_DECIMAL, START_BLOCK, FUNCTION, OPERATOR,
+                    EVALUATE, OPERATOR, FUNCTION, START_BLOCK, IGNORE },
+            // AFTER_SYMBOL
+            { START_BLOCK, START_BLOCK, START_ZERO_DECIMAL, IGNORE, FUNCTION, IGNORE, EVALUATE,
+                    IGNORE, FUNCTION, IGNORE, IGNORE },
+            // AFTER_DIGIT_SYMBOL
+            { START_BLOCK, START_BLOCK, START_ZERO_DECIMAL, START_BLOCK, FUNCTION,
+                    REPLACE_OPERATOR, EVALUATE, REPLACE_OPERATOR, FUNCTION, IGNORE, IGNORE },
+            // AFTER_OPEN, a minus starts a negative number rather than subtracting
+            { START_BLOCK, START_BLOCK, START_ZERO_DECIMAL, START_BLOCK, FUNCTION, IGNORE, EVALUATE,
+                    IGNORE, FUNCTION, IGNORE, IGNORE },
+            // AFTER_CLOSE, anything typed follows the bracket rather than replacing it
+            { START_BLOCK, START_BLOCK, START_ZERO_DECIMAL, START_BLOCK, FUNCTION, OPERATOR,
+                    EVALUATE, OPERATOR, FUNCTION, START_BLOCK, IGNORE }
+    };
+
+    /*
+        The state the text is in after a character of each class, first when the character before
+        it doesn't end an operand and then when it does
+     */
+    private static final byte[][] STATES = {
+            // ZERO and DIGIT
+            { AFTER_DIGIT, AFTER_DIGIT },
+            { AFTER_DIGIT, AFTER_DIGIT },
+            // DECIMAL
+            { AFTER_DECIMAL, AFTER_DIGIT_DECIMAL },
+            // MINUS
+            { AFTER_MINUS, AFTER_DIGIT_MINUS },
+            // PREFIX
+            { AFTER_SYMBOL, AFTER_DIGIT_SYMBOL },
+            // POSTFIX
+            { AFTER_POSTFIX, AFTER_DIGIT_POSTFIX },
+            // EQUALS and SYMBOL, neither is special once it's in the text
+            { AFTER_SYMBOL, AFTER_DIGIT_SYMBOL },
+            { AFTER_SYMBOL, AFTER_DIGIT_SYMBOL },
+            // OPEN and CLOSE
+            { AFTER_OPEN, AFTER_OPEN },
+            { AFTER_CLOSE, AFTER_CLOSE },
+            // UNKNOWN, such as the end of a total that's Infinity, which nothing but an equals or
+            // a function can follow
+            { AFTER_SYMBOL, AFTER_DIGIT_SYMBOL }
+    };
+
+    static {
+        for(char character = 0; character < ASCII_CLASSES.length; character++) {
+            ASCII_CLASSES[character] = (byte) lookUpClass(character);
+        }
+    }
+
+    /*
+        The text as it's shown in the preview, kept in a gap buffer so the preview can show its
+        array as it is
+     */
+    private final ExpressionText text;
+    private int state;
+    /*
+        Left brackets in the text that haven't been closed
+     */
+    private int depth;
+
+    /**
+     * Lexer for the calculator input, it keeps its own copy of the text typed and a state worked
+     * out from the end of it, so deciding what to do with a key is one lookup in a table of state
+     * against the class of the key rather than reading the text back and going through the
+     * special cases one at a time. Nothing here touches the UI, so it runs just as well without
+     * it.
+     */
+    public InputLexer() {
+        text = new ExpressionText();
+
+        setText("0");
+    }
+
+    /**
+     * Finds what to do with a typed character, the text isn't changed until the action is carried
+     * out with the methods below
+     *
+     * @param input the character typed
+     * @return one of the action constants
+     */
+    public int getAction(char input) {
+        int inputClass = classOf(input);
+
+        if(inputClass == CLOSE && depth == 0) {
+            // Nothing open for it to close
+            return IGNORE;
+        }
+
+        return ACTIONS[state][inputClass];
+    }
+
+    /**
+     * Adds a character to the end of the text, replacing the "0" if nothing's been typed
+     */
+    public void append(char character) {
+        if(state == START) {
+            text.clear();
+        }
+
+        text.append(character);
+        depth += depthChange(character);
+        updateState();
+    }
+
+    /**
+     * Adds some characters to the end of the text, replacing the "0" if nothing's been typed
+     */
+    public void append(CharSequence characters) {
+        if(state == START) {
+            text.clear();
+        }
+
+        text.append(characters);
+
+        for(int i = 0; i < characters.length(); i++) {
+            depth += depthChange(characters.charAt(i));
+        }
+
+        updateState();
+    }
+
+    /**
+     * Swaps the last character of the text for another
+     */
+    public void replaceLast(char character) {
+        int last = text.length() - 1;
+
+        depth += depthChange(character) - depthChange(text.charAt(last));
+        text.setCharAt(last, character);
+        updateState();
+    }
+
+    /**
+     * Removes the last character of the text, which is left empty if it was the only one
+     */
+    public void deleteLast() {
+        depth -= depthChange(text.charAt(text.length() - 1));
+        text.deleteLast();
+
+        if(text.length() > 0) {
+            updateState();
+        }
+    }
+
+    /**
+     * Inserts a character anywhere in the text, for editing in front of the caret
+     */
+    public void insert(int index, char character) {
+        text.insert(index, character);
+        depth += depthChange(character);
+        updateState();
+    }
+
+    /**
+     * Inserts some characters anywhere in the text, for editing in front of the caret
+     */
+    public void insert(int index, CharSequence characters) {
+        text.insert(index, characters);
+
+        for(int i = 0; i < characters.length(); i++) {
+            depth += depthChange(characters.charAt(i));
+        }
+
+        updateState();
+    }
+
+    /**
+     * Removes the characters from start up to end, the text is left empty if they're all of it
+     */
+    public void delete(int start, int end) {
+        for(int i = start; i < end; i++) {
+            depth -= depthChange(text.charAt(i));
+        }
+
+        text.delete(start, end);
+
+        if(text.length() > 0) {
+            updateState();
+        }
+    }
+
+    /**
+     * Replaces the whole text, for text that wasn't typed such as a total
+     */
+    public void setText(CharSequence newText) {
+        text.setText(newText);
+
+        depth = 0;
+
+        for(int i = 0; i < newText.length(); i++) {
+            depth += depthChange(newText.charAt(i));
+        }
+
+        updateState();
+    }
+
+    /**
+     * Finds where the typed number at the end of the text starts, a minus in front of it is
+     * included when it's the number's sign rather than a subtraction
+     *
+     * @param negative whether the number is negative, so the minus in front of it is its sign
+     * @return index of the number's first character, the length of the text if it doesn't end in
+     *         a number
+     */
+    public int findNumberStart(boolean negative) {
+        int start = text.length();
+
+        while(start > 0) {
+            int characterClass = classOf(text.charAt(start - 1));
+
+            if(characterClass != ZERO && characterClass != DIGIT && characterClass != DECIMAL) {
+                break;
+            }
+
+            start--;
+        }
+
+        // Told rather than worked out from the text, blocks edited at the caret can have a
+        // minus of their own where one typed at the end would be a sign
+        if(negative && start > 0 && text.charAt(start - 1) == '-') {
+            start--;
+        }
+
+        return start;
+    }
+
+    public int length() {
+        return text.length();
+    }
+
+    /**
+     * Whether the text is "0", with nothing typed over it
+     */
+    public boolean isStart() {
+        return state == START;
+    }
+
+    /**
+     * The last character typed, the null character if nothing has been
+     */
+    public char getLastChar() {
+        return state == START ? '\u0000' : text.charAt(text.length() - 1);
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * Number of left brackets in the text that haven't been closed
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Array holding the text from index 0 to {@link #length()}, for reading it without a copy.
+     * It's only valid until the text next changes, so anything that keeps the text, such as a
+     * TextView, needs a copy of it.
+     */
+    public char[] getChars() {
+        return text.getChars();
+    }
+
+    /**
+     * Copy of the text that the lexer won't change, O(1) as it shares the lexer's array until
+     * the lexer writes over it
+     */
+    public CharSequence snapshot() {
+        return text.snapshot();
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    /**
+     * Works out the state from the last two characters of the text
+     */
+    private void updateState() {
+        int length = text.length();
+        char last = text.charAt(length - 1);
+
+        if(length == 1 && last == '0') {
+            state = START;
+        } else {
+            boolean afterOperand = length > 1 && endsOperand(text.charAt(length - 2));
+
+            state = STATES[classOf(last)][afterOperand ? 1 : 0];
+        }
+    }
+
+    /**
+     * Whether a character finishes an operand, so a minus after it subtracts. A decimal point
+     * does, as it's only ever typed after a digit.
+     */
+    private static boolean endsOperand(char character) {
+        int characterClass = classOf(character);
+
+        return characterClass == ZERO || characterClass == DIGIT || characterClass == DECIMAL
+                || characterClass == POSTFIX || characterClass == CLOSE;
+    }
+
+    private static int depthChange(char character) {
+        if(character == '(') {
+            return 1;
+        }
+
+        return character == ')' ? -1 : 0;
+    }
+
+    /**
+     * Turns a character typed on a keyboard or pasted into the key of the calculator it stands
+     * for, such as * for × and / for ÷
+     *
+     * @param character the character
+     * @return the key, or {@link #NO_KEY} for anything that isn't one, such as spaces
+     */
+    public static char fromKeyboard(char character) {
+        switch(character) {
+            case '*':
+                return MathOperator.MULTIPLY.getSymbol();
+            case '/':
+                return MathOperator.DIVIDE.getSymbol();
+            case '.':
+            case '=':
+                return character;
+            default:
+                if(character >= '0' && character <= '9') {
+                    return character;
+                }
+
+                return MathOperator.getEnumFromCharacter(character) != MathOperator.NONE
+                        ? character : NO_KEY;
+        }
+    }
+
+    private static int classOf(char character) {
+        return character < ASCII_CLASSES.length ? ASCII_CLASSES[character] : lookUpClass(character);
+    }
+
+    private static int lookUpClass(char character) {
+        switch(character) {
+            case '0':
+                return ZERO;
+            case '.':
+                return DECIMAL;
+            case '-':
+                return MINUS;
+            case '=':
+                return EQUALS;
+            default:
+                if(Character.isDigit(character)) {
+                    return DIGIT;
+                }
+
+                MathOperator operator = MathOperator.getEnumFromCharacter(character);
+
+                if(operator == MathOperator.LEFT_BRACKET) {
+                    return OPEN;
+                }
+
+                if(operator == MathOperator.RIGHT_BRACKET) {
+                    return CLOSE;
+                }
+
+                if(operator == MathOperator.NONE) {
+                    return UNKNOWN;
+                }
+
+                if(operator.isPrefix()) {
+                    return PREFIX;
+                }
+
+                return operator.isPostfix() ? POSTFIX : SYMBOL;
+        }
+    }
+}
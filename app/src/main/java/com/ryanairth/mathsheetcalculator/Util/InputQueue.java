@@ -0,0 +1,172 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class InputQueue {
+    /*
+        Kinds of event
+     */
+    public static final int INPUT = 0;
+    public static final int RESET = 1;
+    public static final int DELETE = 2;
+    public static final int UNDO = 3;
+    public static final int REDO = 4;
+    // A Runnable to run on the consuming thread
+    public static final int RUN = 5;
+    // A run of text, the payload is its String
+    public static final int TEXT = 6;
+    public static final int CURSOR_LEFT = 7;
+    public static final int CURSOR_RIGHT = 8;
+
+    /*
+        Events in a ring, one array per field so that queueing a keystroke allocates nothing
+     */
+    private final byte[] kinds;
+    private final char[] values;
+    private final Object[] payloads;
+    private final long[] generations;
+    /*
+        Sequence number of each slot. A slot is free for the producer holding ticket t when its
+        sequence is t, and ready for the consumer when it's t + 1.
+     */
+    private final AtomicLongArray sequences;
+    private final int mask;
+    /*
+        Next ticket to hand to a producer
+     */
+    private final AtomicLong tail;
+    /*
+        Next ticket to take, only written by the consumer and volatile so hasNewer can be read
+        from any thread
+     */
+    private volatile long head;
+
+    /*
+        The event last taken, only read by the consumer
+     */
+    private int takenKind;
+    private char takenValue;
+    private Object takenPayload;
+    private long takenGeneration;
+
+    /**
+     * Bounded lock-free queue of input events with any number of producers and a single
+     * consumer. Producers claim a ticket with a compare and set and publish the slot through its
+     * sequence number, so neither side ever blocks the other and a full queue is reported rather
+     * than waited on. Each event carries the generation it was given when it was queued, see
+     * {@link com.ryanairth.mathsheetcalculator.Math.InputGeneration}.
+     *
+     * @param capacity most events held at once, rounded up to a power of two
+     */
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        kinds = new byte[size];
+        values = new char[size];
+        payloads = new Object[size];
+        generations = new long[size];
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        tail = new AtomicLong();
+
+        for(int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an event to the end of the queue, safe to call from any thread
+     *
+     * @param kind one of the kind constants
+     * @param value the character typed for INPUT events
+     * @param payload the Runnable for RUN events or the String for TEXT events
+     * @param generation generation of the input the event is or, for RUN events, belongs to
+     * @return false if there was no room for the event
+     */
+    public boolean offer(int kind, char value, Object payload, long generation) {
+        long ticket;
+        int slot;
+
+        while(true) {
+            ticket = tail.get();
+            slot = (int) ticket & mask;
+
+            long sequence = sequences.get(slot);
+
+            if(sequence == ticket) {
+                if(tail.compareAndSet(ticket, ticket + 1)) {
+                    break;
+                }
+            } else if(sequence < ticket) {
+                // The consumer hasn't freed the slot from the last time round
+                return false;
+            }
+            // Otherwise another producer took the ticket first
+        }
+
+        kinds[slot] = (byte) kind;
+        values[slot] = value;
+        payloads[slot] = payload;
+        generations[slot] = generation;
+        // Publishes the fields above to the consumer
+        sequences.set(slot, ticket + 1);
+
+        return true;
+    }
+
+    /**
+     * Takes the event at the front of the queue, its fields are then read with the getters. Must
+     * only be called by the consumer.
+     *
+     * @return false if there was no event ready
+     */
+    public boolean take() {
+        long ticket = head;
+        int slot = (int) ticket & mask;
+
+        if(sequences.get(slot) != ticket + 1) {
+            return false;
+        }
+
+        takenKind = kinds[slot];
+        takenValue = values[slot];
+        takenPayload = payloads[slot];
+        takenGeneration = generations[slot];
+
+        payloads[slot] = null;
+        // Frees the slot for the producer that gets the ticket a lap later
+        sequences.set(slot, ticket + mask + 1);
+        head = ticket + 1;
+
+        return true;
+    }
+
+    /**
+     * Whether events newer than the one last taken have been offered, they may not be ready to
+     * take yet. Lets the consumer skip work that the next event would undo. Safe to call from any
+     * thread but only meaningful on the consumer.
+     */
+    public boolean hasNewer() {
+        return tail.get() > head;
+    }
+
+    public int getKind() {
+        return takenKind;
+    }
+
+    public char getValue() {
+        return takenValue;
+    }
+
+    public Object getPayload() {
+        return takenPayload;
+    }
+
+    public long getGeneration() {
+        return takenGeneration;
+    }
+}
@@ -0,0 +1,17 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public interface LogSink {
+    /**
+     * Writes out a message that has passed the {@link Logger} level, only ever called with a
+     * finished message
+     *
+     * @param priority one of the Logger priorities, the same numbers android.util.Log uses
+     * @param tag tag of the message
+     * @param message the message
+     * @param throwable exception to write out with the message, or null
+     */
+    void println(int priority, String tag, String message, Throwable throwable);
+}
@@ -0,0 +1,116 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public final class Logger {
+    /*
+        Priorities, the same numbers android.util.Log uses
+     */
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    /*
+        Lowest priority that's logged. It's a compile time constant, so the compiler drops any
+        call guarded by one of the flags below along with the string building for its message.
+        Lower it to DEBUG or VERBOSE to follow the input handling keystroke by keystroke.
+     */
+    public static final int LEVEL = WARN;
+
+    public static final boolean VERBOSE_ENABLED = LEVEL <= VERBOSE;
+    public static final boolean DEBUG_ENABLED = LEVEL <= DEBUG;
+    public static final boolean INFO_ENABLED = LEVEL <= INFO;
+    public static final boolean WARN_ENABLED = LEVEL <= WARN;
+
+    public static final String TAG = "Ryan: ";
+
+    /*
+        Where messages that pass the level are written, standard error until the app sets its own
+     */
+    private static volatile LogSink sink = new LogSink() {
+        @Override
+        public void println(int priority, String tag, String message, Throwable throwable) {
+            System.err.println(tag + message);
+
+            if(throwable != null) {
+                throwable.printStackTrace();
+            }
+        }
+    };
+
+    /**
+     * Logging facade for the Math and Util packages, with no Android dependency so they run on a
+     * plain JVM. Messages below {@link #LEVEL} cost nothing: calls guarded by the enabled flags
+     * are compiled out, and the detail object passed to the other calls is only turned into a
+     * string once the message is known to be written, so it works as a lazy message supplier.
+     * Pass the object itself, such as the block manager, rather than its toString().
+     */
+    private Logger() {
+    }
+
+    public static void setSink(LogSink newSink) {
+        sink = newSink;
+    }
+
+    public static void v(String tag, String message) {
+        if(VERBOSE_ENABLED) {
+            sink.println(VERBOSE, tag, message, null);
+        }
+    }
+
+    public static void v(String tag, String message, Object detail) {
+        if(VERBOSE_ENABLED) {
+            sink.println(VERBOSE, tag, message + detail, null);
+        }
+    }
+
+    public static void d(String tag, String message) {
+        if(DEBUG_ENABLED) {
+            sink.println(DEBUG, tag, message, null);
+        }
+    }
+
+    public static void d(String tag, String message, Object detail) {
+        if(DEBUG_ENABLED) {
+            sink.println(DEBUG, tag, message + detail, null);
+        }
+    }
+
+    public static void i(String tag, String message) {
+        if(INFO_ENABLED) {
+            sink.println(INFO, tag, message, null);
+        }
+    }
+
+    public static void i(String tag, String message, Object detail) {
+        if(INFO_ENABLED) {
+            sink.println(INFO, tag, message + detail, null);
+        }
+    }
+
+    public static void w(String tag, String message) {
+        if(WARN_ENABLED) {
+            sink.println(WARN, tag, message, null);
+        }
+    }
+
+    public static void w(String tag, String message, Object detail) {
+        if(WARN_ENABLED) {
+            sink.println(WARN, tag, message + detail, null);
+        }
+    }
+
+    /**
+     * Errors are always logged
+     */
+    public static void e(String tag, String message) {
+        sink.println(ERROR, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable throwable) {
+        sink.println(ERROR, tag, message, throwable);
+    }
+}
@@ -5,31 +5,48 @@ import android.app.Dialog;
 import android.app.DialogFragment;
 import android.content.DialogInterface;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 
-import com.ryanairth.mathsheetcalculator.Exceptions.InvalidMathOperatorException;
 import com.ryanairth.mathsheetcalculator.GUI.CalculatorPreview;
 import com.ryanairth.mathsheetcalculator.GUI.MathPreview;
-import com.ryanairth.mathsheetcalculator.Math.Block;
+import com.ryanairth.mathsheetcalculator.Math.BlockBuffer;
+import com.ryanairth.mathsheetcalculator.Math.BlockEvaluator;
 import com.ryanairth.mathsheetcalculator.Math.BlockManager;
+import com.ryanairth.mathsheetcalculator.Math.BlockSnapshot;
+import com.ryanairth.mathsheetcalculator.Math.FunctionMode;
+import com.ryanairth.mathsheetcalculator.Math.EvaluationResult;
+import com.ryanairth.mathsheetcalculator.Math.InputGeneration;
 import com.ryanairth.mathsheetcalculator.Math.MathOperator;
+import com.ryanairth.mathsheetcalculator.Math.OperandBuilder;
+import com.ryanairth.mathsheetcalculator.Math.PrecisionMode;
+import com.ryanairth.mathsheetcalculator.Math.PreciseTotalTask;
+import com.ryanairth.mathsheetcalculator.Math.Rational;
 import com.ryanairth.mathsheetcalculator.MathSheetApp;
 import com.ryanairth.mathsheetcalculator.R;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.Locale;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
 
-import static com.ryanairth.mathsheetcalculator.MainActivity.TAG;
+import static com.ryanairth.mathsheetcalculator.Util.Logger.TAG;
 
 /**
  * Created by Ryan Airth (Sweeney) on 03/06/2016.
  * Copyright information found in accompanying License.txt file.
  */
-public class PreviewInputProcessor implements PreviewUpdateListener {
+public class PreviewInputProcessor implements PreviewUpdateListener, RefinementListener {
     final String DASH_SEPARATOR = "------------------------------------------------------";
     final String HASH_SEPARATOR = "######################################################";
+    private static final char[] NO_TEXT = new char[0];
+    /*
+        Where the caret is while it's at the end of the text, and the character it's shown as
+        anywhere else
+     */
+    private static final int NO_CURSOR = -1;
+    private static final char CURSOR = '|';
 
     private MathPreview preview;
     /*
@@ -37,41 +54,144 @@ public class PreviewInputProcessor implements PreviewUpdateListener {
      */
     private BlockManager manager;
     /*
-        The current string that's either a symbol or a number, eventually gets added to the block
-        manager
+        The current symbol, eventually gets added to the block manager. Empty while a number is
+        being typed, which is built up in operand instead.
      */
     private String currentBlockString;
     /*
-        Current text that's in the preview text
+        The number currently being typed, or a minus that could still start one
      */
-    private String currentText;
+    private OperandBuilder operand;
     /*
-        Last character in current text
+        Text that's in the preview text and the state of the input, kept here rather than read
+        back from the preview
      */
-    private char lastChar;
+    private InputLexer lexer;
     /*
-        Second last character in current text
+        Last character in the text before the current keystroke
      */
-    private char secondLastChar;
+    private char lastChar;
     /*
         Boolean to see if the equation has currently been evaluated (equals sign has been pressed)
      */
     private boolean isEvaluated;
+    /*
+        Works out precise totals in the background when the evaluator is in a precise mode
+     */
+    private ResultRefiner refiner;
+    /*
+        State after every keystroke, for undo and redo
+     */
+    private InputHistory history;
+    /*
+        Formatter for the total shown under the preview text, its buffer is what the secondary
+        text shows so it's kept apart from the one that formats everything else
+     */
+    private DoubleFormatter totalFormatter;
+    private DoubleFormatter formatter;
+    /*
+        The total text shown under the preview text when it isn't the total formatter's buffer,
+        null while it is. Kept here so the preview is only ever written to, never read back, and
+        recorded in the history as it is, so a keystroke showing the total of the blocks doesn't
+        copy it into a String.
+     */
+    private String totalText;
+    /*
+        Blocks and function mode the total formatter's buffer was worked out for, the same
+        snapshot means the same blocks so the total isn't worked out again
+     */
+    private BlockSnapshot totalBlocks;
+    private FunctionMode totalMode;
+    /*
+        Whether a run of text is being processed, the preview and history are only updated once
+        at the end of it
+     */
+    private boolean batching;
+    private boolean textPending;
+    /*
+        Refinement for an equals in the run, only started if the run ends on it
+     */
+    private PreciseTotalTask batchRefinement;
+    /*
+        Result of the last evaluation, reused so that evaluating allocates nothing
+     */
+    private EvaluationResult evaluation;
+    /*
+        Block the caret is in, or in front of, once it's been moved back from the end of the text,
+        NO_CURSOR while it's at the end and keys are typed the usual way. While it's away from the
+        end every block is in the block manager and edits are made to them where they are.
+     */
+    private int cursor;
+    /*
+        Number of characters of the cursor's block in front of the caret, only ever inside a
+        number, and the index of the caret in the text
+     */
+    private int cursorInBlock;
+    private int cursorOffset;
+    /*
+        Length of each block's text, worked out when the caret leaves the end and kept up to date
+        with every edit while it's away
+     */
+    private int[] blockLengths;
+    /*
+        The text with the caret in it, as it's shown
+     */
+    private char[] cursorText;
+    /*
+        Reads back a number that's been edited in front of the caret
+     */
+    private OperandBuilder cursorOperand;
+    /*
+        Generation of the newest input queued and of the input being processed, refinements stop
+        once they're stale. Null when input isn't queued, refinements are then only cancelled.
+     */
+    private InputGeneration generations;
+    private long generation;
 
     public PreviewInputProcessor(BlockManager manager, CalculatorPreview preview) {
+        this(manager, preview, null);
+    }
+
+    /**
+     * Processes the input typed into a preview. Everything is done on the thread that calls the
+     * listener methods, which owns the block manager from then on, and the preview is only ever
+     * written to.
+     *
+     * @param manager the blocks of the sum
+     * @param preview the preview shown, it must be safe to write to from the owning thread
+     * @param callbackExecutor runs refined totals on the owning thread, null for the main thread
+     */
+    public PreviewInputProcessor(BlockManager manager, MathPreview preview,
+                                 Executor callbackExecutor) {
         this.manager = manager;
         this.preview = preview;
 
-        init();
+        init(callbackExecutor);
     }
 
     /**
      * Initializes all the main stuff for the class
      */
-    private void init() {
+    private void init(Executor callbackExecutor) {
         // Initialize the currentBlockString so it's empty rather than null
         currentBlockString = "";
-        currentText = "0";
+
+        lexer = new InputLexer();
+
+        operand = new OperandBuilder();
+        refiner = callbackExecutor == null ? new ResultRefiner()
+                : new ResultRefiner(callbackExecutor);
+        history = new InputHistory();
+        totalFormatter = new DoubleFormatter();
+        formatter = new DoubleFormatter();
+        evaluation = new EvaluationResult();
+        totalText = "0";
+        cursor = NO_CURSOR;
+        blockLengths = new int[16];
+        cursorText = new char[16];
+        cursorOperand = new OperandBuilder();
+
+        recordState();
     }
 
     /**
@@ -81,455 +201,1197 @@ public class PreviewInputProcessor implements PreviewUpdateListener {
      */
     @Override
     public void updatePreview(char value) {
-        // Note: Processing the minus must always become before symbols, symbols are the last stage
-        //          this is because the minus symbol is unique in that it both serves as subtraction
-        //          and an indicator that a number is negative. (below 0, -0 not included)
-        //       It may also be best to keep both decimal and symbol processing at or near the end
-        //          and have any more specific bit of processing before hand.
-        //       Of course one could process each and every symbol manually however, most by the same
-        //          formatting rules so it's not completely necessary.
+        // Anything typed makes a refinement of the last total stale
+        refiner.cancel();
+
+        processInput(value);
+        recordState();
+
+        // Nothing is joined into a string unless the log level is lowered
+        Logger.i(TAG, "Last char: ", lastChar);
+        Logger.i(TAG, "Current char: ", value);
+        Logger.i(TAG, "Input state: ", lexer.getState());
+        Logger.i(TAG, "Current block string value: ", getCurrentBlockForLog());
+        Logger.i(TAG, "Current text value: ", lexer);
+        Logger.d(TAG, DASH_SEPARATOR);
+    }
 
+    /**
+     * Processes a whole run of text, such as something pasted or typed on a keyboard, in one pass.
+     * Each character goes through the same lexer and blocks as a key would, but the total is
+     * worked out and the preview set once at the end, and the run is a single step of the
+     * history. Characters that aren't keys of the calculator are skipped.
+     *
+     * @param text the text, read once straight away
+     */
+    @Override
+    public void updatePreview(CharSequence text) {
+        startBatch();
 
-        currentText = preview.getPrimary().getText().toString();
-        lastChar = currentText.charAt(currentText.length() - 1);
+        try {
+            for(int i = 0; i < text.length(); i++) {
+                char value = InputLexer.fromKeyboard(text.charAt(i));
 
-        // In order to avoid a null pointer exception, we can only do this when there are two or
-        // more elements in the string
-        if(currentText.length() > 1) {
-            secondLastChar = currentText.charAt(currentText.length() - 2);
+                if(value != InputLexer.NO_KEY) {
+                    processInput(value);
+                }
+            }
+        } finally {
+            batching = false;
+            showBatch();
         }
 
-        // If the calculation was recently evaluated we need to do certain things based on the next input
-        if(isEvaluated) {
-            if(Character.isDigit(value)) {
-                resetPreview();
-            }
+        recordState();
 
-            isEvaluated = false;
+        Logger.i(TAG, "Processed text of length ", text.length());
+    }
+
+    /**
+     * Holds back showing the text and total until {@link #finishBatch()}, for input that's about
+     * to be followed by more. Keys typed in between are still each a step of the history.
+     */
+    public void startBatch() {
+        refiner.cancel();
+
+        batching = true;
+    }
+
+    /**
+     * Shows the text and total held back since {@link #startBatch()}, and refines the total if
+     * the input ended on an equals
+     */
+    public void finishBatch() {
+        boolean shown = textPending;
+
+        batching = false;
+        showBatch();
+
+        if(shown) {
+            // The last key was recorded before its total was shown
+            history.replace(manager.getSnapshot(), lexer.snapshot(), getTotalText(),
+                    getCurrentBlockString(), isEvaluated);
         }
+    }
 
-        // If the entire string just contains zero, the default start point, set the current text to
-        // an empty string
-        if(currentText.equals("0")) {
-            currentText = "";
-            lastChar = '\u0000';
-
-            switch (value) {
-                case '-':
-                    processMinus();
-                    break;
-                case '.':
-                    processDecimal();
-                    break;
-                default:
-                    if(Character.isDigit(value)) {
-                        processDigit(value);
-                    }
+    private void showBatch() {
+        if(textPending) {
+            textPending = false;
+            showText();
+        }
 
-                    break;
+        if(batchRefinement != null) {
+            if(isEvaluated) {
+                refine(batchRefinement);
             }
-        } else {
-            switch (value) {
-                case '=':
-                    processEquals();
-                    break;
-                case '-':
-                    processMinus();
-                    break;
-                case '.':
-                    processDecimal();
-                    break;
-                default:
-                    if(Character.isDigit(value)) {
-                        processDigit(value);
-                    } else {
-                        processSymbol(value);
-                    }
 
-                    break;
-            }
+            batchRefinement = null;
         }
-
-        Log.i(TAG, "Second last char: " + secondLastChar);
-        Log.i(TAG, "Last char: " + lastChar);
-        Log.i(TAG, "Current char: " + value);
-        Log.i(TAG, "Current block string value: " + currentBlockString);
-        Log.i(TAG, "Current text value: " + currentText);
-        Log.e(TAG, DASH_SEPARATOR);
     }
 
     /**
-     * Processes the equals input, will calculate the final sum given and sets the preview text
+     * Carries out what a typed character does to the text and blocks
      */
-    private void processEquals() {
-        updateCurrentBlockString(currentBlockString, true, false);
+    private void processInput(char value) {
+        if(cursor != NO_CURSOR) {
+            if(value != '=') {
+                processCursorInput(value);
+                return;
+            }
 
-        Log.i(TAG, "::Blocks::" + System.getProperty("line.separator")
-                + manager.toString() + "::Blocks::");
+            // The whole sum is worked out from the end
+            leaveCursor();
+        }
 
-        // Get sum from block manager
-        double sum = 0.0;
-        // Try catch was used for debugging, can take out safely (hopefully)
-        try {
-            sum = manager.getBlockEvaluator().calculateTotal();
+        // If the calculation was recently evaluated we need to do certain things based on the next input
+        if(isEvaluated) {
+            if(Character.isDigit(value)) {
+                clearPreview();
+            }
 
-            // Format it so it's presentable
-            String sumString = formatNumber(sum);
-            // Reset the preview
-            resetPreview();
-            // Set current text and reset the preview text total to null
-            setText(sumString);
-            preview.getSecondary().setText("");
-            // Update the current block
-            currentBlockString = sumString;
+            isEvaluated = false;
+        }
 
-            // Set the isEvaluated boolean for logic that deals with further input after = has been pressed
-            isEvaluated = true;
+        lastChar = lexer.getLastChar();
+
+        // Which of these is done depends only on the state of the text and the class of the
+        // character typed, see InputLexer for the table
+        switch(lexer.getAction(value)) {
+            case InputLexer.APPEND:
+                appendInput(value, false);
+                break;
+            case InputLexer.START_BLOCK:
+                appendInput(value, true);
+                break;
+            case InputLexer.APPEND_DECIMAL:
+                processDecimal(false, false);
+                break;
+            case InputLexer.APPEND_ZERO_DECIMAL:
+                processDecimal(true, false);
+                break;
+            case InputLexer.START_ZERO_DECIMAL:
+                processDecimal(true, true);
+                break;
+            case InputLexer.FUNCTION:
+                processFunction(value);
+                break;
+            case InputLexer.OPERATOR:
+                processSymbol(value, false);
+                break;
+            case InputLexer.REPLACE_OPERATOR:
+                processSymbol(value, true);
+                break;
+            case InputLexer.EVALUATE:
+                processEquals();
+                break;
+            default:
+                break;
+        }
+    }
 
-            preview.scrollText(View.FOCUS_LEFT);
-        } catch (ClassCastException e) {
-            Log.e(TAG, "Blocks: " + manager.toString());
+    /**
+     * Processes the equals input, will calculate the final sum given and sets the preview text
+     */
+    private void processEquals() {
+        addCurrentBlock();
 
-            String exception = Log.getStackTraceString(e);
+        Logger.i(TAG, "Blocks: ", manager);
 
-            Log.e(TAG, exception);
-        } catch (InvalidMathOperatorException e) {
-            Log.e(TAG, "Exception occurred when calculating total, invalid math operator found");
+        // Get sum from block manager, in whichever precision mode the evaluator is set to
+        BlockEvaluator evaluator = manager.getBlockEvaluator();
+        Number sum = evaluator.getAvailablePreciseTotal();
+        PreciseTotalTask refinement = null;
 
-            String exception = Log.getStackTraceString(e);
+        if(sum == null) {
+            // Show the double total straight away and swap in the precise one once it's
+            // been worked out in the background. It's the final total, with functions worked out
+            // by StrictMath rather than the preview's function mode.
+            sum = evaluator.calculateTotal();
+            refinement = evaluator.createPreciseTotalTask();
+        }
 
-            Log.e(TAG, exception);
+        if(Double.isNaN(sum.doubleValue()) || Double.isInfinite(sum.doubleValue())) {
+            // Only worked out again when something's gone wrong, to find where
+            evaluator.evaluateTotal(evaluation);
 
             // TODO - show popup explaining that an error has occurred - when internet is fixed
-            //DialogFragment exceptionDialog = new ExceptionDialogFragment();
-            //exceptionDialog.show(MathSheetApp.getAppContext(), "exception");
+            Logger.w(TAG, "Total isn't a number: ", evaluation);
+            Logger.w(TAG, "Blocks: ", manager);
+        }
 
-            resetPreview();
+        // Format it so it's presentable
+        String sumString = formatResult(sum);
+        // Reset the preview
+        clearPreview();
+        // Set current text and reset the preview text total to null
+        lexer.setText(sumString);
+        showText();
+        preview.setSecondaryText(NO_TEXT, 0, 0);
+        totalText = "";
+        // Update the current block
+        setCurrentBlockString(sumString);
+
+        // Set the isEvaluated boolean for logic that deals with further input after = has been pressed
+        isEvaluated = true;
+
+        preview.scrollText(View.FOCUS_LEFT);
+
+        if(refinement != null) {
+            if(batching) {
+                batchRefinement = refinement;
+            } else {
+                refine(refinement);
+            }
         }
     }
 
     /**
-     * Processes a digit passed
+     * Adds a digit or minus to the text, either as part of the current block or as the start of a
+     * new one
      *
-     * @param digit Number value passed to add to the block string and such
-     */
-    private void processDigit(final char digit) {
-        // If it's a digit, set text
-        setText(currentText + digit);
-
-        if(!Character.isDigit(lastChar) && lastChar != '.' && lastChar != '-' && lastChar != '\u0000') {
-            // If following a symbol except minus or decimal start again otherwise we have to
-            // add it to the current block string
-            updateCurrentBlockString(String.valueOf(digit), true, false);
-        } else if(lastChar == '-') {
-            // If second last character isn't a number or is the null character, include minus
-            if(!Character.isDigit(secondLastChar) || secondLastChar == '#') {
-                updateCurrentBlockString(String.valueOf(digit), false, false);
-            } else {
-                // Otherwise minus is being used as an operator in this instance
-                updateCurrentBlockString(String.valueOf(digit), true, false);
-            }
-        } else {
-            updateCurrentBlockString(String.valueOf(digit), false, false);
+     * @param value the digit or minus
+     * @param newBlock whether the current block is finished and added to the block manager first
+     */
+    private void appendInput(final char value, boolean newBlock) {
+        if(lexer.isStart()) {
+            // Typed over the "0", along with a zero typed at the start
+            clearCurrentBlock();
         }
+
+        lexer.append(value);
+        showText();
+
+        updateCurrentBlock(value, newBlock, false);
     }
 
     /**
      * Processes a decimal, makes sure that there's only one decimal as well what to do if the user
      * pressed the decimal without actually adding a number or zero
+     *
+     * @param withZero whether a zero goes in front of the decimal, as there's no number before it
+     * @param newBlock whether the decimal starts a new number
      */
-    private void processDecimal() {
+    private void processDecimal(boolean withZero, boolean newBlock) {
         final char DECIMAL = '.';
 
         // Check to see if the current block doesn't contain a decimal, if it doesn't proceed
-        if(!currentBlockString.contains(".")) {
-            // If the case is that it's at the beginning automatically add a zero if the decimal
-            // is pressed
-            if(currentText.equals("") || currentText.equals("0")) {
-                setText(currentText + 0 + DECIMAL);
+        if(!operand.hasPoint()) {
+            lexer.append(withZero ? "0." : ".");
+            showText();
 
-                updateCurrentBlockString(0 + String.valueOf(DECIMAL), true, false);
-            } else if(Character.isDigit(lastChar)) {
-                setText(currentText + DECIMAL);
+            // The operand puts the zero in front of the decimal itself
+            updateCurrentBlock(DECIMAL, newBlock, false);
+        }
+    }
 
-                updateCurrentBlockString(String.valueOf(DECIMAL), false, false);
-            } else {
-                // To handle any case where the previous value isn't a number, much like the beginning
-                setText(currentText + 0 + DECIMAL);
+    /**
+     * Processes a function such as sin or √. A function starts a new operand, so it can follow
+     * anything and whatever came before it is finished off first.
+     *
+     * @param function symbol of the function
+     */
+    private void processFunction(final char function) {
+        if(lexer.isStart()) {
+            // A zero typed at the start goes along with the "0" the function replaces
+            clearCurrentBlock();
+        }
 
-                // Also include for the case where we want a negative decimal and the user just presses
-                // decimal to automatically add the zero
-                if(lastChar == '-') {
-                    updateCurrentBlockString(0 + String.valueOf(DECIMAL), false, false);
-                } else {
-                    updateCurrentBlockString(0 + String.valueOf(DECIMAL), true, false);
-                }
-            }
+        lexer.append(function);
+        showText();
+
+        // Nothing to finish off at the start of the sum
+        updateCurrentBlock(function, hasCurrentBlock(), false);
+    }
+
+    /**
+     * Processes symbols, pretty much everything except digits, decimal and minus, so plus, mult,
+     * divide, percentage etc
+     *
+     * @param symbol the symbol typed
+     * @param replace whether it takes the place of the symbol at the end of the text, rather than
+     *                following a number
+     */
+    private void processSymbol(final char symbol, boolean replace) {
+        // Entering the same symbol twice does nothing
+        if(symbol == lastChar) {
+            return;
+        }
+
+        if(replace) {
+            lexer.replaceLast(symbol);
+        } else {
+            lexer.append(symbol);
         }
+
+        showText();
+
+        updateCurrentBlock(symbol, true, replace);
     }
 
     /**
-     * Processes a minus symbol, minus is unique as it's also used to represent negative numbers, as
-     * such, it means that a minus can appear twice in a row
+     * Sets the text of the previews to the lexer's text and automatically scrolls them to the end
      */
-    private void processMinus() {
-        final char MINUS = '-';
+    private void showText() {
+        if(batching) {
+            // Shown once the run of text is done, but the history records the total as the
+            // blocks' now, the same as it would if it were shown
+            textPending = true;
+
+            if(manager.size() != 0) {
+                totalText = null;
+            }
 
-        // For the first entry
-        if(currentText.equals("") || currentText.equals("0")) {
-            setText(currentText + MINUS);
+            return;
+        }
+
+        Logger.i(TAG, "Setting text to: ", lexer);
 
-            updateCurrentBlockString(String.valueOf(MINUS), false, false);
+        if(cursor == NO_CURSOR) {
+            // Read straight from the lexer's array, the preview copies it before this returns
+            preview.setPrimaryText(lexer.getChars(), 0, lexer.length());
+        } else {
+            showCursorText();
         }
-        // If the last character is a number, we're specifically looking to take away from it
-        if(Character.isDigit(lastChar)) {
-            setText(currentText + MINUS);
 
-            updateCurrentBlockString(String.valueOf(MINUS), true, false);
+        // If there's more than one block
+        if(manager.size() != 0) {
+            Logger.i(TAG, "Showing total");
+
+            formatTotal();
+
+            preview.setSecondaryText(totalFormatter.getBuffer(), 0, totalFormatter.length());
+            totalText = null;
         }
-        // Otherwise we are starting a new, negative number however, we can only ever have a
-        // symbol followed by a minus, nothing else
-        if(secondLastChar != '#' && !Character.isDigit(lastChar) && Character.isDigit(secondLastChar)) {
-            setText(currentText + MINUS);
 
-            updateCurrentBlockString(String.valueOf(MINUS), true, false);
+        // Totals from equals are shown from the start, the caret is left where it's been put
+        if(cursor == NO_CURSOR) {
+            preview.scrollText(isEvaluated ? View.FOCUS_LEFT : View.FOCUS_RIGHT);
         }
     }
 
     /**
-     * Processes symbols, pretty much everything except digits, decimal and minus, so plus, mult,
-     * divide, percentage etc
+     * Works out the total of the blocks into the total formatter's buffer. Typing a number doesn't
+     * change the blocks until it's finished, so the total is only worked out again once they have
+     * changed.
      */
-    private void processSymbol(final char symbol) {
-        // TODO - TEMP/TEST
-        /*if(symbol == MathOperator.LEFT_BRACKET.getSymbol() || symbol == MathOperator.RIGHT_BRACKET.getSymbol()) {
-            setText(currentText + symbol);
-
-            updateCurrentBlockString(String.valueOf(symbol), true, false);
+    private void formatTotal() {
+        BlockEvaluator evaluator = manager.getBlockEvaluator();
+        BlockSnapshot blocks = manager.getSnapshot();
+        FunctionMode mode = evaluator.getPreviewFunctionMode();
 
-            // TODO - refactor so no return statement
+        if(blocks == totalBlocks && mode == totalMode) {
             return;
-        }*/
-        // TODO - END TEMP/TEXT
-
-        // TODO - if right bracket is added straight after a number, add a multiply.
-        // TODO - Do the same if number is added directly after right bracket, otherwise, use don't add a multiply.
+        }
 
+        totalBlocks = blocks;
+        totalMode = mode;
 
-        // First check to make sure if we're not entering the same symbol, if we are, ignore it
-        if(symbol != lastChar) {
-            // If the last character is a minus
-            if(Character.isDigit(lastChar)) {
-                setText(currentText + symbol);
+        // Written into the formatter's buffer, so showing the total allocates nothing
+        if(evaluator.isTotalIntegral()) {
+            totalFormatter.format(evaluator.calculateIntegerTotal());
+        } else {
+            evaluator.evaluateCurrentTotal(evaluation);
 
-                updateCurrentBlockString(String.valueOf(symbol), true, false);
+            if(!evaluation.isValid()) {
+                Logger.i(TAG, "Total isn't a number: ", evaluation);
             }
-            // If the last character isn't number
-            if(!Character.isDigit(lastChar)) {
-                // And if the last character isn't a minus with the second last character being a digit,
-                // carry on, otherwise, do nothing and expect a number to be entered as this will
-                // signify the start of a negative number
-                if(Character.isDigit(secondLastChar)) {
-                    String subString = currentText.substring(0, currentText.length() - 1);
 
-                    setText(subString + symbol);
+            // Shown as it is, Infinity or NaN until the input is put right
+            totalFormatter.format(evaluation.getValue());
+        }
+    }
 
-                    updateCurrentBlockString(String.valueOf(symbol), true, true);
-                }
+    /**
+     * Updates the current block as well as modifying the block manager to have the latest data
+     *
+     * @param value The value to be added to the current block
+     * @param finishedState Whether or not the call to this should add to the block manager
+     * @param replacePrevious Whether or not the call to this should replace the current block
+     *                        rather than add it to the block manager
+     */
+    private void updateCurrentBlock(char value, boolean finishedState, boolean replacePrevious) {
+        if(finishedState) {
+            if(replacePrevious) {
+                Logger.i(TAG, "Replacing current block: ", getCurrentBlockForLog());
+            } else {
+                addCurrentBlock();
             }
+
+            clearCurrentBlock();
+            appendToCurrentBlock(value);
+
+            // The manager only lists its blocks if the line is written
+            Logger.i(TAG, "Blocks: ", manager);
+            Logger.d(TAG, DASH_SEPARATOR);
+        } else {
+            appendToCurrentBlock(value);
         }
     }
 
     /**
-     * Sets the text of the previews and automatically scrolls them to the end
-     *
-     * @param updatedText the text that we want the preview texts to display
+     * Adds the current block to the block manager, the current block is left as it is
      */
-    private void setText(String updatedText) {
-        Log.i(TAG, "Setting text to: " + updatedText);
+    private void addCurrentBlock() {
+        if(operand.isNumber()) {
+            manager.createAndAddBlock(operand.doubleValue());
+            return;
+        }
 
-        // Update text
-        preview.getPrimary().setText(updatedText);
-        currentText = updatedText;
+        if(hasCurrentBlock()) {
+            // A lone minus is a subtraction after all
+            char symbol = operand.isEmpty() ? currentBlockString.charAt(0) : operand.charAt(0);
 
-        // If there's more than one block
-        if(manager.getBlocks().size() != 0) {
-            Log.i(TAG, "Showing total");
+            manager.createAndAddBlock(MathOperator.getEnumFromCharacter(symbol));
+        } else {
+            Logger.e(TAG, "Failed to add character, current block is empty");
+        }
 
-            double sum = 0.0;
+        Logger.d(TAG, DASH_SEPARATOR);
+    }
 
-            // Unnecessary try catch, was used for debugging, can take out safely (hopefully)
-            try {
-                sum = manager.getBlockEvaluator().calculateCurrentTotal();
-            } catch (Exception e) {
-                Log.e(TAG, manager.toString());
+    /**
+     * Adds a character to the end of the current block, digits, decimals and minuses go in the
+     * operand so typing a number doesn't build a new string for every digit
+     */
+    private void appendToCurrentBlock(char value) {
+        if(currentBlockString.isEmpty()
+                && (Character.isDigit(value) || value == '.' || value == '-')) {
+            operand.append(value);
+        } else {
+            currentBlockString = getCurrentBlockString() + value;
+            operand.reset();
+        }
+    }
 
-                StringBuilder stackTrace = new StringBuilder();
+    private boolean hasCurrentBlock() {
+        return !operand.isEmpty() || !currentBlockString.isEmpty();
+    }
 
-                for(StackTraceElement elem : e.getStackTrace()) {
-                    stackTrace.append(elem.toString());
-                    stackTrace.append(System.getProperty("line.separator"));
-                }
+    /**
+     * Text of the current block, whether it's a number or a symbol
+     */
+    private String getCurrentBlockString() {
+        return operand.isEmpty() ? currentBlockString : operand.toString();
+    }
 
-                Log.e("AndroidRuntime: ", stackTrace.toString());
-            }
+    /**
+     * The current block for a log line, only made into a String if the line is written
+     */
+    private Object getCurrentBlockForLog() {
+        return operand.isEmpty() ? currentBlockString : operand;
+    }
+
+    /**
+     * Sets the current block from text, such as a total or a block from the history. Anything
+     * that isn't a single symbol goes in the operand.
+     */
+    private void setCurrentBlockString(String block) {
+        clearCurrentBlock();
 
-            preview.getSecondary().setText(formatNumber(sum));
+        if(block.length() == 1 && block.charAt(0) != '-'
+                && MathOperator.getEnumFromCharacter(block.charAt(0)) != MathOperator.NONE) {
+            currentBlockString = block;
+        } else {
+            operand.append(block);
         }
+    }
 
-        preview.scrollText(View.FOCUS_RIGHT);
+    private void clearCurrentBlock() {
+        currentBlockString = "";
+        operand.reset();
     }
 
     /**
-     * Updates the currentBlockString as well as modifying the block manager to have the latest data
+     * Swaps the precise total in for the double total shown when equals was pressed, only called if
+     * nothing has been typed since
      *
-     * @param value The value to be added to the block string
-     * @param finishedState Whether or not the call to this should add to the block manager
-     * @param replacePrevious Whether or not the call to this should replace the last object in the
-     *                        block manager
+     * @param task the task that was run
+     * @param total the precise total it gave
      */
-    private void updateCurrentBlockString(String value, boolean finishedState, boolean replacePrevious) {
-        if(finishedState) {
-            if(replacePrevious) {
-                currentBlockString = "";
-
-                try {
-                    Double number = Double.parseDouble(currentBlockString);
-                    manager.createAndAddBlock(number);
-                } catch (NumberFormatException e) {
-                    Log.w(TAG, "Failed parsing a number, adding character!");
-
-                    if(currentBlockString.length() > 0) {
-                        manager.createAndAddBlock(MathOperator.getEnumFromCharacter(currentBlockString.charAt(0)));
-                    } else {
-                        Log.e(TAG, "Failed to add character, currentBlockString is empty");
-                    }
+    @Override
+    public void onRefined(PreciseTotalTask task, Number total) {
+        manager.getBlockEvaluator().cachePreciseTotal(task, total);
 
-                    Log.i(TAG, DASH_SEPARATOR);
-                }
+        String sumString = formatResult(total);
 
-                currentBlockString = value;
-            } else {
-                try {
-                    Double number = Double.parseDouble(currentBlockString);
-                    manager.createAndAddBlock(number);
-                } catch(NumberFormatException e) {
-                    Log.w(TAG, "Failed parsing a number, adding character!");
-
-                    if(currentBlockString.length() > 0) {
-                        // TODO - TEST
-                        if(lastChar == '(') {
-                            manager.createAndAddBlock(MathOperator.MULTIPLY);
-                        }
-                        // TODO - END TEST
-
-                        manager.createAndAddBlock(MathOperator.getEnumFromCharacter(currentBlockString.charAt(0)));
-                    } else {
-                        Log.e(TAG, "Failed to add character, currentBlockString is empty");
-                    }
+        Logger.i(TAG, "Refined total: ", sumString);
 
+        lexer.setText(sumString);
+        showText();
+        setCurrentBlockString(sumString);
 
-                    Log.i(TAG, DASH_SEPARATOR);
-                }
+        preview.scrollText(View.FOCUS_LEFT);
 
-                currentBlockString = value;
-            }
+        // The refined total belongs to the equals keystroke, undo shouldn't stop at the double one
+        history.replace(manager.getSnapshot(), lexer.snapshot(), getTotalText(),
+                getCurrentBlockString(), isEvaluated);
+    }
 
-            if(!manager.isEmpty()) {
-                Log.i(TAG, "Number of blocks: " + manager.getBlocks().size());
-                Log.i(TAG, "First on deque: " + manager.getFirstBlock());
-                Log.i(TAG, "Last on deque: " + manager.getFinalBlock());
-            } else {
-                Log.i(TAG, "Block manager is empty");
-            }
-            Log.e(TAG, DASH_SEPARATOR);
-        } else {
-            currentBlockString += value;
+    /**
+     * Has refinements stop part way through once input newer than the input they were started
+     * for is queued, for a processor fed from a queue
+     *
+     * @param generations generation of the newest input queued
+     */
+    public void setInputGeneration(InputGeneration generations) {
+        this.generations = generations;
+    }
+
+    /**
+     * Sets the generation of the input about to be processed
+     */
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * Starts refining a total in the background, it's stopped if newer input is queued
+     */
+    private void refine(PreciseTotalTask task) {
+        if(generations != null) {
+            task.setGeneration(generations, generation);
         }
+
+        refiner.refine(task, this);
     }
 
     /**
-     * Resets the preview, block manager and current block string
+     * Resets the preview, block manager and current block string, the reset can be undone
      */
     @Override
     public void resetPreview() {
-        Log.i(TAG, "Resetting preview");
-        Log.e(TAG, HASH_SEPARATOR);
+        clearPreview();
+
+        recordState();
+    }
+
+    /**
+     * Resets the preview, block manager and current block string
+     */
+    private void clearPreview() {
+        Logger.i(TAG, "Resetting preview");
+
+        refiner.cancel();
+        Logger.d(TAG, HASH_SEPARATOR);
 
         // Reset the texts to display "0", the default state
         preview.resetPreview();
+        totalText = "0";
 
-        currentBlockString = "";
-        currentText = "0";
+        clearCurrentBlock();
+        lexer.setText("0");
+        cursor = NO_CURSOR;
 
         // Reset the block manager, deleting all blocks
         manager.reset();
 
-        // Reset last and second last char parameters to the null value (aka: "/0")
+        // Reset the last char to the null value (aka: "/0")
         lastChar = '\u0000';
-        secondLastChar = '\u0000';
 
         isEvaluated = false;
     }
 
     /**
-     * Deletes the last input from preview text and block in the block manager
+     * Deletes the last character typed from the preview text and the blocks, as its own step of
+     * the history. Unlike undo it only ever takes away one character, even after an equals, a
+     * reset or a run of pasted text.
      */
     @Override
     public void deleteLastInput() {
-        Log.i(TAG, "Undoing last input");
+        Logger.i(TAG, "Deleting last input");
 
-        // If the currentText is greater than 0, then it's fine to go ahead and delete previous element
-        // of both the currentBlockString and the currentText
-        if(currentText.length() > 0 && !(currentText.startsWith("0") && currentText.length() == 1)) {
-            if(currentBlockString.length() > 0) {
-                // Get length of currentBlockString and use it in order to get substring
-                int stringSizeBlock = currentBlockString.length();
-                String subStringCurrentBlock = currentBlockString.substring(0, stringSizeBlock - 1);
+        refiner.cancel();
 
-                // Set currentBlockString to the new block string which has the last element deleted
-                currentBlockString = subStringCurrentBlock;
+        if(cursor != NO_CURSOR) {
+            deleteAtCursor();
+            recordState();
 
-                Log.i(TAG, "CurrentBlockString: " + currentBlockString);
-                Log.i(TAG, "CurrentBlockString length: " + stringSizeBlock + ", sub string: " + subStringCurrentBlock);
+            return;
+        }
 
-                // Remove the last element from current text
+        // If there's more than the starting 0, then it's fine to go ahead and delete previous element
+        // of both the current block and the text
+        if(!lexer.isStart() && hasCurrentBlock()) {
+            // Whatever is left of a total is edited like a typed number
+            isEvaluated = false;
+
+            // Delete the last element of the current block
+            if(operand.isEmpty()) {
+                int blockLength = currentBlockString.length();
+
+                currentBlockString = currentBlockString.substring(0, blockLength - 1);
+            } else {
+                operand.deleteLast();
+            }
+
+            Logger.i(TAG, "Current block: ", getCurrentBlockForLog());
+
+            // If the current block is empty the block before it is typed again
+            if(!hasCurrentBlock() && !manager.isEmpty()) {
+                lexer.deleteLast();
+                reopenFinalBlock();
+                showDeletion();
+            } else {
                 removeLastTextElement();
+            }
+        } else {
+            Logger.i(TAG, "At beginning, nothing to delete");
+        }
 
-                // If currentBlockString is empty we want to set it as the next thing
-                if(currentBlockString.isEmpty() && !manager.isEmpty()) {
-                    Log.e(TAG, "CurrentBlockString length is 0 or less");
+        recordState();
 
-                    // Get the block that holds the data
-                    Block currentBlock = manager.getFinalBlock();
+        Logger.d(TAG, DASH_SEPARATOR);
+    }
 
-                    // If the block holds a math operator we want the currentBlockString to hold it's
-                    // character value likewise for a number
-                    if(currentBlock.getValue() instanceof MathOperator) {
-                        Log.i(TAG, "Current block is a MathOperator");
+    /**
+     * Takes the final block off the block manager and makes it the current block again. A number
+     * is read back from the end of the text, so it's the same as it was typed rather than
+     * formatted again from its value.
+     */
+    private void reopenFinalBlock() {
+        BlockBuffer blocks = manager.getBlockBuffer();
+        int last = blocks.size() - 1;
+
+        if(last == 0) {
+            // The first block is all of the text up to here, even a total in scientific notation
+            reopenFinalBlock(0);
+        } else if(blocks.isNumber(last)) {
+            // The sign bit, so a -0 keeps its minus too
+            double number = blocks.getNumber(last);
+
+            reopenFinalBlock(lexer.findNumberStart(Double.doubleToRawLongBits(number) < 0));
+        } else {
+            reopenFinalBlock(lexer.length());
+        }
+    }
 
-                        MathOperator operator = (MathOperator)currentBlock.getValue();
+    /**
+     * Makes the final block the current block again, the same as {@link #reopenFinalBlock()}
+     * with the blocks measured first, so a number that isn't the first block is read back whole
+     * even in scientific notation
+     */
+    private void reopenMeasuredBlock() {
+        int last = manager.size() - 1;
 
-                        currentBlockString = String.valueOf(operator.getSymbol());
-                    } else if(currentBlock.getValue() instanceof Double) {
-                        // currentBlockString = String.valueOf(currentBlock.getValue());
-                        currentBlockString = formatNumber((Double)currentBlock.getValue());
+        measureBlocks();
+        reopenFinalBlock(lexer.length() - blockLengths[last]);
+    }
 
-                        Log.i(TAG, "Current block is a number");
-                    }
+    /**
+     * Takes the final block off the block manager and makes it the current block again
+     *
+     * @param numberStart index in the text of the first character of the block, if it's a number
+     */
+    private void reopenFinalBlock(int numberStart) {
+        BlockBuffer blocks = manager.getBlockBuffer();
+        int last = blocks.size() - 1;
+
+        if(blocks.isNumber(last)) {
+            setCurrentBlockString(new String(lexer.getChars(), numberStart,
+                    lexer.length() - numberStart));
+        } else {
+            setCurrentBlockString(String.valueOf(blocks.getOperator(last).getSymbol()));
+        }
+
+        Logger.i(TAG, "Current block is now: ", getCurrentBlockForLog());
+
+        manager.pop();
+    }
+
+    /**
+     * Moves the caret back a block. Leaving the end of the text finishes the block being typed, so
+     * every block is in the block manager while the caret is away from it.
+     */
+    @Override
+    public void moveCursorLeft() {
+        refiner.cancel();
+
+        if(cursor == NO_CURSOR) {
+            // Nothing typed to move back over
+            if(lexer.isStart() || !hasCurrentBlock()) {
+                return;
+            }
+
+            addCurrentBlock();
+            clearCurrentBlock();
+            isEvaluated = false;
+            measureBlocks();
+
+            cursor = manager.size();
+            cursorInBlock = 0;
+            cursorOffset = lexer.length();
+        }
+
+        if(cursorInBlock > 0) {
+            // Out of the middle of a number to the start of it
+            cursorOffset -= cursorInBlock;
+            cursorInBlock = 0;
+        } else if(cursor > 0) {
+            cursor--;
+            cursorOffset -= blockLengths[cursor];
+        }
+
+        showText();
+    }
+
+    /**
+     * Moves the caret forward a block, once it's back at the end the final block is typed again
+     */
+    @Override
+    public void moveCursorRight() {
+        refiner.cancel();
+
+        if(cursor == NO_CURSOR) {
+            return;
+        }
+
+        cursorOffset += blockLengths[cursor] - cursorInBlock;
+        cursorInBlock = 0;
+        cursor++;
+
+        if(cursor == manager.size()) {
+            leaveCursor();
+        }
+
+        showText();
+    }
+
+    /**
+     * Puts the caret back at the end of the text, where the final block is typed again
+     */
+    private void leaveCursor() {
+        cursor = NO_CURSOR;
+
+        if(!manager.isEmpty()) {
+            reopenMeasuredBlock();
+        }
+    }
+
+    /**
+     * Works out how much of the text each block takes up, the text being every block's text one
+     * after another. An operator is its symbol and a number runs up to the symbol of the operator
+     * after it, so a total in scientific notation is measured whole.
+     */
+    private void measureBlocks() {
+        BlockBuffer blocks = manager.getBlockBuffer();
+        char[] text = lexer.getChars();
+        int length = lexer.length();
+        int size = blocks.size();
+        int start = 0;
+
+        if(blockLengths.length < size) {
+            blockLengths = new int[size * 2];
+        }
+
+        for(int i = 0; i < size; i++) {
+            int end = start + 1;
 
-                    Log.i(TAG, "CurrentBlockString is now: " + currentBlockString);
-                    Log.i(TAG, "Is blockManager empty: " + manager.isEmpty());
+            if(blocks.isNumber(i)) {
+                if(i == size - 1) {
+                    end = length;
+                } else {
+                    char next = blocks.getOperator(i + 1).getSymbol();
 
-                    // Then we remove the element from the block manager
-                    manager.pop();
+                    // The minus of an exponent belongs to the number
+                    while(end < length && (text[end] != next || text[end - 1] == 'E')) {
+                        end++;
+                    }
                 }
             }
+
+            blockLengths[i] = end - start;
+            start = end;
+        }
+    }
+
+    /**
+     * Carries out a typed character at the caret. Digits and decimal points go into the number
+     * next to the caret, or start a new one, an operator takes the place of the operator in front
+     * of the caret or splits the number it's in, and anything else goes in as a block of its own.
+     * Blocks are inserted, replaced and removed where they are, so none of the blocks after the
+     * caret are added again. Keys that don't fit where the caret is are ignored.
+     */
+    private void processCursorInput(char value) {
+        BlockBuffer blocks = manager.getBlockBuffer();
+        MathOperator operator = MathOperator.getEnumFromCharacter(value);
+        int start = cursorOffset - cursorInBlock;
+        boolean numberBefore = cursorInBlock == 0 && cursor > 0 && blocks.isNumber(cursor - 1);
+        boolean numberAfter = cursor < blocks.size() && blocks.isNumber(cursor);
+
+        if(Character.isDigit(value) || value == '.') {
+            if(!numberBefore && !numberAfter) {
+                insertNumber(value);
+            } else {
+                int index = numberBefore ? cursor - 1 : cursor;
+                int blockStart = numberBefore ? start - blockLengths[index] : start;
+
+                typeIntoNumber(index, blockStart, value);
+            }
+        } else if(operator.isBinary()) {
+            if(cursorInBlock > 0) {
+                splitNumber(operator);
+            } else if(value == '-' && numberAfter && !endsOperandAt(cursor - 1)
+                    && lexer.getChars()[start] != '-') {
+                // The sign of the number after the caret rather than a subtraction
+                typeIntoNumber(cursor, start, value);
+            } else if(cursor > 0 && !blocks.isNumber(cursor - 1)
+                    && blocks.getOperator(cursor - 1).isBinary()) {
+                manager.replaceBlock(cursor - 1, operator);
+                lexer.delete(cursorOffset - 1, cursorOffset);
+                lexer.insert(cursorOffset - 1, value);
+            } else if(endsOperandAt(cursor - 1)) {
+                insertOperator(operator);
+            }
+        } else if(operator != MathOperator.NONE && cursorInBlock == 0) {
+            // Brackets and functions, the ones that close an operand need one before them
+            if(!(operator.isPostfix() || operator == MathOperator.RIGHT_BRACKET)
+                    || endsOperandAt(cursor - 1)) {
+                insertOperator(operator);
+            }
+        }
+
+        if(cursor == manager.size()) {
+            leaveCursor();
+        }
+
+        showText();
+    }
+
+    /**
+     * Whether the block at an index is something a binary operator can follow, a number, a
+     * postfix function or a right bracket
+     */
+    private boolean endsOperandAt(int index) {
+        BlockBuffer blocks = manager.getBlockBuffer();
+
+        if(index < 0) {
+            return false;
+        }
+
+        if(blocks.isNumber(index)) {
+            return true;
+        }
+
+        MathOperator operator = blocks.getOperator(index);
+
+        return operator.isPostfix() || operator == MathOperator.RIGHT_BRACKET;
+    }
+
+    /**
+     * Types a digit, decimal point or sign into a number at the caret, the caret moves along
+     * after it
+     *
+     * @param index the number's block
+     * @param blockStart index in the text of the number's first character
+     * @param value the character typed
+     */
+    private void typeIntoNumber(int index, int blockStart, char value) {
+        CharSequence typed = String.valueOf(value);
+
+        if(value == '.') {
+            if(hasPoint(blockStart, blockStart + blockLengths[index])) {
+                return;
+            }
+
+            // Reads "0." the same as a decimal typed without a number before it
+            if(cursorOffset == blockStart || lexer.getChars()[cursorOffset - 1] == '-') {
+                typed = "0.";
+            }
+        }
+
+        if(!editNumber(index, blockStart, cursorOffset, 0, typed)) {
+            return;
+        }
+
+        cursorOffset += typed.length();
+
+        if(index == cursor) {
+            cursorInBlock += typed.length();
+        }
+    }
+
+    /**
+     * Puts a new number in at the caret, the caret ends up after it
+     */
+    private void insertNumber(char value) {
+        CharSequence typed = value == '.' ? "0." : String.valueOf(value);
+
+        readNumber(0, 0, 0, 0, typed);
+
+        manager.insertBlock(cursor, cursorOperand.doubleValue());
+        lexer.insert(cursorOffset, typed);
+        insertLength(cursor, typed.length());
+
+        cursor++;
+        cursorOffset += typed.length();
+    }
+
+    /**
+     * Puts an operator, bracket or function in at the caret, the caret ends up after it
+     */
+    private void insertOperator(MathOperator operator) {
+        manager.insertBlock(cursor, operator);
+        lexer.insert(cursorOffset, operator.getSymbol());
+        insertLength(cursor, 1);
+
+        cursor++;
+        cursorOffset++;
+    }
+
+    /**
+     * Splits the number the caret is in with an operator, the caret ends up after the operator
+     */
+    private void splitNumber(MathOperator operator) {
+        int start = cursorOffset - cursorInBlock;
+        int end = start + blockLengths[cursor];
+
+        if(!readNumber(start, cursorOffset, cursorOffset, cursorOffset, "")) {
+            return;
+        }
+
+        double left = cursorOperand.doubleValue();
+
+        if(!readNumber(cursorOffset, end, end, end, "")) {
+            return;
+        }
+
+        manager.replaceBlock(cursor, left);
+        manager.insertBlock(cursor + 1, operator);
+        manager.insertBlock(cursor + 2, cursorOperand.doubleValue());
+        lexer.insert(cursorOffset, operator.getSymbol());
+
+        blockLengths[cursor] = cursorInBlock;
+        insertLength(cursor + 1, 1);
+        insertLength(cursor + 2, end - cursorOffset);
+
+        cursor += 2;
+        cursorInBlock = 0;
+        cursorOffset++;
+    }
+
+    /**
+     * Deletes the character in front of the caret. A number loses a character while what's left
+     * of it is still a number, anything else is removed as a whole block.
+     */
+    private void deleteAtCursor() {
+        if(cursorInBlock > 0) {
+            int start = cursorOffset - cursorInBlock;
+
+            if(editNumber(cursor, start, cursorOffset - 1, 1, "")) {
+                cursorInBlock--;
+                cursorOffset--;
+            }
+        } else if(cursor > 0) {
+            int index = cursor - 1;
+            int length = blockLengths[index];
+
+            if(manager.getBlockBuffer().isNumber(index) && length > 1
+                    && editNumber(index, cursorOffset - length, cursorOffset - 1, 1, "")) {
+                cursorOffset--;
+            } else if(joinsNumbers(index)) {
+                removeBetweenNumbers(index);
+            } else {
+                manager.removeBlock(index);
+                lexer.delete(cursorOffset - length, cursorOffset);
+                removeLength(index);
+
+                cursor--;
+                cursorOffset -= length;
+            }
         } else {
-            Log.i(TAG, "At beginning, nothing to undo");
+            Logger.i(TAG, "At beginning, nothing to delete");
+            return;
         }
 
-        Log.e(TAG, DASH_SEPARATOR);
+        if(manager.isEmpty()) {
+            clearPreview();
+        } else {
+            showText();
+        }
+    }
+
+    /**
+     * Whether the block at an index is between two numbers, which would be one number without it
+     */
+    private boolean joinsNumbers(int index) {
+        BlockBuffer blocks = manager.getBlockBuffer();
+
+        return index > 0 && index < blocks.size() - 1 && blocks.isNumber(index - 1)
+                && blocks.isNumber(index + 1);
+    }
+
+    /**
+     * Removes the operator in front of the caret from between two numbers, which are joined into
+     * one with the caret where the operator was. Nothing is removed if they wouldn't make a
+     * number, such as when the second has a sign.
+     */
+    private void removeBetweenNumbers(int index) {
+        int start = cursorOffset - blockLengths[index];
+        int leftLength = blockLengths[index - 1];
+
+        if(!readNumber(start - leftLength, cursorOffset + blockLengths[index + 1], start,
+                cursorOffset, "")) {
+            return;
+        }
+
+        manager.replaceBlock(index - 1, cursorOperand.doubleValue());
+        manager.removeBlock(index + 1);
+        manager.removeBlock(index);
+        lexer.delete(start, cursorOffset);
+
+        blockLengths[index - 1] += blockLengths[index + 1];
+        System.arraycopy(blockLengths, index + 2, blockLengths, index, manager.size() - index);
+
+        cursor = index - 1;
+        cursorInBlock = leftLength;
+        cursorOffset = start;
+    }
+
+    /**
+     * Swaps some of the characters of a number block for others, in the text and the block
+     *
+     * @param index the number's block
+     * @param blockStart index in the text of the number's first character
+     * @param position index in the text of the first character swapped
+     * @param removed how many characters are taken out
+     * @param inserted the characters put in their place
+     * @return false, with nothing changed, if the text wouldn't be a number
+     */
+    private boolean editNumber(int index, int blockStart, int position, int removed,
+                               CharSequence inserted) {
+        int blockEnd = blockStart + blockLengths[index];
+
+        if(!readNumber(blockStart, blockEnd, position, position + removed, inserted)) {
+            return false;
+        }
+
+        manager.replaceBlock(index, cursorOperand.doubleValue());
+
+        if(removed > 0) {
+            lexer.delete(position, position + removed);
+        }
+
+        if(inserted.length() > 0) {
+            lexer.insert(position, inserted);
+        }
+
+        blockLengths[index] += inserted.length() - removed;
+
+        return true;
+    }
+
+    /**
+     * Reads a number back from the text, with the characters from one index to another swapped
+     * for others, into the caret's operand
+     *
+     * @return whether it's a number
+     */
+    private boolean readNumber(int start, int end, int from, int to, CharSequence replacement) {
+        char[] text = lexer.getChars();
+
+        cursorOperand.reset();
+
+        for(int i = start; i < from; i++) {
+            cursorOperand.append(text[i]);
+        }
+
+        cursorOperand.append(replacement);
+
+        for(int i = to; i < end; i++) {
+            cursorOperand.append(text[i]);
+        }
+
+        return cursorOperand.isNumber();
+    }
+
+    /**
+     * Whether the text from start up to end has a decimal point or an exponent, either way it
+     * can't take a decimal point
+     */
+    private boolean hasPoint(int start, int end) {
+        char[] text = lexer.getChars();
+
+        for(int i = start; i < end; i++) {
+            if(text[i] == '.' || text[i] == 'E') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Makes room for the length of a block that's just been inserted into the block manager
+     */
+    private void insertLength(int index, int length) {
+        int size = manager.size();
+
+        if(blockLengths.length < size) {
+            blockLengths = Arrays.copyOf(blockLengths, size * 2);
+        }
+
+        System.arraycopy(blockLengths, index, blockLengths, index + 1, size - 1 - index);
+        blockLengths[index] = length;
+    }
+
+    /**
+     * Takes out the length of a block that's just been removed from the block manager
+     */
+    private void removeLength(int index) {
+        System.arraycopy(blockLengths, index + 1, blockLengths, index, manager.size() - index);
+    }
+
+    /**
+     * Shows the text with the caret in it
+     */
+    private void showCursorText() {
+        int length = lexer.length();
+
+        if(cursorText.length < length + 1) {
+            cursorText = new char[(length + 1) * 2];
+        }
+
+        System.arraycopy(lexer.getChars(), 0, cursorText, 0, cursorOffset);
+        cursorText[cursorOffset] = CURSOR;
+        System.arraycopy(lexer.getChars(), cursorOffset, cursorText, cursorOffset + 1,
+                length - cursorOffset);
+
+        preview.setPrimaryText(cursorText, 0, length + 1);
+    }
+
+    /**
+     * Goes back to the state before the last keystroke, does nothing if there's no history left
+     */
+    @Override
+    public void undo() {
+        refiner.cancel();
+
+        InputHistory.State state = history.undo();
+
+        if(state != null) {
+            restoreState(state);
+        }
+    }
+
+    /**
+     * Goes forward to the state that was last undone, does nothing if nothing has been undone
+     * since the last keystroke
+     */
+    @Override
+    public void redo() {
+        refiner.cancel();
+
+        InputHistory.State state = history.redo();
+
+        if(state != null) {
+            restoreState(state);
+        }
+    }
+
+    /**
+     * Records the current state as the latest step of the history
+     */
+    private void recordState() {
+        history.record(manager.getSnapshot(), lexer.snapshot(), getTotalText(),
+                getCurrentBlockString(), isEvaluated);
+    }
+
+    /**
+     * The total text as it's shown under the preview text, null if it's the total of the blocks
+     */
+    private String getTotalText() {
+        return totalText;
+    }
+
+    /**
+     * Puts the blocks, text and flags back the way a recorded state has them. The text is put
+     * back as it was shown, the total too unless it was the total of the blocks, which is
+     * formatted again from the blocks put back.
+     */
+    private void restoreState(InputHistory.State state) {
+        manager.restore(state.getBlocks());
+
+        lexer.setText(state.getText());
+        setCurrentBlockString(state.getBlockString());
+        isEvaluated = state.isEvaluated();
+        cursor = NO_CURSOR;
+
+        if(!hasCurrentBlock() && !manager.isEmpty()) {
+            // Recorded with the caret away from the end, where it's put back
+            reopenMeasuredBlock();
+        }
+
+        preview.setPrimaryText(lexer.getChars(), 0, lexer.length());
+        totalText = state.getTotal();
+
+        if(totalText == null) {
+            formatTotal();
+
+            preview.setSecondaryText(totalFormatter.getBuffer(), 0, totalFormatter.length());
+        } else {
+            preview.setSecondaryText(totalText.toCharArray(), 0, totalText.length());
+        }
+        // Totals from equals are shown from the start, as processEquals leaves them
+        preview.scrollText(isEvaluated ? View.FOCUS_LEFT : View.FOCUS_RIGHT);
     }
 
     /**
@@ -537,33 +1399,100 @@ public class PreviewInputProcessor implements PreviewUpdateListener {
      * text or resets it if there's nothing left
      */
     private void removeLastTextElement() {
-        int stringSizeText = currentText.length();
-        String subStringCurrentText = currentText.substring(0, stringSizeText - 1);
+        lexer.deleteLast();
+        showDeletion();
+    }
 
-        Log.i(TAG, "CurrentText: " + currentText);
-        Log.i(TAG, "CurrentText length: " + stringSizeText + ", sub string: " + subStringCurrentText);
+    /**
+     * Shows the text once a character has been taken off it, or resets the preview if there's
+     * nothing left
+     */
+    private void showDeletion() {
+        Logger.i(TAG, "CurrentText: ", lexer);
 
-        // Set currentText to the new string which has the last element deleted
-        if(subStringCurrentText.isEmpty()) {
-            resetPreview();
+        if(lexer.length() == 0) {
+            clearPreview();
         } else {
-            setText(subStringCurrentText);
+            showText();
+        }
+    }
+
+    /**
+     * Formats the total from equals. In {@link PrecisionMode#FIXED_POINT} it keeps every decimal
+     * place of the scale, so 5 and 0.3 read 5.00 and 0.30 the same as the precise total does,
+     * whether or not the total shown first is the precise one.
+     *
+     * @param number the total
+     * @return formatted string of the total
+     */
+    private String formatResult(Number number) {
+        BlockEvaluator evaluator = manager.getBlockEvaluator();
+
+        if(evaluator.getPrecisionMode() != PrecisionMode.FIXED_POINT) {
+            return formatNumber(number);
+        }
+
+        int scale = evaluator.getFixedPointScale();
+
+        if(number instanceof BigDecimal) {
+            return ((BigDecimal) number).setScale(scale, RoundingMode.HALF_EVEN).toPlainString();
+        }
+
+        if(number instanceof Long) {
+            return BigDecimal.valueOf(number.longValue()).setScale(scale).toPlainString();
         }
+
+        double value = number.doubleValue();
+
+        if(Double.isNaN(value) || Double.isInfinite(value)) {
+            return formatNumber(value);
+        }
+
+        // The double nearest to the fixed point total, so it rounds back to it
+        return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_EVEN).toPlainString();
+    }
+
+    /**
+     * Formats a total from any precision mode, BigDecimals are printed in full without an exponent
+     * or trailing zeros, fractions are shown as decimals to the evaluator's MathContext, whole
+     * number totals are printed as they are and anything else is formatted as a double
+     *
+     * @param number the number to be formatted
+     * @return formatted string of the number
+     */
+    private String formatNumber(Number number) {
+        if(number instanceof Long) {
+            return number.toString();
+        }
+
+        if(number instanceof Rational) {
+            number = ((Rational) number).toBigDecimal(manager.getBlockEvaluator().getMathContext());
+        }
+
+        if(number instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) number;
+
+            // stripTrailingZeros() leaves zero with its scale on older versions of Java
+            if(decimal.signum() == 0) {
+                return "0";
+            }
+
+            return decimal.stripTrailingZeros().toPlainString();
+        }
+
+        return formatNumber(number.doubleValue());
     }
 
     /**
      * Formats the number so that if it is a whole number, it returns without any decimal and trailing
-     * zeros
+     * zeros, anything else is the shortest decimal that reads back as the same double
      *
      * @param number the number to be formatted
      * @return formatted string of the number
      */
     private String formatNumber(double number) {
-        if(number == (long) number) {
-            // Explicit locale to UK as default locale is apparently prone to bugs
-            return String.format(Locale.UK, "%d", (long)number);
-        } else {
-            return String.format(Locale.UK, "%s", number);
-        }
+        formatter.format(number);
+
+        return formatter.toString();
     }
 }
@@ -5,6 +5,20 @@ package com.ryanairth.mathsheetcalculator.Util;
  */
 public interface PreviewUpdateListener {
     void updatePreview(char value);
+    /**
+     * Processes a run of text as if each character had been typed, but updates the preview once
+     */
+    void updatePreview(CharSequence text);
     void resetPreview();
     void deleteLastInput();
+    void undo();
+    void redo();
+    /**
+     * Moves the caret back a block, the keys typed after it edit the sum in front of the caret
+     */
+    void moveCursorLeft();
+    /**
+     * Moves the caret forward a block, once it's back at the end keys are typed there again
+     */
+    void moveCursorRight();
 }
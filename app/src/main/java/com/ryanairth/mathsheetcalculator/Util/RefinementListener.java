@@ -0,0 +1,16 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import com.ryanairth.mathsheetcalculator.Math.PreciseTotalTask;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public interface RefinementListener {
+    /**
+     * Called on the main thread when a refinement finishes and nothing newer has replaced it
+     *
+     * @param task the task that was run
+     * @param total the precise total it gave
+     */
+    void onRefined(PreciseTotalTask task, Number total);
+}
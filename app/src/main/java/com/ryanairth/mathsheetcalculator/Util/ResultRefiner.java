@@ -0,0 +1,167 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.ryanairth.mathsheetcalculator.Math.PreciseTotalTask;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.ryanairth.mathsheetcalculator.Util.Logger.TAG;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class ResultRefiner {
+    /*
+        How long the background thread is kept after its last refinement
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    /*
+        Runs results on the thread that owns the refiner
+     */
+    private final Executor deliverer;
+
+    /*
+        Incremented by every refinement and cancel, a result is only delivered if it's still the
+        latest. Only touched on the owning thread.
+     */
+    private int generation;
+    /*
+        Refinement that's running or waiting to run, null if there isn't one
+     */
+    private Future<?> pending;
+    /*
+        Task of the pending refinement, volatile so it can be stopped from any thread
+     */
+    private volatile PreciseTotalTask running;
+
+    /**
+     * Works out precise totals on a background thread and hands them back on the main thread, so
+     * the double total can be shown straight away and replaced once the precise one is ready.
+     * Starting a new refinement or cancelling drops any older one, its result is never delivered.
+     */
+    public ResultRefiner() {
+        this(new Executor() {
+            private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(Runnable runnable) {
+                mainHandler.post(runnable);
+            }
+        });
+    }
+
+    /**
+     * Refiner owned by a thread other than the main thread
+     *
+     * @param deliverer runs results on the owning thread
+     */
+    public ResultRefiner(Executor deliverer) {
+        this.deliverer = deliverer;
+
+        executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ResultRefiner");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the task in the background and passes its result to the listener on the owning thread,
+     * unless another refinement is started or {@link #cancel()} is called first. Must be called on
+     * the owning thread.
+     *
+     * @param task task that works out the precise total
+     * @param listener gets the result
+     */
+    public void refine(final PreciseTotalTask task, final RefinementListener listener) {
+        cancel();
+
+        final int taskGeneration = generation;
+
+        running = task;
+        pending = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+                final Number total;
+
+                try {
+                    total = task.call();
+                } catch (RuntimeException e) {
+                    Logger.e(TAG, "Refining the total failed", e);
+                    return;
+                }
+
+                if(total == null) {
+                    // Abandoned part way through, something newer has replaced it
+                    return;
+                }
+
+                deliverer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Anything typed since makes this result stale
+                        if(taskGeneration == generation) {
+                            pending = null;
+                            running = null;
+                            listener.onRefined(task, total);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops the current refinement so its result is never delivered, stopping it if it has
+     * already started. Must be called on the owning thread.
+     */
+    public void cancel() {
+        generation++;
+
+        if(pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+
+        abandon();
+        running = null;
+    }
+
+    /**
+     * Stops the current refinement part way through without dropping it, so it gives no result.
+     * Safe to call from any thread, a refinement that's abandoned is always cancelled on the
+     * owning thread afterwards.
+     */
+    public void abandon() {
+        PreciseTotalTask task = running;
+
+        if(task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Whether a refinement has been started and its result hasn't been delivered yet
+     */
+    public boolean isRefining() {
+        return pending != null;
+    }
+}
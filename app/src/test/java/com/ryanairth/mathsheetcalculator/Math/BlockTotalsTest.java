@@ -0,0 +1,229 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class BlockTotalsTest {
+    /**
+     * Adds a random sum to the end of a buffer, numbers and operators in turn, with brackets
+     * around some of the numbers if asked for
+     */
+    private static void addRandomSum(Random random, BlockBuffer buffer, boolean brackets,
+                                     Runnable added) {
+        int count = 1 + random.nextInt(12);
+        int depth = 0;
+
+        for(int i = 0; i < count; i++) {
+            if(i > 0) {
+                buffer.add(Sums.randomOperator(random));
+                added.run();
+            }
+
+            if(brackets && random.nextInt(3) == 0) {
+                buffer.add(MathOperator.LEFT_BRACKET);
+                added.run();
+                depth++;
+            }
+
+            buffer.add(random.nextInt(4) == 0 ? random.nextInt(1000) / 100.0
+                    : 1 + random.nextInt(100));
+            added.run();
+
+            if(depth > 0 && random.nextInt(2) == 0) {
+                buffer.add(MathOperator.RIGHT_BRACKET);
+                added.run();
+                depth--;
+            }
+        }
+    }
+
+    private static void assertClose(String message, double expected, double actual) {
+        if(Double.isNaN(expected) || Double.isInfinite(expected)) {
+            assertEquals(message, expected, actual, 0.0);
+        } else {
+            // The tree groups sums by its shape, so it can be a few ulps out
+            assertEquals(message, expected, actual, Math.abs(expected) * 1e-9 + 1e-12);
+        }
+    }
+
+    @Test
+    public void runningTotalAgreesWithProgramAndTree() {
+        Random random = new Random(1);
+
+        for(int run = 0; run < 2000; run++) {
+            final BlockBuffer buffer = new BlockBuffer();
+            final IncrementalEvaluator incremental = new IncrementalEvaluator(buffer);
+            final ExpressionTree tree = new ExpressionTree(buffer);
+            BlockProgram program = new BlockProgram(buffer);
+
+            addRandomSum(random, buffer, false, new Runnable() {
+                @Override
+                public void run() {
+                    incremental.blockAdded();
+                    tree.blockAdded();
+                }
+            });
+
+            double expected = program.execute();
+
+            assertTrue(incremental.isValid());
+            assertTrue(tree.canEvaluate());
+            assertClose("run " + run, expected, incremental.getTotal());
+            assertClose("run " + run, expected, tree.getTotal());
+        }
+    }
+
+    @Test
+    public void treeAgreesWithProgramOverBrackets() {
+        Random random = new Random(2);
+
+        for(int run = 0; run < 2000; run++) {
+            final BlockBuffer buffer = new BlockBuffer();
+            final ExpressionTree tree = new ExpressionTree(buffer);
+            BlockProgram program = new BlockProgram(buffer);
+
+            addRandomSum(random, buffer, true, new Runnable() {
+                @Override
+                public void run() {
+                    tree.blockAdded();
+                }
+            });
+
+            assertTrue(tree.canEvaluate());
+            assertClose("run " + run, program.execute(), tree.getTotal());
+        }
+    }
+
+    @Test
+    public void editsInTheMiddleKeepTotalsInStep() {
+        Random random = new Random(3);
+
+        for(int run = 0; run < 500; run++) {
+            BlockManager manager = new BlockManager();
+
+            manager.createAndAddBlock(1 + random.nextInt(100));
+
+            for(int i = 0; i < 8; i++) {
+                manager.createAndAddBlock(Sums.randomOperator(random));
+                manager.createAndAddBlock(1 + random.nextInt(100));
+            }
+
+            for(int edit = 0; edit < 10; edit++) {
+                // Numbers sit at even indexes, so an operator and number pair keeps the sum whole
+                int index = 2 * random.nextInt(manager.size() / 2);
+
+                switch(random.nextInt(3)) {
+                    case 0:
+                        manager.insertBlock(index + 1, 1 + random.nextInt(100));
+                        manager.insertBlock(index + 1, Sums.randomOperator(random));
+                        break;
+                    case 1:
+                        manager.replaceBlock(index, 1 + random.nextInt(100));
+                        break;
+                    default:
+                        if(manager.size() > 3) {
+                            manager.removeBlock(index + 1);
+                            manager.removeBlock(index + 1);
+                        }
+                        break;
+                }
+
+                BlockBuffer copy = manager.getBlockBuffer().snapshot();
+                double expected = new BlockProgram(copy).execute();
+
+                assertClose("run " + run, expected,
+                        manager.getBlockEvaluator().calculateCurrentTotal());
+                assertClose("run " + run, expected, manager.getBlockEvaluator().calculateTotal());
+            }
+        }
+    }
+
+    @Test
+    public void editsAreCaughtUpWhenRead() {
+        Random random = new Random(5);
+
+        for(int run = 0; run < 300; run++) {
+            BlockManager manager = new BlockManager();
+            BlockSnapshot before = manager.getSnapshot();
+
+            manager.createAndAddBlock(1 + random.nextInt(100));
+
+            for(int edit = 0; edit < 12; edit++) {
+                if(manager.size() == 0) {
+                    manager.createAndAddBlock(1 + random.nextInt(100));
+                }
+
+                int index = 2 * random.nextInt((manager.size() + 1) / 2);
+
+                switch(random.nextInt(5)) {
+                    case 0:
+                        manager.insertBlock(index + 1, 1 + random.nextInt(100));
+                        manager.insertBlock(index + 1, Sums.randomOperator(random));
+                        break;
+                    case 1:
+                        manager.replaceBlock(index, 1 + random.nextInt(100));
+                        break;
+                    case 2:
+                        // Left alone until it's read, then added and removed at the end
+                        if(manager.size() > 1) {
+                            manager.pop();
+                            manager.pop();
+                        }
+                        break;
+                    case 3:
+                        manager.createAndAddBlock(MathOperator.MULTIPLY);
+                        manager.createAndAddBlock(MathOperator.LEFT_BRACKET);
+                        manager.createAndAddBlock(1 + random.nextInt(100));
+                        break;
+                    default:
+                        before = manager.getSnapshot();
+                        break;
+                }
+
+                // A manager built from the same blocks at the end, nothing left to catch up
+                BlockManager expected = new BlockManager();
+                BlockBuffer blocks = manager.getBlockBuffer();
+
+                for(int i = 0; i < blocks.size(); i++) {
+                    if(blocks.isNumber(i)) {
+                        expected.createAndAddBlock(blocks.getNumber(i));
+                    } else {
+                        expected.createAndAddBlock(blocks.getOperator(i));
+                    }
+                }
+
+                BlockSnapshot snapshot = manager.getSnapshot();
+
+                assertEquals("run " + run, expected.getHash().getHash(),
+                        manager.getHash().getHash());
+                assertEquals("run " + run, expected.getBracketDepth(),
+                        manager.getBracketDepth());
+                assertEquals("run " + run, expected.getOpenBracket(), manager.getOpenBracket());
+                assertEquals("run " + run, blocks.size(), snapshot.size());
+
+                for(BlockSnapshot block = snapshot; block.size() > 0; block = block.pop()) {
+                    int i = block.size() - 1;
+
+                    assertEquals(blocks.isNumber(i), block.isNumber());
+                    assertEquals(blocks.isNumber(i) ? blocks.getNumber(i) : 0.0,
+                            block.isNumber() ? block.getNumber() : 0.0, 0.0);
+                }
+            }
+
+            // Going back to a snapshot taken between edits gives the same blocks it had
+            int size = before.size();
+
+            manager.restore(before);
+
+            assertEquals(size, manager.size());
+            assertTrue(manager.getSnapshot() == before);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class FixedPointExecutorTest {
+    private static BigDecimal total(int scale, Object... blocks) {
+        return (BigDecimal) new FixedPointExecutor(scale).execute(Sums.program(blocks));
+    }
+
+    @Test
+    public void divideRoundsHalfToEven() {
+        assertEquals(2, FixedPointExecutor.divideHalfEven(5, 2));
+        assertEquals(4, FixedPointExecutor.divideHalfEven(7, 2));
+        assertEquals(-2, FixedPointExecutor.divideHalfEven(-5, 2));
+        assertEquals(-4, FixedPointExecutor.divideHalfEven(-7, 2));
+        assertEquals(2, FixedPointExecutor.divideHalfEven(15, 10));
+        assertEquals(2, FixedPointExecutor.divideHalfEven(25, 10));
+        assertEquals(-2, FixedPointExecutor.divideHalfEven(-25, 10));
+        assertEquals(-3, FixedPointExecutor.divideHalfEven(26, -10));
+        assertEquals(0, FixedPointExecutor.divideHalfEven(1, 3));
+        assertEquals(1, FixedPointExecutor.divideHalfEven(2, 3));
+    }
+
+    @Test
+    public void typedNumbersRoundHalfToEven() {
+        assertEquals(new BigDecimal("0.12"), total(2, 0.125));
+        assertEquals(new BigDecimal("0.14"), total(2, 0.135));
+        assertEquals(new BigDecimal("2"), total(0, 2.5));
+        assertEquals(new BigDecimal("4"), total(0, 3.5));
+    }
+
+    @Test
+    public void quotientsRoundHalfToEven() {
+        assertEquals(new BigDecimal("0.12"), total(2, 1, MathOperator.DIVIDE, 8));
+        assertEquals(new BigDecimal("0.38"), total(2, 3, MathOperator.DIVIDE, 8));
+        assertEquals(new BigDecimal("-0.12"), total(2, 0, MathOperator.MINUS, 1,
+                MathOperator.DIVIDE, 8));
+        assertEquals(new BigDecimal("3.33"), total(2, 10, MathOperator.DIVIDE, 3));
+    }
+
+    @Test
+    public void fastPathAgreesWithSlowPath() {
+        Random random = new Random(9);
+
+        for(int scale : new int[] {0, 2, 4}) {
+            FixedPointExecutor fast = new FixedPointExecutor(scale);
+            FixedPointExecutor slow = new FixedPointExecutor(scale) {
+                @Override
+                protected boolean pushFast(double value) {
+                    return false;
+                }
+            };
+
+            for(int run = 0; run < 2000; run++) {
+                BlockManager manager = new BlockManager();
+                int count = 1 + random.nextInt(10);
+
+                for(int i = 0; i < count; i++) {
+                    if(i > 0) {
+                        manager.createAndAddBlock(Sums.randomOperator(random));
+                    }
+
+                    manager.createAndAddBlock(random.nextInt(3) == 0
+                            ? random.nextInt(100000) / 1000.0 : 1 + random.nextInt(2000000));
+                }
+
+                BlockProgram program = manager.getBlockEvaluator().getProgram();
+                BigDecimal expected = (BigDecimal) slow.execute(program);
+                BigDecimal actual = (BigDecimal) fast.execute(program);
+
+                String message = manager.getBlocks().toString();
+
+                // A divisor that rounds to zero is an error on both paths
+                if(expected == null || actual == null) {
+                    assertEquals(message, expected, actual);
+                } else {
+                    assertEquals(message, 0, expected.compareTo(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void runningTotalAgreesWithExecutor() {
+        Random random = new Random(11);
+
+        for(int run = 0; run < 3000; run++) {
+            int scale = random.nextInt(5);
+            BlockManager manager = new BlockManager();
+            BlockEvaluator evaluator = manager.getBlockEvaluator();
+            int count = 1 + random.nextInt(10);
+
+            evaluator.setPrecisionMode(PrecisionMode.FIXED_POINT);
+
+            for(int i = 0; i < count; i++) {
+                if(i > 0) {
+                    manager.createAndAddBlock(Sums.randomOperator(random));
+                }
+
+                manager.createAndAddBlock(random.nextInt(3) == 0
+                        ? random.nextInt(100000) / 1000.0 : 1 + random.nextInt(2000000));
+            }
+
+            // Set after the blocks, so the running total has to be worked out again
+            evaluator.setFixedPointScale(scale);
+
+            FixedPointExecutor executor = new FixedPointExecutor(scale);
+            BigDecimal expected = (BigDecimal) executor.execute(evaluator.getProgram());
+            Number available = evaluator.getAvailablePreciseTotal();
+            String message = manager.getBlocks().toString() + ", scale " + scale;
+
+            double preview = executor.executeToDouble(evaluator.getProgram());
+
+            // Worked out in double when the longs can't hold it
+            if(Double.isNaN(preview)) {
+                preview = evaluator.calculateTotal();
+            }
+
+            assertEquals(message, preview, evaluator.calculateCurrentTotal(), 0.0);
+
+            if(available != null && expected != null) {
+                assertEquals(message, 0, expected.compareTo(new BigDecimal(available.toString())));
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class OperatorRegistryTest {
+    private static final OperatorKernel HYPOTENUSE = new OperatorKernel() {
+        @Override
+        public double apply(double left, double right) {
+            return Math.hypot(left, right);
+        }
+    };
+
+    @After
+    public void resetRegistry() {
+        OperatorRegistry.reset();
+    }
+
+    @Test
+    public void definedOperatorTakesASlot() {
+        MathOperator operator = OperatorRegistry.register("hypot", '∥',
+                MathOperator.MULTIPLY.getPrecedence(), false, HYPOTENUSE);
+
+        assertTrue(operator.isUserDefined());
+        assertEquals(operator, OperatorRegistry.fromSymbol('∥'));
+        assertEquals('∥', operator.getSymbol());
+        assertEquals(MathOperator.MULTIPLY.getPrecedence(), operator.getPrecedence());
+        assertEquals("hypot", OperatorRegistry.getName(operator));
+    }
+
+    @Test
+    public void definedOperatorIsWorkedOutInPrecedence() {
+        MathOperator operator = OperatorRegistry.register("hypot", '∥',
+                MathOperator.MULTIPLY.getPrecedence(), false, HYPOTENUSE);
+        BlockBuffer buffer = new BlockBuffer();
+
+        buffer.add(1);
+        buffer.add(MathOperator.PLUS);
+        buffer.add(3);
+        buffer.add(operator);
+        buffer.add(4);
+
+        assertEquals(6, new BlockProgram(buffer).execute(), 0.0);
+    }
+
+    @Test
+    public void rightAssociativeOperatorGroupsFromTheRight() {
+        OperatorKernel less = new OperatorKernel() {
+            @Override
+            public double apply(double left, double right) {
+                return left - right;
+            }
+        };
+        MathOperator right = OperatorRegistry.register("less", '⊖',
+                MathOperator.PLUS.getPrecedence(), true, less);
+        MathOperator left = OperatorRegistry.register("minus", '⊟',
+                MathOperator.PLUS.getPrecedence(), false, less);
+
+        assertEquals(9, Sums.program(10, right, 4, right, 3).execute(), 0.0);
+        assertEquals(3, Sums.program(10, left, 4, left, 3).execute(), 0.0);
+    }
+
+    @Test
+    public void resetTakesOperatorsAway() {
+        OperatorRegistry.register("hypot", '∥', MathOperator.PLUS.getPrecedence(), false,
+                HYPOTENUSE);
+        OperatorRegistry.reset();
+
+        assertEquals(MathOperator.NONE, OperatorRegistry.fromSymbol('∥'));
+        assertFalse(MathOperator.USER_1.getSymbol() == '∥');
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builtInSymbolCantBeTaken() {
+        OperatorRegistry.register("plus", '+', MathOperator.PLUS.getPrecedence(), false,
+                HYPOTENUSE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nothingIsDefinedOnceFrozen() {
+        OperatorRegistry.freeze();
+        OperatorRegistry.register("hypot", '∥', MathOperator.PLUS.getPrecedence(), false,
+                HYPOTENUSE);
+    }
+}
@@ -0,0 +1,46 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class PreciseTotalTaskTest {
+    private static PreciseTotalTask task(Object... blocks) {
+        BlockEvaluator evaluator = Sums.manager(blocks).getBlockEvaluator();
+
+        evaluator.setPrecisionMode(PrecisionMode.RATIONAL);
+
+        return evaluator.createPreciseTotalTask();
+    }
+
+    @Test
+    public void taskForTheNewestInputGivesTheTotal() {
+        InputGeneration generations = new InputGeneration();
+        PreciseTotalTask task = task(1, MathOperator.DIVIDE, 3);
+
+        generations.advanceTo(4);
+        task.setGeneration(generations, 4);
+
+        assertEquals(Rational.valueOf(1, 3), task.call());
+    }
+
+    @Test
+    public void newerInputStopsTheTask() {
+        InputGeneration generations = new InputGeneration();
+        PreciseTotalTask task = task(1, MathOperator.DIVIDE, 3);
+
+        task.setGeneration(generations, 0);
+        generations.advanceTo(1);
+
+        assertNull(task.call());
+    }
+
+    @Test
+    public void doubleTotalIsGivenWhenTheModeCantHoldIt() {
+        assertEquals(Double.POSITIVE_INFINITY, task(1, MathOperator.DIVIDE, 0).call());
+    }
+}
@@ -0,0 +1,57 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class RationalExecutorTest {
+    private static Rational total(Object... blocks) {
+        return (Rational) new RationalExecutor().execute(Sums.program(blocks));
+    }
+
+    @Test
+    public void thirdsAreExact() {
+        assertEquals(Rational.ONE, total(1, MathOperator.DIVIDE, 3, MathOperator.MULTIPLY, 3));
+        assertEquals(Rational.valueOf(1, 3), total(1, MathOperator.DIVIDE, 3));
+    }
+
+    @Test
+    public void productPastLongIsPromoted() {
+        double twoToThe32 = 4294967296.0;
+        Rational product = total(twoToThe32, MathOperator.MULTIPLY, twoToThe32,
+                MathOperator.MULTIPLY, twoToThe32);
+
+        assertFalse(product.isCompact());
+        assertTrue(product.isInteger());
+        assertEquals(BigInteger.ONE.shiftLeft(96), product.getNumerator());
+    }
+
+    @Test
+    public void denominatorPastLongIsPromoted() {
+        Rational quotient = total(1, MathOperator.DIVIDE, 999999937, MathOperator.DIVIDE,
+                999999929, MathOperator.DIVIDE, 999999893);
+        BigInteger denominator = BigInteger.valueOf(999999937).multiply(BigInteger.valueOf(999999929))
+                .multiply(BigInteger.valueOf(999999893));
+
+        assertFalse(quotient.isCompact());
+        assertEquals(BigInteger.ONE, quotient.getNumerator());
+        assertEquals(denominator, quotient.getDenominator());
+    }
+
+    @Test
+    public void sumPastLongIsPromoted() {
+        double large = 9007199254740992.0;
+        Rational sum = total(large, MathOperator.MULTIPLY, 1024, MathOperator.PLUS, large,
+                MathOperator.MULTIPLY, 1024);
+
+        assertEquals(BigInteger.valueOf(9007199254740992L).shiftLeft(11), sum.getNumerator());
+        assertEquals(BigInteger.ONE, sum.getDenominator());
+    }
+}
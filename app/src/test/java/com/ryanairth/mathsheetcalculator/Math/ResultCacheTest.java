@@ -0,0 +1,74 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class ResultCacheTest {
+    @Test
+    public void resultIsFoundByAllOfItsKey() {
+        ResultCache cache = new ResultCache();
+
+        cache.put(1, 2, 3, 4.5);
+
+        assertEquals(4.5, cache.get(1, 2, 3));
+        assertNull(cache.get(1, 2, 4));
+        assertNull(cache.get(1, 3, 3));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void putAgainReplacesTheResult() {
+        ResultCache cache = new ResultCache();
+
+        cache.put(1, 2, 3, 4.5);
+        long bytes = cache.getByteCount();
+
+        cache.put(1, 2, 3, 6.0);
+
+        assertEquals(6.0, cache.get(1, 2, 3));
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(bytes, cache.getByteCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvictedFirst() {
+        ResultCache cache = new ResultCache(2, ResultCache.DEFAULT_MAX_BYTES);
+
+        cache.put(1, 1, 1, 1.0);
+        cache.put(2, 2, 2, 2.0);
+        cache.get(1, 1, 1);
+        cache.put(3, 3, 3, 3.0);
+
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1.0, cache.get(1, 1, 1));
+        assertNull(cache.get(2, 2, 2));
+    }
+
+    @Test
+    public void byteBudgetEvictsToo() {
+        ResultCache cache = new ResultCache(100, 200);
+
+        for(int i = 0; i < 10; i++) {
+            cache.put(i, i, i, i);
+        }
+
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(8, cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.getByteCount());
+        assertEquals(8, cache.getEvictionCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void budgetMustBePositive() {
+        new ResultCache(0, 10);
+    }
+}
@@ -0,0 +1,74 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class RollingBlockHashTest {
+    private static RollingBlockHash hash(Object... blocks) {
+        return Sums.manager(blocks).getHash();
+    }
+
+    @Test
+    public void sameBlocksHashTheSame() {
+        RollingBlockHash first = hash(12, MathOperator.PLUS, 3.5);
+        RollingBlockHash second = hash(12, MathOperator.PLUS, 3.5);
+
+        assertEquals(first.getHash(), second.getHash());
+        assertEquals(first.getCheck(), second.getCheck());
+        assertEquals(0L, hash().getHash());
+    }
+
+    @Test
+    public void orderAndOperatorsChangeTheHash() {
+        long hash = hash(1, MathOperator.MINUS, 2).getHash();
+
+        assertFalse(hash == hash(2, MathOperator.MINUS, 1).getHash());
+        assertFalse(hash == hash(1, MathOperator.PLUS, 2).getHash());
+        assertFalse(hash == hash(1, MathOperator.MINUS, 2.0000000000000004).getHash());
+    }
+
+    @Test
+    public void negativeZeroHashesAsZero() {
+        assertEquals(hash(0.0, MathOperator.PLUS, 1).getHash(),
+                hash(-0.0, MathOperator.PLUS, 1).getHash());
+    }
+
+    @Test
+    public void removingBlocksGivesBackTheEarlierHash() {
+        Random random = new Random(17);
+        BlockBuffer buffer = new BlockBuffer();
+        RollingBlockHash hash = new RollingBlockHash(buffer);
+        long[] hashes = new long[41];
+        long[] checks = new long[41];
+
+        for(int i = 0; i < 40; i++) {
+            if(i % 2 == 0) {
+                buffer.add(1 + random.nextInt(100));
+            } else {
+                buffer.add(Sums.randomOperator(random));
+            }
+
+            hash.blockAdded();
+            hashes[i + 1] = hash.getHash();
+            checks[i + 1] = hash.getCheck();
+        }
+
+        hash.blockRemoved();
+        assertEquals(39, hash.size());
+        assertEquals(hashes[39], hash.getHash());
+
+        hash.blocksRemoved(10);
+        assertEquals(hashes[10], hash.getHash());
+        assertEquals(checks[10], hash.getCheck());
+
+        hash.reset();
+        assertEquals(0L, hash.getHash());
+    }
+}
@@ -0,0 +1,54 @@
+package com.ryanairth.mathsheetcalculator.Math;
+
+import java.util.Random;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+final class Sums {
+    /*
+        Operators that take a number either side, the ones random sums are made of
+     */
+    private static final MathOperator[] OPERATORS = {MathOperator.PLUS, MathOperator.MINUS,
+            MathOperator.MULTIPLY, MathOperator.DIVIDE, MathOperator.PERCENTAGE};
+
+    private Sums() {
+    }
+
+    /**
+     * Picks one of the operators that take a number either side
+     */
+    static MathOperator randomOperator(Random random) {
+        return OPERATORS[random.nextInt(OPERATORS.length)];
+    }
+
+    /**
+     * Builds the program for a sum, the way it would be typed
+     *
+     * @param blocks numbers and operators in order
+     * @return the program of a manager holding the blocks
+     */
+    static BlockProgram program(Object... blocks) {
+        return manager(blocks).getBlockEvaluator().getProgram();
+    }
+
+    /**
+     * Adds the blocks of a sum to a new manager, the way they would be typed
+     *
+     * @param blocks numbers and operators in order
+     * @return the manager holding the blocks
+     */
+    static BlockManager manager(Object... blocks) {
+        BlockManager manager = new BlockManager();
+
+        for(Object block : blocks) {
+            if(block instanceof MathOperator) {
+                manager.createAndAddBlock((MathOperator) block);
+            } else {
+                manager.createAndAddBlock(((Number) block).doubleValue());
+            }
+        }
+
+        return manager;
+    }
+}
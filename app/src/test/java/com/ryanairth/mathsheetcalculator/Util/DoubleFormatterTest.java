@@ -0,0 +1,75 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class DoubleFormatterTest {
+    private final DoubleFormatter formatter = new DoubleFormatter();
+
+    private String format(double number) {
+        formatter.format(number);
+
+        return formatter.toString();
+    }
+
+    @Test
+    public void wholeNumbersAreWrittenInFull() {
+        assertEquals("0", format(0.0));
+        assertEquals("0", format(-0.0));
+        assertEquals("-42", format(-42));
+        assertEquals("10000000", format(1e7));
+        assertEquals("9007199254740992", format(9007199254740992.0));
+
+        formatter.format(Long.MIN_VALUE);
+        assertEquals(String.valueOf(Long.MIN_VALUE), formatter.toString());
+        assertEquals(formatter.toString().length(), formatter.length());
+    }
+
+    @Test
+    public void fractionsAreLaidOutLikeDoubleToString() {
+        assertEquals("0.1", format(0.1));
+        assertEquals("0.30000000000000004", format(0.1 + 0.2));
+        assertEquals("-2.5", format(-2.5));
+        assertEquals("0.001", format(0.001));
+        assertEquals("1.0E-4", format(0.0001));
+        assertEquals("1.5E300", format(1.5e300));
+        assertEquals("4.9E-324", format(Double.MIN_VALUE));
+        assertEquals("-2.2250738585072014E-308", format(-Double.MIN_NORMAL));
+        assertEquals("1.7976931348623157E308", format(Double.MAX_VALUE));
+    }
+
+    @Test
+    public void specialValuesAreNamed() {
+        assertEquals("NaN", format(Double.NaN));
+        assertEquals("Infinity", format(Double.POSITIVE_INFINITY));
+        assertEquals("-Infinity", format(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    public void randomDoublesReadBackTheSame() {
+        Random random = new Random(13);
+
+        for(int run = 0; run < 100000; run++) {
+            double number = Double.longBitsToDouble(random.nextLong());
+
+            if(Double.isNaN(number)) {
+                continue;
+            }
+
+            String text = format(number);
+            String message = Double.toString(number);
+
+            assertEquals(message, number, Double.parseDouble(text), 0.0);
+            // Never more digits than Double.toString, which isn't always the shortest
+            assertTrue(message, text.length() <= message.length()
+                    || number == (long) number);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import com.ryanairth.mathsheetcalculator.Math.BlockManager;
+import com.ryanairth.mathsheetcalculator.Math.BlockSnapshot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class InputHistoryTest {
+    /**
+     * Records a state with the text given and nothing else in it
+     */
+    private static void record(InputHistory history, String text) {
+        history.record(BlockSnapshot.EMPTY, text, null, "", false);
+    }
+
+    @Test
+    public void undoAndRedoStepThroughStates() {
+        InputHistory history = new InputHistory();
+
+        record(history, "1");
+        record(history, "1+");
+        record(history, "1+2");
+
+        assertEquals("1+", history.undo().getText());
+        assertEquals("1", history.undo().getText());
+        assertFalse(history.canUndo());
+        assertNull(history.undo());
+
+        assertEquals("1+", history.redo().getText());
+        assertEquals("1+2", history.redo().getText());
+        assertFalse(history.canRedo());
+        assertNull(history.redo());
+    }
+
+    @Test
+    public void recordingDropsWhatCouldBeRedone() {
+        InputHistory history = new InputHistory();
+
+        record(history, "1");
+        record(history, "1+");
+        history.undo();
+        record(history, "1-");
+
+        assertFalse(history.canRedo());
+        assertEquals("1", history.undo().getText());
+    }
+
+    @Test
+    public void unchangedStateIsntRecorded() {
+        InputHistory history = new InputHistory();
+        BlockManager manager = new BlockManager();
+
+        manager.createAndAddBlock(5);
+
+        BlockSnapshot blocks = manager.getSnapshot();
+
+        history.record(BlockSnapshot.EMPTY, "", null, "", false);
+        history.record(blocks, "5+", null, "", false);
+        history.record(blocks, new StringBuilder("5+"), null, "", false);
+
+        assertEquals("", history.undo().getText());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void replaceKeepsTheNumberOfSteps() {
+        InputHistory history = new InputHistory();
+
+        record(history, "1");
+        record(history, "1÷3");
+        history.replace(BlockSnapshot.EMPTY, "1÷3", "0.333", "", false);
+
+        assertEquals("1", history.undo().getText());
+        assertEquals("0.333", history.redo().getTotal());
+    }
+
+    @Test
+    public void oldestStateIsDroppedOnceFull() {
+        InputHistory history = new InputHistory(3);
+
+        for(int i = 1; i <= 5; i++) {
+            record(history, String.valueOf(i));
+        }
+
+        assertEquals("4", history.undo().getText());
+        assertEquals("3", history.undo().getText());
+        assertFalse(history.canUndo());
+
+        assertTrue(history.canRedo());
+        assertEquals("4", history.redo().getText());
+        assertEquals("5", history.redo().getText());
+    }
+}
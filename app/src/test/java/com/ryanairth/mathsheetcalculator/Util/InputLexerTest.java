@@ -0,0 +1,149 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class InputLexerTest {
+    /**
+     * Types each character into a lexer and carries out its action on the text the way
+     * PreviewInputProcessor does
+     *
+     * @return the text once everything is typed, up to an equals
+     */
+    private static String type(String input) {
+        InputLexer lexer = new InputLexer();
+
+        for(int i = 0; i < input.length(); i++) {
+            char character = input.charAt(i);
+
+            switch(lexer.getAction(character)) {
+                case InputLexer.APPEND:
+                case InputLexer.START_BLOCK:
+                case InputLexer.FUNCTION:
+                case InputLexer.OPERATOR:
+                    lexer.append(character);
+                    break;
+                case InputLexer.REPLACE_OPERATOR:
+                    lexer.replaceLast(character);
+                    break;
+                case InputLexer.APPEND_DECIMAL:
+                    lexer.append('.');
+                    break;
+                case InputLexer.APPEND_ZERO_DECIMAL:
+                case InputLexer.START_ZERO_DECIMAL:
+                    lexer.append("0.");
+                    break;
+                case InputLexer.EVALUATE:
+                    return lexer.toString();
+                default:
+                    break;
+            }
+        }
+
+        return lexer.toString();
+    }
+
+    @Test
+    public void bracketsAfterOperatorsAreKept() {
+        assertEquals("(3+4)+2", type("(3+4)+2"));
+        assertEquals("2+(3+4)", type("2+(3+4)"));
+        assertEquals("5-(2)", type("5-(2)"));
+        assertEquals("2+(3+4)+5", type("2+(3+4)+5"));
+    }
+
+    @Test
+    public void operatorAfterRightBracketFollowsIt() {
+        assertEquals("2(3)+1", type("2(3)+1"));
+        assertEquals("(2)×(3)", type("(2)×(3)"));
+        assertEquals("((1+2))-3", type("((1+2))-3"));
+    }
+
+    @Test
+    public void rightBracketNeedsLeftBracket() {
+        assertEquals("2", type("2)"));
+        assertEquals("(2)", type("(2))"));
+        assertEquals("(3+", type("(3+)"));
+    }
+
+    @Test
+    public void minusAfterLeftBracketStartsNegative() {
+        assertEquals("(-3)", type("(-3)"));
+        assertEquals("(-3)", type("(--3)"));
+    }
+
+    @Test
+    public void decimalAfterZeroContinuesIt() {
+        InputLexer lexer = new InputLexer();
+
+        assertEquals(InputLexer.APPEND_ZERO_DECIMAL, lexer.getAction('.'));
+
+        lexer.append('0');
+        assertEquals(InputLexer.APPEND_ZERO_DECIMAL, lexer.getAction('.'));
+    }
+
+    @Test
+    public void decimalAfterSubtractionStartsNumber() {
+        InputLexer lexer = new InputLexer();
+
+        lexer.append("1-");
+        assertEquals(InputLexer.START_ZERO_DECIMAL, lexer.getAction('.'));
+
+        lexer.setText("2×-");
+        assertEquals(InputLexer.APPEND_ZERO_DECIMAL, lexer.getAction('.'));
+    }
+
+    @Test
+    public void depthFollowsEdits() {
+        InputLexer lexer = new InputLexer();
+
+        lexer.append("((2");
+        assertEquals(2, lexer.getDepth());
+
+        lexer.append(')');
+        assertEquals(1, lexer.getDepth());
+
+        lexer.deleteLast();
+        assertEquals(2, lexer.getDepth());
+
+        lexer.setText("(1)+(2");
+        assertEquals(1, lexer.getDepth());
+        assertEquals(InputLexer.START_BLOCK, lexer.getAction(')'));
+    }
+
+    @Test
+    public void operatorAfterDecimalPointFollowsTheNumber() {
+        assertEquals("5.+3", type("5.+3"));
+        assertEquals("5.!", type("5.!"));
+        assertEquals("(5.)×2", type("(5.)×2"));
+    }
+
+    @Test
+    public void minusAfterDecimalPointSubtracts() {
+        InputLexer lexer = new InputLexer();
+
+        lexer.append("5.-");
+        assertEquals(InputLexer.START_BLOCK, lexer.getAction('3'));
+
+        lexer.append('3');
+        assertEquals(3, lexer.findNumberStart(false));
+
+        lexer.setText("5×-3");
+        assertEquals(2, lexer.findNumberStart(true));
+    }
+
+    @Test
+    public void unknownCharactersAreIgnored() {
+        InputLexer lexer = new InputLexer();
+
+        assertEquals(InputLexer.IGNORE, lexer.getAction('x'));
+
+        lexer.append('7');
+        assertEquals(InputLexer.IGNORE, lexer.getAction('x'));
+        assertEquals(InputLexer.IGNORE, lexer.getAction(' '));
+        assertEquals("7+2", type("7x+ 2"));
+    }
+}
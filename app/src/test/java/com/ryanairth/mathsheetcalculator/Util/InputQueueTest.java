@@ -0,0 +1,119 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class InputQueueTest {
+    @Test
+    public void eventsAreTakenInOrder() {
+        InputQueue queue = new InputQueue(8);
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        assertTrue(queue.offer(InputQueue.INPUT, '7', null, 1));
+        assertTrue(queue.offer(InputQueue.TEXT, '\u0000', "1+2", 2));
+        assertTrue(queue.offer(InputQueue.RUN, '\u0000', runnable, 2));
+
+        assertTrue(queue.take());
+        assertEquals(InputQueue.INPUT, queue.getKind());
+        assertEquals('7', queue.getValue());
+        assertNull(queue.getPayload());
+        assertEquals(1, queue.getGeneration());
+
+        assertTrue(queue.take());
+        assertEquals(InputQueue.TEXT, queue.getKind());
+        assertEquals("1+2", queue.getPayload());
+
+        assertTrue(queue.take());
+        assertEquals(runnable, queue.getPayload());
+        assertEquals(2, queue.getGeneration());
+
+        assertFalse(queue.take());
+    }
+
+    @Test
+    public void fullQueueTurnsEventsAway() {
+        // Rounded up to 4
+        InputQueue queue = new InputQueue(3);
+
+        for(int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(InputQueue.INPUT, (char) ('0' + i), null, i));
+        }
+
+        assertFalse(queue.offer(InputQueue.INPUT, '9', null, 4));
+
+        assertTrue(queue.take());
+        assertTrue(queue.offer(InputQueue.INPUT, '4', null, 4));
+
+        for(int i = 1; i <= 4; i++) {
+            assertTrue(queue.take());
+            assertEquals((char) ('0' + i), queue.getValue());
+        }
+    }
+
+    @Test
+    public void newerEventsAreSeenBeforeTheyreTaken() {
+        InputQueue queue = new InputQueue(4);
+
+        queue.offer(InputQueue.DELETE, '\u0000', null, 1);
+        queue.take();
+        assertFalse(queue.hasNewer());
+
+        queue.offer(InputQueue.UNDO, '\u0000', null, 2);
+        assertTrue(queue.hasNewer());
+    }
+
+    @Test
+    public void eventsFromManyThreadsArriveOnceInTheirOrder() throws InterruptedException {
+        final InputQueue queue = new InputQueue(16);
+        final int producers = 4;
+        final int count = 20000;
+        Thread[] threads = new Thread[producers];
+
+        for(int p = 0; p < producers; p++) {
+            final char producer = (char) p;
+
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < count; i++) {
+                        while(!queue.offer(InputQueue.INPUT, producer, null, i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        long[] next = new long[producers];
+
+        for(int taken = 0; taken < producers * count; ) {
+            if(!queue.take()) {
+                Thread.yield();
+                continue;
+            }
+
+            int producer = queue.getValue();
+
+            assertEquals(next[producer]++, queue.getGeneration());
+            taken++;
+        }
+
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(queue.take());
+    }
+}
@@ -0,0 +1,285 @@
+package com.ryanairth.mathsheetcalculator.Util;
+
+import android.widget.TextView;
+
+import com.ryanairth.mathsheetcalculator.GUI.MathPreview;
+import com.ryanairth.mathsheetcalculator.Math.BlockManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Copyright information found in accompanying License.txt file.
+ */
+public class PreviewInputProcessorTest {
+    private TextPreview preview;
+    private BlockManager manager;
+    private PreviewInputProcessor processor;
+
+    @Before
+    public void createProcessor() {
+        preview = new TextPreview();
+        manager = new BlockManager();
+        processor = new PreviewInputProcessor(manager, preview, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        });
+    }
+
+    /**
+     * Types each character as a key, D deletes, U undoes, R redoes and < and > move the caret
+     */
+    private void type(String keys) {
+        for(int i = 0; i < keys.length(); i++) {
+            char key = keys.charAt(i);
+
+            if(key == 'D') {
+                processor.deleteLastInput();
+            } else if(key == 'U') {
+                processor.undo();
+            } else if(key == 'R') {
+                processor.redo();
+            } else if(key == '<') {
+                processor.moveCursorLeft();
+            } else if(key == '>') {
+                processor.moveCursorRight();
+            } else {
+                processor.updatePreview(key);
+            }
+        }
+    }
+
+    @Test
+    public void deleteTakesOneCharacterOffTheTotal() {
+        type("12+3=");
+        assertEquals("15", preview.primary);
+
+        type("D");
+        assertEquals("1", preview.primary);
+
+        type("+1=");
+        assertEquals("2", preview.primary);
+    }
+
+    @Test
+    public void deleteAfterResetLeavesItReset() {
+        type("5+3");
+        processor.resetPreview();
+        type("D");
+
+        assertEquals("0", preview.primary);
+        assertEquals(0, manager.size());
+    }
+
+    @Test
+    public void deleteAfterPasteTakesOneCharacter() {
+        processor.updatePreview("12+34");
+        type("D");
+
+        assertEquals("12+3", preview.primary);
+
+        type("DD");
+
+        assertEquals("12", preview.primary);
+        assertEquals(0, manager.size());
+    }
+
+    @Test
+    public void deleteGivesBackTheNumberAsTyped() {
+        type("1.50+D");
+        assertEquals("1.50", preview.primary);
+
+        type("+2=");
+        assertEquals("3.5", preview.primary);
+    }
+
+    @Test
+    public void deleteKeepsTheSignOfANegativeNumber() {
+        type("5×-3D");
+        assertEquals("5×-", preview.primary);
+
+        type("2=");
+        assertEquals("-10", preview.primary);
+    }
+
+    @Test
+    public void deleteIsAStepOfTheHistory() {
+        type("5+3D");
+        assertEquals("5+", preview.primary);
+
+        type("U");
+        assertEquals("5+3", preview.primary);
+        assertEquals(2, manager.size());
+
+        type("R");
+        assertEquals("5+", preview.primary);
+    }
+
+    @Test
+    public void pasteIsOneStepOfTheHistory() {
+        type("7×");
+        processor.updatePreview("2+3");
+        assertEquals("7×2+3", preview.primary);
+        assertEquals("14", preview.secondary);
+
+        type("U");
+        assertEquals("7×", preview.primary);
+    }
+
+    @Test
+    public void pasteIsShownOnceAndTotalledLikeTyping() {
+        StringBuilder text = new StringBuilder("1");
+
+        while(text.length() < 10000) {
+            text.append("+2×3-4");
+        }
+
+        processor.updatePreview(text);
+
+        assertEquals(1, preview.primaryUpdates);
+        assertEquals(text.toString(), preview.primary);
+
+        String pasted = preview.secondary;
+
+        processor.resetPreview();
+        type(text.toString());
+
+        assertEquals(pasted, preview.secondary);
+    }
+
+    @Test
+    public void pasteTakesKeyboardCharacters() {
+        processor.updatePreview("6*7/2");
+        assertEquals("6×7÷2", preview.primary);
+
+        type("=");
+        assertEquals("21", preview.primary);
+    }
+
+    @Test
+    public void typingAtTheCaretEditsTheNumberThere() {
+        type("12+3×4<<5");
+        assertEquals("12+35|×4", preview.primary);
+        assertEquals("152", preview.secondary);
+
+        type(">>");
+        assertEquals("12+35×4", preview.primary);
+
+        type("=");
+        assertEquals("152", preview.primary);
+    }
+
+    @Test
+    public void operatorAtTheCaretReplacesTheOneBeforeIt() {
+        type("8+2<×");
+        assertEquals("8×|2", preview.primary);
+        assertEquals("16", preview.secondary);
+        assertEquals(3, manager.size());
+    }
+
+    @Test
+    public void operatorInANumberSplitsIt() {
+        type("123<9+");
+        assertEquals("9+|123", preview.primary);
+        assertEquals("132", preview.secondary);
+    }
+
+    @Test
+    public void minusInFrontOfANumberIsItsSign() {
+        type("5×3<-");
+        assertEquals("5×-|3", preview.primary);
+        assertEquals("-15", preview.secondary);
+    }
+
+    @Test
+    public void deleteAtTheCaretJoinsTheNumbersEitherSide() {
+        type("12+34<D");
+        assertEquals("12|34", preview.primary);
+        assertEquals(1, manager.size());
+        assertEquals("1234", preview.secondary);
+
+        type("D");
+        assertEquals("1|34", preview.primary);
+    }
+
+    @Test
+    public void caretEditsAreStepsOfTheHistory() {
+        type("6+4<<D");
+        assertEquals("|+4", preview.primary);
+
+        type("U");
+        assertEquals("6+4", preview.primary);
+
+        type("+1=");
+        assertEquals("11", preview.primary);
+    }
+
+    @Test
+    public void equalsAtTheCaretWorksOutTheWholeSum() {
+        type("2+3<<<7=");
+        assertEquals("75", preview.primary);
+    }
+
+    @Test
+    public void operatorAfterDecimalPointKeepsTheNumber() {
+        type("5.+3=");
+        assertEquals("8", preview.primary);
+
+        processor.resetPreview();
+        type("2.-3=");
+        assertEquals("-1", preview.primary);
+    }
+
+    @Test
+    public void unknownKeysLeaveTheTextAlone() {
+        type("4x+1");
+        assertEquals("4+1", preview.primary);
+        assertEquals(2, manager.size());
+    }
+
+    /**
+     * Preview that keeps its texts as strings
+     */
+    private static final class TextPreview implements MathPreview {
+        String primary = "0";
+        String secondary = "0";
+        int primaryUpdates;
+
+        @Override
+        public TextView getPrimary() {
+            return null;
+        }
+
+        @Override
+        public TextView getSecondary() {
+            return null;
+        }
+
+        @Override
+        public void setPrimaryText(char[] text, int start, int length) {
+            primary = new String(text, start, length);
+            primaryUpdates++;
+        }
+
+        @Override
+        public void setSecondaryText(char[] text, int start, int length) {
+            secondary = new String(text, start, length);
+        }
+
+        @Override
+        public void resetPreview() {
+            primary = "0";
+            secondary = "0";
+        }
+
+        @Override
+        public void scrollText(int direction) {
+        }
+    }
+}